@@ -11,12 +11,10 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
@@ -24,7 +22,6 @@ import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -32,7 +29,7 @@ import org.intermine.xml.full.Item;
  * 
  * @author
  */
-public class DepmapAchillesGeneEffectConverter extends BioDirectoryConverter
+public class DepmapAchillesGeneEffectConverter extends StormDirectoryConverter
 {
     //
     private static final String DATASET_TITLE = "DepMap Achilles Gene Effect";
@@ -42,44 +39,14 @@ public class DepmapAchillesGeneEffectConverter extends BioDirectoryConverter
 
     private static final String CN_CSV_FILE = "Achilles_gene_effect.csv";
 
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(DepmapAchillesGeneEffectConverter.class);
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-    private Map<String, String> cellLines = new HashMap<String, String>();
+    private ItemIdRegistry cellLines = newRegistry("cellLines");
 
     private String organismIdentifier; // Not the taxon ID. It references the object that is created into the database.
 
     // Methods to integrate the data only for a list of genes
     private static final String GENE_LIST_FILE = "/data/storm/targets/storm_targets_symbols.csv";
-    private ArrayList<String> processGeneList(String geneListFile) throws Exception {
-        File geneListF = new File(geneListFile);
-
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(geneListF));
-        ArrayList<String> geneListArray = new ArrayList<String>();
-
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
-            String gene = line[0];
-            if(StringUtils.isEmpty(gene)) {
-                continue;
-            }
-
-            if(unresolvableGenes.get(gene) != null) {
-                continue;
-            }
-            String geneId = getGeneId(gene);
-            if(geneId == null) {
-                continue;
-            }
-            geneListArray.add(geneId);
-
-        }
-
-        return geneListArray;
-    }
     //
 
     /**
@@ -89,9 +56,6 @@ public class DepmapAchillesGeneEffectConverter extends BioDirectoryConverter
      */
     public DepmapAchillesGeneEffectConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
     /**
@@ -101,57 +65,84 @@ public class DepmapAchillesGeneEffectConverter extends BioDirectoryConverter
      */
     public void process(File dataDir) throws Exception {
 
+        if(replaySpool()) {
+            return;
+        }
+
         Map<String, File> files = readFilesInDir(dataDir);
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        ArrayList<String> geneListArray = new ArrayList<String>();
+        GeneFilter geneFilter = GeneFilter.ALL;
         if(!StringUtils.isEmpty(GENE_LIST_FILE)) {
-            geneListArray = processGeneList(GENE_LIST_FILE);
+            geneFilter = processGeneList(GENE_LIST_FILE);
         }
 
-        processEffect(new FileReader(files.get(CN_CSV_FILE)), geneListArray);
+        processEffect(openDataFile(files.get(CN_CSV_FILE)), geneFilter);
 
     }
 
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
-        }
-        return files;
-    }
-
-    private void processEffect(Reader reader, ArrayList<String> geneList) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(reader);
+    private void processEffect(Reader reader, GeneFilter geneFilter) throws ObjectStoreException, IOException {
+        DelimitedReader rows = DelimitedReader.csv(reader);
         // header
-        String[] firstLine = (String[]) lineIter.next();
+        String[] firstLine = rows.readHeader();
         ArrayList<String> genes = new ArrayList<String>();
         for(int i = 1; i < firstLine.length; i++) {
             String formattedGene = firstLine[i].split(" ")[0].trim();
             genes.add(formattedGene);
         }
 
-        //lineIter.next();
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
-
-            String cellLine = line[0];
-            for(int i = 1; i < line.length; i++) {
-                String effectValue = line[i];
-                String theGeneForThisItem = genes.get(i-1);
+        // resolve and filter the gene of each column once, not for every cell
+        String[] geneIds = new String[genes.size()];
+        for(int i = 0; i < genes.size(); i++) {
+            String gene = genes.get(i);
+            if(!gene.isEmpty()) {
+                String geneId = getGeneId(gene);
+                if(geneId == null) {
+                    getMetrics().skip("column: gene not resolved");
+                } else if(geneFilter.accepts(geneId)) {
+                    geneIds[i] = geneId;
+                } else {
+                    getMetrics().skip("column: gene not in list");
+                }
+            }
+        }
 
-                if(!geneList.isEmpty()) {
-                    if(unresolvableGenes.get(theGeneForThisItem) != null) {
-                        continue;
-                    }
-                    String geneId = getGeneId(theGeneForThisItem);
-                    if(geneId == null) {
-                        continue;
-                    }
-                    if(!geneList.contains(geneId)) {
-                        continue;
+        // the other columns are skipped by the reader without being split or copied
+        List<String> columns = new ArrayList<String>();
+        columns.add(firstLine[0]);
+        for(int i = 1; i < firstLine.length; i++) {
+            if(geneIds[i-1] != null) {
+                columns.add(firstLine[i]);
+            }
+        }
+        rows.selectColumns(columns);
+
+        // with storm.delta.previous set, only the cells that changed since that release
+        MatrixDelta delta = openDelta("AchillesGeneEffect", CN_CSV_FILE, firstLine, columns,
+                new MatrixDelta.CellRule() {
+                    @Override
+                    public boolean isStored(CharSequence value) {
+                        return value.length() > 0 && !"NA".contentEquals(value);
                     }
+                });
+
+        //lineIter.next();
+        while (rows.next()) {
+            String cellLine = rows.getString(0);
+            if(delta != null) {
+                delta.startRow(cellLine);
+            }
+            for(int i = 1; i < rows.getFieldCount(); i++) {
+                String geneId = geneIds[i-1];
+                // an unselected column, counted with the header
+                if(geneId == null) {
+                    continue;
+                }
+                String effectValue = rows.getString(i);
+                if(delta != null && delta.compare(i, effectValue) == MatrixDelta.Change.UNCHANGED) {
+                    getMetrics().skip("unchanged since the previous release");
+                    continue;
                 }
 
                 Item CopyNumberItem;
@@ -161,26 +152,16 @@ public class DepmapAchillesGeneEffectConverter extends BioDirectoryConverter
                 if(!cellLine.isEmpty()) {
                     CopyNumberItem.setReference("cellLine", getCellLine(cellLine));
                 } else {
+                    getMetrics().skip("empty cell line");
                     continue;
                 }
 
-                if(!theGeneForThisItem.isEmpty()) {
-                    if(unresolvableGenes.get(theGeneForThisItem) != null) {
-                        continue;
-                    }
-                    String geneId = getGeneId(theGeneForThisItem);
-                    if(geneId == null) {
-                        continue;
-                    }
-
-                    CopyNumberItem.setReference("gene", geneId);
-                } else {
-                    continue;
-                }
+                CopyNumberItem.setReference("gene", geneId);
 
                 if(!effectValue.isEmpty() && !effectValue.equals("NA")) {
                     CopyNumberItem.setAttribute("DepmapAchillesGeneEffectValue", effectValue);
                 } else {
+                    getMetrics().skip("missing value");
                     continue;
                 }
 
@@ -188,48 +169,8 @@ public class DepmapAchillesGeneEffectConverter extends BioDirectoryConverter
                 //cellLines.put(cellLine, CopyNumberItem.getIdentifier());
             }
         }
-    }
-
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
-            } else {
-                return resolvedIdentifier;
-            }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
-
-    private String resolveGene(String identifier) {
-        String id = null;
-
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
-            }
-        }
-        return id;
+        getMetrics().rowsRead(rows);
+        rows.close();
     }
 
     public String getCellLine(String identifier) {
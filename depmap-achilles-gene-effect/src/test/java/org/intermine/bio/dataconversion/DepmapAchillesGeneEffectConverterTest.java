@@ -10,11 +10,13 @@ package org.intermine.bio.dataconversion;
  *
  */
 
-public class DepmapAchillesGeneEffectConverterTest extends ItemsTestCase
+import java.util.Set;
+
+import org.intermine.xml.full.Item;
+
+public class DepmapAchillesGeneEffectConverterTest extends StormConverterTestCase
 {
-    Model model = Model.getInstanceByName("genomic");
     DepmapAchillesGeneEffectConverter converter;
-    MockItemWriter itemWriter;
 
     public DepmapAchillesGeneEffectConverterTest(String arg) {
         super(arg);
@@ -22,13 +24,16 @@ public class DepmapAchillesGeneEffectConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        // if you need to do some preprocessing and set up, do that here
+        converter = new DepmapAchillesGeneEffectConverter(itemWriter, model);
     }
 
     public void testProcess() throws Exception {
-        // read in a test file (place in test/resources so it's on the classpath)
-        // process using your converter
-        // compare results to expected results
-        // look at the other intermine unit tests for help!
+        converter.process(getResource("depmap-achilles-gene-effect"));
+        converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "depmap-achilles-gene-effect-tgt.xml");
+
+        Set<Item> expected = readItemSet("DepmapAchillesGeneEffectConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }
@@ -11,11 +11,9 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -24,7 +22,6 @@ import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -32,7 +29,7 @@ import org.intermine.xml.full.Item;
  * 
  * @author
  */
-public class DepmapCcleMutationsConverter extends BioDirectoryConverter
+public class DepmapCcleMutationsConverter extends StormDirectoryConverter
 {
     //
     private static final String DATASET_TITLE = "DepMap CCLE Mutations Data";
@@ -42,43 +39,14 @@ public class DepmapCcleMutationsConverter extends BioDirectoryConverter
 
     private static final String MUTATIONS_CSV_FILE = "CCLE_mutations.csv";
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-    private Map<String, String> cellLines = new HashMap<String, String>();
+    private ItemIdRegistry cellLines = newRegistry("cellLines");
 
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(DepmapCcleMutationsConverter.class);
 
     private String organismIdentifier; // Not the taxon ID. It references the object that is created into the database.
 
     // Methods to integrate the data only for a list of genes
     private static final String GENE_LIST_FILE = "/data/storm/targets/storm_targets_symbols.csv";
-    private ArrayList<String> processGeneList(String geneListFile) throws Exception {
-        File geneListF = new File(geneListFile);
-
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(geneListF));
-        ArrayList<String> geneListArray = new ArrayList<String>();
-
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
-            String gene = line[0];
-            if(StringUtils.isEmpty(gene)) {
-                continue;
-            }
-
-            if(unresolvableGenes.get(gene) != null) {
-                continue;
-            }
-            String geneId = getGeneId(gene);
-            if(geneId == null) {
-                continue;
-            }
-            geneListArray.add(geneId);
-        }
-
-        return geneListArray;
-    }
     //
 
     /**
@@ -88,9 +56,6 @@ public class DepmapCcleMutationsConverter extends BioDirectoryConverter
      */
     public DepmapCcleMutationsConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
     public void process(File dataDir) throws Exception {
@@ -98,24 +63,17 @@ public class DepmapCcleMutationsConverter extends BioDirectoryConverter
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        ArrayList<String> geneListArray = new ArrayList<String>();
+        GeneFilter geneFilter = GeneFilter.ALL;
         if(!StringUtils.isEmpty(GENE_LIST_FILE)) {
-            geneListArray = processGeneList(GENE_LIST_FILE);
+            geneFilter = processGeneList(GENE_LIST_FILE);
         }
 
-        processMutationsData(new FileReader(files.get(MUTATIONS_CSV_FILE)), geneListArray);
-    }
-
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
-        }
-        return files;
+        processMutationsData(openDataFile(files.get(MUTATIONS_CSV_FILE)), geneFilter);
     }
 
-    private void processMutationsData(Reader reader, ArrayList<String> geneList) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseTabDelimitedReader(reader);
+    private void processMutationsData(Reader reader, GeneFilter geneFilter) throws ObjectStoreException, IOException {
+        DelimitedReader rows = DelimitedReader.tsv(reader);
+        Iterator<?> lineIter = rows.iterator();
 
         // Skip header
         lineIter.next();
@@ -148,15 +106,10 @@ public class DepmapCcleMutationsConverter extends BioDirectoryConverter
 
             String hugoSymbol = line[0];
 
-            if(!geneList.isEmpty()) {
-                if(unresolvableGenes.get(hugoSymbol) != null) {
-                    continue;
-                }
+            if(!geneFilter.acceptsAll()) {
                 String geneId = getGeneId(hugoSymbol);
-                if(geneId == null) {
-                    continue;
-                }
-                if(!geneList.contains(geneId)) {
+                if(!geneFilter.accepts(geneId)) {
+                    getMetrics().skip(geneId == null ? "gene not resolved" : "gene not in list");
                     continue;
                 }
             }
@@ -182,20 +135,20 @@ public class DepmapCcleMutationsConverter extends BioDirectoryConverter
             if(!DepMapID.isEmpty()) {
                 mutationsItem.setReference("cellLine", getCellLine(DepMapID));
             } else {
+                getMetrics().skip("empty DepMap id");
                 continue;
             }
 
             if(!hugoSymbol.isEmpty()) {
-                if(unresolvableGenes.get(hugoSymbol) != null) {
-                    continue;
-                }
                 String geneId = getGeneId(hugoSymbol);
                 if(geneId == null) {
+                    getMetrics().skip("gene not resolved");
                     continue;
                 }
 
                 mutationsItem.setReference("gene", geneId);
             } else {
+                getMetrics().skip("empty gene");
                 continue;
             }
 
@@ -285,48 +238,7 @@ public class DepmapCcleMutationsConverter extends BioDirectoryConverter
 
             store(mutationsItem);
         }
-    }
-
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
-            } else {
-                return resolvedIdentifier;
-            }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
-
-    private String resolveGene(String identifier) {
-        String id = null;
-
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
-            }
-        }
-        return id;
+        getMetrics().rowsRead(rows);
     }
 
     public String getCellLine(String identifier) {
@@ -11,11 +11,9 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
@@ -23,7 +21,6 @@ import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 import java.util.*;
@@ -33,7 +30,7 @@ import java.util.*;
  * 
  * @author
  */
-public class DepmapCnvConverter extends BioDirectoryConverter
+public class DepmapCnvConverter extends StormDirectoryConverter
 {
     //
     private static final String DATASET_TITLE = "DepMap Copy Number";
@@ -43,43 +40,14 @@ public class DepmapCnvConverter extends BioDirectoryConverter
 
     private static final String CN_CSV_FILE = "CCLE_gene_cn.csv";
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-    private Map<String, String> cellLines = new HashMap<String, String>();
+    private ItemIdRegistry cellLines = newRegistry("cellLines");
 
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(DepmapCnvConverter.class);
 
     private String organismIdentifier; // Not the taxon ID. It references the object that is created into the database.
 
     // Methods to integrate the data only for a list of genes
     private static final String GENE_LIST_FILE = "/data/storm/targets/storm_targets_symbols.csv";
-    private ArrayList<String> processGeneList(String geneListFile) throws Exception {
-        File geneListF = new File(geneListFile);
-
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(geneListF));
-        ArrayList<String> geneListArray = new ArrayList<String>();
-
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
-            String gene = line[0];
-            if(StringUtils.isEmpty(gene)) {
-                continue;
-            }
-
-            if(unresolvableGenes.get(gene) != null) {
-                continue;
-            }
-            String geneId = getGeneId(gene);
-            if(geneId == null) {
-                continue;
-            }
-            geneListArray.add(geneId);
-        }
-
-        return geneListArray;
-    }
     //
 
     /**
@@ -89,66 +57,90 @@ public class DepmapCnvConverter extends BioDirectoryConverter
      */
     public DepmapCnvConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
     public void process(File dataDir) throws Exception {
 
+        if(replaySpool()) {
+            return;
+        }
+
         Map<String, File> files = readFilesInDir(dataDir);
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        ArrayList<String> geneListArray = new ArrayList<String>();
+        GeneFilter geneFilter = GeneFilter.ALL;
         if(!StringUtils.isEmpty(GENE_LIST_FILE)) {
-            geneListArray = processGeneList(GENE_LIST_FILE);
+            geneFilter = processGeneList(GENE_LIST_FILE);
         }
 
-        processCopyNumber(new FileReader(files.get(CN_CSV_FILE)), geneListArray);
+        processCopyNumber(openDataFile(files.get(CN_CSV_FILE)), geneFilter);
 
     }
 
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
-        }
-        return files;
-    }
-
-    private void processCopyNumber(Reader reader, ArrayList<String> geneList) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(reader);
+    private void processCopyNumber(Reader reader, GeneFilter geneFilter) throws ObjectStoreException, IOException {
+        DelimitedReader rows = DelimitedReader.csv(reader);
         // header
-        String[] firstLine = (String[]) lineIter.next();
+        String[] firstLine = rows.readHeader();
         ArrayList<String> genes = new ArrayList<String>();
         for(int i = 1; i < firstLine.length; i++) {
             String formattedGene = firstLine[i].split(" ")[0].trim();
             genes.add(formattedGene);
         }
 
-        //lineIter.next();
+        // resolve and filter the gene of each column once, not for every cell
+        String[] geneIds = new String[genes.size()];
+        for(int i = 0; i < genes.size(); i++) {
+            String gene = genes.get(i);
+            if(!gene.isEmpty()) {
+                String geneId = getGeneId(gene);
+                if(geneId == null) {
+                    getMetrics().skip("column: gene not resolved");
+                } else if(geneFilter.accepts(geneId)) {
+                    geneIds[i] = geneId;
+                } else {
+                    getMetrics().skip("column: gene not in list");
+                }
+            }
+        }
 
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
+        // the other columns are skipped by the reader without being split or copied
+        List<String> columns = new ArrayList<String>();
+        columns.add(firstLine[0]);
+        for(int i = 1; i < firstLine.length; i++) {
+            if(geneIds[i-1] != null) {
+                columns.add(firstLine[i]);
+            }
+        }
+        rows.selectColumns(columns);
+
+        // with storm.delta.previous set, only the cells that changed since that release
+        MatrixDelta delta = openDelta("DepMapCopyNumber", CN_CSV_FILE, firstLine, columns,
+                new MatrixDelta.CellRule() {
+                    @Override
+                    public boolean isStored(CharSequence value) {
+                        return value.length() > 0;
+                    }
+                });
 
-            String cellLine = line[0];
+        //lineIter.next();
 
-            for(int i = 1; i < line.length; i++) {
-                String cnvValue = line[i];
-                String theGeneForThisItem = genes.get(i-1);
+        while (rows.next()) {
+            String cellLine = rows.getString(0);
+            if(delta != null) {
+                delta.startRow(cellLine);
+            }
 
-                if(!geneList.isEmpty()) {
-                    if(unresolvableGenes.get(theGeneForThisItem) != null) {
-                        continue;
-                    }
-                    String geneId = getGeneId(theGeneForThisItem);
-                    if(geneId == null) {
-                        continue;
-                    }
-                    if(!geneList.contains(geneId)) {
-                        continue;
-                    }
+            for(int i = 1; i < rows.getFieldCount(); i++) {
+                String geneId = geneIds[i-1];
+                // an unselected column, counted with the header
+                if(geneId == null) {
+                    continue;
+                }
+                String cnvValue = rows.getString(i);
+                if(delta != null && delta.compare(i, cnvValue) == MatrixDelta.Change.UNCHANGED) {
+                    getMetrics().skip("unchanged since the previous release");
+                    continue;
                 }
 
                 Item CopyNumberItem;
@@ -159,22 +151,11 @@ public class DepmapCnvConverter extends BioDirectoryConverter
                 if(!cellLine.isEmpty()) {
                     CopyNumberItem.setReference("cellLine", getCellLine(cellLine));
                 } else {
+                    getMetrics().skip("empty cell line");
                     continue;
                 }
 
-                if(!theGeneForThisItem.isEmpty()) {
-                    if(unresolvableGenes.get(theGeneForThisItem) != null) {
-                        continue;
-                    }
-                    String geneId = getGeneId(theGeneForThisItem);
-                    if(geneId == null) {
-                        continue;
-                    }
-
-                    CopyNumberItem.setReference("gene", geneId);
-                } else {
-                    continue;
-                }
+                CopyNumberItem.setReference("gene", geneId);
 
                 if(!cnvValue.isEmpty()) {
                     Double cnvValueDouble = Double.valueOf(cnvValue);
@@ -183,53 +164,14 @@ public class DepmapCnvConverter extends BioDirectoryConverter
 
                     store(CopyNumberItem);
                 } else {
+                    getMetrics().skip("missing value");
                     continue;
                 }
                 //cellLines.put(cellLine, CopyNumberItem.getIdentifier());
             }
         }
-    }
-
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
-            } else {
-                return resolvedIdentifier;
-            }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
-
-    private String resolveGene(String identifier) {
-        String id = null;
-
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
-            }
-        }
-        return id;
+        getMetrics().rowsRead(rows);
+        rows.close();
     }
 
     public String getCellLine(String identifier) {
@@ -10,19 +10,13 @@ package org.intermine.bio.dataconversion;
  *
  */
 
-import org.intermine.dataconversion.MockItemWriter;
-import org.intermine.model.fulldata.Item;
-import org.intermine.dataconversion.ItemsTestCase;
-import org.intermine.metadata.Model;
+import java.util.Set;
 
-import java.io.File;
-import java.util.HashMap;
+import org.intermine.xml.full.Item;
 
-public class DepmapCnvConverterTest extends ItemsTestCase
+public class DepmapCnvConverterTest extends StormConverterTestCase
 {
-    Model model = Model.getInstanceByName("genomic");
     DepmapCnvConverter converter;
-    MockItemWriter itemWriter;
 
     public DepmapCnvConverterTest(String arg) {
         super(arg);
@@ -30,19 +24,16 @@ public class DepmapCnvConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        itemWriter = new MockItemWriter(new HashMap<String, Item>());
         converter = new DepmapCnvConverter(itemWriter, model);
     }
 
     public void testProcess() throws Exception {
-        File tmp = new File(getClass().getClassLoader().getResource("CCLE_gene_cn.csv").toURI());
-        File dataDirectory = tmp.getParentFile();
-
-        System.out.println(dataDirectory.getAbsolutePath());
-
-        converter.process(dataDirectory);
+        converter.process(getResource("depmap-cnv"));
         converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "depmap-cnv-tgt.xml");
 
-        writeItemsFile(itemWriter.getItems(), "depmap-cnv-items.xml");
+        Set<Item> expected = readItemSet("DepmapCnvConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }
@@ -10,11 +10,13 @@ package org.intermine.bio.dataconversion;
  *
  */
 
-public class DepmapDemeter2DependencyConverterTest extends ItemsTestCase
+import java.util.Set;
+
+import org.intermine.xml.full.Item;
+
+public class DepmapDemeter2DependencyConverterTest extends StormConverterTestCase
 {
-    Model model = Model.getInstanceByName("genomic");
     DepmapDemeter2DependencyConverter converter;
-    MockItemWriter itemWriter;
 
     public DepmapDemeter2DependencyConverterTest(String arg) {
         super(arg);
@@ -22,13 +24,16 @@ public class DepmapDemeter2DependencyConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        // if you need to do some preprocessing and set up, do that here
+        converter = new DepmapDemeter2DependencyConverter(itemWriter, model);
     }
 
     public void testProcess() throws Exception {
-        // read in a test file (place in test/resources so it's on the classpath)
-        // process using your converter
-        // compare results to expected results
-        // look at the other intermine unit tests for help!
+        converter.process(getResource("depmap-demeter2-dependency"));
+        converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "depmap-demeter2-dependency-tgt.xml");
+
+        Set<Item> expected = readItemSet("DepmapDemeter2DependencyConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }
@@ -11,12 +11,9 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
@@ -24,7 +21,6 @@ import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -32,7 +28,7 @@ import org.intermine.xml.full.Item;
  * 
  * @author
  */
-public class DepmapExpressionConverter extends BioDirectoryConverter
+public class DepmapExpressionConverter extends StormDirectoryConverter
 {
     //
     private static final String DATASET_TITLE = "DepMap Expression Data";
@@ -42,43 +38,21 @@ public class DepmapExpressionConverter extends BioDirectoryConverter
 
     private static final String EXPRESSION_CSV_FILE = "CCLE_expression.csv";
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-    private Map<String, String> cellLines = new HashMap<String, String>();
+    private ItemIdRegistry cellLines = newRegistry("cellLines");
+
+    // the Gene of each column from the header, null for columns that aren't wanted
+    private String[] geneIds;
+    // the indexes of the columns with a Gene
+    private int[] geneColumns;
+    // with storm.delta.previous set, the cells that changed since that release
+    private MatrixDelta delta;
 
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(DepmapExpressionConverter.class);
 
     private String organismIdentifier; // Not the taxon ID. It references the object that is created into the database.
 
     // Methods to integrate the data only for a list of genes
     private static final String GENE_LIST_FILE = "/data/storm/targets/storm_targets_symbols.csv";
-    private ArrayList<String> processGeneList(String geneListFile) throws Exception {
-        File geneListF = new File(geneListFile);
-
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(geneListF));
-        ArrayList<String> geneListArray = new ArrayList<String>();
-
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
-            String gene = line[0];
-            if(StringUtils.isEmpty(gene)) {
-                continue;
-            }
-
-            if(unresolvableGenes.get(gene) != null) {
-                continue;
-            }
-            String geneId = getGeneId(gene);
-            if(geneId == null) {
-                continue;
-            }
-            geneListArray.add(geneId);
-        }
-
-        return geneListArray;
-    }
     //
 
     /**
@@ -88,26 +62,6 @@ public class DepmapExpressionConverter extends BioDirectoryConverter
      */
     public DepmapExpressionConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
-    }
-
-    private boolean isDouble(String str) {
-        try {
-            // check if it can be parsed as any double
-            double x = Double.parseDouble(str);
-            // check if the double can be converted without loss to an int
-            if (x == (int) x)
-                // if yes, this is an int, thus return false
-                return false;
-            // otherwise, this cannot be converted to an int (e.g. "1.2")
-            return true;
-            // short version: return x != (int) x;
-        }
-        catch(NumberFormatException e) {
-            return false;
-        }
     }
 
     /**
@@ -116,134 +70,163 @@ public class DepmapExpressionConverter extends BioDirectoryConverter
      * {@inheritDoc}
      */
     public void process(File dataDir) throws Exception {
+        if(replaySpool()) {
+            return;
+        }
+
         Map<String, File> files = readFilesInDir(dataDir);
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        ArrayList<String> geneListArray = new ArrayList<String>();
+        GeneFilter geneFilter = GeneFilter.ALL;
         if(!StringUtils.isEmpty(GENE_LIST_FILE)) {
-            geneListArray = processGeneList(GENE_LIST_FILE);
+            geneFilter = processGeneList(GENE_LIST_FILE);
         }
 
-        processExpressionData(new FileReader(files.get(EXPRESSION_CSV_FILE)), geneListArray);
+        File expressionFile = files.get(EXPRESSION_CSV_FILE);
+        ParallelRowEngine engine = openParallel(expressionFile, ',', '"');
+        if(engine != null) {
+            processExpressionData(engine, geneFilter);
+        } else {
+            processExpressionData(expressionFile, geneFilter);
+        }
     }
 
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
+    private void processExpressionData(File expressionFile, GeneFilter geneFilter) throws ObjectStoreException, IOException {
+        DelimitedReader rows = DelimitedReader.csv(openDataFile(expressionFile));
+        // header
+        String[] firstLine = rows.readHeader();
+        rows.selectColumns(processHeader(firstLine, geneFilter));
+
+        // with storm.checkpoint.dir set a run that died carries on from its last checkpoint
+        startCheckpoints(expressionFile, rows);
+
+        NumericField numbers = getNumericField();
+        while (rows.next()) {
+            storeRow(parseRow(rows, numbers));
+            checkpoint(rows);
         }
-        return files;
+        endCheckpoints();
+        getMetrics().rowsRead(rows);
+        rows.close();
     }
 
-    private void processExpressionData(Reader reader, ArrayList<String> geneList) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(reader);
-        // header
-        String[] firstLine = (String[]) lineIter.next();
+    // the same, with the rows parsed on several threads and stored here in file order
+    private void processExpressionData(ParallelRowEngine engine, GeneFilter geneFilter) throws Exception {
+        engine.selectColumns(processHeader(engine.getHeader(), geneFilter));
+        engine.run(new ParallelRowEngine.RowParser<ExpressionRow>() {
+            @Override
+            public ExpressionRow parse(DelimitedReader rows) {
+                return parseRow(rows, new NumericField());
+            }
+        }, new ParallelRowEngine.RowHandler<ExpressionRow>() {
+            @Override
+            public void handle(ExpressionRow row) throws ObjectStoreException {
+                storeRow(row);
+            }
+        });
+        getMetrics().rowsRead(engine);
+    }
+
+    // returns the names of the columns to read
+    private List<String> processHeader(String[] firstLine, GeneFilter geneFilter) throws ObjectStoreException, IOException {
         ArrayList<String> genes = new ArrayList<String>();
         for(int i = 1; i < firstLine.length; i++) {
             String formattedGene = firstLine[i].split(" ")[0].trim();
             genes.add(formattedGene);
         }
 
-        //lineIter.next();
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
-
-            String cellLine = line[0];
-            for(int i = 1; i < line.length; i++) {
-                String expressionValue = line[i];
-                String theGeneForThisItem = genes.get(i-1);
-
-                if(!geneList.isEmpty()) {
-                    if(unresolvableGenes.get(theGeneForThisItem) != null) {
-                        continue;
-                    }
-                    String geneId = getGeneId(theGeneForThisItem);
-                    if(geneId == null) {
-                        continue;
-                    }
-                    if(!geneList.contains(geneId)) {
-                        continue;
-                    }
-                }
-
-                Item ExpressionItem;
-
-                ExpressionItem = createItem("DepMapExpression");
-
-                if(!cellLine.isEmpty()) {
-                    ExpressionItem.setReference("cellLine", getCellLine(cellLine));
+        // resolve and filter the gene of each column once, not for every cell
+        geneIds = new String[genes.size()];
+        for(int i = 0; i < genes.size(); i++) {
+            String gene = genes.get(i);
+            if(!gene.isEmpty()) {
+                String geneId = getGeneId(gene);
+                if(geneId == null) {
+                    getMetrics().skip("column: gene not resolved");
+                } else if(geneFilter.accepts(geneId)) {
+                    geneIds[i] = geneId;
                 } else {
-                    continue;
+                    getMetrics().skip("column: gene not in list");
                 }
+            }
+        }
 
-                if(!theGeneForThisItem.isEmpty()) {
-                    if(unresolvableGenes.get(theGeneForThisItem) != null) {
-                        continue;
-                    }
-                    String geneId = getGeneId(theGeneForThisItem);
-                    if(geneId == null) {
-                        continue;
-                    }
-
-                    ExpressionItem.setReference("gene", geneId);
-                } else {
-                    continue;
-                }
+        // the other columns are skipped by the reader without being split or copied
+        List<String> columns = new ArrayList<String>();
+        List<Integer> indexes = new ArrayList<Integer>();
+        columns.add(firstLine[0]);
+        for(int i = 1; i < firstLine.length; i++) {
+            if(geneIds[i-1] != null) {
+                columns.add(firstLine[i]);
+                indexes.add(i);
+            }
+        }
+        geneColumns = new int[indexes.size()];
+        for(int k = 0; k < geneColumns.length; k++) {
+            geneColumns[k] = indexes.get(k);
+        }
+        delta = openDelta("DepMapExpression", EXPRESSION_CSV_FILE, firstLine, columns,
+                new MatrixDelta.CellRule() {
+                    private final NumericField numbers = new NumericField();
 
-                if(!expressionValue.isEmpty() && isDouble(expressionValue)) {
-                    ExpressionItem.setAttribute("DepmapExpressionValue", expressionValue);
-                } else {
-                    continue;
-                }
+                    @Override
+                    public boolean isStored(CharSequence value) {
+                        return value.length() > 0 && numbers.isNonIntegral(value);
+                    }
+                });
+        return columns;
+    }
 
-                store(ExpressionItem);
-                //cellLines.put(cellLine, CopyNumberItem.getIdentifier());
+    // may run on a parser thread, so it only reads the columns set up by processHeader()
+    private ExpressionRow parseRow(DelimitedReader rows, NumericField numbers) {
+        ExpressionRow row = new ExpressionRow(rows.getString(0), rows.getFieldCount(), geneColumns.length);
+        for(int k = 0; k < geneColumns.length && geneColumns[k] < row.fieldCount; k++) {
+            CharSequence expressionValue = rows.getField(geneColumns[k]);
+            if(expressionValue.length() > 0 && numbers.isNonIntegral(expressionValue)) {
+                row.values[k] = expressionValue.toString();
             }
         }
+        return row;
     }
 
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
+    private void storeRow(ExpressionRow row) throws ObjectStoreException {
+        String cellLine = row.cellLine;
+        if(delta != null) {
+            delta.startRow(cellLine);
+        }
+        for(int k = 0; k < geneColumns.length && geneColumns[k] < row.fieldCount; k++) {
+            String geneId = geneIds[geneColumns[k]-1];
+            String expressionValue = row.values[k];
+            if(delta != null && delta.compare(geneColumns[k], expressionValue) == MatrixDelta.Change.UNCHANGED) {
+                getMetrics().skip("unchanged since the previous release");
+                continue;
+            }
+
+            Item ExpressionItem;
+
+            ExpressionItem = createItem("DepMapExpression");
+
+            if(!cellLine.isEmpty()) {
+                ExpressionItem.setReference("cellLine", getCellLine(cellLine));
             } else {
-                return resolvedIdentifier;
+                getMetrics().skip("empty cell line");
+                continue;
             }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
 
-    private String resolveGene(String identifier) {
-        String id = null;
+            ExpressionItem.setReference("gene", geneId);
 
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
+            // null unless it is a non-integral number
+            if(expressionValue != null) {
+                ExpressionItem.setAttribute("DepmapExpressionValue", expressionValue);
+            } else {
+                getMetrics().skip("missing or integral value");
+                continue;
             }
+
+            store(ExpressionItem);
+            //cellLines.put(cellLine, CopyNumberItem.getIdentifier());
         }
-        return id;
     }
 
     public String getCellLine(String identifier) {
@@ -261,4 +244,21 @@ public class DepmapExpressionConverter extends BioDirectoryConverter
         }
         return refId;
     }
+
+    /**
+     * The values of a row the items are made from.
+     */
+    private static class ExpressionRow
+    {
+        private final String cellLine;
+        private final int fieldCount;
+        // by position in geneColumns
+        private final String[] values;
+
+        ExpressionRow(String cellLine, int fieldCount, int columns) {
+            this.cellLine = cellLine;
+            this.fieldCount = fieldCount;
+            this.values = new String[columns];
+        }
+    }
 }
@@ -10,15 +10,13 @@ package org.intermine.bio.dataconversion;
  *
  */
 
-import org.intermine.dataconversion.ItemsTestCase;
-import org.intermine.dataconversion.MockItemWriter;
-import org.intermine.metadata.Model;
+import java.util.Set;
 
-public class DepmapExpressionConverterTest extends ItemsTestCase
+import org.intermine.xml.full.Item;
+
+public class DepmapExpressionConverterTest extends StormConverterTestCase
 {
-    Model model = Model.getInstanceByName("genomic");
     DepmapExpressionConverter converter;
-    MockItemWriter itemWriter;
 
     public DepmapExpressionConverterTest(String arg) {
         super(arg);
@@ -26,13 +24,28 @@ public class DepmapExpressionConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        // if you need to do some preprocessing and set up, do that here
+        converter = new DepmapExpressionConverter(itemWriter, model);
     }
 
     public void testProcess() throws Exception {
-        // read in a test file (place in test/resources so it's on the classpath)
-        // process using your converter
-        // compare results to expected results
-        // look at the other intermine unit tests for help!
+        setProperty(SourceConfig.PARALLEL_THREADS, "1");
+        assertProcess();
+    }
+
+    public void testProcessParallel() throws Exception {
+        // a few rows per chunk, so that every thread parses some of the matrix
+        setProperty(SourceConfig.PARALLEL_THREADS, "4");
+        setProperty(SourceConfig.PARALLEL_CHUNK_SIZE, "64");
+        assertProcess();
+    }
+
+    private void assertProcess() throws Exception {
+        converter.process(getResource("depmap-expression"));
+        converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "depmap-expression-tgt.xml");
+
+        Set<Item> expected = readItemSet("DepmapExpressionConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }
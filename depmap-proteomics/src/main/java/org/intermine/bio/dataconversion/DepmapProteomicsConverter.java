@@ -11,12 +11,9 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
@@ -24,7 +21,6 @@ import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -32,7 +28,7 @@ import org.intermine.xml.full.Item;
  * 
  * @author
  */
-public class DepmapProteomicsConverter extends BioDirectoryConverter
+public class DepmapProteomicsConverter extends StormDirectoryConverter
 {
     private static final String DATASET_TITLE = "DepMap CCLE Proteomics Data";
     private static final String DATA_SOURCE_NAME = "DepMap CCLE";
@@ -41,138 +37,85 @@ public class DepmapProteomicsConverter extends BioDirectoryConverter
 
     private static final String CSV_FILE = "protein_quant_current_normalized.csv";
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-    private Map<String, String> cellLines = new HashMap<String, String>();
-    private Map<String, String> proteins = new HashMap<String, String>();
+    private ItemIdRegistry cellLines = newRegistry("cellLines");
+    private ItemIdRegistry proteins = newRegistry("proteins");
 
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(DepmapProteomicsConverter.class);
 
     private String organismIdentifier; // Not the taxon ID. It references the object that is created into the database.
 
     // Methods to integrate the data only for a list of genes
     private static final String GENE_LIST_FILE = "/data/storm/targets/storm_targets_symbols.csv";
-    private ArrayList<String> processGeneList(String geneListFile) throws Exception {
-        File geneListF = new File(geneListFile);
-
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(geneListF));
-        ArrayList<String> geneListArray = new ArrayList<String>();
-
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
-            String gene = line[0];
-            if(StringUtils.isEmpty(gene)) {
-                continue;
-            }
-
-            if(unresolvableGenes.get(gene) != null) {
-                continue;
-            }
-            String geneId = getGeneId(gene);
-            if(geneId == null) {
-                continue;
-            }
-            geneListArray.add(geneId);
-        }
-
-        return geneListArray;
-    }
     //
 
     public DepmapProteomicsConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
     public void process(File dataDir) throws Exception {
+        if(replaySpool()) {
+            return;
+        }
+
         Map<String, File> files = readFilesInDir(dataDir);
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        ArrayList<String> geneListArray = new ArrayList<String>();
+        GeneFilter geneFilter = GeneFilter.ALL;
         if(!StringUtils.isEmpty(GENE_LIST_FILE)) {
-            geneListArray = processGeneList(GENE_LIST_FILE);
+            geneFilter = processGeneList(GENE_LIST_FILE);
         }
 
-        processData(new FileReader(files.get(CSV_FILE)), geneListArray);
-    }
-
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
-        }
-        return files;
+        processData(openDataFile(files.get(CSV_FILE)), geneFilter);
     }
 
-    private void processData(Reader reader, ArrayList<String> geneList) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(reader);
+    private void processData(Reader reader, GeneFilter geneFilter) throws ObjectStoreException, IOException {
+        DelimitedReader rows = DelimitedReader.csv(reader);
 
         // header
-        String[] firstLine = (String[]) lineIter.next();
+        String[] firstLine = rows.readHeader();
         ArrayList<String> cellLinesList = new ArrayList<String>();
         for(int i = 48; i < firstLine.length; i++) {
             String formattedCL = firstLine[i].split("_Ten")[0].trim();
             cellLinesList.add(formattedCL);
         }
 
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
+        // rows of genes that aren't wanted are dropped before their values are split
+        rows.setRowFilter(1, geneRowFilter(geneFilter));
 
-            String geneSymbol = line[1];
-
-            if(!geneList.isEmpty()) {
-                if(unresolvableGenes.get(geneSymbol) != null) {
-                    continue;
-                }
-                String geneId = getGeneId(geneSymbol);
-                if(geneId == null) {
-                    continue;
-                }
-
-                if(!geneList.contains(geneId)) {
-                    continue;
-                }
+        while (rows.next()) {
+            String geneSymbol = rows.getString(1);
 
+            // resolve and filter the gene once per row, not for every cell
+            String geneId = geneSymbol.isEmpty() ? null : getGeneId(geneSymbol);
+            if(!geneFilter.accepts(geneId)) {
+                getMetrics().skip(geneId == null ? "gene not resolved" : "gene not in list");
+                continue;
             }
 
-            String proteinID = line[0];
-            String uniprotID = line[4];
+            String proteinID = rows.getString(0);
+            String uniprotID = rows.getString(4);
 
             // For each of the cell lines in the row
-            for(int i = 48; i < line.length; i++) {
+            for(int i = 48; i < rows.getFieldCount(); i++) {
                 String theCLForThisItem = cellLinesList.get(i-48);
-                String proteinQuant = line[i];
+                String proteinQuant = rows.getString(i);
 
                 Item integratedItem = createItem("DepMapProteomics");
 
                 if(!theCLForThisItem.isEmpty()) {
                     integratedItem.setReference("cellLine", getCellLine(theCLForThisItem));
                 } else {
+                    getMetrics().skip("empty cell line");
                     continue;
                 }
 
-                if(!geneSymbol.isEmpty()) {
-                    if(unresolvableGenes.get(geneSymbol) != null) {
-                        continue;
-                    }
-                    String geneId = getGeneId(geneSymbol);
-                    if(geneId == null) {
-                        continue;
-                    }
-
-                    integratedItem.setReference("gene", geneId);
-                } else {
-                    continue;
-                }
+                integratedItem.setReference("gene", geneId);
 
                 if(!proteinID.isEmpty()) {
                     integratedItem.setAttribute("ProteinID", proteinID);
                 } else {
+                    getMetrics().skip("empty protein id");
                     continue;
                 }
 
@@ -180,12 +123,14 @@ public class DepmapProteomicsConverter extends BioDirectoryConverter
                     integratedItem.setAttribute("ProteinUniprotID", uniprotID);
                     //integratedItem.setReference("ProteinUniprotID", getProtein(uniprotID));
                 } else {
+                    getMetrics().skip("empty UniProt id");
                     continue;
                 }
 
                 if(!proteinQuant.isEmpty() && !proteinQuant.equals("NA")) {
                     integratedItem.setAttribute("ProteinQuantitation", proteinQuant);
                 } else {
+                    getMetrics().skip("missing value");
                     continue;
                 }
 
@@ -193,48 +138,8 @@ public class DepmapProteomicsConverter extends BioDirectoryConverter
                 
             }
         }
-    }
-
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
-            } else {
-                return resolvedIdentifier;
-            }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
-
-    private String resolveGene(String identifier) {
-        String id = null;
-
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
-            }
-        }
-        return id;
+        getMetrics().rowsRead(rows);
+        rows.close();
     }
 
     public String getProtein(String identifier) {
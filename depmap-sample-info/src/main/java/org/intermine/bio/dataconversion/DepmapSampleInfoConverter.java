@@ -21,7 +21,6 @@ import java.util.Map;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -39,7 +38,10 @@ public class DepmapSampleInfoConverter extends BioDirectoryConverter
 
     private static final String SAMPLE_INFO_CSV_FILE = "sample_info.csv";
 
-    private Map<String, String> cellLines = new HashMap<String, String>();
+    private ItemIdRegistry cellLines = new ItemIdRegistry("cellLines");
+
+    // what this run did, reported at close()
+    private final ConverterMetrics metrics = new ConverterMetrics(SourceConfig.getSourceName(getClass()));
 
     private String organismIdentifier; // Not the taxon ID. It references the object that is created into the database.
 
@@ -63,8 +65,31 @@ public class DepmapSampleInfoConverter extends BioDirectoryConverter
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        processCellLines(new FileReader(files.get(SAMPLE_INFO_CSV_FILE)));
+        File sampleInfoFile = files.get(SAMPLE_INFO_CSV_FILE);
+        metrics.startPhase(SAMPLE_INFO_CSV_FILE);
+        metrics.fileOpened(sampleInfoFile);
+        processCellLines(new FileReader(sampleInfoFile));
+
+    }
 
+    /**
+     * Write the metrics report.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws Exception {
+        metrics.startPhase("close");
+        super.close();
+        metrics.report(SourceConfig.forConverter(getClass()));
+    }
+
+    /**
+     * The metrics of this run, written as a JSON report at close().
+     * @return the metrics
+     */
+    protected ConverterMetrics getMetrics() {
+        return metrics;
     }
 
     private Map<String, File> readFilesInDir(File dir) {
@@ -76,7 +101,8 @@ public class DepmapSampleInfoConverter extends BioDirectoryConverter
     }
 
     private void processCellLines(Reader reader) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(reader);
+        DelimitedReader rows = DelimitedReader.csv(reader);
+        Iterator<?> lineIter = rows.iterator();
         // Skip header
         lineIter.next();
         while (lineIter.hasNext()) {
@@ -85,6 +111,7 @@ public class DepmapSampleInfoConverter extends BioDirectoryConverter
             String DepMapID = line[0];
 
             if(cellLines.containsKey(DepMapID)) {
+                metrics.skip("duplicate DepMap id");
                 continue;
             }
 
@@ -103,6 +130,7 @@ public class DepmapSampleInfoConverter extends BioDirectoryConverter
             }
 
             if(Lineage.isEmpty()) {
+                metrics.skip("empty lineage");
                 continue;
             }
 
@@ -113,12 +141,14 @@ public class DepmapSampleInfoConverter extends BioDirectoryConverter
             Item cellLineItem;
 
             cellLineItem = createItem("CellLine");
+            metrics.itemCreated("CellLine");
 
             cellLineItem.setAttribute("primaryIdentifier", DepMapID);
 
             if(!DepMapID.isEmpty()) {
                 cellLineItem.setAttribute("DepMapID", DepMapID);
             } else {
+                metrics.skip("empty DepMap id");
                 continue;
             }
 
@@ -137,6 +167,7 @@ public class DepmapSampleInfoConverter extends BioDirectoryConverter
             if(!Lineage.isEmpty()) {
                 cellLineItem.setAttribute("Lineage", Lineage);
             } else {
+                metrics.skip("empty lineage");
                 continue;
             }
 
@@ -167,6 +198,7 @@ public class DepmapSampleInfoConverter extends BioDirectoryConverter
             if(!Disease.isEmpty()) {
                 cellLineItem.setAttribute("Disease", Disease);
             } else {
+                metrics.skip("empty disease");
                 continue;
             }
 
@@ -183,7 +215,9 @@ public class DepmapSampleInfoConverter extends BioDirectoryConverter
             }
 
             store(cellLineItem);
+            metrics.itemStored("CellLine");
             cellLines.put(DepMapID, cellLineItem.getIdentifier());
         }
+        metrics.rowsRead(rows);
     }
 }
@@ -17,6 +17,7 @@ import org.intermine.metadata.Model;
 
 import java.io.File;
 import java.util.HashMap;
+import java.util.Set;
 
 public class DepmapSampleInfoConverterTest extends ItemsTestCase
 {
@@ -35,14 +36,16 @@ public class DepmapSampleInfoConverterTest extends ItemsTestCase
     }
 
     public void testProcess() throws Exception {
-        File tmp = new File(getClass().getClassLoader().getResource("sample_info.csv").toURI());
-        File dataDirectory = tmp.getParentFile();
-
-        System.out.println(dataDirectory.getAbsolutePath());
+        File dataDirectory = new File(getClass().getClassLoader()
+                .getResource("depmap-sample-info").toURI());
 
         converter.process(dataDirectory);
         converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "depmap-sample-info-tgt.xml");
 
-        writeItemsFile(itemWriter.getItems(), "depmap-sample-info-items.xml");
+        Set<org.intermine.xml.full.Item> expected =
+            readItemSet("DepmapSampleInfoConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }
@@ -11,7 +11,6 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -24,7 +23,6 @@ import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -32,7 +30,7 @@ import org.intermine.xml.full.Item;
  * 
  * @author
  */
-public class DgidbDataConverter extends BioDirectoryConverter
+public class DgidbDataConverter extends StormDirectoryConverter
 {
     //
     private static final String DATASET_TITLE = "DGIdb Dataset";
@@ -43,12 +41,7 @@ public class DgidbDataConverter extends BioDirectoryConverter
     private static final String DRUGS_TSV_FILE = "drugs.tsv";
     private static final String INTERACTIONS_TSV_FILE = "interactions.tsv";
 
-    protected IdResolver rslv;
-
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-    private Map<String, String> drugs = new HashMap<String, String>();
+    private ItemIdRegistry drugs = newRegistry("drugs");
 
     private static final Logger LOG = Logger.getLogger(DgidbDataConverter.class);
 
@@ -58,45 +51,6 @@ public class DgidbDataConverter extends BioDirectoryConverter
 
     // Methods to integrate the data only for a list of genes
     private static final String GENE_LIST_FILE = "/data/storm/targets/storm_targets_symbols.csv";
-    private ArrayList<String> processGeneList(String geneListFile) throws Exception {
-        File geneListF = new File(geneListFile);
-
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(geneListF));
-        ArrayList<String> geneListArray = new ArrayList<String>();
-
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
-            String gene = line[0];
-            if(StringUtils.isEmpty(gene)) {
-                continue;
-            }
-
-            String resolvedGeneIdentifier = getGeneIdentifier(gene);
-            if(resolvedGeneIdentifier != null) {
-                geneListArray.add(resolvedGeneIdentifier);
-            }
-        }
-
-        return geneListArray;
-    }
-
-    private String getGeneIdentifier(String geneSymbol) throws ObjectStoreException {
-        String resolvedIdentifier = resolveGene(geneSymbol);
-        if (StringUtils.isEmpty(resolvedIdentifier)) {
-            return null;
-        }
-        String geneId = genes.get(resolvedIdentifier);
-        if (geneId == null) {
-            Item gene = createItem("Gene");
-            gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-            //gene.setAttribute("symbol", primaryIdentifier);
-            //gene.setReference("organism", getOrganism(TAXON_ID));
-            store(gene);
-            geneId = gene.getIdentifier();
-            genes.put(resolvedIdentifier, geneId);
-        }
-        return geneId;
-    }
     //
 
     /**
@@ -106,9 +60,6 @@ public class DgidbDataConverter extends BioDirectoryConverter
      */
     public DgidbDataConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
     /**
@@ -122,26 +73,19 @@ public class DgidbDataConverter extends BioDirectoryConverter
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        ArrayList<String> geneListArray = new ArrayList<String>();
+        GeneFilter geneFilter = GeneFilter.ALL;
         if(!StringUtils.isEmpty(GENE_LIST_FILE)) {
-            geneListArray = processGeneList(GENE_LIST_FILE);
+            geneFilter = processGeneList(GENE_LIST_FILE);
         }
 
-        processDrugs(new FileReader(files.get(DRUGS_TSV_FILE)));
-        processInteractions(new FileReader(files.get(INTERACTIONS_TSV_FILE)), geneListArray);
+        processDrugs(openDataFile(files.get(DRUGS_TSV_FILE)));
+        processInteractions(openDataFile(files.get(INTERACTIONS_TSV_FILE)), geneFilter);
 
     }
 
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
-        }
-        return files;
-    }
-
     private void processDrugs(Reader reader) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseTabDelimitedReader(reader);
+        DelimitedReader rows = DelimitedReader.tsv(reader);
+        Iterator<?> lineIter = rows.iterator();
         // Skip header
         lineIter.next();
         while (lineIter.hasNext()) {
@@ -149,6 +93,7 @@ public class DgidbDataConverter extends BioDirectoryConverter
 
             // Check for missing values in the line
             if(line.length != 4) {
+                getMetrics().skip("wrong number of fields");
                 continue;
             }
 
@@ -158,6 +103,7 @@ public class DgidbDataConverter extends BioDirectoryConverter
 
             // Check for missing values in the line
             if(chemblId.isEmpty()) {
+                getMetrics().skip("empty ChEMBL id");
                 continue;
             }
 
@@ -172,27 +118,32 @@ public class DgidbDataConverter extends BioDirectoryConverter
 
             // Look Chembl API for more information?
         }
+        getMetrics().rowsRead(rows);
     }
 
-    private void processInteractions(Reader reader, ArrayList<String> geneList) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseTabDelimitedReader(reader);
+    private void processInteractions(Reader reader, GeneFilter geneFilter) throws ObjectStoreException, IOException {
+        DelimitedReader rows = DelimitedReader.tsv(reader);
+        Iterator<?> lineIter = rows.iterator();
         // Skip header
         lineIter.next();
         while (lineIter.hasNext()) {
             String[] line = (String[]) lineIter.next();
 
             if(line.length != 10) {
+                getMetrics().skip("wrong number of fields");
                 continue;
             }
 
             String geneSymbol = line[0];
             if(geneSymbol.isEmpty()) {
+                getMetrics().skip("empty gene");
                 continue;
             }
 
-            if(!geneList.isEmpty()) {
-                String resolvedGene = getGeneIdentifier(geneSymbol);
-                if(!geneList.contains(resolvedGene)) {
+            if(!geneFilter.acceptsAll()) {
+                String resolvedGene = getGeneId(geneSymbol);
+                if(!geneFilter.accepts(resolvedGene)) {
+                    getMetrics().skip(resolvedGene == null ? "gene not resolved" : "gene not in list");
                     continue;
                 }
             }
@@ -203,14 +154,13 @@ public class DgidbDataConverter extends BioDirectoryConverter
             String pubmedId = line[9];
 
             if(chemblId.isEmpty()) {
+                getMetrics().skip("empty ChEMBL id");
                 continue;
             }
 
-            if(unresolvableGenes.get(geneSymbol) != null) {
-                continue;
-            }
             String geneId = getGeneId(geneSymbol);
             if(geneId == null) {
+                getMetrics().skip("gene not resolved");
                 continue;
             }
 
@@ -221,6 +171,7 @@ public class DgidbDataConverter extends BioDirectoryConverter
             if(!StringUtils.isEmpty(interactionType)) {
                 interactionItem.setAttribute("type", interactionType);
             } else {
+                getMetrics().skip("empty interaction type");
                 continue;
             }
 
@@ -230,6 +181,7 @@ public class DgidbDataConverter extends BioDirectoryConverter
 
             store(interactionItem);
         }
+        getMetrics().rowsRead(rows);
     }
 
     public String getPublication(String identifier) {
@@ -263,46 +215,4 @@ public class DgidbDataConverter extends BioDirectoryConverter
         }
         return refId;
     }
-
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
-            } else {
-                return resolvedIdentifier;
-            }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
-
-    private String resolveGene(String identifier) {
-        String id = null;
-
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
-            }
-        }
-        return id;
-    }
 }
@@ -11,11 +11,9 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import org.apache.log4j.Logger;
@@ -24,7 +22,6 @@ import org.apache.commons.lang.StringUtils;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -32,7 +29,7 @@ import org.intermine.xml.full.Item;
  * 
  * @author
  */
-public class DisgenetDiseaseAssociationsConverter extends BioDirectoryConverter
+public class DisgenetDiseaseAssociationsConverter extends StormDirectoryConverter
 {
     //
     private static final String DATASET_TITLE = "DisGeNET";
@@ -42,57 +39,14 @@ public class DisgenetDiseaseAssociationsConverter extends BioDirectoryConverter
 
     private static final String DISGENET_FILE = "curated_gene_disease_associations.tsv";
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-    private Map<String, Item> diseases = new HashMap<String, Item>();
+    private ItemIdRegistry diseases = newRegistry("diseases");
 
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(DisgenetDiseaseAssociationsConverter.class);
 
     private String organismIdentifier; // Not the taxon ID. It references the object that is created into the database.
 
     // Methods to integrate the data only for a list of genes
     private static final String GENE_LIST_FILE = "/data/storm/targets/storm_targets_symbols.csv";
-    private ArrayList<String> processGeneList(String geneListFile) throws Exception {
-        File geneListF = new File(geneListFile);
-
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(geneListF));
-        ArrayList<String> geneListArray = new ArrayList<String>();
-
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
-            String gene = line[0];
-            if(StringUtils.isEmpty(gene)) {
-                continue;
-            }
-
-            String resolvedGeneIdentifier = getGeneIdentifier(gene);
-            if(resolvedGeneIdentifier != null) {
-                geneListArray.add(resolvedGeneIdentifier);
-            }
-        }
-
-        return geneListArray;
-    }
-
-    private String getGeneIdentifier(String geneSymbol) throws ObjectStoreException {
-        String resolvedIdentifier = resolveGene(geneSymbol);
-        if (StringUtils.isEmpty(resolvedIdentifier)) {
-            return null;
-        }
-        String geneId = genes.get(resolvedIdentifier);
-        if (geneId == null) {
-            Item gene = createItem("Gene");
-            gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-            //gene.setAttribute("symbol", primaryIdentifier);
-            //gene.setReference("organism", getOrganism(TAXON_ID));
-            store(gene);
-            geneId = gene.getIdentifier();
-            genes.put(resolvedIdentifier, geneId);
-        }
-        return geneId;
-    }
     //
 
     /**
@@ -102,9 +56,6 @@ public class DisgenetDiseaseAssociationsConverter extends BioDirectoryConverter
      */
     public DisgenetDiseaseAssociationsConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
     /*@Override
@@ -123,25 +74,18 @@ public class DisgenetDiseaseAssociationsConverter extends BioDirectoryConverter
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        ArrayList<String> geneListArray = new ArrayList<String>();
+        GeneFilter geneFilter = GeneFilter.ALL;
         if(!StringUtils.isEmpty(GENE_LIST_FILE)) {
-            geneListArray = processGeneList(GENE_LIST_FILE);
+            geneFilter = processGeneList(GENE_LIST_FILE);
         }
 
-        processAssociations(new FileReader(files.get(DISGENET_FILE)), geneListArray);
-
-    }
+        processAssociations(openDataFile(files.get(DISGENET_FILE)), geneFilter);
 
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
-        }
-        return files;
     }
 
-    private void processAssociations(Reader reader, ArrayList<String> geneList) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseTabDelimitedReader(reader);
+    private void processAssociations(Reader reader, GeneFilter geneFilter) throws ObjectStoreException, IOException {
+        DelimitedReader rows = DelimitedReader.tsv(reader);
+        Iterator<?> lineIter = rows.iterator();
         // Skip header
         lineIter.next();
 
@@ -150,8 +94,9 @@ public class DisgenetDiseaseAssociationsConverter extends BioDirectoryConverter
 
             String geneSymbol = line[1];
 
-            String resolvedGene = getGeneIdentifier(geneSymbol);
-            if(!geneList.isEmpty() && !geneList.contains(resolvedGene)) {
+            String resolvedGene = getGeneId(geneSymbol);
+            if(!geneFilter.acceptsAll() && !geneFilter.accepts(resolvedGene)) {
+                getMetrics().skip(resolvedGene == null ? "gene not resolved" : "gene not in list");
                 continue;
             }            
 
@@ -161,30 +106,26 @@ public class DisgenetDiseaseAssociationsConverter extends BioDirectoryConverter
             String score = line[9];
 
             //Item disease = getDisease(diseaseId);
-            Item disease = null;
-
-            if (diseases.get(diseaseId) == null) {
-                    disease = createItem("Disease");
-                    disease.setAttribute("primaryIdentifier", diseaseId);
-                    disease.setAttribute("diseaseId", diseaseId);
-                    disease.setAttribute("name", diseaseName);
-                    disease.setAttribute("diseaseType", diseaseType);
+            String disease = getDisease(diseaseId);
+
+            if (disease == null) {
+                    Item diseaseItem = createItem("Disease");
+                    diseaseItem.setAttribute("primaryIdentifier", diseaseId);
+                    diseaseItem.setAttribute("diseaseId", diseaseId);
+                    diseaseItem.setAttribute("name", diseaseName);
+                    diseaseItem.setAttribute("diseaseType", diseaseType);
                     try {
-                        store(disease);
+                        store(diseaseItem);
                     } catch (ObjectStoreException e) {
                         throw new RuntimeException("failed to store disease with primary identifier: " + diseaseId, e);
                     }
+                    disease = diseaseItem.getIdentifier();
                     diseases.put(diseaseId, disease);
-
-            } else {
-                disease = getDisease(diseaseId);
             }
 
-            if(unresolvableGenes.get(geneSymbol) != null) {
-                continue;
-            }
             String geneId = getGeneId(geneSymbol);
             if(geneId == null) {
+                getMetrics().skip("gene not resolved");
                 continue;
             }
 
@@ -199,52 +140,11 @@ public class DisgenetDiseaseAssociationsConverter extends BioDirectoryConverter
                 throw new RuntimeException("failed to store diseaseassociation with disease identifier: " + diseaseId, e);
             }
         }
+        getMetrics().rowsRead(rows);
     }
 
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
-            } else {
-                return resolvedIdentifier;
-            }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
-
-    private String resolveGene(String identifier) {
-        String id = null;
-
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
-            }
-        }
-        return id;
-    }
-
-    private Item getDisease(String diseaseId) {
-        Item disease = diseases.get(diseaseId);
+    private String getDisease(String diseaseId) {
+        String disease = diseases.get(diseaseId);
         return disease;
     }
 }
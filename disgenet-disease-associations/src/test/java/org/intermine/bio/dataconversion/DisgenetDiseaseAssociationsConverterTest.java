@@ -10,11 +10,13 @@ package org.intermine.bio.dataconversion;
  *
  */
 
-public class DisgenetDiseaseAssociationsConverterTest extends ItemsTestCase
+import java.util.Set;
+
+import org.intermine.xml.full.Item;
+
+public class DisgenetDiseaseAssociationsConverterTest extends StormConverterTestCase
 {
-    Model model = Model.getInstanceByName("genomic");
     DisgenetDiseaseAssociationsConverter converter;
-    MockItemWriter itemWriter;
 
     public DisgenetDiseaseAssociationsConverterTest(String arg) {
         super(arg);
@@ -22,13 +24,16 @@ public class DisgenetDiseaseAssociationsConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        // if you need to do some preprocessing and set up, do that here
+        converter = new DisgenetDiseaseAssociationsConverter(itemWriter, model);
     }
 
     public void testProcess() throws Exception {
-        // read in a test file (place in test/resources so it's on the classpath)
-        // process using your converter
-        // compare results to expected results
-        // look at the other intermine unit tests for help!
+        converter.process(getResource("disgenet-disease-associations"));
+        converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "disgenet-disease-associations-tgt.xml");
+
+        Set<Item> expected = readItemSet("DisgenetDiseaseAssociationsConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }
@@ -11,11 +11,9 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -24,7 +22,6 @@ import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -32,7 +29,7 @@ import org.intermine.xml.full.Item;
  * 
  * @author
  */
-public class OpentargetsCustomIntegratorConverter extends BioDirectoryConverter
+public class OpentargetsCustomIntegratorConverter extends StormDirectoryConverter
 {
     //
     private static final String DATASET_TITLE = "OpenTargets";
@@ -43,44 +40,14 @@ public class OpentargetsCustomIntegratorConverter extends BioDirectoryConverter
     private static final String ASSOCIATIONS_SCORE_FILE = "opentargets_evidence_storm_targets.csv";
     private static final String ASSOCIATIONS_PAPERS_FILE = "opentargets_papers_storm_targets.csv";
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-    private Map<String, Item> diseases = new HashMap<String, Item>();
+    private ItemIdRegistry diseases = newRegistry("diseases");
 
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(OpentargetsCustomIntegratorConverter.class);
 
     private String organismIdentifier; // Not the taxon ID. It references the object that is created into the database.
 
     // Methods to integrate the data only for a list of genes
     private static final String GENE_LIST_FILE = "/data/storm/targets/storm_targets_symbols.csv";
-    private ArrayList<String> processGeneList(String geneListFile) throws Exception {
-        File geneListF = new File(geneListFile);
-
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(geneListF));
-        ArrayList<String> geneListArray = new ArrayList<String>();
-
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
-            String gene = line[0];
-            if(StringUtils.isEmpty(gene)) {
-                continue;
-            }
-            if(unresolvableGenes.get(gene) != null) {
-                continue;
-            }
-            String resolvedGeneIdentifier = getGeneId(gene);
-            if(resolvedGeneIdentifier == null) {
-                continue;
-            }
-            if(resolvedGeneIdentifier != null) {
-                geneListArray.add(resolvedGeneIdentifier);
-            }
-        }
-
-        return geneListArray;
-    }
     //
 
     /**
@@ -90,9 +57,6 @@ public class OpentargetsCustomIntegratorConverter extends BioDirectoryConverter
      */
     public OpentargetsCustomIntegratorConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
     /**
@@ -106,26 +70,19 @@ public class OpentargetsCustomIntegratorConverter extends BioDirectoryConverter
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        ArrayList<String> geneListArray = new ArrayList<String>();
+        GeneFilter geneFilter = GeneFilter.ALL;
         if(!StringUtils.isEmpty(GENE_LIST_FILE)) {
-            geneListArray = processGeneList(GENE_LIST_FILE);
+            geneFilter = processGeneList(GENE_LIST_FILE);
         }
 
-        processAssociationsScores(new FileReader(files.get(ASSOCIATIONS_SCORE_FILE)), geneListArray);
-        processAssociationsPapers(new FileReader(files.get(ASSOCIATIONS_PAPERS_FILE)), geneListArray);
+        processAssociationsScores(openDataFile(files.get(ASSOCIATIONS_SCORE_FILE)), geneFilter);
+        processAssociationsPapers(openDataFile(files.get(ASSOCIATIONS_PAPERS_FILE)), geneFilter);
 
     }
 
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
-        }
-        return files;
-    }
-
-    private void processAssociationsScores(Reader reader, ArrayList<String> geneList) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(reader);
+    private void processAssociationsScores(Reader reader, GeneFilter geneFilter) throws ObjectStoreException, IOException {
+        DelimitedReader rows = DelimitedReader.csv(reader);
+        Iterator<?> lineIter = rows.iterator();
         // Skip header
         lineIter.next();
 
@@ -134,15 +91,10 @@ public class OpentargetsCustomIntegratorConverter extends BioDirectoryConverter
 
             String geneSymbol = line[1];
 
-            if(!geneList.isEmpty()) {
-                if(unresolvableGenes.get(geneSymbol) != null) {
-                    continue;
-                }
+            if(!geneFilter.acceptsAll()) {
                 String resolvedGene = getGeneId(geneSymbol);
-                if(resolvedGene == null) {
-                    continue;
-                }
-                if(!geneList.contains(resolvedGene)) {
+                if(!geneFilter.accepts(resolvedGene)) {
+                    getMetrics().skip(resolvedGene == null ? "gene not resolved" : "gene not in list");
                     continue;
                 }
             }
@@ -163,27 +115,23 @@ public class OpentargetsCustomIntegratorConverter extends BioDirectoryConverter
             String nrReferences = String.valueOf(referencesNumber);
 
             //Item disease = getDisease(diseaseId);
-            Item disease = null;
+            String disease = getDisease(diseaseName);
 
-            if (diseases.get(diseaseName) == null) {
-                disease = createItem("Disease");
-                disease.setAttribute("name", diseaseName);
+            if (disease == null) {
+                Item diseaseItem = createItem("Disease");
+                diseaseItem.setAttribute("name", diseaseName);
                 try {
-                    store(disease);
+                    store(diseaseItem);
                 } catch (ObjectStoreException e) {
                     throw new RuntimeException("failed to store disease with primary identifier: " + diseaseName, e);
                 }
+                disease = diseaseItem.getIdentifier();
                 diseases.put(diseaseName, disease);
-
-            } else {
-                disease = getDisease(diseaseName);
             }
 
-            if(unresolvableGenes.get(geneSymbol) != null) {
-                continue;
-            }
             String geneId = getGeneId(geneSymbol);
             if(geneId == null) {
+                getMetrics().skip("gene not resolved");
                 continue;
             }
 
@@ -206,10 +154,12 @@ public class OpentargetsCustomIntegratorConverter extends BioDirectoryConverter
                 throw new RuntimeException("failed to store diseaseassociation with disease identifier: " + diseaseName, e);
             }
         }
+        getMetrics().rowsRead(rows);
     }
 
-    private void processAssociationsPapers(Reader reader, ArrayList<String> geneList) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(reader);
+    private void processAssociationsPapers(Reader reader, GeneFilter geneFilter) throws ObjectStoreException, IOException {
+        DelimitedReader rows = DelimitedReader.csv(reader);
+        Iterator<?> lineIter = rows.iterator();
         // Skip header
         lineIter.next();
 
@@ -218,18 +168,12 @@ public class OpentargetsCustomIntegratorConverter extends BioDirectoryConverter
 
             String geneSymbol = line[1];
 
-            if(!geneList.isEmpty()) {
-                if(unresolvableGenes.get(geneSymbol) != null) {
-                    continue;
-                }
+            if(!geneFilter.acceptsAll()) {
                 String geneId = getGeneId(geneSymbol);
-                if(geneId == null) {
+                if(!geneFilter.accepts(geneId)) {
+                    getMetrics().skip(geneId == null ? "gene not resolved" : "gene not in list");
                     continue;
                 }
-                if(!geneList.contains(geneId)) {
-                    continue;
-                }
-
             }
 
             String diseaseName = line[2];
@@ -244,31 +188,28 @@ public class OpentargetsCustomIntegratorConverter extends BioDirectoryConverter
             String citedByCount = String.valueOf(citedByCountNumber);
 
             //Item disease = getDisease(diseaseId);
-            Item disease = null;
+            String disease = getDisease(diseaseName);
 
-            if (diseases.get(diseaseName) == null) {
-                disease = createItem("Disease");
-                disease.setAttribute("name", diseaseName);
+            if (disease == null) {
+                Item diseaseItem = createItem("Disease");
+                diseaseItem.setAttribute("name", diseaseName);
                 try {
-                    store(disease);
+                    store(diseaseItem);
                 } catch (ObjectStoreException e) {
                     throw new RuntimeException("failed to store disease with primary identifier: " + diseaseName, e);
                 }
+                disease = diseaseItem.getIdentifier();
                 diseases.put(diseaseName, disease);
-
-            } else {
-                disease = getDisease(diseaseName);
             }
 
-            if(unresolvableGenes.get(geneSymbol) != null) {
-                continue;
-            }
             String geneId = getGeneId(geneSymbol);
             if(geneId == null) {
+                getMetrics().skip("gene not resolved");
                 continue;
             }
 
             if (StringUtils.isEmpty(pmid) || StringUtils.isEmpty(url) || StringUtils.isEmpty(doi) || StringUtils.isEmpty(authorString) || StringUtils.isEmpty(journalTitle) || StringUtils.isEmpty(pubYear) || StringUtils.isEmpty(title) || StringUtils.isEmpty(citedByCount)) {
+                getMetrics().skip("incomplete publication");
                 continue;
             }
 
@@ -290,52 +231,11 @@ public class OpentargetsCustomIntegratorConverter extends BioDirectoryConverter
                 throw new RuntimeException("failed to store diseaseassociation with disease identifier: " + diseaseName, e);
             }
         }
+        getMetrics().rowsRead(rows);
     }
 
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
-            } else {
-                return resolvedIdentifier;
-            }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
-
-    private String resolveGene(String identifier) {
-        String id = null;
-
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
-            }
-        }
-        return id;
-    }
-
-    private Item getDisease(String diseaseId) {
-        Item disease = diseases.get(diseaseId);
+    private String getDisease(String diseaseId) {
+        String disease = diseases.get(diseaseId);
         return disease;
     }
 }
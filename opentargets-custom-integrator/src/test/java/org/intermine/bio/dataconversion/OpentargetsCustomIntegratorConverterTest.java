@@ -10,11 +10,13 @@ package org.intermine.bio.dataconversion;
  *
  */
 
-public class OpentargetsCustomIntegratorConverterTest extends ItemsTestCase
+import java.util.Set;
+
+import org.intermine.xml.full.Item;
+
+public class OpentargetsCustomIntegratorConverterTest extends StormConverterTestCase
 {
-    Model model = Model.getInstanceByName("genomic");
     OpentargetsCustomIntegratorConverter converter;
-    MockItemWriter itemWriter;
 
     public OpentargetsCustomIntegratorConverterTest(String arg) {
         super(arg);
@@ -22,13 +24,16 @@ public class OpentargetsCustomIntegratorConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        // if you need to do some preprocessing and set up, do that here
+        converter = new OpentargetsCustomIntegratorConverter(itemWriter, model);
     }
 
     public void testProcess() throws Exception {
-        // read in a test file (place in test/resources so it's on the classpath)
-        // process using your converter
-        // compare results to expected results
-        // look at the other intermine unit tests for help!
+        converter.process(getResource("opentargets-custom-integrator"));
+        converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "opentargets-custom-integrator-tgt.xml");
+
+        Set<Item> expected = readItemSet("OpentargetsCustomIntegratorConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }
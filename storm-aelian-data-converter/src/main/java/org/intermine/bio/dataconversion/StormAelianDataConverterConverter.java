@@ -1,7 +1,6 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -14,7 +13,6 @@ import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -22,7 +20,7 @@ import org.intermine.xml.full.Item;
  * 
  * @author
  */
-public class StormAelianDataConverterConverter extends BioDirectoryConverter
+public class StormAelianDataConverterConverter extends StormDirectoryConverter
 {
     private static final String DATASET_TITLE = "StormAelianData";
     private static final String DATA_SOURCE_NAME = "StormAelianData";
@@ -31,11 +29,6 @@ public class StormAelianDataConverterConverter extends BioDirectoryConverter
 
     private static final String CSV_FILE = "WTA_markers_after_guide_enrichment_no_threshold.csv";
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(StormAelianDataConverterConverter.class);
 
     private String organismIdentifier; // Not the taxon ID. It references the object that is created into the database.
@@ -43,9 +36,6 @@ public class StormAelianDataConverterConverter extends BioDirectoryConverter
 
     public StormAelianDataConverterConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
     public void process(File dataDir) throws Exception {
@@ -53,19 +43,12 @@ public class StormAelianDataConverterConverter extends BioDirectoryConverter
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        processData(new FileReader(files.get(CSV_FILE)));
-    }
-
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
-        }
-        return files;
+        processData(openDataFile(files.get(CSV_FILE)));
     }
 
     private void processData(Reader reader) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(reader);
+        DelimitedReader rows = DelimitedReader.csv(reader);
+        Iterator<?> lineIter = rows.iterator();
 
         // header
         String[] firstLine = (String[]) lineIter.next();
@@ -84,6 +67,7 @@ public class StormAelianDataConverterConverter extends BioDirectoryConverter
 
                 String markerId = getGeneId(marker);
                 if(markerId == null) {
+                    getMetrics().skip("marker gene not resolved");
                     continue;
                 }
 
@@ -92,23 +76,27 @@ public class StormAelianDataConverterConverter extends BioDirectoryConverter
                 if(!p_val.isEmpty()) {
                     integratedItem.setAttribute("p_val", p_val);
                 } else {
+                    getMetrics().skip("empty p_val");
                     continue;
                 }
 
                 if(!avg_log2FC.isEmpty()) {
                     integratedItem.setAttribute("avg_log2FC", avg_log2FC);
                 } else {
+                    getMetrics().skip("empty avg_log2FC");
                     continue;
                 }
 
                 if(!p_val_adj.isEmpty()) {
                     integratedItem.setAttribute("p_val_adj", p_val_adj);
                 } else {
+                    getMetrics().skip("empty p_val_adj");
                     continue;
                 }
 
                 String identId = getGeneId(ident);
                 if(identId == null) {
+                    getMetrics().skip("ident gene not resolved");
                     continue;
                 }
 
@@ -118,64 +106,6 @@ public class StormAelianDataConverterConverter extends BioDirectoryConverter
                 
             }
         }
-    }
-
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
-            } else {
-                return resolvedIdentifier;
-            }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
-
-    private String resolveGene(String identifier) {
-        String id = null;
-
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
-            }
-        }
-        return id;
-    }
-
-    private boolean isDouble(String str) {
-        try {
-            // check if it can be parsed as any double
-            double x = Double.parseDouble(str);
-            // check if the double can be converted without loss to an int
-            if (x == (int) x)
-                // if yes, this is an int, thus return false
-                return false;
-            // otherwise, this cannot be converted to an int (e.g. "1.2")
-            return true;
-            // short version: return x != (int) x;
-        }
-        catch(NumberFormatException e) {
-            return false;
-        }
+        getMetrics().rowsRead(rows);
     }
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.util.HashMap;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.model.fulldata.Item;
+
+/**
+ * A converter without data of its own, to measure the StormDirectoryConverter methods the
+ * converters call for each row or value.
+ *
+ * @author
+ */
+public class BenchmarkConverter extends StormDirectoryConverter
+{
+    private static Model model;
+
+    /**
+     * Constructor
+     * @param writer the writer the items are stored with
+     * @param model the model of the items
+     */
+    public BenchmarkConverter(ItemWriter writer, Model model) {
+        super(writer, model, "Benchmark", "Benchmark data set");
+    }
+
+    /**
+     * A converter with the model of depmap-cnv that keeps its items in memory.
+     * @return the converter
+     * @throws Exception if the model can't be loaded
+     */
+    public static synchronized BenchmarkConverter create() throws Exception {
+        if (model == null) {
+            model = new ConverterRunner("depmap-cnv").getModel();
+        }
+        return new BenchmarkConverter(new MockItemWriter(new HashMap<String, Item>()), model);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void process(File dataDir) throws Exception {
+        // nothing to read
+    }
+}
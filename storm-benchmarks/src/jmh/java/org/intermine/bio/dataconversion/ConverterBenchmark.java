@@ -0,0 +1,116 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.model.fulldata.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Each source end to end: process() and close() of its converter on the SyntheticData of
+ * the given size, storing into a MockItemWriter, with the target gene list.  The time is per
+ * run; each run is timed on its own since a run is long and its items have to be dropped
+ * before the next.
+ *
+ * @author
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ConverterBenchmark
+{
+    /** The source, see SyntheticData.SOURCES */
+    @Param({"depmap-achilles-gene-effect", "depmap-ccle-mutations", "depmap-cnv",
+        "depmap-demeter2-dependency", "depmap-expression", "depmap-proteomics",
+        "depmap-sample-info", "depmap-sanger-crispr", "dgidb-data",
+        "disgenet-disease-associations", "opentargets-custom-integrator",
+        "storm-aelian-data-converter", "storm-nanopore-data", "storm-rnaseq-data",
+        "storm-targets-analyses", "storm-targets-correlations", "storm-targets-metadata",
+        "tcga-rnaseq-expression", "tcga-sample-metadata", "tcga-somatic-mutation"})
+    public String source;
+
+    /** Number of genes */
+    @Param({"2000"})
+    public int genes;
+
+    /** Number of cell lines and TCGA samples */
+    @Param({"200"})
+    public int samples;
+
+    private File root;
+    private File dataDir;
+    private ConverterRunner runner;
+
+    /**
+     * Write the data of the source.
+     * @throws Exception if the data can't be written or the converter loaded
+     */
+    @Setup
+    public void setUp() throws Exception {
+        SyntheticData synthetic = new SyntheticData(42, genes, samples);
+        root = Files.createTempDirectory("converter").toFile();
+        synthetic.writeGeneList(root);
+        synthetic.writeTranscriptMapping(root);
+        dataDir = synthetic.write(source, root);
+        synthetic.use(root);
+        runner = new ConverterRunner(source);
+    }
+
+    /**
+     * Delete the data.
+     */
+    @TearDown
+    public void tearDown() {
+        delete(root);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * @return the number of items stored
+     * @throws Exception if the conversion fails
+     */
+    @Benchmark
+    public int convert() throws Exception {
+        Map<String, Item> items = new HashMap<String, Item>();
+        runner.run(dataDir, new MockItemWriter(items));
+        return items.size();
+    }
+}
@@ -0,0 +1,196 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.intermine.objectstore.ObjectStoreException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The paths of a gene symbol through GeneResolutionCache.resolve() and
+ * StormDirectoryConverter.getGeneId(), with the resolutions of SyntheticData in an
+ * IdResolverSnapshot:
+ * <ul>
+ * <li>resolveHit: a symbol the cache has resolved before</li>
+ * <li>resolveMiss: a symbol the cache knows doesn't resolve</li>
+ * <li>resolveFirstSeen: a symbol looked up in the snapshot, with a new cache each time</li>
+ * <li>getGeneIdHit: a gene the converter has stored already</li>
+ * <li>getGeneIdFirstSeen: a gene the converter stores, with a new converter each time</li>
+ * </ul>
+ * The time is per symbol.
+ *
+ * @author
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneResolutionBenchmark
+{
+    static final int SYMBOLS = 4096;
+
+    private static final String TAXON_ID = StormDirectoryConverter.HUMAN_TAXON_ID;
+
+    private File dir;
+    private IdResolverSnapshot snapshot;
+    private GeneResolutionCache cache;
+    private BenchmarkConverter converter;
+    private final String[] symbols = new String[SYMBOLS];
+    private final String[] unresolvable = new String[SYMBOLS];
+
+    /**
+     * Write the snapshot and warm the cache and the converter.
+     * @throws Exception if the snapshot or the model can't be loaded
+     */
+    @Setup
+    public void setUp() throws Exception {
+        SyntheticData synthetic = new SyntheticData(42, 20000, 1);
+        dir = Files.createTempDirectory("resolver").toFile();
+        snapshot = ConverterRunner.useResolutions(synthetic.getResolutions(), dir);
+        cache = new GeneResolutionCache(TAXON_ID, snapshot);
+        converter = BenchmarkConverter.create();
+        for (int i = 0, gene = 0; i < SYMBOLS; gene++) {
+            if (synthetic.isResolvable(gene)) {
+                symbols[i++] = synthetic.getSymbol(gene);
+            }
+        }
+        for (int i = 0; i < SYMBOLS; i++) {
+            unresolvable[i] = "NOTAGENE" + i;
+            cache.resolve(symbols[i]);
+            cache.resolve(unresolvable[i]);
+            converter.getGeneId(symbols[i]);
+        }
+    }
+
+    /**
+     * Delete the snapshot.
+     */
+    @TearDown
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * @param blackhole consumes the identifiers
+     */
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public void resolveHit(Blackhole blackhole) {
+        for (String symbol : symbols) {
+            blackhole.consume(cache.resolve(symbol));
+        }
+    }
+
+    /**
+     * @param blackhole consumes the identifiers
+     */
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public void resolveMiss(Blackhole blackhole) {
+        for (String symbol : unresolvable) {
+            blackhole.consume(cache.resolve(symbol));
+        }
+    }
+
+    /**
+     * @param fresh a cache that hasn't resolved any symbol
+     * @param blackhole consumes the identifiers
+     */
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public void resolveFirstSeen(FreshCache fresh, Blackhole blackhole) {
+        for (String symbol : symbols) {
+            blackhole.consume(fresh.cache.resolve(symbol));
+        }
+    }
+
+    /**
+     * @param blackhole consumes the identifiers
+     * @throws ObjectStoreException never, the genes are stored already
+     */
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public void getGeneIdHit(Blackhole blackhole) throws ObjectStoreException {
+        for (String symbol : symbols) {
+            blackhole.consume(converter.getGeneId(symbol));
+        }
+    }
+
+    /**
+     * @param fresh a converter that hasn't stored any gene
+     * @param blackhole consumes the identifiers
+     * @throws ObjectStoreException if a gene can't be stored
+     */
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public void getGeneIdFirstSeen(FreshConverter fresh, Blackhole blackhole)
+        throws ObjectStoreException {
+        for (String symbol : symbols) {
+            blackhole.consume(fresh.converter.getGeneId(symbol));
+        }
+    }
+
+    /**
+     * A new cache over the snapshot for each invocation.
+     */
+    @State(Scope.Thread)
+    public static class FreshCache
+    {
+        GeneResolutionCache cache;
+
+        /**
+         * @param benchmark the benchmark with the snapshot
+         */
+        @Setup(Level.Invocation)
+        public void setUp(GeneResolutionBenchmark benchmark) {
+            cache = new GeneResolutionCache(TAXON_ID, benchmark.snapshot);
+        }
+    }
+
+    /**
+     * A new converter for each invocation, resolving with the shared cache.
+     */
+    @State(Scope.Thread)
+    public static class FreshConverter
+    {
+        BenchmarkConverter converter;
+
+        /**
+         * @throws Exception if the model can't be loaded
+         */
+        @Setup(Level.Invocation)
+        public void setUp() throws Exception {
+            converter = BenchmarkConverter.create();
+        }
+    }
+}
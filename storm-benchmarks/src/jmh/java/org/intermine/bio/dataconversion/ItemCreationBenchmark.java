@@ -0,0 +1,81 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.intermine.xml.full.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The items made for each value of the matrices: createItem() alone and with the
+ * references and the attribute that DepmapCnvConverter sets on a DepMapCopyNumber, with the
+ * model of depmap-cnv.  The items are not stored.
+ *
+ * @author
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemCreationBenchmark
+{
+    private BenchmarkConverter converter;
+    private String[] values;
+    private int next;
+
+    /**
+     * Create the converter.
+     * @throws Exception if the model can't be loaded
+     */
+    @Setup
+    public void setUp() throws Exception {
+        converter = BenchmarkConverter.create();
+        values = new String[1024];
+        Random random = new Random(42);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = SyntheticData.decimal(1 + random.nextGaussian() / 3, 6);
+        }
+    }
+
+    /**
+     * @return the item
+     */
+    @Benchmark
+    public Item createItem() {
+        return converter.createItem("DepMapCopyNumber");
+    }
+
+    /**
+     * @return the item
+     */
+    @Benchmark
+    public Item createItemWithValues() {
+        Item item = converter.createItem("DepMapCopyNumber");
+        item.setReference("cellLine", "2_1");
+        item.setReference("gene", "1_1");
+        item.setAttribute("DepmapCnvValue", values[next++ & (values.length - 1)]);
+        return item;
+    }
+}
@@ -0,0 +1,186 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The isDouble() check the converters made on every value of the matrices, which parsed the
+ * value with Double.parseDouble() and caught the NumberFormatException of NA and empty
+ * values, against NumericField, which replaced it.  The values are a random sample of the
+ * values of a DepMap matrix, e.g.
+ * <pre>./gradlew :storm-benchmarks:jmh -Pjmh.include=NumericField \
+ *     -Pjmh.params=matrix=/data/depmap/CCLE_expression.csv</pre>
+ * or, without a matrix, of the CCLE_expression.csv of SyntheticData.  The time is per value.
+ *
+ * @author
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(5)
+public class NumericFieldBenchmark
+{
+    private static final int VALUES = 4096;
+    // the rows of the matrix the values are sampled from
+    private static final int ROWS = 100;
+
+    /** A DepMap matrix, cell lines by genes with the cell line in the first column */
+    @Param({""})
+    public String matrix;
+
+    private final String[] values = new String[VALUES];
+    private final NumericField numericField = new NumericField();
+    private File root;
+
+    /**
+     * Sample the values of the first rows of the matrix.
+     * @throws IOException if the matrix can't be read or written
+     */
+    @Setup
+    public void setUp() throws IOException {
+        File file;
+        if (matrix.isEmpty()) {
+            root = Files.createTempDirectory("numeric").toFile();
+            file = new File(new SyntheticData(42, 2000, ROWS).write("depmap-expression", root),
+                    "CCLE_expression.csv");
+        } else {
+            file = new File(matrix);
+        }
+        Random random = new Random(42);
+        long seen = 0;
+        DelimitedReader rows = DelimitedReader.csv(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            rows.readHeader();
+            for (int row = 0; row < ROWS && rows.next(); row++) {
+                for (int i = 1; i < rows.getFieldCount(); i++) {
+                    // reservoir sampling
+                    long slot = seen < VALUES ? seen : (long) (random.nextDouble() * (seen + 1));
+                    if (slot < VALUES) {
+                        values[(int) slot] = rows.getString(i);
+                    }
+                    seen++;
+                }
+            }
+        } finally {
+            rows.close();
+        }
+        if (seen < VALUES) {
+            throw new IllegalArgumentException(file + " has only " + seen + " values");
+        }
+    }
+
+    /**
+     * Delete the synthetic matrix.
+     */
+    @TearDown
+    public void tearDown() {
+        if (root != null) {
+            delete(root);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * @return the number of non-integral values
+     */
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public int isDouble() {
+        int n = 0;
+        for (String value : values) {
+            if (isDouble(value)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of non-integral values
+     */
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public int isNonIntegral() {
+        int n = 0;
+        for (String value : values) {
+            if (numericField.isNonIntegral(value)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of numbers
+     */
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public int isNumber() {
+        int n = 0;
+        for (String value : values) {
+            if (NumericField.isNumber(value)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    // the check of the converters before NumericField
+    private static boolean isDouble(String str) {
+        try {
+            // check if it can be parsed as any double
+            double x = Double.parseDouble(str);
+            // check if the double can be converted without loss to an int
+            if (x == (int) x) {
+                // if yes, this is an int, thus return false
+                return false;
+            }
+            // otherwise, this cannot be converted to an int (e.g. "1.2")
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.intermine.util.FormattedTextParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing a whole matrix from memory, as CCLE_gene_cn.csv (csv) or the TCGA expression matrix
+ * (tsv) of SyntheticData: FormattedTextParser, which the converters used, against
+ * DelimitedReader row by row, field by field and with only the columns of the target genes
+ * selected, as the DepMap converters read them.  The time is per matrix of "samples" rows.
+ *
+ * @author
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowParsingBenchmark
+{
+    /** csv or tsv */
+    @Param({"csv", "tsv"})
+    public String format;
+
+    /** Number of gene columns */
+    @Param({"2000"})
+    public int genes;
+
+    /** Number of rows */
+    @Param({"200"})
+    public int samples;
+
+    private String data;
+    private boolean[] targets;
+
+    /**
+     * Generate the matrix.
+     * @throws IOException if it can't be written or read
+     */
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticData synthetic = new SyntheticData(42, genes, samples);
+        File root = Files.createTempDirectory("rows").toFile();
+        File dir = synthetic.write("csv".equals(format) ? "depmap-cnv" : "tcga-rnaseq-expression",
+                root);
+        File file = dir.listFiles()[0];
+        data = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        file.delete();
+        dir.delete();
+        root.delete();
+        targets = new boolean[genes + 1];
+        for (int i = 0; i < genes; i++) {
+            targets[i + 1] = synthetic.isTarget(i);
+        }
+    }
+
+    private Reader reader() {
+        return new StringReader(data);
+    }
+
+    private DelimitedReader delimitedReader() {
+        return "csv".equals(format) ? DelimitedReader.csv(reader()) : DelimitedReader.tsv(reader());
+    }
+
+    /**
+     * @param blackhole consumes the rows
+     * @throws IOException never
+     */
+    @Benchmark
+    public void formattedTextParser(Blackhole blackhole) throws IOException {
+        Iterator<?> lines = "csv".equals(format)
+            ? FormattedTextParser.parseCsvDelimitedReader(reader())
+            : FormattedTextParser.parseTabDelimitedReader(reader());
+        while (lines.hasNext()) {
+            blackhole.consume(lines.next());
+        }
+    }
+
+    /**
+     * @param blackhole consumes the rows
+     * @throws IOException never
+     */
+    @Benchmark
+    public void delimitedReaderIterator(Blackhole blackhole) throws IOException {
+        Iterator<String[]> lines = delimitedReader().iterator();
+        while (lines.hasNext()) {
+            blackhole.consume(lines.next());
+        }
+    }
+
+    /**
+     * @param blackhole consumes the fields
+     * @throws IOException never
+     */
+    @Benchmark
+    public void delimitedReaderFields(Blackhole blackhole) throws IOException {
+        DelimitedReader rows = delimitedReader();
+        while (rows.next()) {
+            for (int i = 0, n = rows.getFieldCount(); i < n; i++) {
+                blackhole.consume(rows.getField(i));
+            }
+        }
+    }
+
+    /**
+     * @param blackhole consumes the fields of the target genes
+     * @throws IOException never
+     */
+    @Benchmark
+    public void delimitedReaderSelected(Blackhole blackhole) throws IOException {
+        DelimitedReader rows = delimitedReader();
+        rows.readHeader();
+        rows.selectColumns(targets);
+        while (rows.next()) {
+            blackhole.consume(rows.getString(0));
+            for (int i = 1, n = rows.getFieldCount(); i < n; i++) {
+                if (targets[i]) {
+                    blackhole.consume(rows.getString(i));
+                }
+            }
+        }
+    }
+}
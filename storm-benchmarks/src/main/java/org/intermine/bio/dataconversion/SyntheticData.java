@@ -0,0 +1,1131 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Made-up input files for the bio-sources, with the file names, columns and formats of the
+ * real downloads, so that the converters can be run end to end without the data.  The same
+ * seed and sizes always give the same files, and each source's files are the same whichever
+ * other sources are written.
+ *
+ * The genes are SYN1, SYN2, ... with Entrez ids from 100001 and Ensembl ids
+ * ENSG00000100001, ...; every 50th gene is missing from getResolutions() so that some
+ * symbols don't resolve, and every 10th gene is in the target gene list.  The cell lines
+ * are ACH-000001, ... (CCLE names CL1_LUNG, ...) and the TCGA samples TCGA-S1-0001-01, ....
+ * About one value in a hundred is missing.
+ *
+ * The files can be written from the command line, see main(), or with
+ * <pre>./gradlew :storm-benchmarks:generateSyntheticData -Psynthetic.dir=... \
+ *     [-Psynthetic.scale=small|medium|production] [-Psynthetic.seed=...]</pre>
+ *
+ * @author
+ */
+public class SyntheticData
+{
+    /** The sources there is data for, by the name of their directory */
+    public static final List<String> SOURCES = Collections.unmodifiableList(Arrays.asList(
+            "depmap-achilles-gene-effect", "depmap-ccle-mutations", "depmap-cnv",
+            "depmap-demeter2-dependency", "depmap-expression", "depmap-proteomics",
+            "depmap-sample-info", "depmap-sanger-crispr", "dgidb-data",
+            "disgenet-disease-associations", "opentargets-custom-integrator",
+            "storm-aelian-data-converter", "storm-nanopore-data", "storm-rnaseq-data",
+            "storm-targets-analyses", "storm-targets-correlations", "storm-targets-metadata",
+            "tcga-rnaseq-expression", "tcga-sample-metadata", "tcga-somatic-mutation"));
+
+    /** The target gene list, written next to the source directories */
+    public static final String GENE_LIST_FILE = "storm_targets_symbols.csv";
+
+    /** The transcript to RefSeq mapping of storm-nanopore-data, next to the directories */
+    public static final String TRANSCRIPT_MAPPING_FILE = "transcripts_biomart_conversion.csv";
+
+    private static final String[] LINEAGES = {"lung", "breast", "skin", "blood", "colorectal",
+        "ovary", "kidney", "liver", "pancreas", "central_nervous_system"};
+    private static final String[] PROJECTS = {"LUAD", "BRCA", "SKCM", "LAML", "COAD", "OV",
+        "KIRC", "LIHC", "PAAD", "GBM"};
+    private static final String[] VARIANT_CLASSES = {"Missense_Mutation", "Silent",
+        "Nonsense_Mutation", "Frame_Shift_Del", "Splice_Site", "In_Frame_Del", "3'UTR"};
+    private static final String[] INTERACTION_TYPES = {"inhibitor", "antagonist", "agonist",
+        "blocker", "", "modulator"};
+    private static final String[] TARGET_TYPES = {"MT", "DM", "RD", "HA", "PS"};
+    private static final String[] TARGET_TYPE_NAMES = {"Methyltransferase", "Demethylase",
+        "Reader", "Helicase", "Pseudouridine synthase"};
+    private static final long[] SCALES = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    /** The preset scales: name, genes, samples */
+    private static final Object[][] PRESETS = {
+        {"small", 1000, 100},
+        {"medium", 5000, 500},
+        // the DepMap matrices of a release: ~18000 genes by ~1800 cell lines
+        {"production", 18000, 1800},
+    };
+
+    private final long seed;
+    private final int genes;
+    private final int samples;
+
+    /**
+     * Constructor
+     * @param seed the seed of the random values
+     * @param genes the number of genes, the rows or columns of the matrices
+     * @param samples the number of cell lines and of TCGA samples
+     */
+    public SyntheticData(long seed, int genes, int samples) {
+        if (genes < 10 || samples < 1) {
+            throw new IllegalArgumentException("at least 10 genes and 1 sample needed, got "
+                    + genes + " and " + samples);
+        }
+        this.seed = seed;
+        this.genes = genes;
+        this.samples = samples;
+    }
+
+    /**
+     * @param scale the name of a preset scale: small, medium or production
+     * @param seed the seed of the random values
+     * @return the data of that scale
+     */
+    public static SyntheticData forScale(String scale, long seed) {
+        for (Object[] preset : PRESETS) {
+            if (preset[0].equals(scale)) {
+                return new SyntheticData(seed, (Integer) preset[1], (Integer) preset[2]);
+            }
+        }
+        throw new IllegalArgumentException("unknown scale: " + scale
+                + ", expected small, medium or production");
+    }
+
+    /**
+     * @return the number of genes
+     */
+    public int getGenes() {
+        return genes;
+    }
+
+    /**
+     * @return the number of cell lines and of TCGA samples
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * @param gene the gene, from 0
+     * @return its symbol
+     */
+    public String getSymbol(int gene) {
+        return "SYN" + (gene + 1);
+    }
+
+    /**
+     * @param gene the gene, from 0
+     * @return its Entrez id, the primary identifier it resolves to
+     */
+    public String getEntrezId(int gene) {
+        return Integer.toString(100001 + gene);
+    }
+
+    /**
+     * @param gene the gene, from 0
+     * @return its Ensembl id
+     */
+    public String getEnsemblId(int gene) {
+        return String.format(Locale.ROOT, "ENSG%011d", 100001 + gene);
+    }
+
+    /**
+     * @param gene the gene, from 0
+     * @return true if the symbol and Ensembl id of the gene are in getResolutions()
+     */
+    public boolean isResolvable(int gene) {
+        return gene % 50 != 49;
+    }
+
+    /**
+     * @param gene the gene, from 0
+     * @return true if the gene is in the target gene list
+     */
+    public boolean isTarget(int gene) {
+        return gene % 10 == 0;
+    }
+
+    /**
+     * @param sample the cell line, from 0
+     * @return its DepMap id
+     */
+    public String getDepMapId(int sample) {
+        return String.format(Locale.ROOT, "ACH-%06d", sample + 1);
+    }
+
+    /**
+     * @param sample the cell line, from 0
+     * @return its CCLE name
+     */
+    public String getCcleName(int sample) {
+        return "CL" + (sample + 1) + "_" + LINEAGES[sample % LINEAGES.length]
+            .toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * @param sample the TCGA sample, from 0
+     * @return its barcode
+     */
+    public String getTcgaBarcode(int sample) {
+        return String.format(Locale.ROOT, "TCGA-S%d-%04d-01", sample % 9 + 1, sample + 1);
+    }
+
+    /**
+     * The symbols and Ensembl ids of the resolvable genes, for an IdResolverSnapshot.
+     * @return identifier to Entrez id
+     */
+    public Map<String, String> getResolutions() {
+        Map<String, String> resolutions = new HashMap<String, String>();
+        for (int i = 0; i < genes; i++) {
+            if (isResolvable(i)) {
+                resolutions.put(getSymbol(i), getEntrezId(i));
+                resolutions.put(getEnsemblId(i), getEntrezId(i));
+            }
+        }
+        return resolutions;
+    }
+
+    /**
+     * Run the converters created from now on against this data: its resolutions, its target
+     * gene list and its transcript mapping, see ConverterRunner.
+     * @param root the directory the data was written into with writeAll()
+     * @throws IOException if the resolutions can't be written
+     */
+    public void use(File root) throws IOException {
+        ConverterRunner.useResolutions(getResolutions(), root);
+        System.setProperty(SourceConfig.GENE_LIST, new File(root, GENE_LIST_FILE).getPath());
+        System.setProperty(ConverterRunner.TRANSCRIPT_MAPPING,
+                new File(root, TRANSCRIPT_MAPPING_FILE).getPath());
+    }
+
+    /**
+     * Write the data of all sources, the target gene list and the transcript mapping.
+     * @param root the directory to write into, one directory per source
+     * @throws IOException if a file can't be written
+     */
+    public void writeAll(File root) throws IOException {
+        writeGeneList(root);
+        writeTranscriptMapping(root);
+        for (String source : SOURCES) {
+            write(source, root);
+        }
+    }
+
+    /**
+     * Write the data of one source.
+     * @param source the name of the source, one of SOURCES
+     * @param root the directory to write the source's directory into
+     * @return the data directory of the source
+     * @throws IOException if a file can't be written
+     */
+    public File write(String source, File root) throws IOException {
+        File dir = mkdirs(new File(root, source));
+        Random random = new Random(seed * 31 + source.hashCode());
+        if ("depmap-achilles-gene-effect".equals(source)) {
+            writeCellLineMatrix(new File(dir, "Achilles_gene_effect.csv"), random, -0.2, 0.4,
+                    "NA");
+        } else if ("depmap-ccle-mutations".equals(source)) {
+            writeCcleMutations(new File(dir, "CCLE_mutations.csv"), random);
+        } else if ("depmap-cnv".equals(source)) {
+            writeCellLineMatrix(new File(dir, "CCLE_gene_cn.csv"), random, 1.0, 0.3, "");
+        } else if ("depmap-demeter2-dependency".equals(source)) {
+            writeDemeter2(new File(dir, "D2_combined_gene_dep_scores.csv"), random);
+        } else if ("depmap-expression".equals(source)) {
+            writeCellLineMatrix(new File(dir, "CCLE_expression.csv"), random, 3.0, 2.5, "");
+        } else if ("depmap-proteomics".equals(source)) {
+            writeProteomics(new File(dir, "protein_quant_current_normalized.csv"), random);
+        } else if ("depmap-sample-info".equals(source)) {
+            writeSampleInfo(new File(dir, "sample_info.csv"), random);
+        } else if ("depmap-sanger-crispr".equals(source)) {
+            writeCellLineMatrix(new File(dir, "gene_effect.csv"), random, -0.2, 0.4, "");
+        } else if ("dgidb-data".equals(source)) {
+            writeDgidb(dir, random);
+        } else if ("disgenet-disease-associations".equals(source)) {
+            writeDisgenet(new File(dir, "curated_gene_disease_associations.tsv"), random);
+        } else if ("opentargets-custom-integrator".equals(source)) {
+            writeOpenTargets(dir, random);
+        } else if ("storm-aelian-data-converter".equals(source)) {
+            writeAelianMarkers(new File(dir, "WTA_markers_after_guide_enrichment_no_threshold.csv"),
+                    random);
+        } else if ("storm-nanopore-data".equals(source)) {
+            writeExperiments(dir, random, true);
+        } else if ("storm-rnaseq-data".equals(source)) {
+            writeExperiments(dir, random, false);
+        } else if ("storm-targets-analyses".equals(source)) {
+            writeTargetsAnalyses(new File(dir, "DepMap_RME_results_with_outliers.csv"), random);
+        } else if ("storm-targets-correlations".equals(source)) {
+            writeCorrelations(dir, random);
+        } else if ("storm-targets-metadata".equals(source)) {
+            writeTargetsMetadata(dir, random);
+        } else if ("tcga-rnaseq-expression".equals(source)) {
+            writeTcgaMatrix(new File(dir, "EB++AdjustPANCAN_IlluminaHiSeq_RNASeqV2.geneExp.xena"),
+                    random, false);
+        } else if ("tcga-sample-metadata".equals(source)) {
+            writeTcgaPhenotypes(new File(dir, "TCGA_phenotype_denseDataOnlyDownload.tsv"), random);
+        } else if ("tcga-somatic-mutation".equals(source)) {
+            writeTcgaMatrix(new File(dir, "mc3.v0.2.8.PUBLIC.nonsilentGene.xena"), random, true);
+        } else {
+            throw new IllegalArgumentException("no synthetic data for source: " + source);
+        }
+        return dir;
+    }
+
+    /**
+     * Write the target gene list, a symbol per line without a header.
+     * @param root the directory to write into
+     * @return the file
+     * @throws IOException if the file can't be written
+     */
+    public File writeGeneList(File root) throws IOException {
+        File file = new File(mkdirs(root), GENE_LIST_FILE);
+        Table table = new Table(file, ',');
+        try {
+            for (int i = 0; i < genes; i++) {
+                if (isTarget(i)) {
+                    table.add(getSymbol(i)).end();
+                }
+            }
+        } finally {
+            table.close();
+        }
+        return file;
+    }
+
+    /**
+     * Write the transcript to RefSeq mapping read by storm-nanopore-data.
+     * @param root the directory to write into
+     * @return the file
+     * @throws IOException if the file can't be written
+     */
+    public File writeTranscriptMapping(File root) throws IOException {
+        File file = new File(mkdirs(root), TRANSCRIPT_MAPPING_FILE);
+        Table table = new Table(file, ',');
+        try {
+            table.row("Gene stable ID", "Transcript stable ID", "RefSeq match transcript",
+                    "Gene name", "Transcript name");
+            for (int i = 0; i < genes; i++) {
+                for (int t = 0; t < transcriptCount(i); t++) {
+                    table.row(getEnsemblId(i), getTranscriptId(i, t),
+                            t == 0 ? String.format(Locale.ROOT, "NM_%06d.%d", i + 1, i % 3 + 1)
+                                : "", getSymbol(i), getTranscriptName(i, t));
+                }
+            }
+        } finally {
+            table.close();
+        }
+        return file;
+    }
+
+    // cell lines by row, genes "SYMBOL (ENTREZ)" by column
+    private void writeCellLineMatrix(File file, Random random, double mean, double sd,
+            String missing) throws IOException {
+        Table table = new Table(file, ',');
+        try {
+            table.add("");
+            for (int i = 0; i < genes; i++) {
+                table.add(getSymbol(i) + " (" + getEntrezId(i) + ")");
+            }
+            table.end();
+            for (int s = 0; s < samples; s++) {
+                table.add(getDepMapId(s));
+                for (int i = 0; i < genes; i++) {
+                    table.add(random.nextInt(100) == 0 ? missing
+                            : decimal(mean + sd * random.nextGaussian(), 6));
+                }
+                table.end();
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    // genes by row, quoted CCLE names by column
+    private void writeDemeter2(File file, Random random) throws IOException {
+        Table table = new Table(file, ',');
+        try {
+            table.add("");
+            for (int s = 0; s < samples; s++) {
+                table.add(quote(getCcleName(s)));
+            }
+            table.end();
+            for (int i = 0; i < genes; i++) {
+                table.add(quote(getSymbol(i) + " (" + getEntrezId(i) + ")"));
+                for (int s = 0; s < samples; s++) {
+                    table.add(random.nextInt(20) == 0 ? "NA"
+                            : decimal(-0.1 + 0.3 * random.nextGaussian(), 6));
+                }
+                table.end();
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    private void writeProteomics(File file, Random random) throws IOException {
+        Table table = new Table(file, ',');
+        try {
+            table.add("Protein_Id").add("Gene_Symbol").add("Description").add("Group_ID")
+                .add("Uniprot").add("Uniprot_Acc");
+            for (int c = 6; c < 48; c++) {
+                table.add("TenPx" + String.format(Locale.ROOT, "%02d", c - 5) + "_Peptides");
+            }
+            for (int s = 0; s < samples; s++) {
+                table.add(getCcleName(s) + "_TenPx" + String.format(Locale.ROOT, "%02d",
+                        s % 42 + 1));
+            }
+            table.end();
+            for (int i = 0; i < genes; i++) {
+                String accession = String.format(Locale.ROOT, "Q%05d", i + 1);
+                table.add("sp|" + accession + "|" + getSymbol(i) + "_HUMAN").add(getSymbol(i))
+                    .add(quote("Synthetic protein " + (i + 1) + ", isoform 1"))
+                    .add(Integer.toString(i % 5000)).add(getSymbol(i) + "_HUMAN")
+                    .add(accession);
+                for (int c = 6; c < 48; c++) {
+                    table.add(Integer.toString(random.nextInt(40)));
+                }
+                for (int s = 0; s < samples; s++) {
+                    table.add(random.nextInt(10) == 0 ? "NA"
+                            : decimal(random.nextGaussian(), 6));
+                }
+                table.end();
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    // tab-delimited, despite the name
+    private void writeCcleMutations(File file, Random random) throws IOException {
+        Table table = new Table(file, '\t');
+        try {
+            table.row("Hugo_Symbol", "Entrez_Gene_Id", "NCBI_Build", "Chromosome",
+                    "Start_position", "End_position", "Strand", "Variant_Classification",
+                    "Variant_Type", "Reference_Allele", "Tumor_Seq_Allele1", "dbSNP_RS",
+                    "dbSNP_Val_Status", "Genome_Change", "Annotation_Transcript",
+                    "Tumor_Sample_Barcode", "cDNA_Change", "Codon_Change", "Protein_Change",
+                    "isDeleterious", "isTCGAhotspot", "TCGAhsCnt", "isCOSMIChotspot",
+                    "COSMIChsCnt", "ExAC_AF", "CGA_WES_AC", "HC_AC", "RD_AC", "RNAseq_AC",
+                    "SangerWES_AC", "WGS_AC", "Variant_Type_Detail", "Variant_annotation",
+                    "DepMap_ID");
+            int perSample = Math.max(1, genes / 20);
+            for (int s = 0; s < samples; s++) {
+                for (int m = 0; m < perSample; m++) {
+                    int gene = random.nextInt(genes);
+                    int chromosome = gene % 22 + 1;
+                    int start = 1000000 + random.nextInt(100000000);
+                    String variantClass = VARIANT_CLASSES[random.nextInt(VARIANT_CLASSES.length)];
+                    boolean deletion = variantClass.endsWith("_Del");
+                    boolean hotspot = random.nextInt(20) == 0;
+                    table.add(getSymbol(gene)).add(getEntrezId(gene)).add("37")
+                        .add(Integer.toString(chromosome)).add(Integer.toString(start))
+                        .add(Integer.toString(deletion ? start + 2 : start)).add("+")
+                        .add(variantClass).add(deletion ? "DEL" : "SNP")
+                        .add(deletion ? "CTG" : "C").add(deletion ? "-" : "T")
+                        .add(random.nextInt(3) == 0 ? "rs" + random.nextInt(10000000) : "")
+                        .add("").add("g.chr" + chromosome + ":" + start + "C>T")
+                        .add(String.format(Locale.ROOT, "ENST%011d.%d", 100001 + gene, 1))
+                        .add(getCcleName(s)).add("c." + random.nextInt(3000) + "C>T")
+                        .add("c.(" + random.nextInt(3000) + "-" + random.nextInt(3000)
+                            + ")Ccc>Ttc").add("p.P" + random.nextInt(1000) + "S")
+                        .add(random.nextBoolean() ? "True" : "False")
+                        .add(hotspot ? "True" : "False")
+                        .add(hotspot ? Integer.toString(1 + random.nextInt(40)) : "0")
+                        .add(hotspot ? "True" : "False")
+                        .add(hotspot ? Integer.toString(1 + random.nextInt(40)) : "0")
+                        .add(random.nextInt(4) == 0 ? decimal(random.nextDouble() / 100, 6) : "")
+                        .add(alleleCounts(random)).add("").add("").add(alleleCounts(random))
+                        .add("").add("").add("")
+                        .add(deletion ? "damaging" : random.nextBoolean() ? "other non-conserving"
+                            : "silent")
+                        .add(getDepMapId(s)).end();
+                }
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    private static String alleleCounts(Random random) {
+        return random.nextBoolean() ? random.nextInt(50) + ":" + random.nextInt(200) : "";
+    }
+
+    private void writeSampleInfo(File file, Random random) throws IOException {
+        Table table = new Table(file, ',');
+        try {
+            table.row("DepMap_ID", "stripped_cell_line_name", "CCLE_Name", "alias", "COSMIC_ID",
+                    "sex", "source", "Achilles_n_replicates", "cell_line_NNMD", "culture_type",
+                    "culture_medium", "cas9_activity", "RRID", "sample_collection_site",
+                    "primary_or_metastasis", "primary_disease", "Subtype", "age",
+                    "Sanger_Model_ID", "depmap_public_comments", "lineage", "lineage_subtype",
+                    "lineage_sub_subtype", "lineage_molecular_subtype");
+            for (int s = 0; s < samples; s++) {
+                String lineage = LINEAGES[s % LINEAGES.length];
+                String ccleName = getCcleName(s);
+                table.add(getDepMapId(s)).add(ccleName.substring(0, ccleName.indexOf('_')))
+                    .add(ccleName).add(random.nextInt(5) == 0 ? quote("CL-" + s + ", CL" + s)
+                        : "").add(Integer.toString(900000 + s))
+                    .add(random.nextBoolean() ? "Male" : "Female").add("ATCC")
+                    .add(Integer.toString(random.nextInt(5)))
+                    .add(decimal(-3 + random.nextGaussian(), 4)).add("Adherent")
+                    .add(quote("RPMI + 10% FBS")).add(decimal(random.nextDouble() * 100, 2))
+                    .add("CVCL_" + (1000 + s)).add(lineage)
+                    .add(random.nextInt(3) == 0 ? "Metastasis" : "Primary")
+                    .add(lineage.replace('_', ' ') + " cancer").add("Carcinoma")
+                    .add(random.nextInt(10) == 0 ? "" : Integer.toString(20 + random.nextInt(60))
+                        + ".0").add("SIDM" + String.format(Locale.ROOT, "%05d", s))
+                    .add("").add(lineage).add(lineage + "_carcinoma")
+                    .add(random.nextBoolean() ? "" : "adenocarcinoma").add("").end();
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    private void writeDgidb(File dir, Random random) throws IOException {
+        int drugs = Math.max(1, genes / 4);
+        Table table = new Table(new File(dir, "drugs.tsv"), '\t');
+        try {
+            table.row("drug_claim_name", "drug_name", "chembl_id", "drug_claim_source");
+            for (int d = 0; d < drugs; d++) {
+                table.row("STM-" + d, "SYNTHETIDRUG" + d, "CHEMBL" + (1000 + d),
+                        d % 3 == 0 ? "ChemblInteractions" : "DTC");
+            }
+        } finally {
+            table.close();
+        }
+        table = new Table(new File(dir, "interactions.tsv"), '\t');
+        try {
+            table.row("gene_name", "gene_claim_name", "entrez_id", "interaction_claim_source",
+                    "interaction_types", "drug_claim_name", "drug_claim_primary_name",
+                    "drug_name", "drug_chembl_id", "PMIDs");
+            for (int i = 0; i < genes; i++) {
+                for (int n = random.nextInt(4); n > 0; n--) {
+                    int d = random.nextInt(drugs);
+                    table.row(getSymbol(i), getSymbol(i), getEntrezId(i), "DTC",
+                            INTERACTION_TYPES[random.nextInt(INTERACTION_TYPES.length)],
+                            "STM-" + d, "STM-" + d, "SYNTHETIDRUG" + d,
+                            random.nextInt(20) == 0 ? "" : "CHEMBL" + (1000 + d),
+                            random.nextBoolean() ? Integer.toString(10000000 + random.nextInt(
+                                20000000)) : "");
+                }
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    private void writeDisgenet(File file, Random random) throws IOException {
+        int diseases = Math.max(1, genes / 10);
+        Table table = new Table(file, '\t');
+        try {
+            table.row("geneId", "geneSymbol", "DSI", "DPI", "diseaseId", "diseaseName",
+                    "diseaseType", "diseaseClass", "diseaseSemanticType", "score", "EI",
+                    "YearInitial", "YearFinal", "NofPmids", "NofSnps", "source");
+            for (int i = 0; i < genes; i++) {
+                for (int n = random.nextInt(5); n > 0; n--) {
+                    int d = random.nextInt(diseases);
+                    table.row(getEntrezId(i), getSymbol(i), decimal(random.nextDouble(), 3),
+                            decimal(random.nextDouble(), 3),
+                            String.format(Locale.ROOT, "C%07d", d), "Synthetic disease " + d,
+                            d % 4 == 0 ? "phenotype" : "disease", "C04",
+                            "Neoplastic Process", decimal(random.nextDouble(), 2), "1",
+                            Integer.toString(1990 + random.nextInt(20)),
+                            Integer.toString(2010 + random.nextInt(10)),
+                            Integer.toString(random.nextInt(30)), "0", "CURATED");
+                }
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    private void writeOpenTargets(File dir, Random random) throws IOException {
+        int diseases = Math.max(1, genes / 10);
+        Table evidence = new Table(new File(dir, "opentargets_evidence_storm_targets.csv"), ',');
+        Table papers = new Table(new File(dir, "opentargets_papers_storm_targets.csv"), ',');
+        try {
+            evidence.row("", "gene", "disease", "association_score", "rna_expression",
+                    "genetic_association", "somatic_mutation", "known_drug", "animal_model",
+                    "affected_pathway", "literature", "references");
+            papers.row("", "gene", "disease", "pmid", "doi", "url", "authors", "journal",
+                    "year", "title", "citedByCount");
+            int row = 0;
+            int paper = 0;
+            for (int i = 0; i < genes; i++) {
+                for (int n = random.nextInt(3); n > 0; n--) {
+                    String disease = "synthetic disease " + random.nextInt(diseases);
+                    evidence.add(Integer.toString(row++)).add(getSymbol(i)).add(disease);
+                    // the converter stores every score, so none is empty
+                    for (int c = 0; c < 8; c++) {
+                        evidence.add(decimal(random.nextDouble(), 6));
+                    }
+                    evidence.add(random.nextInt(30) + ".0").end();
+                    for (int p = random.nextInt(3); p > 0; p--) {
+                        int pmid = 20000000 + paper++;
+                        papers.add(Integer.toString(paper)).add(getSymbol(i)).add(disease)
+                            .add(Integer.toString(pmid)).add("10.1000/syn." + pmid)
+                            .add("https://europepmc.org/abstract/MED/" + pmid)
+                            .add(quote("Smith J, Jones A, Brown K"))
+                            .add(random.nextBoolean() ? "Nature" : "Cell")
+                            .add(Integer.toString(2000 + random.nextInt(20)))
+                            .add(quote("Role of " + getSymbol(i) + " in " + disease
+                                + ", a \"\"synthetic\"\" study"))
+                            .add(Integer.toString(random.nextInt(200))).end();
+                    }
+                }
+            }
+        } finally {
+            evidence.close();
+            papers.close();
+        }
+    }
+
+    private void writeTargetsMetadata(File dir, Random random) throws IOException {
+        Table table = new Table(new File(dir, "storm_targets_categories.csv"), ',');
+        try {
+            table.row("abbreviation", "name");
+            for (int t = 0; t < TARGET_TYPES.length; t++) {
+                table.row(TARGET_TYPES[t], TARGET_TYPE_NAMES[t]);
+            }
+        } finally {
+            table.close();
+        }
+        table = new Table(new File(dir, "storm_targets.csv"), ',');
+        try {
+            table.row("gene", "name", "entrez", "ensembl", "uniprot", "family", "class",
+                    "domain", "modification", "type", "notes");
+            for (int i = 0; i < genes; i++) {
+                if (isTarget(i)) {
+                    table.row(getSymbol(i), quote("synthetic target " + (i + 1)),
+                            getEntrezId(i), getEnsemblId(i),
+                            String.format(Locale.ROOT, "Q%05d", i + 1), "SYN", "enzyme",
+                            "SET", random.nextBoolean() ? "m6A" : "m5C",
+                            TARGET_TYPES[random.nextInt(TARGET_TYPES.length)],
+                            random.nextInt(4) == 0 ? quote("notes, on " + getSymbol(i)) : "");
+                }
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    private void writeTargetsAnalyses(File file, Random random) throws IOException {
+        Table table = new Table(file, ',');
+        try {
+            table.add("gene").add("entrez").add("ensembl").add("type").add("family")
+                .add("class");
+            String[] screens = {"broad", "sanger", "shrna"};
+            for (String screen : screens) {
+                table.add(screen + "_median").add(screen + "_effect_fraction")
+                    .add(screen + "_common_essential").add(screen + "_skewed_lrt");
+            }
+            table.add("broad_sanger_cor").add("broad_sanger_diff").add("broad_shrna_cor")
+                .add("broad_shrna_diff").add("sanger_shrna_cor").add("sanger_shrna_diff");
+            for (String screen : screens) {
+                table.add(screen + "_outliers_count").add(screen + "_outliers_mean_zscore")
+                    .add(screen + "_outliers_cell_lines").add(screen + "_outliers_top_lineage")
+                    .add(screen + "_outliers_lineage_count")
+                    .add(screen + "_outliers_lineage_pvalue")
+                    .add(screen + "_outliers_lineage_qvalue");
+            }
+            table.end();
+            for (int i = 0; i < genes; i++) {
+                if (!isTarget(i)) {
+                    continue;
+                }
+                table.add(getSymbol(i)).add(getEntrezId(i)).add(getEnsemblId(i))
+                    .add(TARGET_TYPES[i % TARGET_TYPES.length]).add("SYN").add("enzyme");
+                for (int c = 6; c < 24; c++) {
+                    table.add(random.nextInt(20) == 0 ? "NA" : decimal(random.nextGaussian(), 6));
+                }
+                for (int s = 0; s < 3; s++) {
+                    int outliers = random.nextInt(5);
+                    StringBuilder cellLines = new StringBuilder();
+                    for (int o = 0; o < outliers; o++) {
+                        cellLines.append(o == 0 ? "" : ";").append(getDepMapId(
+                                random.nextInt(samples)));
+                    }
+                    table.add(Integer.toString(outliers)).add(decimal(2 + random.nextDouble(), 6))
+                        .add(cellLines.toString()).add(LINEAGES[random.nextInt(LINEAGES.length)])
+                        .add(Integer.toString(random.nextInt(outliers + 1)))
+                        .add(decimal(random.nextDouble(), 6)).add(decimal(random.nextDouble(), 6));
+                }
+                table.end();
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    // a directory per type of correlation, genes as "SYMBOL (ENTREZ)"
+    private void writeCorrelations(File dir, Random random) throws IOException {
+        String[] types = {"coessentiality", "coexpression"};
+        for (String type : types) {
+            Table table = new Table(new File(mkdirs(new File(dir, type)), "correlations.csv"),
+                    ',');
+            try {
+                table.row("gene1", "gene2", "nsize", "correlation", "pvalue", "fdr");
+                for (int i = 0; i < genes; i++) {
+                    if (!isTarget(i)) {
+                        continue;
+                    }
+                    for (int n = 0; n < 50; n++) {
+                        int other = random.nextInt(genes);
+                        table.row(getSymbol(i) + " (" + getEntrezId(i) + ")",
+                                getSymbol(other) + " (" + getEntrezId(other) + ")",
+                                Integer.toString(samples),
+                                decimal(random.nextDouble() * 2 - 1, 6), pvalue(random),
+                                pvalue(random));
+                    }
+                }
+            } finally {
+                table.close();
+            }
+        }
+    }
+
+    // genes by row, TCGA samples by column
+    private void writeTcgaMatrix(File file, Random random, boolean mutations)
+        throws IOException {
+        Table table = new Table(file, '\t');
+        try {
+            table.add("sample");
+            for (int s = 0; s < samples; s++) {
+                table.add(getTcgaBarcode(s));
+            }
+            table.end();
+            for (int i = 0; i < genes; i++) {
+                table.add(getSymbol(i));
+                for (int s = 0; s < samples; s++) {
+                    if (mutations) {
+                        table.add(random.nextInt(20) == 0 ? "1" : "0");
+                    } else if (random.nextInt(100) == 0) {
+                        table.add("NA");
+                    } else {
+                        table.add(random.nextInt(10) == 0 ? "0"
+                                : decimal(Math.abs(6 + 3 * random.nextGaussian()), 4));
+                    }
+                }
+                table.end();
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    private void writeTcgaPhenotypes(File file, Random random) throws IOException {
+        Table table = new Table(file, '\t');
+        try {
+            table.row("sample", "sample_type_id", "sample_type", "_primary_disease");
+            for (int s = 0; s < samples; s++) {
+                boolean normal = random.nextInt(10) == 0;
+                table.row(getTcgaBarcode(s), normal ? "11" : "1",
+                        normal ? "Solid Tissue Normal" : "Primary Tumor",
+                        PROJECTS[s % PROJECTS.length].toLowerCase(Locale.ROOT) + " carcinoma");
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    private void writeAelianMarkers(File file, Random random) throws IOException {
+        Table table = new Table(file, ',');
+        try {
+            table.row("marker", "p_val", "avg_log2FC", "pct.1", "pct.2", "p_val_adj", "ident");
+            for (int i = 0; i < genes; i++) {
+                int guide = random.nextInt(genes);
+                table.row(getSymbol(i), pvalue(random), decimal(random.nextGaussian(), 6),
+                        decimal(random.nextDouble(), 3), decimal(random.nextDouble(), 3),
+                        pvalue(random), getSymbol(guide - guide % 10));
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    // the JSON configs and result directories of storm-rnaseq-data or storm-nanopore-data
+    private void writeExperiments(File dir, Random random, boolean nanopore) throws IOException {
+        String[] conditions = {"control", "inhibited", "knockdown"};
+        for (int e = 1; e <= 2; e++) {
+            String shortName = (nanopore ? "NANO" : "RNA") + e;
+            String prefix = shortName + "_";
+            int inhibited = 10 * random.nextInt(Math.max(1, genes / 10));
+            int knockedDown = 10 * random.nextInt(Math.max(1, genes / 10));
+            StringBuilder json = new StringBuilder();
+            json.append("{\"experiment\":{\"name\":").append(json("Synthetic experiment " + e))
+                .append(",\"short name\":").append(json(shortName))
+                .append(",\"project\":\"STORM\",\"contact person\":\"A. Person\"")
+                .append(",\"date\":\"2021-0").append(e).append("-15\"")
+                .append(",\"sequencing\":").append(json(nanopore ? "direct RNA" : "RNA-seq"))
+                .append(",\"provider\":\"Core facility\",\"Dotmatics reference\":\"DM-")
+                .append(e).append("\"}");
+            json.append(",\"materials\":{").append(json(prefix + "cells"))
+                .append(":{\"cell line\":{\"name\":").append(json(getCcleName(e)))
+                .append(",\"tissue\":").append(json(LINEAGES[e % LINEAGES.length]))
+                .append(",\"species\":\"human\"}},").append(json(prefix + "tumour"))
+                .append(":{\"tumour\":{\"primary disease\":\"carcinoma\",\"disease subtype\":")
+                .append("\"adenocarcinoma\",\"tissue\":\"lung\",\"species\":\"human\"}}}");
+            json.append(",\"treatments\":{").append(json(prefix + "vehicle"))
+                .append(":{\"untargeted\":{\"name\":\"DMSO\",\"concentration\":\"0.1\"")
+                .append(",\"type\":\"vehicle\",\"time point\":\"24h\"}},")
+                .append(json(prefix + "inhibitor")).append(":{\"inhibitor\":{\"name\":")
+                .append(json("STM-" + e)).append(",\"target gene\":")
+                .append(json(getSymbol(inhibited)))
+                .append(",\"Dotmatics reference\":\"DM-STM\",\"dose\":\"1.5\"")
+                .append(",\"time point\":\"24h\"}},").append(json(prefix + "siRNA"))
+                .append(":{\"knock-down\":{\"name\":\"siRNA\",\"target gene\":")
+                .append(json(getSymbol(knockedDown)))
+                .append(",\"concentration\":\"10\",\"type\":\"siRNA\",\"time point\":\"48h\"}}}");
+            String[] treatments = {prefix + "vehicle", prefix + "inhibitor", prefix + "siRNA"};
+            json.append(",\"conditions\":{");
+            for (int c = 0; c < conditions.length; c++) {
+                json.append(c == 0 ? "" : ",").append(json(prefix + conditions[c]))
+                    .append(":{\"material\":").append(json(prefix + "cells"))
+                    .append(",\"samples\":{");
+                for (int r = 0; r < 3; r++) {
+                    json.append(r == 0 ? "" : ",").append(json(prefix + "S" + (3 * c + r + 1)))
+                        .append(':').append(json("R" + (3 * c + r + 1)));
+                }
+                json.append("},\"treatments\":[").append(json(treatments[c])).append("]}");
+            }
+            json.append("},\"comparisons\":[");
+            for (int c = 1; c < conditions.length; c++) {
+                json.append(c == 1 ? "" : ",").append("{\"treatment\":{\"name\":")
+                    .append(json(prefix + conditions[c])).append("},\"control\":{\"name\":")
+                    .append(json(prefix + conditions[0])).append("}}");
+            }
+            json.append("]}\n");
+            Writer writer = open(new File(dir, shortName.toLowerCase(Locale.ROOT) + ".json"));
+            try {
+                writer.write(json.toString());
+            } finally {
+                writer.close();
+            }
+
+            File experimentDir = mkdirs(new File(dir, shortName));
+            for (int c = 1; c < conditions.length; c++) {
+                String comparison = prefix + conditions[c] + "_vs_" + prefix + conditions[0];
+                if (nanopore) {
+                    writeNanoporeComparison(mkdirs(new File(experimentDir, comparison)),
+                            random);
+                } else {
+                    writeDeseq2(new File(experimentDir, comparison + "_DESeq2.tsv"), random);
+                }
+            }
+            if (!nanopore) {
+                writeGeneCounts(new File(experimentDir, "salmon.merged.gene_counts.tsv"), random,
+                        3 * conditions.length);
+            }
+        }
+    }
+
+    private void writeDeseq2(File file, Random random) throws IOException {
+        Table table = new Table(file, '\t');
+        try {
+            table.row("ensembl", "entrez", "symbol", "baseMean", "log2FoldChange", "lfcSE",
+                    "stat", "pvalue", "padj");
+            for (int i = 0; i < genes; i++) {
+                double lfc = random.nextGaussian();
+                boolean tested = random.nextInt(20) != 0;
+                table.row(getEnsemblId(i) + "." + (i % 9 + 1), getEntrezId(i), getSymbol(i),
+                        decimal(Math.abs(500 * random.nextGaussian()), 6), decimal(lfc, 6),
+                        decimal(0.1 + random.nextDouble() / 2, 6), decimal(lfc * 4, 6),
+                        tested ? pvalue(random) : "NA", tested ? pvalue(random) : "NA");
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    private void writeGeneCounts(File file, Random random, int runs) throws IOException {
+        Table table = new Table(file, '\t');
+        try {
+            table.add("gene_id").add("gene_name");
+            for (int r = 1; r <= runs; r++) {
+                table.add("R" + r);
+            }
+            table.end();
+            for (int i = 0; i < genes; i++) {
+                table.add(getEnsemblId(i) + "." + (i % 9 + 1)).add(getSymbol(i));
+                for (int r = 0; r < runs; r++) {
+                    table.add(random.nextInt(4) == 0 ? "0"
+                            : Integer.toString(random.nextInt(5000)));
+                }
+                table.end();
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    private void writeNanoporeComparison(File dir, Random random) throws IOException {
+        Table results = new Table(new File(dir, "out_nanocompore_results.tsv"), '\t');
+        try {
+            results.row("pos", "chr", "genomicPos", "ref_id", "strand", "ref_kmer",
+                    "GMM_anova_pvalue", "GMM_logit_pvalue", "KS_dwell_pvalue",
+                    "KS_intensity_pvalue", "GMM_cov_type", "GMM_n_clust", "cluster_counts",
+                    "Anova_delta_logit", "Logit_LOR");
+            for (int i = 0; i < genes; i++) {
+                for (int t = 0; t < transcriptCount(i); t++) {
+                    String refId = getTranscriptId(i, t) + "|" + getEnsemblId(i) + "|OTTHUMG"
+                        + (100001 + i) + "|OTTHUMT" + (100001 + i) + "|"
+                        + getTranscriptName(i, t) + "|" + getSymbol(i) + "|"
+                        + (1000 + random.nextInt(4000)) + "|protein_coding|";
+                    for (int p = 0; p < 3; p++) {
+                        int pos = random.nextInt(4000);
+                        results.row(Integer.toString(pos), "chr" + (i % 22 + 1),
+                                Integer.toString(1000000 + pos), refId, "+", "GGACT",
+                                pvalue(random), decimal(random.nextDouble() * 0.2, 6),
+                                pvalue(random), pvalue(random), "full", "2",
+                                "Ctrl_1:10/20__Ctrl_2:12/18__Treat_1:15/15",
+                                decimal(random.nextGaussian(), 6),
+                                decimal(random.nextGaussian(), 6));
+                    }
+                }
+            }
+        } finally {
+            results.close();
+        }
+        Table insig = new Table(new File(dir, "insigResults.csv"), ',');
+        Table sig = new Table(new File(dir, "sigResultsOrderedByLFC.csv"), ',');
+        Table counts = new Table(new File(dir, "masterTranscriptCounts.txt"), '\t');
+        try {
+            String[] header = {"", "transcript", "baseMean", "log2FoldChange", "lfcSE", "stat",
+                "pvalue", "padj", "FoldChange", "BC1", "BC2", "BC3", "BC4"};
+            insig.row(header);
+            sig.row(header);
+            counts.row("transcript", "BC1", "BC2", "BC3", "BC4");
+            int row = 0;
+            for (int i = 0; i < genes; i++) {
+                for (int t = 0; t < transcriptCount(i); t++) {
+                    String[] bc = new String[4];
+                    for (int b = 0; b < 4; b++) {
+                        bc[b] = Integer.toString(random.nextInt(1000));
+                    }
+                    double lfc = random.nextGaussian();
+                    Table table = random.nextInt(10) == 0 ? sig : insig;
+                    table.row(Integer.toString(++row), getTranscriptName(i, t),
+                            decimal(Math.abs(300 * random.nextGaussian()), 6), decimal(lfc, 6),
+                            decimal(0.2 + random.nextDouble() / 2, 6), decimal(lfc * 3, 6),
+                            pvalue(random), pvalue(random), decimal(Math.pow(2, lfc), 6),
+                            bc[0], bc[1], bc[2], bc[3]);
+                    counts.row(getTranscriptName(i, t), bc[0], bc[1], bc[2], bc[3]);
+                }
+            }
+        } finally {
+            insig.close();
+            sig.close();
+            counts.close();
+        }
+    }
+
+    /**
+     * Write synthetic data from the command line:
+     * <pre>SyntheticData &lt;output directory&gt; [-scale small|medium|production] [-seed n]
+     *     [-genes n] [-samples n] [-sources source,...]</pre>
+     * The scale defaults to small and the seed to 42; -genes and -samples override the sizes
+     * of the scale.  All sources are written unless -sources lists some of them; the gene
+     * list and the transcript mapping are always written.
+     * @param args the arguments
+     * @throws IOException if a file can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args.length % 2 == 0) {
+            usage("");
+        }
+        File root = new File(args[0]);
+        String scale = "small";
+        long seed = 42;
+        Integer genes = null;
+        Integer samples = null;
+        List<String> sources = SOURCES;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                String option = args[i];
+                String value = args[i + 1];
+                if ("-scale".equals(option)) {
+                    scale = value;
+                } else if ("-seed".equals(option)) {
+                    seed = Long.parseLong(value);
+                } else if ("-genes".equals(option)) {
+                    genes = Integer.valueOf(value);
+                } else if ("-samples".equals(option)) {
+                    samples = Integer.valueOf(value);
+                } else if ("-sources".equals(option)) {
+                    sources = Arrays.asList(value.split(","));
+                } else {
+                    usage("unknown option: " + option);
+                }
+            }
+            SyntheticData data = forScale(scale, seed);
+            if (genes != null || samples != null) {
+                data = new SyntheticData(seed, genes == null ? data.genes : genes,
+                        samples == null ? data.samples : samples);
+            }
+            data.writeGeneList(root);
+            data.writeTranscriptMapping(root);
+            for (String source : sources) {
+                long start = System.currentTimeMillis();
+                File dir = data.write(source.trim(), root);
+                System.out.println(dir + ": " + (size(dir) >> 20) + " MB in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            }
+        } catch (IllegalArgumentException e) {
+            usage(e.getMessage());
+        }
+    }
+
+    private static void usage(String message) {
+        if (message.length() > 0) {
+            System.err.println(message);
+        }
+        System.err.println("usage: SyntheticData <output directory> [-scale small|medium|"
+                + "production] [-seed n] [-genes n] [-samples n] [-sources source,...]");
+        System.exit(1);
+    }
+
+    private static long size(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += size(child);
+            }
+        }
+        return size;
+    }
+
+    private static int transcriptCount(int gene) {
+        return gene % 3 == 0 ? 2 : 1;
+    }
+
+    private static String getTranscriptId(int gene, int transcript) {
+        return String.format(Locale.ROOT, "ENST%011d.%d", 100001 + gene * 2 + transcript,
+                transcript + 1);
+    }
+
+    private String getTranscriptName(int gene, int transcript) {
+        return getSymbol(gene) + "-" + (201 + transcript);
+    }
+
+    private static String pvalue(Random random) {
+        return String.format(Locale.ROOT, "%.6g", Math.pow(10, -8 * random.nextDouble()));
+    }
+
+    /**
+     * Format a number with a fixed number of decimals, without an exponent.
+     * @param x the number
+     * @param places the number of decimals, at most 6
+     * @return the formatted number
+     */
+    static String decimal(double x, int places) {
+        long scale = SCALES[places];
+        long n = Math.round(Math.abs(x) * scale);
+        StringBuilder sb = new StringBuilder(16);
+        if (x < 0 && n != 0) {
+            sb.append('-');
+        }
+        sb.append(n / scale);
+        if (places > 0) {
+            sb.append('.');
+            String fraction = Long.toString(n % scale);
+            for (int i = fraction.length(); i < places; i++) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+        return sb.toString();
+    }
+
+    private static String quote(String s) {
+        return '"' + s + '"';
+    }
+
+    private static String json(String s) {
+        return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static File mkdirs(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("failed to create directory: " + dir);
+        }
+        return dir;
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * A data file written a row at a time, the fields as they are given (quote them first if
+     * they need it).
+     */
+    private static class Table
+    {
+        private final Writer writer;
+        private final char delimiter;
+        private final StringBuilder row = new StringBuilder();
+        private int fields;
+
+        Table(File file, char delimiter) throws IOException {
+            this.writer = open(file);
+            this.delimiter = delimiter;
+        }
+
+        Table add(String field) {
+            if (fields++ > 0) {
+                row.append(delimiter);
+            }
+            row.append(field);
+            return this;
+        }
+
+        void end() throws IOException {
+            row.append('\n');
+            writer.append(row);
+            row.setLength(0);
+            fields = 0;
+        }
+
+        void row(String... values) throws IOException {
+            for (String value : values) {
+                add(value);
+            }
+            end();
+        }
+
+        void close() throws IOException {
+            writer.close();
+        }
+    }
+}
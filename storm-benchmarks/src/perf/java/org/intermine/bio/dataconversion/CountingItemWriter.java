@@ -0,0 +1,78 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collection;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.ReferenceList;
+
+/**
+ * An ItemWriter that counts what it is given and drops it, so that a converter can be
+ * measured without the cost, or the heap, of keeping its items.
+ *
+ * @author
+ */
+public class CountingItemWriter implements ItemWriter
+{
+    private long items;
+    private long referenceLists;
+    private long attributes;
+
+    @Override
+    public Integer store(Item item) {
+        items++;
+        return null;
+    }
+
+    @Override
+    public void storeAll(Collection<Item> items) {
+        this.items += items.size();
+    }
+
+    @Override
+    public void store(ReferenceList refList, Integer itemId) {
+        referenceLists++;
+    }
+
+    @Override
+    public void store(Attribute att, Integer itemId) {
+        attributes++;
+    }
+
+    @Override
+    public void close() {
+        // nothing kept
+    }
+
+    /**
+     * @return the number of items stored
+     */
+    public long getItems() {
+        return items;
+    }
+
+    /**
+     * @return the number of reference lists stored on their own
+     */
+    public long getReferenceLists() {
+        return referenceLists;
+    }
+
+    /**
+     * @return the number of attributes stored on their own
+     */
+    public long getAttributes() {
+        return attributes;
+    }
+}
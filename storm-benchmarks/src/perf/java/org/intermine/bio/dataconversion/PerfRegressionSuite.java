@@ -0,0 +1,356 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.intermine.dataconversion.DirectoryConverter;
+
+/**
+ * Runs the converters over SyntheticData and checks their throughput and allocation against
+ * a baseline, so that a change that makes a converter slower or allocate more is caught.
+ * It isn't part of check; run it with
+ * <pre>./gradlew :storm-benchmarks:perfTest [-Pperf.update=true]</pre>
+ *
+ * Each source's converter is run perf.warmups times and then perf.runs times on the same
+ * data, storing into a CountingItemWriter.  A run measures:
+ * <ul>
+ * <li>rowsPerSecond, the rows of its ConverterMetrics over the wall time of process() and
+ * close()</li>
+ * <li>itemsPerSecond, the items stored over the same time</li>
+ * <li>bytesPerRow, the bytes the thread allocated (ThreadMXBean) over the rows</li>
+ * <li>itemsPerRow, the items stored over the rows</li>
+ * </ul>
+ * and the median of the runs is compared with the baseline.  An allocation more than
+ * perf.allocation.tolerance above the baseline, a different number of items per row or, with
+ * perf.throughput=true, a throughput more than perf.tolerance below the baseline is a
+ * regression.  Only the thread that runs the converter is measured, so the parallel reader
+ * and the store pipeline are switched off.
+ *
+ * The baseline is a properties file, perf.baseline, recorded with perf.update=true.
+ * Allocation and items per row hardly depend on the machine, so their baseline is checked in;
+ * a source or metric without one is a failure.  They do depend on the InterMine classes and
+ * the JVM, so the baseline records the JVM it was measured on, and a run on another JVM warns
+ * that its numbers may not be comparable.  Throughput does
+ * depend on the machine, so it is only recorded and checked with perf.throughput=true, on
+ * the machine the suite runs on.  Every run writes its numbers and the comparison to
+ * perf.report as JSON.
+ *
+ * Settings, all system properties:
+ * <table summary="settings">
+ * <tr><th>Property</th><th>Default</th></tr>
+ * <tr><td>perf.baseline</td><td>perf-baseline.properties</td></tr>
+ * <tr><td>perf.report</td><td>build/reports/perf/results.json</td></tr>
+ * <tr><td>perf.update</td><td>false, true to write the baseline from this run</td></tr>
+ * <tr><td>perf.throughput</td><td>false, true to check and record the throughput</td></tr>
+ * <tr><td>perf.sources</td><td>all of SyntheticData.SOURCES, comma separated</td></tr>
+ * <tr><td>perf.genes, perf.samples, perf.seed</td><td>2000, 200, 42</td></tr>
+ * <tr><td>perf.warmups, perf.runs</td><td>2, 5</td></tr>
+ * <tr><td>perf.tolerance</td><td>0.25</td></tr>
+ * <tr><td>perf.allocation.tolerance</td><td>0.1</td></tr>
+ * </table>
+ *
+ * @author
+ */
+public final class PerfRegressionSuite
+{
+    private static final String[] METRICS = {"rowsPerSecond", "itemsPerSecond", "bytesPerRow",
+        "itemsPerRow"};
+    // the metrics that depend on the machine, see perf.throughput
+    private static final int THROUGHPUT_METRICS = 2;
+
+    private final File baselineFile;
+    private final SyntheticData data;
+    private final int warmups;
+    private final int runs;
+    private final double tolerance;
+    private final double allocationTolerance;
+    private final boolean throughput;
+    private final com.sun.management.ThreadMXBean threads;
+
+    private PerfRegressionSuite() {
+        baselineFile = new File(System.getProperty("perf.baseline", "perf-baseline.properties"));
+        data = new SyntheticData(Long.getLong("perf.seed", 42),
+                Integer.getInteger("perf.genes", 2000), Integer.getInteger("perf.samples", 200));
+        warmups = Integer.getInteger("perf.warmups", 2);
+        runs = Math.max(1, Integer.getInteger("perf.runs", 5));
+        tolerance = Double.parseDouble(System.getProperty("perf.tolerance", "0.25"));
+        allocationTolerance = Double.parseDouble(System.getProperty("perf.allocation.tolerance",
+                "0.1"));
+        throughput = Boolean.getBoolean("perf.throughput");
+        threads = getThreadBean();
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        Object bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        System.err.println("this JVM doesn't measure allocation, bytesPerRow isn't checked");
+        return null;
+    }
+
+    /**
+     * Run the suite, exiting with status 1 if there are regressions.
+     * @param args not used, see the settings above
+     * @throws Exception if a converter fails or a file can't be read or written
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> failures = new PerfRegressionSuite().run();
+        if (!failures.isEmpty()) {
+            System.err.println(failures.size() + " performance regressions:");
+            for (String failure : failures) {
+                System.err.println("  " + failure);
+            }
+            System.exit(1);
+        }
+    }
+
+    private List<String> run() throws Exception {
+        String sourceList = System.getProperty("perf.sources", "");
+        List<String> sources = sourceList.trim().isEmpty() ? SyntheticData.SOURCES
+            : Arrays.asList(sourceList.split("\\s*,\\s*"));
+        boolean update = Boolean.getBoolean("perf.update");
+        Properties baseline = loadBaseline();
+        String scale = data.getGenes() + "x" + data.getSamples();
+        if (baseline.getProperty("scale") != null
+                && !scale.equals(baseline.getProperty("scale"))) {
+            if (update) {
+                // the numbers of another scale don't compare
+                baseline.clear();
+            } else {
+                throw new IllegalArgumentException(baselineFile + " was recorded at a scale of "
+                    + baseline.getProperty("scale") + ", not " + scale);
+            }
+        }
+        if (!update && baseline.getProperty("jvm") != null
+                && !jvm().equals(baseline.getProperty("jvm"))) {
+            System.err.println(baselineFile + " was recorded on " + baseline.getProperty("jvm")
+                    + ", not " + jvm() + ", the allocation may not compare");
+        }
+        // measure the converter's thread only
+        System.setProperty(SourceConfig.PARALLEL_THREADS, "1");
+        System.setProperty(SourceConfig.PIPELINE, "false");
+
+        File root = Files.createTempDirectory("perf").toFile();
+        List<String> failures = new ArrayList<String>();
+        StringBuilder report = new StringBuilder();
+        try {
+            data.writeGeneList(root);
+            data.writeTranscriptMapping(root);
+            for (String source : sources) {
+                File dataDir = data.write(source, root);
+                double[] result = measure(new ConverterRunner(source), dataDir, root);
+                report.append(report.length() == 0 ? "" : ",\n");
+                report.append(compare(source, result, baseline, update ? null : failures));
+                if (update) {
+                    for (int i = throughput ? 0 : THROUGHPUT_METRICS; i < METRICS.length; i++) {
+                        baseline.setProperty(source + "." + METRICS[i], format(result[i]));
+                    }
+                }
+            }
+        } finally {
+            delete(root);
+        }
+        writeReport(scale, report);
+        if (update) {
+            baseline.setProperty("scale", scale);
+            baseline.setProperty("jvm", jvm());
+            writeBaseline(baseline);
+            System.out.println("baseline written to " + baselineFile);
+        }
+        return failures;
+    }
+
+    // the median rows/s, items/s and bytes/row of the runs
+    private double[] measure(ConverterRunner runner, File dataDir, File root) throws Exception {
+        double[][] results = new double[METRICS.length][runs];
+        long threadId = Thread.currentThread().getId();
+        for (int run = -warmups; run < runs; run++) {
+            // a new resolver cache every run, as in a load
+            data.use(root);
+            CountingItemWriter writer = new CountingItemWriter();
+            System.gc();
+            long allocatedBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            DirectoryConverter converter = runner.run(dataDir, writer);
+            long nanos = System.nanoTime() - start;
+            long allocated = threads == null ? 0
+                : threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            if (run < 0) {
+                continue;
+            }
+            long rows = getMetrics(converter).getRows();
+            results[0][run] = rows * 1e9 / nanos;
+            results[1][run] = writer.getItems() * 1e9 / nanos;
+            results[2][run] = threads == null || rows == 0 ? 0 : (double) allocated / rows;
+            results[3][run] = rows == 0 ? 0 : (double) writer.getItems() / rows;
+        }
+        double[] medians = new double[METRICS.length];
+        for (int i = 0; i < METRICS.length; i++) {
+            Arrays.sort(results[i]);
+            medians[i] = results[i][runs / 2];
+        }
+        return medians;
+    }
+
+    // the metrics of a converter, also of those that aren't StormDirectoryConverters
+    private static ConverterMetrics getMetrics(DirectoryConverter converter) throws Exception {
+        for (Class<?> c = converter.getClass(); c != null; c = c.getSuperclass()) {
+            try {
+                Method method = c.getDeclaredMethod("getMetrics");
+                method.setAccessible(true);
+                return (ConverterMetrics) method.invoke(converter);
+            } catch (NoSuchMethodException e) {
+                // try the superclass
+            }
+        }
+        throw new IllegalArgumentException(converter.getClass().getName()
+                + " has no getMetrics()");
+    }
+
+    // the JSON of a source, adding its regressions to failures if it isn't null
+    private String compare(String source, double[] result, Properties baseline,
+            List<String> failures) {
+        StringBuilder json = new StringBuilder("    \"" + source + "\": {");
+        StringBuilder line = new StringBuilder(source + ":");
+        for (int i = 0; i < METRICS.length; i++) {
+            String metric = METRICS[i];
+            String expected = baseline.getProperty(source + "." + metric);
+            String status;
+            if (i < THROUGHPUT_METRICS && !throughput) {
+                status = "not checked";
+            } else if (expected == null) {
+                status = "no baseline";
+                if (failures != null) {
+                    failures.add(source + " " + metric + " " + format(result[i])
+                            + ", no baseline");
+                }
+            } else if (result[i] == 0) {
+                // not measured
+                status = "skipped";
+            } else {
+                double base = Double.parseDouble(expected);
+                double change = base == 0 ? 0 : result[i] / base - 1;
+                boolean regressed;
+                if ("itemsPerRow".equals(metric)) {
+                    // the same data gives the same items
+                    regressed = !format(result[i]).equals(expected);
+                } else if ("bytesPerRow".equals(metric)) {
+                    regressed = change > allocationTolerance;
+                } else {
+                    regressed = change < -tolerance;
+                }
+                status = regressed ? "regressed" : "ok";
+                if (regressed && failures != null) {
+                    failures.add(String.format(Locale.ROOT, "%s %s %s, baseline %s (%+.1f%%)",
+                            source, metric, format(result[i]), expected, change * 100));
+                }
+            }
+            json.append(i == 0 ? "" : ",").append("\n      \"").append(metric)
+                .append("\": {\"value\": ").append(format(result[i])).append(", \"baseline\": ")
+                .append(expected == null ? "null" : expected).append(", \"status\": \"")
+                .append(status).append("\"}");
+            line.append(' ').append(metric).append(' ').append(format(result[i])).append(" (")
+                .append(status).append(')');
+        }
+        System.out.println(line);
+        return json.append("\n    }").toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    private Properties loadBaseline() throws IOException {
+        Properties baseline = new Properties();
+        if (baselineFile.exists()) {
+            InputStream is = new FileInputStream(baselineFile);
+            try {
+                baseline.load(is);
+            } finally {
+                is.close();
+            }
+        }
+        return baseline;
+    }
+
+    private static String jvm() {
+        return System.getProperty("java.vm.name") + " " + System.getProperty("java.version");
+    }
+
+    // sorted by key so that an updated baseline diffs well
+    private void writeBaseline(Properties baseline) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(baselineFile),
+                StandardCharsets.UTF_8);
+        try {
+            writer.write("# Baseline of PerfRegressionSuite, rewritten by\n"
+                    + "#   ./gradlew :storm-benchmarks:perfTest -Pperf.update=true\n"
+                    + "# scale is <genes>x<samples> of the synthetic data and jvm the JVM it\n"
+                    + "# was measured on; the other entries are <source>.<metric>, the median\n"
+                    + "# of the runs.\n");
+            for (Map.Entry<Object, Object> entry
+                    : new TreeMap<Object, Object>(baseline).entrySet()) {
+                writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeReport(String scale, StringBuilder sources) throws IOException {
+        File file = new File(System.getProperty("perf.report", "build/reports/perf/results.json"));
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("failed to create directory: " + dir);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8);
+        try {
+            writer.write("{\n  \"scale\": \"" + scale + "\",\n  \"runs\": " + runs
+                    + ",\n  \"tolerance\": " + tolerance + ",\n  \"allocationTolerance\": "
+                    + allocationTolerance + ",\n  \"sources\": {\n" + sources + "\n  }\n}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,96 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SyntheticDataTest extends TestCase
+{
+    private File root;
+
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("synthetic").toFile();
+    }
+
+    public void tearDown() throws Exception {
+        delete(root);
+    }
+
+    public void testSameSeedSameFiles() throws Exception {
+        SyntheticData data = new SyntheticData(7, 20, 5);
+        File first = data.write("depmap-cnv", new File(root, "a"));
+        // writing another source first doesn't change the files
+        new SyntheticData(7, 20, 5).write("depmap-expression", new File(root, "b"));
+        File second = new SyntheticData(7, 20, 5).write("depmap-cnv", new File(root, "b"));
+        assertTrue(Arrays.equals(Files.readAllBytes(new File(first, "CCLE_gene_cn.csv").toPath()),
+                Files.readAllBytes(new File(second, "CCLE_gene_cn.csv").toPath())));
+        File other = new SyntheticData(8, 20, 5).write("depmap-cnv", new File(root, "c"));
+        assertFalse(Arrays.equals(Files.readAllBytes(new File(first, "CCLE_gene_cn.csv").toPath()),
+                Files.readAllBytes(new File(other, "CCLE_gene_cn.csv").toPath())));
+    }
+
+    public void testCellLineMatrix() throws Exception {
+        File dir = new SyntheticData(1, 20, 5).write("depmap-cnv", root);
+        List<String> lines = Files.readAllLines(new File(dir, "CCLE_gene_cn.csv").toPath());
+        assertEquals(6, lines.size());
+        assertTrue(lines.get(0).startsWith(",SYN1 (100001),SYN2 (100002),"));
+        for (String line : lines) {
+            assertEquals(21, line.split(",", -1).length);
+        }
+        assertTrue(lines.get(1).startsWith("ACH-000001,"));
+    }
+
+    public void testAllSources() throws Exception {
+        SyntheticData data = new SyntheticData(1, 20, 5);
+        data.writeAll(root);
+        for (String source : SyntheticData.SOURCES) {
+            File[] files = new File(root, source).listFiles();
+            assertTrue(source, files != null && files.length > 0);
+        }
+        List<String> targets = Files.readAllLines(new File(root, SyntheticData.GENE_LIST_FILE)
+                .toPath());
+        assertEquals(Arrays.asList("SYN1", "SYN11"), targets);
+        // symbol and Ensembl id of every gene, the first unresolvable one is SYN50
+        assertEquals(20 * 2, data.getResolutions().size());
+    }
+
+    public void testForScale() throws Exception {
+        assertEquals(18000, SyntheticData.forScale("production", 1).getGenes());
+        try {
+            SyntheticData.forScale("huge", 1);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testDecimal() throws Exception {
+        assertEquals("1.500000", SyntheticData.decimal(1.5, 6));
+        assertEquals("-0.05", SyntheticData.decimal(-0.049, 2));
+        assertEquals("0.00", SyntheticData.decimal(-0.001, 2));
+        assertEquals("3", SyntheticData.decimal(2.5, 0));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,299 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JDK Flight Recorder events of ConverterEvents and the Recorder that creates and commits
+ * them.  Compiled on its own, against jdk.jfr, and loaded by ConverterEvents only on a JVM
+ * that has it.
+ *
+ * @author
+ */
+final class JfrRecorder implements ConverterEvents.Recorder
+{
+    /**
+     * Constructor, called by ConverterEvents.
+     */
+    JfrRecorder() {
+        // no state
+    }
+
+    @Override
+    public Reader fileOpened(String source, File file, Reader reader) {
+        fileOpened(source, file);
+        FileClose close = new FileClose();
+        if (!close.isEnabled()) {
+            return reader;
+        }
+        close.source = source;
+        close.path = file.getPath();
+        close.begin();
+        return new ClosingReader(reader, close);
+    }
+
+    @Override
+    public void fileOpened(String source, File file) {
+        FileOpen open = new FileOpen();
+        if (open.isEnabled()) {
+            open.source = source;
+            open.path = file.getPath();
+            open.bytes = file.length();
+            open.commit();
+        }
+    }
+
+    @Override
+    public Object begin(int type) {
+        Event event;
+        if (type == ROW_BATCH) {
+            event = new RowBatch();
+        } else if (type == CHUNK_PARSED) {
+            event = new ChunkParsed();
+        } else {
+            event = new ItemBatchStored();
+        }
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endRowBatch(Object event, long rows, long chars) {
+        RowBatch batch = (RowBatch) event;
+        batch.rows = rows;
+        batch.chars = chars;
+        batch.commit();
+    }
+
+    @Override
+    public void endChunk(Object event, File file, long start, long end, long rows,
+            long chars) {
+        ChunkParsed chunk = (ChunkParsed) event;
+        chunk.path = file.getPath();
+        chunk.start = start;
+        chunk.end = end;
+        chunk.rows = rows;
+        chunk.chars = chars;
+        chunk.commit();
+    }
+
+    @Override
+    public void resolverMiss(String source, String symbol) {
+        ResolverMiss miss = new ResolverMiss();
+        if (miss.isEnabled()) {
+            miss.source = source;
+            miss.symbol = symbol;
+            miss.commit();
+        }
+    }
+
+    @Override
+    public void endItemBatch(Object event, String writer, long items, long bytes) {
+        ItemBatchStored batch = (ItemBatchStored) event;
+        batch.writer = writer;
+        batch.items = items;
+        batch.bytes = bytes;
+        batch.commit();
+    }
+
+    @Override
+    public void registryGrown(String registry, int size, long footprint) {
+        RegistryGrowth growth = new RegistryGrowth();
+        if (growth.isEnabled()) {
+            growth.registry = registry;
+            growth.size = size;
+            growth.footprint = footprint;
+            growth.commit();
+        }
+    }
+
+    /**
+     * Emits the FileClose event of a file when it is closed.
+     */
+    private static class ClosingReader extends FilterReader
+    {
+        private final FileClose event;
+        private long chars;
+        private boolean closed;
+
+        ClosingReader(Reader reader, FileClose event) {
+            super(reader);
+            this.event = event;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) {
+                chars++;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = super.read(cbuf, off, len);
+            if (n > 0) {
+                chars += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (!closed) {
+                closed = true;
+                event.chars = chars;
+                event.commit();
+            }
+        }
+    }
+
+    @Name("storm.FileOpen")
+    @Label("File Open")
+    @Category("STORM")
+    @Description("A data file opened by a converter")
+    @StackTrace(false)
+    static class FileOpen extends Event
+    {
+        @Label("Source")
+        String source;
+
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("storm.FileClose")
+    @Label("File Close")
+    @Category("STORM")
+    @Description("A data file from the time it was opened until it was closed")
+    @StackTrace(false)
+    static class FileClose extends Event
+    {
+        @Label("Source")
+        String source;
+
+        @Label("Path")
+        String path;
+
+        @Label("Chars Read")
+        long chars;
+    }
+
+    @Name("storm.RowBatch")
+    @Label("Row Batch")
+    @Category("STORM")
+    @Description("The rows of one buffer of a delimited file, including the converter's work")
+    @StackTrace(false)
+    static class RowBatch extends Event
+    {
+        @Label("Rows")
+        long rows;
+
+        @Label("Chars")
+        long chars;
+    }
+
+    @Name("storm.ChunkParsed")
+    @Label("Chunk Parsed")
+    @Category("STORM")
+    @Description("A chunk of a matrix parsed by a ParallelRowEngine worker")
+    @StackTrace(false)
+    static class ChunkParsed extends Event
+    {
+        @Label("Path")
+        String path;
+
+        @Label("Start Offset")
+        @DataAmount
+        long start;
+
+        @Label("End Offset")
+        @DataAmount
+        long end;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Chars")
+        long chars;
+    }
+
+    @Name("storm.ResolverMiss")
+    @Label("Resolver Miss")
+    @Category("STORM")
+    @Description("A gene symbol that doesn't resolve to exactly one gene")
+    @StackTrace(false)
+    static class ResolverMiss extends Event
+    {
+        @Label("Source")
+        String source;
+
+        @Label("Symbol")
+        String symbol;
+    }
+
+    @Name("storm.ItemBatchStored")
+    @Label("Item Batch Stored")
+    @Category("STORM")
+    @Description("A batch of items written to the ItemWriter")
+    @StackTrace(false)
+    static class ItemBatchStored extends Event
+    {
+        @Label("Writer")
+        String writer;
+
+        @Label("Items")
+        long items;
+
+        @Label("Estimated Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("storm.RegistryGrowth")
+    @Label("Registry Growth")
+    @Category("STORM")
+    @Description("An ItemIdRegistry that grew its table")
+    @StackTrace(false)
+    static class RegistryGrowth extends Event
+    {
+        @Label("Registry")
+        String registry;
+
+        @Label("Keys")
+        int size;
+
+        @Label("Footprint")
+        @DataAmount
+        long footprint;
+    }
+}
@@ -0,0 +1,87 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+public class ConverterEventsRecordingTest extends TestCase
+{
+    public void testEvents() throws Exception {
+        File file = File.createTempFile("events", ".jfr");
+        Recording recording = new Recording();
+        try {
+            recording.enable("storm.FileOpen");
+            recording.enable("storm.FileClose");
+            recording.enable("storm.RowBatch");
+            recording.enable("storm.ResolverMiss");
+            recording.enable("storm.RegistryGrowth");
+            recording.start();
+
+            Reader reader = ConverterEvents.fileOpened("depmap-cnv", file,
+                    new StringReader("a,b\n1,2\n3,4\n"));
+            DelimitedReader rows = new DelimitedReader(reader, ',', '"', 4);
+            int n = 0;
+            while (rows.next()) {
+                n++;
+            }
+            rows.close();
+            assertEquals(3, n);
+            ConverterEvents.resolverMiss("depmap-cnv", "NOTAGENE");
+            ItemIdRegistry registry = new ItemIdRegistry("genes");
+            for (int i = 0; i < 1000; i++) {
+                registry.put("G" + i, "1_" + i);
+            }
+
+            recording.stop();
+            recording.dump(file.toPath());
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+            Map<String, Integer> counts = new HashMap<String, Integer>();
+            long batchRows = 0;
+            long batchChars = 0;
+            for (RecordedEvent event : events) {
+                String name = event.getEventType().getName();
+                Integer count = counts.get(name);
+                counts.put(name, count == null ? 1 : count + 1);
+                if ("storm.RowBatch".equals(name)) {
+                    batchRows += event.getLong("rows");
+                    batchChars += event.getLong("chars");
+                } else if ("storm.FileClose".equals(name)) {
+                    assertEquals("depmap-cnv", event.getString("source"));
+                    assertEquals(12, event.getLong("chars"));
+                } else if ("storm.ResolverMiss".equals(name)) {
+                    assertEquals("NOTAGENE", event.getString("symbol"));
+                }
+            }
+            assertEquals(Integer.valueOf(1), counts.get("storm.FileOpen"));
+            assertEquals(Integer.valueOf(1), counts.get("storm.FileClose"));
+            assertEquals(Integer.valueOf(1), counts.get("storm.ResolverMiss"));
+            // a buffer of 4 chars
+            assertEquals(Integer.valueOf(3), counts.get("storm.RowBatch"));
+            assertEquals(3, batchRows);
+            assertEquals(12, batchChars);
+            // 512 slots grow at 342 keys, 1024 at 683
+            assertEquals(Integer.valueOf(2), counts.get("storm.RegistryGrowth"));
+        } finally {
+            recording.close();
+            file.delete();
+        }
+    }
+}
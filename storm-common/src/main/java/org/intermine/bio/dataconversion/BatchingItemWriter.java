@@ -0,0 +1,260 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * An ItemWriter that collects items and hands them to another ItemWriter with storeAll(), so
+ * that the objectstore sees a few large writes instead of one round-trip per item.
+ *
+ * A batch is flushed when it has maxItems items, when the estimated size of its items
+ * reaches maxBytes or when its first item was stored more than maxMillis ago.  The age is
+ * checked when items are stored, there is no timer thread, so a batch can wait longer while
+ * the converter isn't storing anything; flush() or close() writes what is left.  Reference
+ * lists and attributes stored on their own are written after the batch before them.
+ *
+ * The latency of every flush is recorded; getFlushHistogram() counts the flushes by the
+ * power of two of their duration in ms, and each flush is an ItemBatchStored event (see
+ * ConverterEvents).
+ *
+ * @author
+ */
+public class BatchingItemWriter implements ItemWriter
+{
+    /** Default number of items per batch */
+    public static final int DEFAULT_MAX_ITEMS = 1000;
+
+    /** Default estimated size of a batch */
+    public static final long DEFAULT_MAX_BYTES = 8L << 20;
+
+    /** Default age of a batch */
+    public static final long DEFAULT_MAX_MILLIS = 1000;
+
+    private static final Logger LOG = Logger.getLogger(BatchingItemWriter.class);
+    // the fixed part of the size of an item, attribute or reference
+    private static final int OBJECT_BYTES = 48;
+
+    private final ItemWriter writer;
+    private final int maxItems;
+    private final long maxBytes;
+    private final long maxNanos;
+    private List<Item> batch;
+    private long batchBytes;
+    private long batchStart;
+    private long flushes;
+    private long itemsFlushed;
+    private long bytesFlushed;
+    private long flushNanos;
+    private long maxFlushNanos;
+    private final long[] histogram = new long[32];
+
+    /**
+     * Constructor
+     * @param writer the ItemWriter the batches are written to
+     * @param maxItems the largest number of items in a batch
+     * @param maxBytes the largest estimated size of a batch, 0 for no limit
+     * @param maxMillis the longest time an item waits in a batch, 0 for no limit
+     */
+    public BatchingItemWriter(ItemWriter writer, int maxItems, long maxBytes, long maxMillis) {
+        this.writer = writer;
+        this.maxItems = Math.max(1, maxItems);
+        this.maxBytes = maxBytes <= 0 ? Long.MAX_VALUE : maxBytes;
+        this.maxNanos = maxMillis <= 0 ? Long.MAX_VALUE : maxMillis * 1000000;
+        batch = new ArrayList<Item>(this.maxItems);
+    }
+
+    /**
+     * Add an item to the batch, flushing the batch if it is full.
+     * {@inheritDoc}
+     * @return null, the item is written with its batch
+     */
+    @Override
+    public Integer store(Item item) throws ObjectStoreException {
+        if (batch.isEmpty()) {
+            batchStart = System.nanoTime();
+        }
+        batch.add(item);
+        batchBytes += estimateSize(item);
+        if (batch.size() >= maxItems || batchBytes >= maxBytes
+                || (maxNanos != Long.MAX_VALUE && System.nanoTime() - batchStart >= maxNanos)) {
+            flush();
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void storeAll(Collection<Item> items) throws ObjectStoreException {
+        for (Item item : items) {
+            store(item);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(ReferenceList refList, Integer itemId) throws ObjectStoreException {
+        flush();
+        writer.store(refList, itemId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(Attribute att, Integer itemId) throws ObjectStoreException {
+        flush();
+        writer.store(att, itemId);
+    }
+
+    /**
+     * Write the items collected so far.
+     * @throws ObjectStoreException if the items can't be stored
+     */
+    public void flush() throws ObjectStoreException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Object event = ConverterEvents.beginItemBatch();
+        long start = System.nanoTime();
+        writer.storeAll(batch);
+        long nanos = System.nanoTime() - start;
+        ConverterEvents.endItemBatch(event, "batching", batch.size(), batchBytes);
+        flushes++;
+        itemsFlushed += batch.size();
+        bytesFlushed += batchBytes;
+        flushNanos += nanos;
+        maxFlushNanos = Math.max(maxFlushNanos, nanos);
+        long millis = nanos / 1000000;
+        histogram[millis == 0 ? 0 : Math.min(histogram.length - 1,
+                64 - Long.numberOfLeadingZeros(millis))]++;
+        // the writer may keep the list
+        batch = new ArrayList<Item>(maxItems);
+        batchBytes = 0;
+    }
+
+    /**
+     * Flush and close the ItemWriter.
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws ObjectStoreException {
+        flush();
+        LOG.info(this);
+        writer.close();
+    }
+
+    /**
+     * A rough size of an item in memory, from the lengths of its strings.
+     * @param item the item
+     * @return the estimated size in bytes
+     */
+    public static long estimateSize(Item item) {
+        long chars = length(item.getIdentifier()) + length(item.getClassName())
+            + length(item.getImplementations());
+        long objects = 1;
+        if (item.getAttributes() != null) {
+            for (Attribute att : item.getAttributes()) {
+                chars += length(att.getName()) + length(att.getValue());
+                objects++;
+            }
+        }
+        if (item.getReferences() != null) {
+            for (Reference ref : item.getReferences()) {
+                chars += length(ref.getName()) + length(ref.getRefId());
+                objects++;
+            }
+        }
+        if (item.getCollections() != null) {
+            for (ReferenceList refs : item.getCollections()) {
+                chars += length(refs.getName()) + length(refs.getRefIds());
+                objects++;
+            }
+        }
+        return objects * OBJECT_BYTES + 2 * chars;
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    /**
+     * @return the number of batches written
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * @return the number of items written
+     */
+    public long getItemsFlushed() {
+        return itemsFlushed;
+    }
+
+    /**
+     * @return the estimated size of the items written
+     */
+    public long getBytesFlushed() {
+        return bytesFlushed;
+    }
+
+    /**
+     * @return the time in ms spent in storeAll()
+     */
+    public long getFlushMillis() {
+        return flushNanos / 1000000;
+    }
+
+    /**
+     * @return the longest storeAll() in ms
+     */
+    public long getMaxFlushMillis() {
+        return maxFlushNanos / 1000000;
+    }
+
+    /**
+     * @return the number of flushes that took under 1 ms at index 0 and from 2^(i-1) to
+     * 2^i - 1 ms at index i
+     */
+    public long[] getFlushHistogram() {
+        return histogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(flushes).append(" flushes of ").append(itemsFlushed).append(" items (")
+            .append(bytesFlushed >> 10).append(" KB) in ").append(getFlushMillis())
+            .append(" ms, longest ").append(getMaxFlushMillis()).append(" ms, by ms:");
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] > 0) {
+                sb.append(' ').append(i == 0 ? "<1" : "<" + (1L << i)).append('=')
+                    .append(histogram[i]);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,262 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses BGZF (blocked gzip, as written by bgzip) with the blocks inflated in parallel.
+ *
+ * A BGZF file is a series of gzip members of at most 64KB each, whose header records the
+ * compressed size of the member.  The blocks can therefore be read off the file without
+ * inflating them and handed to a thread pool; this stream keeps up to readAhead blocks in
+ * flight and returns their contents in file order, so the reader only waits when
+ * decompression on all cores together is slower than its own parsing.
+ *
+ * @author
+ */
+public class BgzfInputStream extends InputStream
+{
+    private static final int GZIP_ID1 = 31;
+    private static final int GZIP_ID2 = 139;
+    private static final int FEXTRA = 4;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final DataInputStream in;
+    private final ExecutorService executor;
+    private final int readAhead;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+    private boolean eof;
+    private byte[] block = EMPTY;
+    private int position;
+    private long blocksRead;
+
+    /**
+     * Decompress on the common fork/join pool, with two blocks per core in flight.
+     * @param in the compressed data
+     */
+    public BgzfInputStream(InputStream in) {
+        this(in, ForkJoinPool.commonPool(), 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     * @param in the compressed data
+     * @param executor the pool the blocks are inflated on
+     * @param readAhead the number of blocks to decompress ahead of the reader
+     */
+    public BgzfInputStream(InputStream in, ExecutorService executor, int readAhead) {
+        this.in = new DataInputStream(new BufferedInputStream(in, 1 << 17));
+        this.executor = executor;
+        this.readAhead = Math.max(1, readAhead);
+    }
+
+    /**
+     * Whether a file is BGZF rather than plain gzip, from the header of its first block.
+     * @param file the file
+     * @return true if the file starts with a BGZF block
+     * @throws IOException if the file can't be read
+     */
+    public static boolean isBgzf(File file) throws IOException {
+        DataInputStream is = new DataInputStream(new FileInputStream(file));
+        try {
+            return readBlockSize(is) > 0;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            is.close();
+        }
+    }
+
+    // the size of the block whose header is next in the stream, -1 at the end of the data;
+    // the 18 byte header has been read when this returns
+    private static int readBlockSize(DataInputStream is) throws IOException {
+        int id1 = is.read();
+        if (id1 < 0) {
+            return -1;
+        }
+        if (id1 != GZIP_ID1 || is.readUnsignedByte() != GZIP_ID2 || is.readUnsignedByte() != 8
+                || (is.readUnsignedByte() & FEXTRA) == 0) {
+            throw new IOException("not a BGZF block");
+        }
+        // MTIME, XFL, OS
+        is.readFully(new byte[6]);
+        int xlen = readShort(is);
+        int blockSize = -1;
+        int read = 0;
+        while (read < xlen) {
+            int si1 = is.readUnsignedByte();
+            int si2 = is.readUnsignedByte();
+            int slen = readShort(is);
+            if (si1 == 'B' && si2 == 'C' && slen == 2 && blockSize < 0) {
+                blockSize = readShort(is) + 1;
+            } else {
+                is.readFully(new byte[slen]);
+            }
+            read += 4 + slen;
+        }
+        if (blockSize < 0 || xlen != 6) {
+            // the compressed data offset below relies on BC being the only subfield
+            throw new IOException("not a BGZF block");
+        }
+        return blockSize;
+    }
+
+    private static int readShort(DataInputStream is) throws IOException {
+        return is.readUnsignedByte() | (is.readUnsignedByte() << 8);
+    }
+
+    /**
+     * @return the number of compressed blocks read so far
+     */
+    public long getBlocksRead() {
+        return blocksRead;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == block.length && !nextBlock()) {
+            return -1;
+        }
+        return block[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == block.length && !nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    private boolean nextBlock() throws IOException {
+        do {
+            while (!eof && pending.size() < readAhead) {
+                int blockSize = readBlockSize(in);
+                if (blockSize < 0) {
+                    eof = true;
+                    break;
+                }
+                // header (18 bytes) already read, the rest is data, CRC32 and ISIZE
+                final byte[] compressed = new byte[blockSize - 18];
+                try {
+                    in.readFully(compressed);
+                } catch (EOFException e) {
+                    throw new IOException("truncated BGZF block " + blocksRead, e);
+                }
+                final long index = blocksRead++;
+                pending.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                        return inflate(compressed, index);
+                    }
+                }));
+            }
+            if (pending.isEmpty()) {
+                return false;
+            }
+            block = await(pending.poll());
+            position = 0;
+            // the last block of a BGZF file is empty
+        } while (block.length == 0);
+        return true;
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while decompressing", e);
+        } catch (ExecutionException e) {
+            // fork/join pools wrap checked exceptions of a Callable in a RuntimeException
+            for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+                if (t instanceof IOException) {
+                    throw new IOException(t.getMessage(), t);
+                }
+            }
+            throw new IOException("failed to decompress", e.getCause());
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, long index) throws IOException {
+        int n = compressed.length;
+        long crc = intAt(compressed, n - 8) & 0xffffffffL;
+        int size = intAt(compressed, n - 4);
+        byte[] data = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed, 0, n - 8);
+            int done = 0;
+            while (done < size) {
+                int k = inflater.inflate(data, done, size - done);
+                if (k == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                done += k;
+            }
+            if (done != size) {
+                throw new IOException("BGZF block " + index + " is shorter than its ISIZE");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt BGZF block " + index, e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 check = new CRC32();
+        check.update(data, 0, size);
+        if (check.getValue() != crc) {
+            throw new IOException("CRC mismatch in BGZF block " + index);
+        }
+        return data;
+    }
+
+    private static int intAt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16
+            | (b[i + 3] & 0xff) << 24;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+        in.close();
+    }
+}
@@ -0,0 +1,316 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * Checkpoints of the conversion of one big data file, so that a run that died carries on
+ * from the last checkpoint instead of from the start.
+ *
+ * The items stored between two checkpoints are recorded in a journal, a spool file (see
+ * SpoolItemWriter).  A checkpoint finishes the journal and writes the state of the run that
+ * the rest of the file depends on: the position and row number in the data file, the last
+ * item identifier created per class, in the order the classes were first created, and the
+ * entries of the converter's registries.  The state file is replaced in one rename, so the
+ * last complete checkpoint always survives; a journal the state doesn't count yet is
+ * overwritten.  A resumed run stores the items of the journals again, restores the state
+ * and reads on from the position.
+ *
+ * The state only counts for the data file it was taken on, with the same size and
+ * modification time, and for the same version of the converter.  Not thread-safe.
+ *
+ * @author
+ */
+public class ConverterCheckpoint
+{
+    private static final byte[] MAGIC = {'S', 'T', 'O', 'R', 'M', 'C', 'K', 'P'};
+    private static final int VERSION = 1;
+    private static final String STATE_SUFFIX = ".checkpoint";
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private final File dir;
+    private final String name;
+    private final String fingerprint;
+    private final File dataFile;
+    private long position;
+    private long rowNumber;
+    private long rowsFiltered;
+    private int journals;
+    private final Map<String, String> lastIds = new LinkedHashMap<String, String>();
+    // registry name -> keys and item identifiers, one after the other
+    private final Map<String, List<String>> registries =
+        new LinkedHashMap<String, List<String>>();
+    private SpoolItemWriter journal;
+
+    /**
+     * Constructor
+     * @param dir the directory of the checkpoints
+     * @param name the name of the files, e.g. the source name
+     * @param fingerprint what the conversion depends on besides the data file, e.g. the name
+     * and version of the converter
+     * @param dataFile the data file
+     * @throws IOException if the directory can't be created
+     */
+    public ConverterCheckpoint(File dir, String name, String fingerprint, File dataFile)
+        throws IOException {
+        this.dir = dir;
+        this.name = name;
+        this.fingerprint = fingerprint;
+        this.dataFile = dataFile;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("failed to create directory: " + dir);
+        }
+    }
+
+    /**
+     * Read the last checkpoint.
+     * @return true if there is a complete checkpoint of this data file and fingerprint
+     * @throws IOException if the checkpoint can't be read
+     */
+    public boolean load() throws IOException {
+        File file = getStateFile();
+        if (!file.exists()) {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < magic.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException(file + " is not a checkpoint");
+                }
+            }
+            if (in.readInt() != VERSION || !fingerprint.equals(in.readUTF())
+                    || !dataFile.getAbsolutePath().equals(in.readUTF())
+                    || in.readLong() != dataFile.length()
+                    || in.readLong() != dataFile.lastModified()) {
+                return false;
+            }
+            position = in.readLong();
+            rowNumber = in.readLong();
+            rowsFiltered = in.readLong();
+            journals = in.readInt();
+            lastIds.clear();
+            for (int i = in.readInt(); i > 0; i--) {
+                lastIds.put(in.readUTF(), in.readUTF());
+            }
+            registries.clear();
+            for (int i = in.readInt(); i > 0; i--) {
+                String registry = in.readUTF();
+                int size = in.readInt();
+                List<String> entries = new ArrayList<String>(size * 2);
+                for (int j = 0; j < size * 2; j++) {
+                    entries.add(in.readUTF());
+                }
+                registries.put(registry, entries);
+            }
+        } catch (EOFException e) {
+            throw new IOException(file + " is truncated", e);
+        } finally {
+            in.close();
+        }
+        for (int i = 1; i <= journals; i++) {
+            if (!SpoolReplayer.isComplete(getJournalFile(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the position in the data file of the last checkpoint, see
+     * DelimitedReader.getPosition()
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the number of rows read up to the last checkpoint
+     */
+    public long getRowNumber() {
+        return rowNumber;
+    }
+
+    /**
+     * @return the number of rows skipped by the row filter up to the last checkpoint
+     */
+    public long getRowsFiltered() {
+        return rowsFiltered;
+    }
+
+    /**
+     * @return the last item identifier created per class up to the last checkpoint, in the
+     * order the classes were first created
+     */
+    public Map<String, String> getLastIds() {
+        return Collections.unmodifiableMap(lastIds);
+    }
+
+    /**
+     * Put the entries of the last checkpoint into the registries of the same name.
+     * @param targets the registries
+     */
+    public void restore(List<ItemIdRegistry> targets) {
+        for (ItemIdRegistry registry : targets) {
+            List<String> entries = registries.get(registry.getName());
+            if (entries != null) {
+                for (int i = 0; i < entries.size(); i += 2) {
+                    registry.put(entries.get(i), entries.get(i + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Store the items of the journals of the last checkpoint again.
+     * @param writer the writer
+     * @return the number of items
+     * @throws IOException if a journal can't be read
+     * @throws ObjectStoreException if the items can't be stored
+     */
+    public long replay(ItemWriter writer) throws IOException, ObjectStoreException {
+        long items = 0;
+        for (int i = 1; i <= journals; i++) {
+            items += new SpoolReplayer(getJournalFile(i)).replay(writer);
+        }
+        return items;
+    }
+
+    /**
+     * @return the writer the items stored since the last checkpoint are recorded with
+     * @throws ObjectStoreException if the journal can't be created
+     */
+    public ItemWriter getJournal() throws ObjectStoreException {
+        if (journal == null) {
+            File file = getJournalFile(journals + 1);
+            try {
+                journal = new SpoolItemWriter(file, null);
+            } catch (IOException e) {
+                throw new ObjectStoreException("failed to open " + file, e);
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Take a checkpoint: finish the journal and write the state.
+     * @param newPosition the position in the data file up to which the items are stored
+     * @param newRowNumber the number of rows read up to the position
+     * @param newRowsFiltered the number of rows skipped by the row filter up to the position
+     * @param newLastIds the last item identifier created per class, in the order the classes
+     * were first created
+     * @param sources the registries
+     * @throws IOException if the state can't be written
+     * @throws ObjectStoreException if the journal can't be finished
+     */
+    public void write(long newPosition, long newRowNumber, long newRowsFiltered,
+            Map<String, String> newLastIds, List<ItemIdRegistry> sources)
+        throws IOException, ObjectStoreException {
+        getJournal();
+        journal.finish();
+        journal = null;
+        File file = getStateFile();
+        File tmp = new File(dir, file.getName() + ".tmp");
+        FileOutputStream os = new FileOutputStream(tmp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        try {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(fingerprint);
+            out.writeUTF(dataFile.getAbsolutePath());
+            out.writeLong(dataFile.length());
+            out.writeLong(dataFile.lastModified());
+            out.writeLong(newPosition);
+            out.writeLong(newRowNumber);
+            out.writeLong(newRowsFiltered);
+            out.writeInt(journals + 1);
+            out.writeInt(newLastIds.size());
+            for (Map.Entry<String, String> entry : newLastIds.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            out.writeInt(sources.size());
+            for (ItemIdRegistry registry : sources) {
+                out.writeUTF(registry.getName());
+                out.writeInt(registry.size());
+                for (int i = 0; i < registry.size(); i++) {
+                    out.writeUTF(registry.getKey(i));
+                    out.writeUTF(registry.getId(i));
+                }
+            }
+            out.flush();
+            os.getFD().sync();
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        journals++;
+        position = newPosition;
+        rowNumber = newRowNumber;
+        rowsFiltered = newRowsFiltered;
+    }
+
+    /**
+     * Delete the checkpoint and the journals, e.g. once the data file is converted.
+     */
+    public void delete() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (ObjectStoreException e) {
+                // deleted anyway
+            }
+            journal = null;
+        }
+        getStateFile().delete();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            String prefix = name + JOURNAL_SUFFIX + "-";
+            for (File file : files) {
+                if (file.getName().startsWith(prefix)) {
+                    file.delete();
+                }
+            }
+        }
+        journals = 0;
+    }
+
+    private File getStateFile() {
+        return new File(dir, name + STATE_SUFFIX);
+    }
+
+    private File getJournalFile(int journalNumber) {
+        return new File(dir, name + JOURNAL_SUFFIX + "-" + journalNumber + ".spool");
+    }
+}
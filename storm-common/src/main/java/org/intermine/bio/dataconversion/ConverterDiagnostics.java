@@ -0,0 +1,261 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The problems a converter met in the rows of a data file, logged once when the file is done
+ * instead of a line per row: for each reason the number of problems, the identifiers (gene
+ * symbols, transcripts, ...) with the most problems and the first few rows as they were.
+ *
+ * A file starts with startFile() and is logged, if it had problems, by the next startFile()
+ * or by endFile().  Only the first maxIdentifiers distinct identifiers of a reason are
+ * counted one by one, the rest are counted together, so that a file where nothing resolves
+ * doesn't keep every identifier.  Rows are only turned into text when they are sampled.  Not
+ * thread-safe.
+ *
+ * @author
+ */
+public class ConverterDiagnostics
+{
+    /** Default number of identifiers logged per reason */
+    public static final int DEFAULT_TOP = 10;
+
+    /** Default number of rows logged per reason */
+    public static final int DEFAULT_SAMPLES = 3;
+
+    /** Default number of distinct identifiers counted per reason */
+    public static final int DEFAULT_MAX_IDENTIFIERS = 10000;
+
+    private static final Logger LOG = Logger.getLogger(ConverterDiagnostics.class);
+    // longest sampled row, in chars
+    private static final int MAX_ROW_LENGTH = 300;
+
+    private final String sourceName;
+    private final int top;
+    private final int samples;
+    private final int maxIdentifiers;
+    private String file;
+    private final Map<String, Reason> reasons = new LinkedHashMap<String, Reason>();
+    private long filesWithProblems;
+
+    /**
+     * Constructor
+     * @param sourceName the name of the source, for the log
+     * @param top the number of identifiers logged per reason
+     * @param samples the number of rows logged per reason
+     * @param maxIdentifiers the number of distinct identifiers counted per reason
+     */
+    public ConverterDiagnostics(String sourceName, int top, int samples, int maxIdentifiers) {
+        this.sourceName = sourceName;
+        this.top = top;
+        this.samples = samples;
+        this.maxIdentifiers = maxIdentifiers;
+    }
+
+    /**
+     * Log the problems of the file before, if it had any, and collect those of another.
+     * @param name the name of the file
+     */
+    public void startFile(String name) {
+        endFile();
+        file = name;
+    }
+
+    /**
+     * Log the problems of the current file, if it had any.
+     */
+    public void endFile() {
+        if (!reasons.isEmpty()) {
+            filesWithProblems++;
+            LOG.warn(getSummary());
+            reasons.clear();
+        }
+        file = null;
+    }
+
+    /**
+     * Record a problem of the current file.
+     * @param reason why the row, or a value of it, was skipped, e.g. "gene not resolved"
+     * @param identifier the identifier the problem is about, null if there isn't one
+     * @param row the row, a String[] or anything else with a useful toString(), may be null
+     */
+    public void problem(String reason, CharSequence identifier, Object row) {
+        problem(reason, identifier, row, null);
+    }
+
+    /**
+     * Record a problem of the current file.
+     * @param reason why the row, or a value of it, was skipped, e.g. "invalid row"
+     * @param identifier the identifier the problem is about, null if there isn't one
+     * @param row the row, a String[] or anything else with a useful toString(), may be null
+     * @param error the exception the row caused, may be null
+     */
+    public void problem(String reason, CharSequence identifier, Object row, Throwable error) {
+        Reason counts = reasons.get(reason);
+        if (counts == null) {
+            counts = new Reason();
+            reasons.put(reason, counts);
+        }
+        counts.count++;
+        if (identifier != null) {
+            String key = identifier.toString();
+            long[] count = counts.identifiers.get(key);
+            if (count != null) {
+                count[0]++;
+            } else if (counts.identifiers.size() < maxIdentifiers) {
+                counts.identifiers.put(key, new long[] {1});
+            } else {
+                counts.otherIdentifiers++;
+            }
+        }
+        if (counts.samples.size() < samples && (row != null || error != null)) {
+            counts.samples.add(sample(row, error));
+        }
+    }
+
+    private static String sample(Object row, Throwable error) {
+        StringBuilder sb = new StringBuilder();
+        if (row instanceof Object[]) {
+            Object[] fields = (Object[]) row;
+            for (int i = 0; i < fields.length && sb.length() < MAX_ROW_LENGTH; i++) {
+                if (i > 0) {
+                    sb.append('\t');
+                }
+                sb.append(fields[i]);
+            }
+        } else if (row != null) {
+            sb.append(row);
+        }
+        if (sb.length() > MAX_ROW_LENGTH) {
+            sb.setLength(MAX_ROW_LENGTH);
+            sb.append("...");
+        }
+        if (error != null) {
+            sb.append(sb.length() > 0 ? " - " : "").append(error);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param reason a reason given to problem()
+     * @return the number of problems of the current file with the reason
+     */
+    public long getCount(String reason) {
+        Reason counts = reasons.get(reason);
+        return counts == null ? 0 : counts.count;
+    }
+
+    /**
+     * @param reason a reason given to problem()
+     * @return the identifiers of the current file with the most problems for the reason,
+     * most first, at most top of them
+     */
+    public List<String> getTopIdentifiers(String reason) {
+        Reason counts = reasons.get(reason);
+        if (counts == null) {
+            return Collections.emptyList();
+        }
+        List<String> identifiers = new ArrayList<String>();
+        for (Map.Entry<String, long[]> entry : counts.top(top)) {
+            identifiers.add(entry.getKey());
+        }
+        return identifiers;
+    }
+
+    /**
+     * @param reason a reason given to problem()
+     * @return the rows sampled from the current file for the reason
+     */
+    public List<String> getSamples(String reason) {
+        Reason counts = reasons.get(reason);
+        return counts == null ? Collections.<String>emptyList() : counts.samples;
+    }
+
+    /**
+     * @return the number of files that had problems and were logged
+     */
+    public long getFilesWithProblems() {
+        return filesWithProblems;
+    }
+
+    /**
+     * @return the problems of the current file, as they are logged
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder(sourceName);
+        if (file != null) {
+            sb.append(' ').append(file);
+        }
+        long total = 0;
+        for (Reason counts : reasons.values()) {
+            total += counts.count;
+        }
+        sb.append(": ").append(total).append(" problems");
+        for (Map.Entry<String, Reason> entry : reasons.entrySet()) {
+            Reason counts = entry.getValue();
+            sb.append("\n  ").append(entry.getKey()).append(": ").append(counts.count);
+            List<Map.Entry<String, long[]>> topIdentifiers = counts.top(top);
+            if (!topIdentifiers.isEmpty()) {
+                sb.append(", most often");
+                String separator = " ";
+                for (Map.Entry<String, long[]> identifier : topIdentifiers) {
+                    sb.append(separator).append(identifier.getKey()).append(" (")
+                        .append(identifier.getValue()[0]).append(')');
+                    separator = ", ";
+                }
+                int others = counts.identifiers.size() - topIdentifiers.size();
+                if (others > 0 || counts.otherIdentifiers > 0) {
+                    sb.append(" and ").append(others).append(counts.otherIdentifiers > 0
+                            ? "+" : "").append(" others");
+                }
+            }
+            for (String sample : counts.samples) {
+                sb.append("\n    e.g. ").append(sample);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The problems with one reason.
+     */
+    private static class Reason
+    {
+        long count;
+        final Map<String, long[]> identifiers = new HashMap<String, long[]>();
+        // problems of identifiers beyond maxIdentifiers
+        long otherIdentifiers;
+        final List<String> samples = new ArrayList<String>();
+
+        List<Map.Entry<String, long[]>> top(int n) {
+            List<Map.Entry<String, long[]>> entries =
+                new ArrayList<Map.Entry<String, long[]>>(identifiers.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+                @Override
+                public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) {
+                    int c = Long.compare(b.getValue()[0], a.getValue()[0]);
+                    return c != 0 ? c : a.getKey().compareTo(b.getKey());
+                }
+            });
+            return entries.subList(0, Math.min(n, entries.size()));
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.Reader;
+
+/**
+ * JDK Flight Recorder events of the converters, so that a recording of a load shows what the
+ * converters were doing next to the JVM's own events.  Record a run with e.g.
+ * -XX:StartFlightRecording=filename=load.jfr,settings=profile and open the file in JDK
+ * Mission Control, or list the events with
+ * <pre>jfr print --categories STORM load.jfr</pre>
+ *
+ * The events, all in the category STORM:
+ * <table summary="events">
+ * <tr><th>Name</th><th>Kind</th><th>Fields</th><th>Emitted</th></tr>
+ * <tr><td>storm.FileOpen</td><td>instant</td><td>source, path, bytes</td>
+ * <td>when a data file is opened with openDataFile() or openParallel()</td></tr>
+ * <tr><td>storm.FileClose</td><td>duration, open to close</td><td>source, path, chars</td>
+ * <td>when a reader from openDataFile() is closed; files that are never closed have no
+ * FileClose</td></tr>
+ * <tr><td>storm.RowBatch</td><td>duration</td><td>rows, chars</td>
+ * <td>by a DelimitedReader for each buffer of data it reads, from one read to the next, so
+ * the duration includes the time the converter spent on the rows</td></tr>
+ * <tr><td>storm.ChunkParsed</td><td>duration</td><td>path, start, end, rows, chars</td>
+ * <td>by ParallelRowEngine for each chunk a worker thread parsed</td></tr>
+ * <tr><td>storm.ResolverMiss</td><td>instant</td><td>source, symbol</td>
+ * <td>when a gene symbol doesn't resolve to exactly one gene</td></tr>
+ * <tr><td>storm.ItemBatchStored</td><td>duration</td><td>writer, items, bytes</td>
+ * <td>when BatchingItemWriter flushes a batch (writer "batching") or the thread of
+ * PipelinedItemWriter writes one (writer "pipeline", bytes 0)</td></tr>
+ * <tr><td>storm.RegistryGrowth</td><td>instant</td><td>registry, size, footprint</td>
+ * <td>when an ItemIdRegistry grows its table</td></tr>
+ * </table>
+ *
+ * None of the events records a stack trace.  The event objects are only created while a
+ * recording has the event enabled.  The event classes and the Recorder that emits them,
+ * JfrRecorder, are in the jfr source set of storm-common, compiled against the jdk.jfr of the
+ * JDK that builds it, so that this class and the rest of the main classes compile for Java 8
+ * without it.  JfrRecorder is loaded by name, and only on a JVM that has jdk.jfr; elsewhere
+ * nothing is emitted.  The methods here hand out the events as Object so that callers don't
+ * refer to them.
+ *
+ * @author
+ */
+public final class ConverterEvents
+{
+    // null if the JVM has no jdk.jfr or the jar no JfrRecorder
+    private static final Recorder RECORDER = loadRecorder();
+
+    private ConverterEvents() {
+        // static methods only
+    }
+
+    private static Recorder loadRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (Recorder) Class.forName(ConverterEvents.class.getPackage().getName()
+                    + ".JfrRecorder").getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Emit a FileOpen event and, if FileClose is enabled, wrap the reader so that closing it
+     * emits a FileClose event.
+     * @param source the name of the source
+     * @param file the data file
+     * @param reader the reader of the file
+     * @return the reader to use
+     */
+    public static Reader fileOpened(String source, File file, Reader reader) {
+        return RECORDER == null ? reader : RECORDER.fileOpened(source, file, reader);
+    }
+
+    /**
+     * Emit a FileOpen event for a file that isn't read through a Reader.
+     * @param source the name of the source
+     * @param file the data file
+     */
+    public static void fileOpened(String source, File file) {
+        if (RECORDER != null) {
+            RECORDER.fileOpened(source, file);
+        }
+    }
+
+    /**
+     * @return a RowBatch event that has begun, or null if it isn't recorded
+     */
+    public static Object beginRowBatch() {
+        return RECORDER == null ? null : RECORDER.begin(Recorder.ROW_BATCH);
+    }
+
+    /**
+     * @param event the event from beginRowBatch(), may be null
+     * @param rows the number of rows of the batch
+     * @param chars the number of chars of the batch
+     */
+    public static void endRowBatch(Object event, long rows, long chars) {
+        if (event != null) {
+            RECORDER.endRowBatch(event, rows, chars);
+        }
+    }
+
+    /**
+     * @return a ChunkParsed event that has begun, or null if it isn't recorded
+     */
+    public static Object beginChunk() {
+        return RECORDER == null ? null : RECORDER.begin(Recorder.CHUNK_PARSED);
+    }
+
+    /**
+     * @param event the event from beginChunk(), may be null
+     * @param file the file of the chunk
+     * @param start the offset of the chunk
+     * @param end the offset after the chunk
+     * @param rows the number of rows parsed
+     * @param chars the number of chars parsed
+     */
+    public static void endChunk(Object event, File file, long start, long end, long rows,
+            long chars) {
+        if (event != null) {
+            RECORDER.endChunk(event, file, start, end, rows, chars);
+        }
+    }
+
+    /**
+     * @param source the name of the source
+     * @param symbol the gene symbol that didn't resolve
+     */
+    public static void resolverMiss(String source, String symbol) {
+        if (RECORDER != null) {
+            RECORDER.resolverMiss(source, symbol);
+        }
+    }
+
+    /**
+     * @return an ItemBatchStored event that has begun, or null if it isn't recorded
+     */
+    public static Object beginItemBatch() {
+        return RECORDER == null ? null : RECORDER.begin(Recorder.ITEM_BATCH_STORED);
+    }
+
+    /**
+     * @param event the event from beginItemBatch(), may be null
+     * @param writer the writer that stored the batch
+     * @param items the number of items
+     * @param bytes the estimated size of the items, 0 if unknown
+     */
+    public static void endItemBatch(Object event, String writer, long items, long bytes) {
+        if (event != null) {
+            RECORDER.endItemBatch(event, writer, items, bytes);
+        }
+    }
+
+    /**
+     * @param registry the name of the registry
+     * @param size the number of keys
+     * @param footprint the estimated heap size of the registry
+     */
+    public static void registryGrown(String registry, int size, long footprint) {
+        if (RECORDER != null) {
+            RECORDER.registryGrown(registry, size, footprint);
+        }
+    }
+
+    /**
+     * Creates and commits the events, see JfrRecorder.
+     */
+    interface Recorder
+    {
+        /** A RowBatch event, see begin() */
+        int ROW_BATCH = 0;
+        /** A ChunkParsed event, see begin() */
+        int CHUNK_PARSED = 1;
+        /** An ItemBatchStored event, see begin() */
+        int ITEM_BATCH_STORED = 2;
+
+        /**
+         * @param source the name of the source
+         * @param file the data file
+         * @param reader the reader of the file
+         * @return the reader to use
+         */
+        Reader fileOpened(String source, File file, Reader reader);
+
+        /**
+         * @param source the name of the source
+         * @param file the data file
+         */
+        void fileOpened(String source, File file);
+
+        /**
+         * @param type ROW_BATCH, CHUNK_PARSED or ITEM_BATCH_STORED
+         * @return the event, begun, or null if it isn't recorded
+         */
+        Object begin(int type);
+
+        /**
+         * @param event a RowBatch from begin()
+         * @param rows the number of rows of the batch
+         * @param chars the number of chars of the batch
+         */
+        void endRowBatch(Object event, long rows, long chars);
+
+        /**
+         * @param event a ChunkParsed from begin()
+         * @param file the file of the chunk
+         * @param start the offset of the chunk
+         * @param end the offset after the chunk
+         * @param rows the number of rows parsed
+         * @param chars the number of chars parsed
+         */
+        void endChunk(Object event, File file, long start, long end, long rows, long chars);
+
+        /**
+         * @param source the name of the source
+         * @param symbol the gene symbol that didn't resolve
+         */
+        void resolverMiss(String source, String symbol);
+
+        /**
+         * @param event an ItemBatchStored from begin()
+         * @param writer the writer that stored the batch
+         * @param items the number of items
+         * @param bytes the estimated size of the items, 0 if unknown
+         */
+        void endItemBatch(Object event, String writer, long items, long bytes);
+
+        /**
+         * @param registry the name of the registry
+         * @param size the number of keys
+         * @param footprint the estimated heap size of the registry
+         */
+        void registryGrown(String registry, int size, long footprint);
+    }
+}
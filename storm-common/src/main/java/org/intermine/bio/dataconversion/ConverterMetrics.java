@@ -0,0 +1,359 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.log4j.Logger;
+
+/**
+ * What a converter did in a run: the files and rows it read, the items it created and stored
+ * by class, the rows it skipped by reason, the gene symbols the resolver did and didn't
+ * resolve and the wall time of each phase.  Written as a JSON report when the converter is
+ * closed, see report().
+ *
+ * Phases follow each other: starting a phase ends the one before, and the time of phases
+ * with the same name is added up.  A converter that reads thousands of files names at most
+ * MAX_PHASES phases, the time of the later ones goes to "other".  Not thread-safe, the
+ * counts are made on the thread that runs the converter.
+ *
+ * @author
+ */
+public class ConverterMetrics
+{
+    /** Most phases reported by name */
+    public static final int MAX_PHASES = 100;
+
+    private static final Logger LOG = Logger.getLogger(ConverterMetrics.class);
+
+    private final String sourceName;
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private long files;
+    private long fileBytes;
+    private long rows;
+    private long chars;
+    private long resolverHits;
+    private long resolverMisses;
+    private long referenceListsStored;
+    private final Map<String, long[]> itemsCreated = new LinkedHashMap<String, long[]>();
+    private final Map<String, long[]> itemsStored = new LinkedHashMap<String, long[]>();
+    private final Map<String, long[]> skipped = new LinkedHashMap<String, long[]>();
+    // phase name -> nanos
+    private final Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+    private String phase;
+    private long phaseStart;
+
+    /**
+     * Constructor, starts the "setup" phase.
+     * @param sourceName the name of the source
+     */
+    public ConverterMetrics(String sourceName) {
+        this.sourceName = sourceName;
+        startPhase("setup");
+    }
+
+    /**
+     * @return the name of the source
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * Count a data file that is opened.
+     * @param file the file
+     */
+    public void fileOpened(File file) {
+        files++;
+        fileBytes += file.length();
+    }
+
+    /**
+     * Count rows read some other way than with a DelimitedReader.
+     * @param n the number of rows
+     */
+    public void rowsRead(long n) {
+        rows += n;
+    }
+
+    /**
+     * Count the rows and chars a reader read, the header row included, and the rows its row
+     * filter skipped; call it once the reader is done.
+     * @param reader the reader
+     */
+    public void rowsRead(DelimitedReader reader) {
+        rows += reader.getRowNumber();
+        chars += reader.getCharsRead();
+        skipFiltered(reader.getRowsFiltered());
+    }
+
+    /**
+     * Count the rows a ParallelRowEngine read, see rowsRead(DelimitedReader).
+     * @param engine the engine
+     */
+    public void rowsRead(ParallelRowEngine engine) {
+        rows += engine.getRowsRead();
+        chars += engine.getCharsRead();
+        skipFiltered(engine.getRowsFiltered());
+    }
+
+    private void skipFiltered(long n) {
+        if (n > 0) {
+            rows += n;
+            add(skipped, "row filter", n);
+        }
+    }
+
+    /**
+     * @param className the class of an item that was created
+     */
+    public void itemCreated(String className) {
+        add(itemsCreated, className, 1);
+    }
+
+    /**
+     * @param className the class of an item that was stored
+     */
+    public void itemStored(String className) {
+        add(itemsStored, className, 1);
+    }
+
+    /**
+     * Count a reference list stored on its own.
+     */
+    public void referenceListStored() {
+        referenceListsStored++;
+    }
+
+    /**
+     * Count a row, or a value of a row, that the converter didn't turn into an item.
+     * @param reason why, e.g. "gene not resolved"
+     */
+    public void skip(String reason) {
+        add(skipped, reason, 1);
+    }
+
+    /**
+     * Count a lookup of a gene symbol in the resolver.
+     * @param hit true if the symbol resolved to a gene
+     */
+    public void resolved(boolean hit) {
+        if (hit) {
+            resolverHits++;
+        } else {
+            resolverMisses++;
+        }
+    }
+
+    /**
+     * End the current phase and start another.
+     * @param name the name of the phase
+     */
+    public void startPhase(String name) {
+        endPhase();
+        if (!phases.containsKey(name) && phases.size() >= MAX_PHASES) {
+            name = "other";
+        }
+        phase = name;
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * End the current phase, if there is one.
+     */
+    public void endPhase() {
+        if (phase != null) {
+            add(phases, phase, System.nanoTime() - phaseStart);
+            phase = null;
+        }
+    }
+
+    private static void add(Map<String, long[]> counts, String key, long n) {
+        long[] count = counts.get(key);
+        if (count == null) {
+            count = new long[1];
+            counts.put(key, count);
+        }
+        count[0] += n;
+    }
+
+    private static long total(Map<String, long[]> counts) {
+        long total = 0;
+        for (long[] count : counts.values()) {
+            total += count[0];
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of rows read
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @param reason a reason given to skip()
+     * @return the number of rows skipped for it
+     */
+    public long getSkipped(String reason) {
+        long[] count = skipped.get(reason);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * @param className a class
+     * @return the number of items of the class that were stored
+     */
+    public long getItemsStored(String className) {
+        long[] count = itemsStored.get(className);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * @return the number of items that were stored
+     */
+    public long getItemsStored() {
+        return total(itemsStored);
+    }
+
+    /**
+     * @return the number of symbols that resolved
+     */
+    public long getResolverHits() {
+        return resolverHits;
+    }
+
+    /**
+     * @return the number of symbols that didn't resolve
+     */
+    public long getResolverMisses() {
+        return resolverMisses;
+    }
+
+    /**
+     * The report, with the phase that is running counted up to now.
+     * @return the metrics as a JSON object
+     */
+    public String toJson() {
+        long now = System.nanoTime();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"source\": ").append(quote(sourceName)).append(",\n");
+        sb.append("  \"start\": ").append(quote(format.format(new Date(startMillis))))
+            .append(",\n");
+        sb.append("  \"wallMillis\": ").append((now - startNanos) / 1000000).append(",\n");
+        sb.append("  \"files\": ").append(files).append(",\n");
+        sb.append("  \"fileBytes\": ").append(fileBytes).append(",\n");
+        sb.append("  \"rows\": ").append(rows).append(",\n");
+        sb.append("  \"chars\": ").append(chars).append(",\n");
+        sb.append("  \"itemsCreated\": ").append(total(itemsCreated)).append(",\n");
+        sb.append("  \"itemsStored\": ").append(total(itemsStored)).append(",\n");
+        sb.append("  \"referenceListsStored\": ").append(referenceListsStored).append(",\n");
+        sb.append("  \"rowsSkipped\": ").append(total(skipped)).append(",\n");
+        sb.append("  \"resolver\": {\"hits\": ").append(resolverHits).append(", \"misses\": ")
+            .append(resolverMisses).append("},\n");
+        sb.append("  \"itemsCreatedByClass\": ");
+        appendCounts(sb, itemsCreated, 1);
+        sb.append(",\n  \"itemsStoredByClass\": ");
+        appendCounts(sb, itemsStored, 1);
+        sb.append(",\n  \"skippedByReason\": ");
+        appendCounts(sb, skipped, 1);
+        Map<String, long[]> phaseMillis = new LinkedHashMap<String, long[]>();
+        for (Map.Entry<String, long[]> entry : phases.entrySet()) {
+            phaseMillis.put(entry.getKey(), new long[] {entry.getValue()[0]});
+        }
+        if (phase != null) {
+            add(phaseMillis, phase, now - phaseStart);
+        }
+        sb.append(",\n  \"phaseMillis\": ");
+        appendCounts(sb, phaseMillis, 1000000);
+        sb.append("\n}\n");
+        return sb.toString();
+    }
+
+    private static void appendCounts(StringBuilder sb, Map<String, long[]> counts,
+            long divisor) {
+        if (counts.isEmpty()) {
+            sb.append("{}");
+            return;
+        }
+        sb.append('{');
+        String separator = "\n";
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            sb.append(separator).append("    ").append(quote(entry.getKey())).append(": ")
+                .append(entry.getValue()[0] / divisor);
+            separator = ",\n";
+        }
+        sb.append("\n  }");
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * End the current phase and write the report where the source's properties ask for:
+     * to the storm.metrics.report file, or into the directory it names as
+     * &lt;source&gt;-metrics.json, or to the log if it isn't set.  A report that can't be
+     * written is logged instead, it doesn't fail the run.
+     * @param config the settings of the source
+     */
+    public void report(SourceConfig config) {
+        endPhase();
+        String json = toJson();
+        String path = config.get(SourceConfig.METRICS_REPORT, null);
+        if (path == null || path.isEmpty()) {
+            LOG.info(sourceName + " metrics: " + json);
+            return;
+        }
+        File file = new File(path);
+        if (file.isDirectory()) {
+            file = new File(file, sourceName + "-metrics.json");
+        }
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                    StandardCharsets.UTF_8);
+            try {
+                writer.write(json);
+            } finally {
+                writer.close();
+            }
+            LOG.info(sourceName + " metrics written to " + file);
+        } catch (IOException e) {
+            LOG.warn("failed to write " + file + ", " + sourceName + " metrics: " + json, e);
+        }
+    }
+}
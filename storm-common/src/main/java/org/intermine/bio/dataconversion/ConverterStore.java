@@ -0,0 +1,329 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.intermine.dataconversion.DataConverter;
+import org.intermine.dataconversion.DataConverterStoreHook;
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Attribute;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.ItemHelper;
+import org.intermine.xml.full.ReferenceList;
+
+/**
+ * Where the items of a StormDirectoryConverter go.  Every item goes through the store hook of
+ * the converter first, as in DataConverter.store(), is counted in the metrics,
+ * has its attribute values pooled if storm.intern = true (see InternPool) and is converted to
+ * a fulldata Item once.  The converted item is recorded in the segment of the data file being
+ * converted (see IncrementalLoad) and the journal of the checkpoint (see ConverterCheckpoint),
+ * if there are any, and written through the writers the source's properties ask for: with
+ * storm.spool set the items are also recorded in a spool file (see SpoolItemWriter), with
+ * storm.store.batch.size set they are written in batches (see BatchingItemWriter) and with
+ * storm.pipeline = true on a thread of their own (see PipelinedItemWriter).  Without any of
+ * them the items go straight to the converter's ItemWriter, as DataConverter.store() would.
+ *
+ * With storm.spool.replay = true and a complete spool file, the items of the spool are
+ * written instead, see replaySpool(), and the items stored by the converter are dropped.
+ *
+ * @author
+ */
+public class ConverterStore
+{
+    private static final Logger LOG = Logger.getLogger(ConverterStore.class);
+
+    private final ItemWriter itemWriter;
+    private final SourceConfig config;
+    private final ConverterMetrics metrics;
+    private final InternPool internPool;
+    private DataConverter converter;
+    private DataConverterStoreHook storeHook;
+    // the first of the writers, the ItemWriter if there are none
+    private ItemWriter writer;
+    private PipelinedItemWriter pipeline;
+    private BatchingItemWriter batching;
+    private SpoolItemWriter spool;
+    private SpoolReplayer replay;
+    private ItemSegment segment;
+    private ConverterCheckpoint checkpoint;
+
+    /**
+     * Constructor.  The writers are opened with the first item, or by getWriter().
+     * @param itemWriter the ItemWriter of the converter
+     * @param config the settings of the source
+     * @param metrics the metrics the items are counted in
+     */
+    public ConverterStore(ItemWriter itemWriter, SourceConfig config, ConverterMetrics metrics) {
+        this.itemWriter = itemWriter;
+        this.config = config;
+        this.metrics = metrics;
+        internPool = config.getBoolean(SourceConfig.INTERN, false) ? new InternPool() : null;
+    }
+
+    /**
+     * Set the hook every item goes through before it is converted, the BioStoreHook of a
+     * BioDirectoryConverter, which adds the DataSet and the sequence ontology term.
+     * @param converter the converter the items come from
+     * @param storeHook the hook, null for none
+     */
+    public void setStoreHook(DataConverter converter, DataConverterStoreHook storeHook) {
+        this.converter = converter;
+        this.storeHook = storeHook;
+    }
+
+    /**
+     * @return the writer the converted items go to
+     * @throws ObjectStoreException if the spool file can't be created
+     */
+    public ItemWriter getWriter() throws ObjectStoreException {
+        if (writer == null) {
+            writer = openWriters();
+        }
+        return writer;
+    }
+
+    private ItemWriter openWriters() throws ObjectStoreException {
+        ItemWriter first = itemWriter;
+        String spoolPath = config.get(SourceConfig.SPOOL, null);
+        if (spoolPath != null && !spoolPath.isEmpty()) {
+            File spoolFile = new File(spoolPath);
+            try {
+                if (config.getBoolean(SourceConfig.SPOOL_REPLAY, false)
+                        && SpoolReplayer.isComplete(spoolFile)) {
+                    replay = new SpoolReplayer(spoolFile);
+                } else {
+                    spool = new SpoolItemWriter(spoolFile, first);
+                    first = spool;
+                }
+            } catch (IOException e) {
+                throw new ObjectStoreException("failed to open " + spoolFile, e);
+            }
+        }
+        int batchSize = config.getInt(SourceConfig.STORE_BATCH_SIZE, 0);
+        if (batchSize > 0) {
+            batching = new BatchingItemWriter(first, batchSize,
+                    config.getLong(SourceConfig.STORE_BATCH_BYTES,
+                            BatchingItemWriter.DEFAULT_MAX_BYTES),
+                    config.getLong(SourceConfig.STORE_BATCH_MILLIS,
+                            BatchingItemWriter.DEFAULT_MAX_MILLIS));
+            first = batching;
+        }
+        if (config.getBoolean(SourceConfig.PIPELINE, false)) {
+            pipeline = new PipelinedItemWriter(first, config.getSourceName() + "-writer",
+                    config.getInt(SourceConfig.PIPELINE_BATCH_SIZE,
+                            PipelinedItemWriter.DEFAULT_BATCH_SIZE),
+                    config.getInt(SourceConfig.PIPELINE_QUEUE_SIZE,
+                            PipelinedItemWriter.DEFAULT_QUEUE_SIZE));
+            first = pipeline;
+        }
+        return first;
+    }
+
+    /**
+     * @return true if the items of a spool are written instead of those of the converter
+     * @throws ObjectStoreException if the spool file can't be opened
+     */
+    public boolean isReplaying() throws ObjectStoreException {
+        getWriter();
+        return replay != null;
+    }
+
+    /**
+     * Write the items of the spool, if the source's properties ask for it.
+     * @return the number of items written, -1 if the spool isn't replayed
+     * @throws Exception if the spool can't be read or the items can't be stored
+     */
+    public long replaySpool() throws Exception {
+        if (!isReplaying()) {
+            return -1;
+        }
+        return replay.replay(getWriter());
+    }
+
+    /**
+     * A writer for items that are stored again as they were, from a segment or a checkpoint:
+     * they are counted in the metrics and written through the writers, but not recorded.
+     * @return the writer
+     * @throws ObjectStoreException if the spool file can't be created
+     */
+    public ItemWriter getReplayWriter() throws ObjectStoreException {
+        return new ReplayWriter(getWriter());
+    }
+
+    /**
+     * @return the pool of the attribute values, null if values aren't pooled
+     */
+    public InternPool getInternPool() {
+        return internPool;
+    }
+
+    /**
+     * @param segment the segment to record the items in from now on, null for none
+     */
+    public void setSegment(ItemSegment segment) {
+        this.segment = segment;
+    }
+
+    /**
+     * @param checkpoint the checkpoint whose journal records the items from now on, null for
+     * none
+     */
+    public void setCheckpoint(ConverterCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Store an item.  The item is converted straight away, so it may be changed afterwards.
+     * @param item the item
+     * @return the result of the ItemWriter, null if the item is dropped
+     * @throws ObjectStoreException if the item can't be stored
+     */
+    public Integer store(Item item) throws ObjectStoreException {
+        if (isReplaying()) {
+            return null;
+        }
+        return writer.store(convert(item));
+    }
+
+    /**
+     * Store some items.
+     * @param items the items
+     * @throws ObjectStoreException if the items can't be stored
+     */
+    public void store(Collection<Item> items) throws ObjectStoreException {
+        if (isReplaying()) {
+            return;
+        }
+        List<org.intermine.model.fulldata.Item> converted =
+            new ArrayList<org.intermine.model.fulldata.Item>(items.size());
+        for (Item item : items) {
+            converted.add(convert(item));
+        }
+        writer.storeAll(converted);
+    }
+
+    private org.intermine.model.fulldata.Item convert(Item item) throws ObjectStoreException {
+        if (storeHook != null) {
+            storeHook.processItem(converter, item);
+        }
+        metrics.itemStored(item.getClassName());
+        if (internPool != null && item.getAttributes() != null) {
+            for (Attribute attribute : item.getAttributes()) {
+                attribute.setValue(internPool.intern(attribute.getValue()));
+            }
+        }
+        org.intermine.model.fulldata.Item converted = ItemHelper.convert(item);
+        if (segment != null) {
+            segment.store(converted);
+        }
+        if (checkpoint != null) {
+            checkpoint.getJournal().store(converted);
+        }
+        return converted;
+    }
+
+    /**
+     * Store a reference list of an item stored before.  Segments can record it, but they
+     * can't be replayed then, and checkpoints can't.
+     * @param referenceList the reference list
+     * @param itemId the id of the item, as returned by store()
+     * @throws ObjectStoreException if the list can't be stored
+     */
+    public void store(ReferenceList referenceList, Integer itemId)
+        throws ObjectStoreException {
+        if (isReplaying()) {
+            return;
+        }
+        if (checkpoint != null) {
+            throw new IllegalStateException("reference lists stored on their own can't be "
+                    + "checkpointed");
+        }
+        metrics.referenceListStored();
+        org.intermine.model.fulldata.ReferenceList converted = ItemHelper.convert(referenceList);
+        if (segment != null) {
+            segment.store(converted, itemId);
+        }
+        // written once the items before it are
+        writer.store(converted, itemId);
+    }
+
+    /**
+     * Write the items still held by the writers and finish the spool.
+     * @throws Exception if the items can't be written
+     */
+    public void close() throws Exception {
+        if (internPool != null) {
+            LOG.info(config.getSourceName() + " attribute values: " + internPool);
+        }
+        if (pipeline != null) {
+            pipeline.finish();
+        }
+        if (batching != null) {
+            batching.flush();
+            LOG.info(config.getSourceName() + " store batches: " + batching);
+        }
+        if (spool != null) {
+            spool.finish();
+            LOG.info(config.getSourceName() + ": spooled " + spool.getItemCount() + " items");
+        }
+    }
+
+    /**
+     * Stores items that were stored before, counting them in the metrics.
+     */
+    private class ReplayWriter implements ItemWriter
+    {
+        private final ItemWriter target;
+
+        ReplayWriter(ItemWriter target) {
+            this.target = target;
+        }
+
+        @Override
+        public Integer store(org.intermine.model.fulldata.Item item)
+            throws ObjectStoreException {
+            metrics.itemStored(item.getClassName());
+            return target.store(item);
+        }
+
+        @Override
+        public void storeAll(Collection<org.intermine.model.fulldata.Item> items)
+            throws ObjectStoreException {
+            for (org.intermine.model.fulldata.Item item : items) {
+                store(item);
+            }
+        }
+
+        @Override
+        public void store(org.intermine.model.fulldata.ReferenceList refList, Integer itemId)
+            throws ObjectStoreException {
+            target.store(refList, itemId);
+        }
+
+        @Override
+        public void store(org.intermine.model.fulldata.Attribute att, Integer itemId)
+            throws ObjectStoreException {
+            target.store(att, itemId);
+        }
+
+        @Override
+        public void close() {
+            // the writer is closed with the converter
+        }
+    }
+}
@@ -0,0 +1,640 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Streaming reader for the CSV and TSV data files.
+ *
+ * FormattedTextParser reads through a BufferedReader line by line and allocates a String[]
+ * plus one String per field for every row, which for the wide DepMap and TCGA matrices means
+ * ~19,000 Strings per row whether the converter uses them or not.  This reader fills a large
+ * buffer straight from the underlying Reader and keeps the current row in one reusable char
+ * array; fields are handed out as CharSequence views on it and only become Strings when
+ * asked for.
+ * <pre>
+ *   DelimitedReader rows = DelimitedReader.csv(reader);
+ *   while (rows.next()) {
+ *       CharSequence value = rows.getField(3); // valid until the next call to next()
+ *       String id = rows.getString(0);
+ *   }
+ *   rows.close();
+ * </pre>
+ *
+ * CSV follows RFC 4180: fields may be quoted, quotes inside quoted fields are doubled and
+ * quoted fields may span lines.  TSV fields are taken as they are, as FormattedTextParser
+ * does.  Lines starting with '#' are skipped like in FormattedTextParser.  Not thread-safe.
+ *
+ * The wide matrices only need a few of their columns, or a few of their rows, for a list of
+ * target genes.  selectColumns() restricts the columns that are copied out of the read buffer
+ * and setRowFilter() drops rows on their key field before the rest of the row is split, so
+ * neither ever costs more than a scan for the next delimiter.
+ *
+ * @author
+ */
+public class DelimitedReader implements Closeable
+{
+    /** Default size of the read buffer, in chars */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /** Quote character for data whose fields are never quoted */
+    public static final char NO_QUOTE = '\uffff';
+
+    // results of readRow()
+    private static final int EOF = 0;
+    private static final int ROW = 1;
+    private static final int COMMENT = 2;
+    private static final int FILTERED = 3;
+
+    /**
+     * Decides from its key field whether a row is wanted.
+     */
+    public interface RowFilter
+    {
+        /**
+         * @param key the key field of the row, only valid during the call
+         * @return false to skip the row
+         */
+        boolean accept(CharSequence key);
+    }
+
+    private final Reader reader;
+    private final char delimiter;
+    private final char quote;
+
+    private final char[] buffer;
+    private int position;
+    private int limit;
+    private boolean eof;
+
+    // the current row: the (unquoted) field contents one after the other
+    private char[] row = new char[1024];
+    private int[] fieldEnds = new int[64];
+    private int fieldCount;
+    private String[] header;
+    // columns to copy out of the buffer, null for all
+    private boolean[] selected;
+    private int keyColumn = -1;
+    private RowFilter rowFilter;
+    private boolean returnFiltered;
+    private boolean filtered;
+    private long rowsFiltered;
+    private long rowNumber;
+    private long charsRead;
+    // the RowBatch event of the buffer being read, see ConverterEvents
+    private Object batchEvent;
+    private long batchRows;
+    private Field[] views = new Field[0];
+
+    /**
+     * Constructor
+     * @param reader the data, doesn't need to be buffered
+     * @param delimiter the field delimiter
+     * @param quote the quote character, or NO_QUOTE if fields are never quoted
+     * @param bufferSize size of the read buffer, in chars
+     */
+    public DelimitedReader(Reader reader, char delimiter, char quote, int bufferSize) {
+        this.reader = reader;
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * @param reader the CSV data
+     * @return a reader for comma separated, optionally quoted, fields
+     */
+    public static DelimitedReader csv(Reader reader) {
+        return new DelimitedReader(reader, ',', '"', DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param reader the TSV data
+     * @return a reader for tab separated fields
+     */
+    public static DelimitedReader tsv(Reader reader) {
+        return new DelimitedReader(reader, '\t', NO_QUOTE, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Read the header row.  Call this before selecting columns or setting a row filter, which
+     * must not apply to the header.
+     * @return the column names, or null if there is no data
+     * @throws IOException if the data can't be read
+     */
+    public String[] readHeader() throws IOException {
+        header = next() ? toArray() : null;
+        return header;
+    }
+
+    /**
+     * @return the header read by readHeader(), or null
+     */
+    public String[] getHeader() {
+        return header;
+    }
+
+    /**
+     * Only keep the columns whose header is one of the given names.  The other columns are
+     * still counted, so column indexes don't change, but their contents are never copied out
+     * of the read buffer and they can't be read.
+     * @param names the column names to keep
+     * @return the number of columns selected
+     */
+    public int selectColumns(Collection<String> names) {
+        if (header == null) {
+            throw new IllegalStateException("selecting columns by name needs readHeader()");
+        }
+        Set<String> wanted = new HashSet<String>(names);
+        boolean[] keep = new boolean[header.length];
+        int count = 0;
+        for (int i = 0; i < header.length; i++) {
+            keep[i] = wanted.contains(header[i]);
+            if (keep[i]) {
+                count++;
+            }
+        }
+        selectColumns(keep);
+        return count;
+    }
+
+    /**
+     * Only keep the columns that are true in the given array; columns past its end are
+     * dropped.
+     * @param keep the selection by column index, or null to keep all columns
+     */
+    public void selectColumns(boolean[] keep) {
+        this.selected = keep == null ? null : keep.clone();
+    }
+
+    /**
+     * @param index the column, from 0
+     * @return true if the column can be read
+     */
+    public boolean isSelected(int index) {
+        if (selected == null || index == keyColumn) {
+            return true;
+        }
+        return index < selected.length && selected[index];
+    }
+
+    /**
+     * Filter rows on one column before the rest of the row is split into fields.  The filter
+     * sees the key field as it is in the read buffer; rejected rows are skipped up to the
+     * next line break without looking at their other fields.  The key column is always
+     * selected.
+     * @param keyColumn the column passed to the filter
+     * @param filter the filter, or null to return every row
+     */
+    public void setRowFilter(int keyColumn, RowFilter filter) {
+        setRowFilter(keyColumn, filter, false);
+    }
+
+    /**
+     * Filter rows on one column, optionally still returning rejected rows.  A rejected row
+     * that is returned has isFiltered() set and only its fields up to the key column.
+     * @param keyColumn the column passed to the filter
+     * @param filter the filter, or null to return every row
+     * @param returnFiltered true to return rejected rows too
+     */
+    public void setRowFilter(int keyColumn, RowFilter filter, boolean returnFiltered) {
+        this.keyColumn = filter == null ? -1 : keyColumn;
+        this.rowFilter = filter;
+        this.returnFiltered = returnFiltered;
+    }
+
+    /**
+     * @return true if the current row was rejected by the row filter
+     */
+    public boolean isFiltered() {
+        return filtered;
+    }
+
+    /**
+     * @return the number of rows skipped by the row filter so far
+     */
+    public long getRowsFiltered() {
+        return rowsFiltered;
+    }
+
+    /**
+     * Move to the next row.  Field views of the previous row are no longer valid.
+     * @return false at the end of the data
+     * @throws IOException if the data can't be read
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            int status = readRow();
+            if (status == EOF) {
+                return false;
+            }
+            filtered = status == FILTERED;
+            if (filtered) {
+                rowsFiltered++;
+            }
+            if (status == ROW || (filtered && returnFiltered)) {
+                rowNumber++;
+                return true;
+            }
+        }
+    }
+
+    private int readRow() throws IOException {
+        fieldCount = 0;
+        if (position >= limit && !fill()) {
+            return EOF;
+        }
+        if (buffer[position] == '#') {
+            skipLine(false);
+            return COMMENT;
+        }
+        int length = 0;
+        boolean quoted = false;
+        boolean fieldStart = true;
+        boolean keep = isSelected(0);
+        while (true) {
+            if (position >= limit && !fill()) {
+                // last line without a line break
+                return endField(length) ? ROW : FILTERED;
+            }
+            char c = buffer[position++];
+            if (quoted) {
+                if (c == quote) {
+                    if (position >= limit && !fill()) {
+                        return endField(length) ? ROW : FILTERED;
+                    }
+                    if (buffer[position] == quote) {
+                        // doubled quote inside a quoted field
+                        position++;
+                        if (keep) {
+                            length = append(length, c);
+                        }
+                    } else {
+                        quoted = false;
+                    }
+                } else if (keep) {
+                    length = append(length, c);
+                }
+            } else if (c == delimiter) {
+                if (!endField(length)) {
+                    skipLine(true);
+                    return FILTERED;
+                }
+                keep = isSelected(fieldCount);
+                fieldStart = true;
+                continue;
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r') {
+                    if (position < limit || fill()) {
+                        if (buffer[position] == '\n') {
+                            position++;
+                        }
+                    }
+                }
+                return endField(length) ? ROW : FILTERED;
+            } else if (c == quote && fieldStart) {
+                quoted = true;
+            } else {
+                if (keep) {
+                    length = append(length, c);
+                }
+                length = copyPlain(length, keep);
+            }
+            fieldStart = false;
+        }
+    }
+
+    // skip to the start of the next line; in a row (called just after a delimiter), line
+    // breaks in quoted fields don't count
+    private void skipLine(boolean inRow) throws IOException {
+        boolean quoted = false;
+        boolean fieldStart = inRow;
+        while (position < limit || fill()) {
+            char c = buffer[position++];
+            if (quoted) {
+                if (c == quote) {
+                    if ((position < limit || fill()) && buffer[position] == quote) {
+                        position++;
+                    } else {
+                        quoted = false;
+                    }
+                }
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && (position < limit || fill()) && buffer[position] == '\n') {
+                    position++;
+                }
+                return;
+            } else if (inRow && c == delimiter) {
+                fieldStart = true;
+                continue;
+            } else if (inRow && fieldStart && c == quote) {
+                quoted = true;
+            }
+            fieldStart = false;
+        }
+    }
+
+    private int append(int length, char c) {
+        if (length == row.length) {
+            row = Arrays.copyOf(row, row.length * 2);
+        }
+        row[length] = c;
+        return length + 1;
+    }
+
+    // copy the rest of an unquoted field up to the next special char in one go
+    private int copyPlain(int length, boolean keep) {
+        int start = position;
+        int end = start;
+        char[] buf = buffer;
+        int max = limit;
+        while (end < max) {
+            char c = buf[end];
+            if (c == delimiter || c == '\n' || c == '\r') {
+                break;
+            }
+            end++;
+        }
+        int n = end - start;
+        position = end;
+        if (!keep) {
+            return length;
+        }
+        if (n > 0) {
+            if (length + n > row.length) {
+                row = Arrays.copyOf(row, Math.max(row.length * 2, length + n));
+            }
+            System.arraycopy(buf, start, row, length, n);
+        }
+        return length + n;
+    }
+
+    // false if the row filter rejects the row
+    private boolean endField(int length) {
+        if (fieldCount == fieldEnds.length) {
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldEnds.length * 2);
+        }
+        fieldEnds[fieldCount++] = length;
+        return fieldCount - 1 != keyColumn || rowFilter.accept(getField(keyColumn));
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        endRowBatch();
+        int n = reader.read(buffer, 0, buffer.length);
+        while (n == 0) {
+            n = reader.read(buffer, 0, buffer.length);
+        }
+        if (n < 0) {
+            eof = true;
+            position = 0;
+            limit = 0;
+            return false;
+        }
+        charsRead += n;
+        position = 0;
+        limit = n;
+        batchEvent = ConverterEvents.beginRowBatch();
+        return true;
+    }
+
+    private void endRowBatch() {
+        if (batchEvent != null) {
+            long rows = rowNumber + (returnFiltered ? 0 : rowsFiltered);
+            ConverterEvents.endRowBatch(batchEvent, rows - batchRows, limit);
+            batchEvent = null;
+            batchRows = rows;
+        }
+    }
+
+    /**
+     * @return the number of fields in the current row
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return the number of rows returned so far, the current row is numbered from 1
+     */
+    public long getRowNumber() {
+        return rowNumber;
+    }
+
+    /**
+     * @return the number of chars read from the underlying reader so far
+     */
+    public long getCharsRead() {
+        return charsRead;
+    }
+
+    /**
+     * @return the number of chars of the data up to the end of the current row
+     */
+    public long getPosition() {
+        return charsRead - (limit - position);
+    }
+
+    /**
+     * Carry on reading from a position returned by getPosition() in an earlier read of the
+     * same data, e.g. to resume a conversion; the chars up to it are skipped without being
+     * parsed.  The rows before are counted as given.
+     * @param target the position, not before the current one
+     * @param rows the number of rows returned up to the position
+     * @param rowsSkipped the number of rows skipped by the row filter up to the position
+     * @throws IOException if the data can't be read or ends before the position
+     */
+    public void skipTo(long target, long rows, long rowsSkipped) throws IOException {
+        long n = target - getPosition();
+        if (n < 0) {
+            throw new IllegalArgumentException("can't go back from " + getPosition() + " to "
+                    + target);
+        }
+        if (n <= limit - position) {
+            position += (int) n;
+        } else {
+            n -= limit - position;
+            endRowBatch();
+            position = 0;
+            limit = 0;
+            while (n > 0) {
+                long skipped = reader.skip(n);
+                if (skipped <= 0) {
+                    if (reader.read() < 0) {
+                        throw new EOFException("the data ends before " + target);
+                    }
+                    skipped = 1;
+                }
+                charsRead += skipped;
+                n -= skipped;
+            }
+        }
+        rowNumber = rows;
+        rowsFiltered = rowsSkipped;
+        batchRows = rowNumber + (returnFiltered ? 0 : rowsFiltered);
+    }
+
+    /**
+     * A view on a field of the current row.  The same view object is returned for a column on
+     * every row, so it must not be kept once next() is called.
+     * @param index the column, from 0
+     * @return the field
+     */
+    public CharSequence getField(int index) {
+        checkIndex(index);
+        if (index >= views.length) {
+            Field[] grown = Arrays.copyOf(views, Math.max(fieldEnds.length, index + 1));
+            for (int i = views.length; i < grown.length; i++) {
+                grown[i] = new Field(i);
+            }
+            views = grown;
+        }
+        return views[index];
+    }
+
+    /**
+     * @param index the column, from 0
+     * @return the field as a new String
+     */
+    public String getString(int index) {
+        checkIndex(index);
+        int start = start(index);
+        return new String(row, start, fieldEnds[index] - start);
+    }
+
+    /**
+     * @param index the column, from 0
+     * @return true if the field has no content
+     */
+    public boolean isEmpty(int index) {
+        checkIndex(index);
+        return fieldEnds[index] == start(index);
+    }
+
+    /**
+     * @return the fields of the current row as Strings, like FormattedTextParser returns them;
+     * columns that aren't selected are null
+     */
+    public String[] toArray() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            if (isSelected(i)) {
+                fields[i] = getString(i);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * An iterator of String arrays, as a drop-in replacement for the iterators of
+     * FormattedTextParser where converters don't need the field views.
+     * @return the rows
+     */
+    public Iterator<String[]> iterator() {
+        return new Iterator<String[]>() {
+            private String[] next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        if (DelimitedReader.this.next()) {
+                            next = toArray();
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException("failed to read row " + (rowNumber + 1), e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public String[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String[] row = next;
+                next = null;
+                return row;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        endRowBatch();
+        reader.close();
+    }
+
+    private int start(int index) {
+        return index == 0 ? 0 : fieldEnds[index - 1];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("field " + index + " of row " + rowNumber
+                    + " with " + fieldCount + " fields");
+        }
+        if (!isSelected(index)) {
+            throw new IllegalStateException("column " + index + " is not selected");
+        }
+    }
+
+    /**
+     * View on one column of the current row.
+     */
+    private final class Field implements CharSequence
+    {
+        private final int index;
+
+        Field(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int length() {
+            return fieldEnds[index] - start(index);
+        }
+
+        @Override
+        public char charAt(int i) {
+            return row[start(index) + i];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            int start = start(index);
+            return new String(row, start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            return getString(index);
+        }
+    }
+}
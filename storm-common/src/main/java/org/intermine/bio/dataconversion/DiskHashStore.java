@@ -0,0 +1,377 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A hash table of string keys and values kept in local files rather than on the heap, for
+ * the entries a SpillingIdRegistry spills.
+ *
+ * The records, the key and value lengths followed by the UTF-8 bytes, are appended to a data
+ * file through a write buffer.  An entries file holds the offset of the record of each entry
+ * by entry number, and the index file an open addressing table of slots holding the entry
+ * number and the hash of the key, so a lookup reads the record of a key only if the hash
+ * matches.  Both are memory-mapped: they live in the page cache, not on the heap, and the
+ * table is rebuilt from the slots alone when it grows.  A value replaced by one of the same
+ * length is overwritten in place, otherwise a new record is appended.
+ *
+ * Entries can't be removed; they are numbered in the order they were added.  The files are
+ * temporary and deleted by close().  Not thread-safe.
+ *
+ * @author
+ */
+public class DiskHashStore implements Closeable
+{
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    // slots of the largest table, 1 GB; positions in a MappedByteBuffer are ints
+    private static final int MAX_CAPACITY = 1 << 27;
+    private static final int HEADER_BYTES = 8;
+
+    private final File dir;
+    private final String name;
+    private final File dataFile;
+    private final FileChannel data;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer readBuffer = ByteBuffer.allocate(256);
+    // length of the data, written or not, and the part of it in the file
+    private long dataLength;
+    private long flushed;
+    private final File entriesFile;
+    private final FileChannel entriesChannel;
+    private MappedByteBuffer entries;
+    private int entriesCapacity;
+    private File indexFile;
+    private FileChannel indexChannel;
+    // entry number + 1 in the high int, the hash of the key in the low one; 0 for a free slot
+    private MappedByteBuffer index;
+    private int capacity;
+    private int size;
+    // the key being looked up, encoded
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Create an empty store.
+     * @param dir the directory of the files
+     * @param name the start of the file names, e.g. the name of the registry
+     * @throws IOException if the files can't be created
+     */
+    public DiskHashStore(File dir, String name) throws IOException {
+        this.dir = dir;
+        this.name = name;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("failed to create directory: " + dir);
+        }
+        dataFile = File.createTempFile(name + "-spill-", ".data", dir);
+        data = open(dataFile);
+        entriesFile = File.createTempFile(name + "-spill-", ".entries", dir);
+        entriesChannel = open(entriesFile);
+        entriesCapacity = INITIAL_CAPACITY;
+        entries = entriesChannel.map(FileChannel.MapMode.READ_WRITE, 0, 8L * entriesCapacity);
+        capacity = INITIAL_CAPACITY;
+        indexFile = File.createTempFile(name + "-spill-", ".index", dir);
+        indexChannel = open(indexFile);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, 8L * capacity);
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        file.deleteOnExit();
+        return new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    /**
+     * @return the number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key a key
+     * @return the value of the key, null if it isn't there
+     * @throws IOException if the files can't be read
+     */
+    public String get(CharSequence key) throws IOException {
+        int entry = find(encode(key));
+        return entry < 0 ? null : getValue(entry);
+    }
+
+    /**
+     * Replace the value of a key that is there.
+     * @param key the key
+     * @param value the new value
+     * @return false if the key isn't there
+     * @throws IOException if the files can't be read or written
+     */
+    public boolean replace(CharSequence key, String value) throws IOException {
+        int entry = find(encode(key));
+        if (entry < 0) {
+            return false;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        long offset = entries.getLong(8 * entry);
+        ByteBuffer record = read(offset, HEADER_BYTES);
+        int keyLength = record.getInt(0);
+        if (record.getInt(4) == bytes.length) {
+            if (offset + HEADER_BYTES + keyLength + bytes.length > flushed) {
+                flush();
+            }
+            write(ByteBuffer.wrap(bytes), offset + HEADER_BYTES + keyLength);
+        } else {
+            byte[] keyBytes = new byte[keyLength];
+            read(offset + HEADER_BYTES, keyLength).get(keyBytes);
+            entries.putLong(8 * entry, append(keyBytes, keyLength, bytes));
+        }
+        return true;
+    }
+
+    /**
+     * Add a key that isn't there yet.
+     * @param key the key
+     * @param value its value
+     * @throws IOException if the files can't be written
+     */
+    public void add(CharSequence key, String value) throws IOException {
+        int length = encode(key);
+        if (size == MAX_CAPACITY / 2) {
+            throw new IllegalStateException(name + " can't hold more than " + size + " keys");
+        }
+        if (size * 2 >= capacity) {
+            growIndex();
+        }
+        if (size == entriesCapacity) {
+            entriesCapacity *= 2;
+            entries = entriesChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    8L * entriesCapacity);
+        }
+        long offset = append(scratch, length, value.getBytes(StandardCharsets.UTF_8));
+        entries.putLong(8 * size, offset);
+        insert(index, capacity, size, hash(scratch, length));
+        size++;
+    }
+
+    /**
+     * @param entry the entry number, from 0 to size() - 1
+     * @return the key of the entry
+     * @throws IOException if the files can't be read
+     */
+    public String getKey(int entry) throws IOException {
+        long offset = getOffset(entry);
+        int keyLength = read(offset, HEADER_BYTES).getInt(0);
+        return decode(read(offset + HEADER_BYTES, keyLength), keyLength);
+    }
+
+    /**
+     * @param entry the entry number, from 0 to size() - 1
+     * @return the value of the entry
+     * @throws IOException if the files can't be read
+     */
+    public String getValue(int entry) throws IOException {
+        long offset = getOffset(entry);
+        ByteBuffer header = read(offset, HEADER_BYTES);
+        int keyLength = header.getInt(0);
+        int valueLength = header.getInt(4);
+        return decode(read(offset + HEADER_BYTES + keyLength, valueLength), valueLength);
+    }
+
+    /**
+     * @return the size of the files in bytes
+     */
+    public long getDiskSize() {
+        return dataLength + 8L * entriesCapacity + 8L * capacity;
+    }
+
+    /**
+     * Delete the files.  The store can't be used afterwards.
+     * @throws IOException if a file can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            data.close();
+            entriesChannel.close();
+            indexChannel.close();
+        } finally {
+            dataFile.delete();
+            entriesFile.delete();
+            indexFile.delete();
+        }
+    }
+
+    private long getOffset(int entry) {
+        if (entry < 0 || entry >= size) {
+            throw new IndexOutOfBoundsException("entry " + entry + " of " + size);
+        }
+        return entries.getLong(8 * entry);
+    }
+
+    // encode the key into scratch, returning its length in bytes
+    private int encode(CharSequence key) {
+        int n = key.length();
+        if (scratch.length < n) {
+            scratch = new byte[Math.max(n, scratch.length * 2)];
+        }
+        for (int i = 0; i < n; i++) {
+            char c = key.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = key.toString().getBytes(StandardCharsets.UTF_8);
+                if (scratch.length < bytes.length) {
+                    scratch = new byte[bytes.length];
+                }
+                System.arraycopy(bytes, 0, scratch, 0, bytes.length);
+                return bytes.length;
+            }
+            scratch[i] = (byte) c;
+        }
+        return n;
+    }
+
+    private static String decode(ByteBuffer buffer, int length) {
+        return new String(buffer.array(), 0, length, StandardCharsets.UTF_8);
+    }
+
+    // FNV-1a
+    private static int hash(byte[] bytes, int length) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < length; i++) {
+            h ^= bytes[i] & 0xff;
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 15);
+    }
+
+    // the entry of the encoded key in scratch, -1 if it isn't there
+    private int find(int length) throws IOException {
+        int hash = hash(scratch, length);
+        int mask = capacity - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            long slot = index.getLong(8 * i);
+            if (slot == 0) {
+                return -1;
+            }
+            if ((int) slot == hash) {
+                int entry = (int) (slot >>> 32) - 1;
+                if (keyEquals(entry, length)) {
+                    return entry;
+                }
+            }
+        }
+    }
+
+    private boolean keyEquals(int entry, int length) throws IOException {
+        long offset = entries.getLong(8 * entry);
+        if (read(offset, HEADER_BYTES).getInt(0) != length) {
+            return false;
+        }
+        byte[] key = read(offset + HEADER_BYTES, length).array();
+        for (int i = 0; i < length; i++) {
+            if (key[i] != scratch[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void insert(MappedByteBuffer table, int tableCapacity, int entry, int hash) {
+        int mask = tableCapacity - 1;
+        int i = hash & mask;
+        while (table.getLong(8 * i) != 0) {
+            i = (i + 1) & mask;
+        }
+        table.putLong(8 * i, ((long) (entry + 1) << 32) | (hash & 0xffffffffL));
+    }
+
+    // a table of twice the size, filled from the slots of the old one
+    private void growIndex() throws IOException {
+        int newCapacity = capacity * 2;
+        File newFile = File.createTempFile(name + "-spill-", ".index", dir);
+        FileChannel newChannel = open(newFile);
+        MappedByteBuffer newIndex = newChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                8L * newCapacity);
+        for (int i = 0; i < capacity; i++) {
+            long slot = index.getLong(8 * i);
+            if (slot != 0) {
+                insert(newIndex, newCapacity, (int) (slot >>> 32) - 1, (int) slot);
+            }
+        }
+        indexChannel.close();
+        indexFile.delete();
+        indexFile = newFile;
+        indexChannel = newChannel;
+        index = newIndex;
+        capacity = newCapacity;
+    }
+
+    // append a record, returning its offset
+    private long append(byte[] key, int keyLength, byte[] value) throws IOException {
+        int length = HEADER_BYTES + keyLength + value.length;
+        if (writeBuffer.remaining() < length) {
+            flush();
+        }
+        long offset = dataLength;
+        if (length > writeBuffer.capacity()) {
+            ByteBuffer record = ByteBuffer.allocate(length);
+            record.putInt(keyLength).putInt(value.length).put(key, 0, keyLength).put(value);
+            record.flip();
+            write(record, offset);
+            flushed += length;
+        } else {
+            writeBuffer.putInt(keyLength).putInt(value.length).put(key, 0, keyLength)
+                .put(value);
+        }
+        dataLength += length;
+        return offset;
+    }
+
+    private void flush() throws IOException {
+        writeBuffer.flip();
+        write(writeBuffer, flushed);
+        flushed += writeBuffer.limit();
+        writeBuffer.clear();
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        long at = position;
+        while (buffer.hasRemaining()) {
+            at += data.write(buffer, at);
+        }
+    }
+
+    // read length bytes at an offset into readBuffer, from its start
+    private ByteBuffer read(long offset, int length) throws IOException {
+        if (offset + length > flushed) {
+            flush();
+        }
+        if (readBuffer.capacity() < length) {
+            readBuffer = ByteBuffer.allocate(Math.max(length, readBuffer.capacity() * 2));
+        }
+        readBuffer.clear();
+        readBuffer.limit(length);
+        long at = offset;
+        while (readBuffer.hasRemaining()) {
+            int n = data.read(readBuffer, at);
+            if (n < 0) {
+                throw new EOFException(dataFile + " ends before " + (offset + length));
+            }
+            at += n;
+        }
+        readBuffer.flip();
+        return readBuffer;
+    }
+}
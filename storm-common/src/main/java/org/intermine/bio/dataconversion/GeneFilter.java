@@ -0,0 +1,66 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The genes a converter should integrate data for, by Gene item identifier.
+ *
+ * Replaces the ArrayList of target genes, whose contains() was a linear scan for every cell
+ * of the matrices.  Converters should still check a gene once per column or row and
+ * remember the answer rather than ask for each cell.
+ *
+ * @author
+ */
+public final class GeneFilter
+{
+    /** A filter with no target genes, all genes are accepted */
+    public static final GeneFilter ALL = new GeneFilter(Collections.<String>emptySet());
+
+    private final Set<String> geneIds;
+
+    /**
+     * Constructor
+     * @param geneIds the Gene item identifiers to accept, if empty all genes are accepted
+     */
+    public GeneFilter(Collection<String> geneIds) {
+        this.geneIds = new HashSet<String>(geneIds);
+    }
+
+    /**
+     * @return true if there are no target genes, so every gene is accepted
+     */
+    public boolean acceptsAll() {
+        return geneIds.isEmpty();
+    }
+
+    /**
+     * @param geneId the Gene item identifier, may be null for genes that didn't resolve
+     * @return true if data for this gene should be integrated
+     */
+    public boolean accepts(String geneId) {
+        if (geneId == null) {
+            return false;
+        }
+        return geneIds.isEmpty() || geneIds.contains(geneId);
+    }
+
+    /**
+     * @return the number of target genes
+     */
+    public int size() {
+        return geneIds.size();
+    }
+}
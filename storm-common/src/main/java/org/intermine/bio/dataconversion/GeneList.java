@@ -0,0 +1,90 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JVM-wide cache of the target gene lists, such as storm_targets_symbols.csv, so that the
+ * converters run in one JVM by a SourceOrchestrator read a list once rather than once each.
+ *
+ * A list holds the first field of every line of the file, empty ones included, in file order.
+ * It is read again if the size or modification time of the file has changed.  Safe for
+ * concurrent use.
+ *
+ * @author
+ */
+public final class GeneList
+{
+    private static final ConcurrentMap<String, GeneList> LISTS =
+            new ConcurrentHashMap<String, GeneList>();
+
+    private final long length;
+    private final long modified;
+    private final List<String> symbols;
+
+    private GeneList(long length, long modified, List<String> symbols) {
+        this.length = length;
+        this.modified = modified;
+        this.symbols = Collections.unmodifiableList(symbols);
+    }
+
+    /**
+     * Get the symbols of a gene list, reading the file if it hasn't been read in this JVM or
+     * has changed since.
+     * @param file the CSV file with a gene symbol in the first column of each line
+     * @return the symbols, one per line of the file
+     * @throws IOException if the file can't be read
+     */
+    public static List<String> getSymbols(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        GeneList list = LISTS.get(key);
+        if (list == null || !list.isCurrent(file)) {
+            // one reader per file, the others wait for its list
+            synchronized (LISTS) {
+                list = LISTS.get(key);
+                if (list == null || !list.isCurrent(file)) {
+                    list = read(file);
+                    LISTS.put(key, list);
+                }
+            }
+        }
+        return list.symbols;
+    }
+
+    private boolean isCurrent(File file) {
+        return file.length() == length && file.lastModified() == modified;
+    }
+
+    private static GeneList read(File file) throws IOException {
+        long length = file.length();
+        long modified = file.lastModified();
+        DelimitedReader rows = DelimitedReader.csv(new FileReader(file));
+        List<String> symbols = new ArrayList<String>();
+        try {
+            Iterator<String[]> lineIter = rows.iterator();
+            while (lineIter.hasNext()) {
+                symbols.add(lineIter.next()[0]);
+            }
+        } finally {
+            rows.close();
+        }
+        return new GeneList(length, modified, symbols);
+    }
+}
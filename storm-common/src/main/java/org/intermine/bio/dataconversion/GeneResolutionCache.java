@@ -0,0 +1,258 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * JVM-wide cache of gene symbol to primary identifier resolutions for one organism.
+ *
+ * Every converter used to keep its own resolvedGenes/unresolvableGenes maps, so the same
+ * symbols were resolved once per converter.  Here each symbol is resolved once per JVM with
+ * a single IdResolver call, and the answer (including "unresolvable") is shared between all
+ * converters.  Safe for concurrent use.
+ *
+ * Nothing is loaded until the first symbol is resolved.  Then the IdResolverSnapshot of the
+ * taxon is mapped if it is up to date with the resolver input files, otherwise the resolver
+ * is built as usual and a new snapshot is written for the next run.
+ *
+ * @author
+ */
+public final class GeneResolutionCache
+{
+    private static final Logger LOG = Logger.getLogger(GeneResolutionCache.class);
+
+    private static final ConcurrentMap<String, GeneResolutionCache> CACHES =
+            new ConcurrentHashMap<String, GeneResolutionCache>();
+
+    // marks a symbol that does not resolve to exactly one gene
+    private static final String UNRESOLVABLE = new String("");
+
+    private final String taxonId;
+    private final ConcurrentMap<String, String> resolutions =
+        new ConcurrentHashMap<String, String>();
+
+    // where init() looks for the snapshot and the resolver, null for the mine's
+    private final Properties mineProperties;
+    private final File snapshotFile;
+    private final ResolverLoader loader;
+    // set by init(), either of them may stay null if no resolver is available
+    private volatile boolean initialised;
+    private IdResolver rslv;
+    private IdResolverSnapshot snapshot;
+
+    /**
+     * Constructor for a cache that loads the snapshot or the resolver on first use
+     * @param taxonId the taxon the symbols belong to
+     */
+    GeneResolutionCache(String taxonId) {
+        this(taxonId, null, null, null);
+    }
+
+    /**
+     * Constructor for a cache that loads on first use from other places than the mine's
+     * @param taxonId the taxon the symbols belong to
+     * @param mineProperties the mine properties with the resolver input files, null for the
+     * mine's
+     * @param snapshotFile the snapshot, null for IdResolverSnapshot.getSnapshotFile()
+     * @param loader builds the resolver if there is no snapshot, null for IdResolverService
+     */
+    GeneResolutionCache(String taxonId, Properties mineProperties, File snapshotFile,
+            ResolverLoader loader) {
+        this.taxonId = taxonId;
+        this.mineProperties = mineProperties;
+        this.snapshotFile = snapshotFile;
+        this.loader = loader;
+    }
+
+    /**
+     * Constructor
+     * @param taxonId the taxon the symbols belong to
+     * @param rslv the resolver to use, may be null if none is available
+     */
+    GeneResolutionCache(String taxonId, IdResolver rslv) {
+        this(taxonId, null, null, null);
+        this.rslv = rslv;
+        this.initialised = true;
+    }
+
+    /**
+     * Constructor
+     * @param taxonId the taxon the symbols belong to
+     * @param snapshot the resolutions to use in place of a resolver
+     */
+    GeneResolutionCache(String taxonId, IdResolverSnapshot snapshot) {
+        this(taxonId, null, null, null);
+        this.snapshot = snapshot;
+        this.initialised = true;
+    }
+
+    /**
+     * Get the cache shared by all converters in this JVM for the given taxon.
+     * @param taxonId the taxon id, e.g. 9606
+     * @return the cache
+     */
+    public static GeneResolutionCache getInstance(String taxonId) {
+        GeneResolutionCache cache = CACHES.get(taxonId);
+        if (cache == null) {
+            synchronized (CACHES) {
+                cache = CACHES.get(taxonId);
+                if (cache == null) {
+                    cache = new GeneResolutionCache(taxonId);
+                    CACHES.put(taxonId, cache);
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Share a cache in place of the one getInstance() would load, e.g. one over a snapshot of
+     * made-up genes for the tests and benchmarks.  Converters created before keep the old cache.
+     * @param cache the cache to share for its taxon
+     */
+    static void setInstance(GeneResolutionCache cache) {
+        CACHES.put(cache.taxonId, cache);
+    }
+
+    /**
+     * @return the taxon id this cache resolves symbols for
+     */
+    public String getTaxonId() {
+        return taxonId;
+    }
+
+    /**
+     * @return true if there is a resolver for this taxon, otherwise every symbol is unresolvable
+     */
+    public boolean hasResolver() {
+        init();
+        return snapshot != null || (rslv != null && rslv.hasTaxon(taxonId));
+    }
+
+    /**
+     * @return true if resolutions come from an IdResolverSnapshot rather than a resolver
+     */
+    public boolean isSnapshot() {
+        init();
+        return snapshot != null;
+    }
+
+    /**
+     * Resolve a symbol to the primary identifier of a gene.
+     * @param symbol the gene symbol or any identifier known to the resolver
+     * @return the primary identifier, or null if the symbol does not resolve to exactly one gene
+     */
+    public String resolve(String symbol) {
+        if (symbol == null || symbol.isEmpty()) {
+            return null;
+        }
+        String id = resolutions.get(symbol);
+        if (id == null) {
+            // load the snapshot or build the resolver first, not while computeIfAbsent holds
+            // the lock of the map's bin
+            init();
+            // computeIfAbsent makes concurrent callers wait for the first lookup of a symbol
+            id = resolutions.computeIfAbsent(symbol, this::lookup);
+        }
+        return id == UNRESOLVABLE ? null : id;
+    }
+
+    /**
+     * @param symbol the gene symbol
+     * @return true if the symbol has already been looked up and did not resolve
+     */
+    public boolean isUnresolvable(String symbol) {
+        return resolutions.get(symbol) == UNRESOLVABLE;
+    }
+
+    /**
+     * @return the number of distinct symbols looked up so far
+     */
+    public int size() {
+        return resolutions.size();
+    }
+
+    private String lookup(String symbol) {
+        if (!hasResolver()) {
+            return UNRESOLVABLE;
+        }
+        if (snapshot != null) {
+            String id = snapshot.resolve(symbol);
+            return id == null ? UNRESOLVABLE : id;
+        }
+        Set<String> ids = rslv.resolveId(taxonId, symbol);
+        if (ids == null || ids.size() != 1) {
+            return UNRESOLVABLE;
+        }
+        return ids.iterator().next();
+    }
+
+    private void init() {
+        if (initialised) {
+            return;
+        }
+        synchronized (this) {
+            if (initialised) {
+                return;
+            }
+            File file = snapshotFile == null ? IdResolverSnapshot.getSnapshotFile(taxonId)
+                : snapshotFile;
+            String checksum = null;
+            try {
+                List<File> inputs = mineProperties == null ? IdResolverSnapshot.getInputFiles()
+                    : IdResolverSnapshot.getInputFiles(mineProperties);
+                checksum = IdResolverSnapshot.checksum(inputs);
+                if (checksum != null) {
+                    snapshot = IdResolverSnapshot.open(file, taxonId, checksum);
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to read resolver snapshot " + file, e);
+            }
+            if (snapshot == null) {
+                rslv = loader == null ? IdResolverService.getIdResolverByOrganism(taxonId)
+                    : loader.load(taxonId);
+                if (checksum != null && rslv != null && rslv.hasTaxon(taxonId)) {
+                    try {
+                        IdResolverSnapshot.write(file, taxonId, checksum,
+                                IdResolverSnapshot.collect(rslv, taxonId));
+                    } catch (IOException e) {
+                        LOG.warn("Failed to write resolver snapshot " + file, e);
+                    }
+                }
+            } else {
+                LOG.info("Using resolver snapshot " + file + " with " + snapshot.size()
+                        + " resolutions");
+            }
+            initialised = true;
+        }
+    }
+
+    /**
+     * Builds the resolver of a taxon when there is no up to date snapshot.
+     */
+    interface ResolverLoader
+    {
+        /**
+         * @param taxonId the taxon
+         * @return the resolver, may be null
+         */
+        IdResolver load(String taxonId);
+    }
+}
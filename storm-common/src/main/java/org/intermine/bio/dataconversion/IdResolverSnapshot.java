@@ -0,0 +1,391 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+import org.intermine.util.PropertiesUtil;
+
+/**
+ * Read-only, memory-mapped snapshot of the symbol to primary identifier resolutions of an
+ * IdResolver for one taxon.
+ *
+ * Building the human IdResolver takes much longer than the conversion of the smaller sources,
+ * so the first run writes the unique resolutions to disk and later runs map the file instead.
+ * The snapshot is keyed by a checksum of the paths, sizes and modification times of the
+ * resolver input files (the files under the resolver.file.rootpath mine property, where
+ * IdResolverService reads them from) and is ignored, and later rewritten, as soon as any of
+ * those files is added, removed or touched.
+ *
+ * File layout, big-endian:
+ * <pre>
+ *   int magic, int version, UTF taxonId, UTF checksum, int count,
+ *   int[count] entry offsets, sorted by the UTF-8 bytes of the symbol,
+ *   entries: short length, symbol bytes, short length, primary identifier bytes
+ * </pre>
+ *
+ * @author
+ */
+public final class IdResolverSnapshot
+{
+    private static final Logger LOG = Logger.getLogger(IdResolverSnapshot.class);
+
+    static final int MAGIC = 0x53544d52; // "STMR"
+    static final int VERSION = 1;
+
+    /** The mine property of the directory of the resolver input files */
+    public static final String ROOT_PATH_PROPERTY = "resolver.file.rootpath";
+
+    /** System property overriding the directory the snapshots are kept in */
+    public static final String SNAPSHOT_DIR_PROPERTY = "storm.resolver.snapshot.dir";
+
+    private static final Comparator<byte[]> UNSIGNED_BYTES = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int len = Math.min(a.length, b.length);
+            for (int i = 0; i < len; i++) {
+                int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    private final String taxonId;
+    private final String checksum;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int offsetsStart;
+
+    private IdResolverSnapshot(String taxonId, String checksum, MappedByteBuffer buffer,
+            int count, int offsetsStart) {
+        this.taxonId = taxonId;
+        this.checksum = checksum;
+        this.buffer = buffer;
+        this.count = count;
+        this.offsetsStart = offsetsStart;
+    }
+
+    /**
+     * @return the taxon id the resolutions belong to
+     */
+    public String getTaxonId() {
+        return taxonId;
+    }
+
+    /**
+     * @return the checksum of the resolver input files the snapshot was built from
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @return the number of symbols that resolve to exactly one gene
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Look up a symbol.  Safe for concurrent use, only absolute reads are made on the buffer.
+     * @param symbol the gene symbol or any identifier known to the resolver
+     * @return the primary identifier, or null if the symbol does not resolve to exactly one gene
+     */
+    public String resolve(String symbol) {
+        byte[] key = symbol.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = buffer.getInt(offsetsStart + mid * 4);
+            int cmp = compareKey(entry, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                int valueStart = entry + 2 + key.length;
+                return readString(valueStart);
+            }
+        }
+        return null;
+    }
+
+    private int compareKey(int entry, byte[] key) {
+        int length = buffer.getShort(entry) & 0xffff;
+        int len = Math.min(length, key.length);
+        for (int i = 0; i < len; i++) {
+            int cmp = (buffer.get(entry + 2 + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    private String readString(int position) {
+        int length = buffer.getShort(position) & 0xffff;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Map a snapshot file.
+     * @param file the snapshot file
+     * @param taxonId the taxon the snapshot has to be for
+     * @param checksum the current checksum of the resolver input files
+     * @return the snapshot, or null if the file is missing, of another version or stale
+     * @throws IOException if the file can't be read
+     */
+    public static IdResolverSnapshot open(File file, String taxonId, String checksum)
+        throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                LOG.info("Ignoring resolver snapshot of another format: " + file);
+                return null;
+            }
+            String snapshotTaxonId = readUTF(buffer);
+            String snapshotChecksum = readUTF(buffer);
+            if (!taxonId.equals(snapshotTaxonId) || !checksum.equals(snapshotChecksum)) {
+                LOG.info("Ignoring stale resolver snapshot: " + file);
+                return null;
+            }
+            int count = buffer.getInt();
+            return new IdResolverSnapshot(taxonId, checksum, buffer, count, buffer.position());
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    private static String readUTF(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a snapshot file.  The file is written next to its final location and then
+     * renamed, so a reader never sees a partially written snapshot.
+     * @param file the snapshot file
+     * @param taxonId the taxon the resolutions belong to
+     * @param checksum the checksum of the resolver input files
+     * @param resolutions symbol to primary identifier, for symbols resolving to one gene only
+     * @throws IOException if the file can't be written
+     */
+    public static void write(File file, String taxonId, String checksum,
+            Map<String, String> resolutions) throws IOException {
+        TreeMap<byte[], byte[]> sorted = new TreeMap<byte[], byte[]>(UNSIGNED_BYTES);
+        for (Map.Entry<String, String> entry : resolutions.entrySet()) {
+            sorted.put(entry.getKey().getBytes(StandardCharsets.UTF_8),
+                    entry.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] taxonBytes = taxonId.getBytes(StandardCharsets.UTF_8);
+        byte[] checksumBytes = checksum.getBytes(StandardCharsets.UTF_8);
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("failed to create directory: " + dir);
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeShort(taxonBytes.length);
+            out.write(taxonBytes);
+            out.writeShort(checksumBytes.length);
+            out.write(checksumBytes);
+            out.writeInt(sorted.size());
+            long position = out.size() + 4L * sorted.size();
+            for (Map.Entry<byte[], byte[]> entry : sorted.entrySet()) {
+                if (position > Integer.MAX_VALUE) {
+                    throw new IOException("too many resolutions for a snapshot: " + sorted.size());
+                }
+                out.writeInt((int) position);
+                position += 4 + entry.getKey().length + entry.getValue().length;
+            }
+            for (Map.Entry<byte[], byte[]> entry : sorted.entrySet()) {
+                out.writeShort(entry.getKey().length);
+                out.write(entry.getKey());
+                out.writeShort(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        if ((file.exists() && !file.delete()) || !tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("failed to move resolver snapshot into place: " + file);
+        }
+    }
+
+    /**
+     * Collect every unique resolution of a resolver, by asking it about each identifier it
+     * knows of.
+     * @param rslv the resolver
+     * @param taxonId the taxon id
+     * @return symbol to primary identifier for the symbols resolving to exactly one gene
+     * @throws IOException if the resolver can't be dumped to a temporary file
+     */
+    public static Map<String, String> collect(IdResolver rslv, String taxonId)
+        throws IOException {
+        // IdResolver doesn't expose its maps, but it can write them out as
+        // taxonId, class, primary identifier, then the identifiers mapping to it
+        Set<String> symbols = new TreeSet<String>();
+        File dump = File.createTempFile("idresolver", ".dump");
+        try {
+            rslv.writeToFile(dump);
+            BufferedReader reader = new BufferedReader(new FileReader(dump));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] columns = line.split("\t");
+                    if (columns.length < 3 || !taxonId.equals(columns[0])) {
+                        continue;
+                    }
+                    for (int i = 2; i < columns.length; i++) {
+                        for (String symbol : columns[i].split("[,|]")) {
+                            if (!symbol.isEmpty()) {
+                                symbols.add(symbol.trim());
+                            }
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } finally {
+            dump.delete();
+        }
+        Map<String, String> resolutions = new TreeMap<String, String>();
+        for (String symbol : symbols) {
+            Set<String> ids = rslv.resolveId(taxonId, symbol);
+            if (ids != null && ids.size() == 1) {
+                resolutions.put(symbol, ids.iterator().next());
+            }
+        }
+        return resolutions;
+    }
+
+    /**
+     * @return the resolver input files, see getInputFiles(Properties)
+     */
+    public static List<File> getInputFiles() {
+        return getInputFiles(PropertiesUtil.getProperties());
+    }
+
+    /**
+     * @param props the mine properties
+     * @return the files under resolver.file.rootpath and its subdirectories, sorted by path;
+     * empty if the property isn't set
+     */
+    public static List<File> getInputFiles(Properties props) {
+        List<File> files = new ArrayList<File>();
+        String rootPath = props.getProperty(ROOT_PATH_PROPERTY);
+        if (rootPath != null && !rootPath.trim().isEmpty()) {
+            addFiles(new File(rootPath.trim()), files);
+        }
+        return files;
+    }
+
+    private static void addFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Set<File> sorted = new TreeSet<File>();
+        Collections.addAll(sorted, children);
+        for (File child : sorted) {
+            if (child.isDirectory()) {
+                addFiles(child, files);
+            } else if (child.isFile()) {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * The files are only listed, not read: they can be several GB, too much to hash at the
+     * start of every run.
+     * @param files the resolver input files
+     * @return SHA-256 over the paths, sizes and modification times of the files, null if
+     * there are none
+     */
+    public static String checksum(List<File> files) {
+        if (files.isEmpty()) {
+            return null;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (File file : files) {
+            String key = file.getAbsolutePath() + "\t" + file.length() + "\t"
+                + file.lastModified() + "\n";
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param taxonId the taxon id
+     * @return where the snapshot for a taxon is kept
+     */
+    public static File getSnapshotFile(String taxonId) {
+        String dir = System.getProperty(SNAPSHOT_DIR_PROPERTY);
+        if (dir == null) {
+            dir = System.getProperty("user.home") + File.separator + ".intermine";
+        }
+        return new File(dir, "idresolver-" + taxonId + ".snapshot");
+    }
+}
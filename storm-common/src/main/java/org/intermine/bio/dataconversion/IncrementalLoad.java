@@ -0,0 +1,144 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * The incremental mode of a StormDirectoryConverter, storm.incremental.dir set: the items of
+ * the data files that haven't changed since the last run are stored again from the segments
+ * of that run, and the items of the other files are recorded in new segments, see
+ * LoadManifest and ItemSegment.  One data file is converted at a time.
+ *
+ * @author
+ */
+public class IncrementalLoad
+{
+    private static final Logger LOG = Logger.getLogger(IncrementalLoad.class);
+
+    private final LoadManifest manifest;
+    private final ItemSegment.Keys keys;
+    private final ConverterMetrics metrics;
+    // the file being converted and its segment
+    private File dataFile;
+    private long dataSize;
+    private long dataModified;
+    private ItemSegment segment;
+    private long filesReused;
+    private long itemsReused;
+
+    /**
+     * Constructor
+     * @param manifest the manifest of the last run
+     * @param keys the items with keys of this run
+     * @param metrics the metrics of the run
+     */
+    public IncrementalLoad(LoadManifest manifest, ItemSegment.Keys keys,
+            ConverterMetrics metrics) {
+        this.manifest = manifest;
+        this.keys = keys;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Record a file that all the data files are converted with, see
+     * StormDirectoryConverter.incrementalDependsOn().
+     * @param file the file
+     * @throws IOException if the file can't be read
+     */
+    public void dependsOn(File file) throws IOException {
+        manifest.dependsOn(file);
+    }
+
+    /**
+     * Store the items of a data file again if it hasn't changed since the last run,
+     * otherwise start its segment.
+     * @param file the data file
+     * @param writer the writer for the items of the segment
+     * @return true if the items were stored again and the file needn't be converted
+     * @throws IOException if the file or the segment can't be read
+     * @throws ObjectStoreException if the items can't be stored
+     */
+    public boolean replayUnchanged(File file, ItemWriter writer)
+        throws IOException, ObjectStoreException {
+        if (segment != null) {
+            segment.discard();
+            segment = null;
+        }
+        File segmentFile = manifest.getSegment(file);
+        if (segmentFile != null) {
+            metrics.startPhase(file.getName());
+            long items = ItemSegment.replay(segmentFile, keys, writer);
+            if (items >= 0) {
+                manifest.replayed(file);
+                filesReused++;
+                itemsReused += items;
+                return true;
+            }
+            LOG.info(file + " is unchanged but its items can't be reused, converting it");
+        }
+        dataFile = file;
+        dataSize = file.length();
+        dataModified = file.lastModified();
+        segment = new ItemSegment(manifest.newSegment(file));
+        return false;
+    }
+
+    /**
+     * @return the segment the items of the file being converted are recorded in, null if
+     * there is none
+     */
+    public ItemSegment getSegment() {
+        return segment;
+    }
+
+    /**
+     * Record the items stored since replayUnchanged() as those of the file.
+     * @param file the data file
+     * @throws IOException if the file can't be read
+     * @throws ObjectStoreException if the items can't be recorded
+     */
+    public void fileConverted(File file) throws IOException, ObjectStoreException {
+        if (segment == null || !file.equals(dataFile)) {
+            return;
+        }
+        ItemSegment finished = segment;
+        segment = null;
+        if (finished.finish(keys)) {
+            manifest.converted(file, dataSize, dataModified, finished.getFile(),
+                    finished.getItemCount());
+        } else {
+            LOG.info(file + ": the items refer to items without a key, they can't be reused");
+            manifest.converted(file, dataSize, dataModified, null, 0);
+        }
+    }
+
+    /**
+     * Write the manifest for the next run.  The segment of a file that wasn't finished is
+     * discarded.
+     * @param sourceName the name of the source, for the log
+     * @throws IOException if the manifest can't be written
+     */
+    public void close(String sourceName) throws IOException {
+        if (segment != null) {
+            segment.discard();
+            segment = null;
+        }
+        manifest.write();
+        LOG.info(sourceName + ": reused " + itemsReused + " items of " + filesReused
+                + " unchanged files");
+    }
+}
@@ -0,0 +1,204 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * A pool of the attribute values of a converter, so that a value that is repeated on many
+ * items (a lineage, a variant type, a run name) is one String on the heap instead of one per
+ * item.  Unlike String.intern() the pool belongs to the converter and is dropped with it.
+ *
+ * Numbers and values longer than maxLength are returned as they are: they are rarely
+ * repeated and would only fill the pool.  Once the pool holds maxEntries strings new values
+ * are no longer added, but values already in it are still found.  The pool counts its
+ * lookups and hits and estimates the bytes the hits saved, from the size of a String on a
+ * 64 bit JVM with compressed references; a hit on the pooled instance itself, like a string
+ * literal passed again, saves nothing.  Not thread-safe.
+ *
+ * @author
+ */
+public class InternPool
+{
+    /** Default longest value that is pooled */
+    public static final int DEFAULT_MAX_LENGTH = 128;
+
+    /** Default largest number of strings in the pool */
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+
+    private final int maxLength;
+    private final int maxEntries;
+    private String[] table = new String[1024];
+    private int size;
+    private long lookups;
+    private long hits;
+    private long bytesSaved;
+
+    /**
+     * Constructor with the default limits.
+     */
+    public InternPool() {
+        this(DEFAULT_MAX_LENGTH, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor
+     * @param maxLength the longest value to pool
+     * @param maxEntries the largest number of strings to keep
+     */
+    public InternPool(int maxLength, int maxEntries) {
+        this.maxLength = maxLength;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param value a value
+     * @return the pooled string equal to the value, the value itself if it isn't pooled
+     */
+    public String intern(String value) {
+        if (!isPoolable(value)) {
+            return value;
+        }
+        return lookup(value, value.hashCode(), value);
+    }
+
+    /**
+     * Pool a value without creating a String for it if it is in the pool already, e.g. a
+     * field of a DelimitedReader.
+     * @param value a value
+     * @return the pooled string equal to the value, a new string if it isn't pooled
+     */
+    public String intern(CharSequence value) {
+        if (value instanceof String) {
+            return intern((String) value);
+        }
+        if (!isPoolable(value)) {
+            return value == null ? null : value.toString();
+        }
+        int hash = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        return lookup(value, hash, null);
+    }
+
+    private boolean isPoolable(CharSequence value) {
+        return value != null && value.length() <= maxLength && !NumericField.isNumber(value);
+    }
+
+    // string is value if value is a String, otherwise null
+    private String lookup(CharSequence value, int hash, String string) {
+        lookups++;
+        int mask = table.length - 1;
+        int i = mix(hash) & mask;
+        String entry;
+        while ((entry = table[i]) != null) {
+            if (entry.hashCode() == hash && contentEquals(entry, value)) {
+                hits++;
+                if (entry != string) {
+                    bytesSaved += stringBytes(entry.length());
+                }
+                return entry;
+            }
+            i = (i + 1) & mask;
+        }
+        String s = string == null ? value.toString() : string;
+        if (size < maxEntries) {
+            table[i] = s;
+            if (++size * 2 > table.length) {
+                grow();
+            }
+        }
+        return s;
+    }
+
+    private static boolean contentEquals(String entry, CharSequence value) {
+        int n = entry.length();
+        if (n != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (entry.charAt(i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void grow() {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for (String s : old) {
+            if (s != null) {
+                int i = mix(s.hashCode()) & mask;
+                while (table[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = s;
+            }
+        }
+    }
+
+    /**
+     * The heap size of a String: the object (24 bytes) and its char array (16 bytes and two
+     * per char), rounded to 8 bytes each.
+     * @param length the number of chars
+     * @return the size in bytes
+     */
+    static long stringBytes(int length) {
+        return 24 + ((16 + 2L * length + 7) & ~7L);
+    }
+
+    /**
+     * @return the number of strings in the pool
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of values looked up
+     */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return the number of values found in the pool
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the fraction of the lookups that were found in the pool
+     */
+    public double getHitRate() {
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return the estimated bytes of the strings that the hits didn't have to keep
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    @Override
+    public String toString() {
+        return size + " strings, " + lookups + " lookups, "
+            + String.format("%.1f", 100 * getHitRate()) + "% hits, ~" + (bytesSaved >> 10)
+            + " KB saved";
+    }
+}
@@ -0,0 +1,360 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps identifiers from the data files (gene symbols, DepMap ids, TCGA barcodes) to the
+ * identifiers of the items created for them, like a Map&lt;String, String&gt; but without a
+ * String, an entry and a boxed hash per key.
+ *
+ * Item identifiers have the form &lt;class&gt;_&lt;counter&gt;, e.g. 1_2345, and the items
+ * in a registry are usually of one class; the registry keeps the class part once and the
+ * counter as an int.  Identifiers of another form are kept as they are, on the side.  The
+ * keys are stored one after the other in a byte array (UTF-8) and found through an open
+ * addressing table of int entry numbers, so an entry costs the bytes of its key, four ints
+ * and a reference.  The identifier String of an entry is made the first time it is looked up
+ * and kept for the later lookups.  Entries can't be removed one by one; they are numbered in
+ * the order they were added, see getKey() and getId().  Not thread-safe.  SpillingIdRegistry
+ * keeps within a heap budget by moving the entries to disk.
+ *
+ * @author
+ */
+public class ItemIdRegistry
+{
+    // entry value for identifiers kept in otherIds
+    private static final int OTHER = -1;
+
+    private final String name;
+    private byte[] keys = new byte[4096];
+    private int keysLength;
+    // start of the key of entry i in keys, offsets[size] is keysLength
+    private int[] offsets = new int[257];
+    private int[] hashes = new int[256];
+    private int[] values = new int[256];
+    // the identifiers made by idOf(), null until an entry is looked up
+    private String[] ids = new String[256];
+    private long idBytes;
+    private int size;
+    // entry number + 1, 0 for a free slot
+    private int[] slots = new int[512];
+    private String prefix;
+    private Map<Integer, String> otherIds;
+    // the key being looked up, encoded
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Constructor
+     * @param name what the registry holds, for the log
+     */
+    public ItemIdRegistry(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return what the registry holds
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key an identifier from the data
+     * @return the item identifier registered for it, null if there is none
+     */
+    public String get(CharSequence key) {
+        int entry = find(encode(key));
+        return entry < 0 ? null : idOf(entry);
+    }
+
+    /**
+     * @param key an identifier from the data
+     * @return true if an item identifier is registered for it
+     */
+    public boolean containsKey(CharSequence key) {
+        return find(encode(key)) >= 0;
+    }
+
+    /**
+     * Register the item identifier for a key, replacing the one registered before.
+     * @param key an identifier from the data
+     * @param itemId the identifier of the item
+     */
+    public void put(CharSequence key, String itemId) {
+        int length = encode(key);
+        int entry = find(length);
+        if (entry < 0) {
+            entry = add(length);
+        }
+        setValue(entry, itemId);
+    }
+
+    /**
+     * @param entry the entry number, from 0 to size() - 1
+     * @return the key of the entry
+     */
+    public String getKey(int entry) {
+        checkEntry(entry);
+        return new String(keys, offsets[entry], offsets[entry + 1] - offsets[entry],
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param entry the entry number, from 0 to size() - 1
+     * @return the item identifier of the entry
+     */
+    public String getId(int entry) {
+        checkEntry(entry);
+        return idOf(entry);
+    }
+
+    private String idOf(int entry) {
+        int value = values[entry];
+        if (value == OTHER) {
+            return otherIds.get(entry);
+        }
+        String id = ids[entry];
+        if (id == null) {
+            id = prefix + value;
+            ids[entry] = id;
+            idBytes += InternPool.stringBytes(id.length());
+        }
+        return id;
+    }
+
+    /**
+     * Remove all the entries.
+     */
+    public void clear() {
+        keys = new byte[4096];
+        keysLength = 0;
+        offsets = new int[257];
+        hashes = new int[256];
+        values = new int[256];
+        ids = new String[256];
+        idBytes = 0;
+        size = 0;
+        slots = new int[512];
+        prefix = null;
+        otherIds = null;
+    }
+
+    /**
+     * Release what the registry holds besides the heap; it can't be used afterwards.
+     */
+    public void close() {
+        // only the heap
+    }
+
+    private void checkEntry(int entry) {
+        if (entry < 0 || entry >= size) {
+            throw new IndexOutOfBoundsException("entry " + entry + " of " + size);
+        }
+    }
+
+    // encode the key into scratch, returning its length in bytes
+    private int encode(CharSequence key) {
+        int n = key.length();
+        if (scratch.length < n) {
+            scratch = new byte[Math.max(n, scratch.length * 2)];
+        }
+        for (int i = 0; i < n; i++) {
+            char c = key.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = key.toString().getBytes(StandardCharsets.UTF_8);
+                if (scratch.length < bytes.length) {
+                    scratch = new byte[bytes.length];
+                }
+                System.arraycopy(bytes, 0, scratch, 0, bytes.length);
+                return bytes.length;
+            }
+            scratch[i] = (byte) c;
+        }
+        return n;
+    }
+
+    private static int hash(byte[] bytes, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + bytes[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    // the entry of the encoded key in scratch, -1 if it isn't there
+    private int find(int length) {
+        int hash = hash(scratch, length);
+        int mask = slots.length - 1;
+        for (int i = hash & mask; slots[i] != 0; i = (i + 1) & mask) {
+            int entry = slots[i] - 1;
+            if (hashes[entry] == hash && keyEquals(entry, length)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(int entry, int length) {
+        int start = offsets[entry];
+        if (offsets[entry + 1] - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (keys[start + i] != scratch[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int add(int length) {
+        if (size == values.length) {
+            int capacity = values.length * 2;
+            hashes = copyOf(hashes, capacity);
+            values = copyOf(values, capacity);
+            String[] biggerIds = new String[capacity];
+            System.arraycopy(ids, 0, biggerIds, 0, size);
+            ids = biggerIds;
+            offsets = copyOf(offsets, capacity + 1);
+        }
+        if (keysLength + length > keys.length) {
+            byte[] bigger = new byte[Math.max(keys.length * 2, keysLength + length)];
+            System.arraycopy(keys, 0, bigger, 0, keysLength);
+            keys = bigger;
+        }
+        System.arraycopy(scratch, 0, keys, keysLength, length);
+        int entry = size++;
+        offsets[entry] = keysLength;
+        keysLength += length;
+        offsets[entry + 1] = keysLength;
+        hashes[entry] = hash(scratch, length);
+        if (size * 3 > slots.length * 2) {
+            slots = new int[slots.length * 2];
+            for (int i = 0; i < size; i++) {
+                insertSlot(i);
+            }
+            ConverterEvents.registryGrown(name, size, getFootprint());
+        } else {
+            insertSlot(entry);
+        }
+        return entry;
+    }
+
+    private void insertSlot(int entry) {
+        int mask = slots.length - 1;
+        int i = hashes[entry] & mask;
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = entry + 1;
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private void setValue(int entry, String itemId) {
+        if (ids[entry] != null) {
+            idBytes -= InternPool.stringBytes(ids[entry].length());
+            ids[entry] = null;
+        }
+        int counter = parseCounter(itemId);
+        if (counter >= 0) {
+            values[entry] = counter;
+            if (otherIds != null) {
+                otherIds.remove(entry);
+            }
+        } else {
+            values[entry] = OTHER;
+            if (otherIds == null) {
+                otherIds = new HashMap<Integer, String>();
+            }
+            otherIds.put(entry, itemId);
+        }
+    }
+
+    // the counter if the identifier is <prefix>_<counter> with the prefix of this registry
+    private int parseCounter(String itemId) {
+        int underscore = itemId.lastIndexOf('_');
+        int n = itemId.length();
+        if (underscore < 0 || underscore == n - 1 || n - underscore > 10
+                || (itemId.charAt(underscore + 1) == '0' && n - underscore > 2)) {
+            return -1;
+        }
+        int counter = 0;
+        for (int i = underscore + 1; i < n; i++) {
+            char c = itemId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            counter = counter * 10 + (c - '0');
+        }
+        if (prefix == null) {
+            prefix = itemId.substring(0, underscore + 1);
+        } else if (!itemId.startsWith(prefix) || prefix.length() != underscore + 1) {
+            return -1;
+        }
+        return counter;
+    }
+
+    /**
+     * @return the estimated heap size of the registry in bytes
+     */
+    public long getFootprint() {
+        long bytes = 16L + keys.length + 4L * (offsets.length + hashes.length + values.length
+                + ids.length + slots.length) + scratch.length + 6 * 16 + idBytes;
+        if (otherIds != null) {
+            // entry, boxed key and a string of ~10 chars
+            bytes += otherIds.size() * (32L + 16 + 64);
+        }
+        return bytes;
+    }
+
+    /**
+     * The estimated heap size of a HashMap&lt;String, String&gt; with the same entries, for
+     * comparison: an entry (32 bytes), a table slot (4), the key and value Strings (24 bytes
+     * each plus their char arrays).
+     * @return the size in bytes
+     */
+    public long getHashMapFootprint() {
+        long bytes = 48;
+        int tableSize = 16;
+        while (tableSize * 3 < size * 4) {
+            tableSize *= 2;
+        }
+        bytes += 16 + 4L * tableSize;
+        for (int i = 0; i < size; i++) {
+            int keyLength = offsets[i + 1] - offsets[i];
+            int idLength = values[i] == OTHER ? otherIds.get(i).length()
+                : prefix.length() + Integer.toString(values[i]).length();
+            bytes += 32 + InternPool.stringBytes(keyLength) + InternPool.stringBytes(idLength);
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + size + " keys in ~" + (getFootprint() >> 10) + " KB (~"
+            + (getHashMapFootprint() >> 10) + " KB as a HashMap)";
+    }
+}
@@ -0,0 +1,435 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * The items a converter stored for one data file, kept in a spool file (see SpoolItemWriter)
+ * so that they can be stored again in a later run instead of converting the file again, see
+ * LoadManifest.
+ *
+ * Item identifiers are only unique within a run, so a segment can't be stored again as it
+ * is.  When it is replayed every item gets a new identifier from the converter and the
+ * references between the items of the segment are changed to match.  References to items
+ * outside the segment, such as the genes, are recorded by key (e.g. "Gene:7157") in a keys
+ * file next to the spool and looked up again in the run that replays it.  Items of the
+ * segment that have a key are announced to that run, so that it doesn't store them twice, and
+ * aren't stored again if the run already has an item with the key.
+ * A segment that refers to an item without a key, or that has separately stored reference
+ * lists or attributes, can't be replayed and isn't kept.
+ *
+ * @author
+ */
+public class ItemSegment implements ItemWriter
+{
+    private static final String KEYS_SUFFIX = ".keys";
+    // lines of the keys file: a defined item or an external reference, old id, key
+    private static final String DEFINED = "D";
+    private static final String EXTERNAL = "E";
+
+    /**
+     * How the run that records or replays a segment names its shared items.
+     */
+    public interface Keys
+    {
+        /**
+         * @param itemId an item identifier of this run
+         * @return the key of the item, null if it has none
+         */
+        String getKey(String itemId);
+
+        /**
+         * @param key the key of an item outside a segment that is being replayed
+         * @return the identifier of the item with the key in this run, stored if need be,
+         * or null if there is none
+         * @throws ObjectStoreException if the item can't be stored
+         */
+        String resolve(String key) throws ObjectStoreException;
+
+        /**
+         * @param className the class of an item that is being replayed
+         * @return a new identifier for the item
+         */
+        String newIdentifier(String className);
+
+        /**
+         * Called for each replayed item that has a key, before it is stored.
+         * @param key the key
+         * @param itemId the new identifier of the item
+         * @return itemId, or the identifier of the item the run already has with the key, in
+         * which case the replayed item isn't stored
+         */
+        String replayed(String key, String itemId);
+    }
+
+    private final File file;
+    private final SpoolItemWriter spool;
+    private final Set<String> defined = new HashSet<String>();
+    private final Set<String> referenced = new HashSet<String>();
+    private boolean replayable = true;
+
+    /**
+     * Start recording a segment.
+     * @param file the spool file of the segment
+     * @throws IOException if the file can't be created
+     */
+    public ItemSegment(File file) throws IOException {
+        this.file = file;
+        spool = new SpoolItemWriter(file, null);
+    }
+
+    /**
+     * @return the spool file of the segment
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of items recorded
+     */
+    public int getItemCount() {
+        return spool.getItemCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer store(Item item) throws ObjectStoreException {
+        defined.add(item.getIdentifier());
+        if (item.getReferences() != null) {
+            for (Reference ref : item.getReferences()) {
+                referenced.add(ref.getRefId());
+            }
+        }
+        if (item.getCollections() != null) {
+            for (ReferenceList refs : item.getCollections()) {
+                addRefIds(refs.getRefIds());
+            }
+        }
+        return spool.store(item);
+    }
+
+    private void addRefIds(String refIds) {
+        if (refIds == null) {
+            return;
+        }
+        for (String refId : refIds.split(" ")) {
+            if (!refId.isEmpty()) {
+                referenced.add(refId);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void storeAll(Collection<Item> items) throws ObjectStoreException {
+        for (Item item : items) {
+            store(item);
+        }
+    }
+
+    /**
+     * Makes the segment one that can't be replayed: the id the record refers to is only
+     * known to the ItemWriter of the run.
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(ReferenceList refList, Integer itemId) {
+        replayable = false;
+    }
+
+    /**
+     * Makes the segment one that can't be replayed, see store(ReferenceList, Integer).
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(Attribute att, Integer itemId) {
+        replayable = false;
+    }
+
+    /**
+     * Same as discard(), a segment is kept with finish().
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws ObjectStoreException {
+        discard();
+    }
+
+    /**
+     * Finish the segment and write its keys file.
+     * @param keys the keys of the items of this run
+     * @return true if the segment can be replayed, otherwise its files are deleted
+     * @throws ObjectStoreException if the files can't be written
+     */
+    public boolean finish(Keys keys) throws ObjectStoreException {
+        spool.finish();
+        if (!replayable) {
+            discard();
+            return false;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String id : defined) {
+            String key = keys.getKey(id);
+            if (key != null) {
+                sb.append(DEFINED).append('\t').append(id).append('\t').append(key).append('\n');
+            }
+        }
+        for (String id : referenced) {
+            if (defined.contains(id)) {
+                continue;
+            }
+            String key = keys.getKey(id);
+            if (key == null) {
+                discard();
+                return false;
+            }
+            sb.append(EXTERNAL).append('\t').append(id).append('\t').append(key).append('\n');
+        }
+        File keysFile = getKeysFile(file);
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(keysFile),
+                    StandardCharsets.UTF_8);
+            try {
+                writer.write(sb.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            discard();
+            throw new ObjectStoreException("failed to write " + keysFile, e);
+        }
+        return true;
+    }
+
+    /**
+     * Stop recording and delete the files of the segment.
+     */
+    public void discard() {
+        try {
+            spool.finish();
+        } catch (ObjectStoreException e) {
+            // deleted anyway
+        }
+        delete(file);
+    }
+
+    /**
+     * Delete the files of a segment.
+     * @param file the spool file of the segment
+     */
+    public static void delete(File file) {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+        getKeysFile(file).delete();
+    }
+
+    private static File getKeysFile(File file) {
+        return new File(file.getPath() + KEYS_SUFFIX);
+    }
+
+    /**
+     * Store the items of a segment again, with identifiers of this run.  Nothing is stored
+     * unless all the items outside the segment it refers to resolve.
+     * @param file the spool file of the segment
+     * @param keys the keys of the items of this run
+     * @param writer the ItemWriter to store the items with
+     * @return the number of items stored, or -1 if the segment can't be replayed
+     * @throws IOException if the segment can't be read
+     * @throws ObjectStoreException if the items can't be stored
+     */
+    public static long replay(File file, Keys keys, ItemWriter writer)
+        throws IOException, ObjectStoreException {
+        File keysFile = getKeysFile(file);
+        if (!SpoolReplayer.isComplete(file) || !keysFile.isFile()) {
+            return -1;
+        }
+        // old id -> key of the items the segment defines and refers to
+        Map<String, String> definedKeys = new HashMap<String, String>();
+        Map<String, String> ids = new HashMap<String, String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(keysFile), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length != 3) {
+                    return -1;
+                }
+                if (DEFINED.equals(fields[0])) {
+                    definedKeys.put(fields[1], fields[2]);
+                } else {
+                    String id = keys.resolve(fields[2]);
+                    if (id == null) {
+                        return -1;
+                    }
+                    ids.put(fields[1], id);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        SpoolReplayer replayer = new SpoolReplayer(file);
+        // first pass: new identifiers for the items of the segment
+        Set<String> duplicates = new HashSet<String>();
+        replayer.replay(new Renumbering(keys, definedKeys, ids, duplicates));
+        // second pass: store them
+        Rewriting rewriting = new Rewriting(ids, duplicates, writer);
+        replayer.replay(rewriting);
+        return rewriting.stored;
+    }
+
+    /**
+     * Gives each item a new identifier, without storing anything.
+     */
+    private static class Renumbering extends NullItemWriter
+    {
+        private final Keys keys;
+        private final Map<String, String> definedKeys;
+        private final Map<String, String> ids;
+        private final Set<String> duplicates;
+
+        Renumbering(Keys keys, Map<String, String> definedKeys, Map<String, String> ids,
+                Set<String> duplicates) {
+            this.keys = keys;
+            this.definedKeys = definedKeys;
+            this.ids = ids;
+            this.duplicates = duplicates;
+        }
+
+        @Override
+        public Integer store(Item item) {
+            String id = keys.newIdentifier(item.getClassName());
+            String key = definedKeys.get(item.getIdentifier());
+            if (key != null) {
+                String existing = keys.replayed(key, id);
+                if (!id.equals(existing)) {
+                    duplicates.add(item.getIdentifier());
+                    id = existing;
+                }
+            }
+            ids.put(item.getIdentifier(), id);
+            return null;
+        }
+    }
+
+    /**
+     * Changes the identifiers of the items and their references and stores them, except the
+     * duplicates of items the run already has.
+     */
+    private static class Rewriting extends NullItemWriter
+    {
+        private final Map<String, String> ids;
+        private final Set<String> duplicates;
+        private final ItemWriter writer;
+        long stored;
+
+        Rewriting(Map<String, String> ids, Set<String> duplicates, ItemWriter writer) {
+            this.ids = ids;
+            this.duplicates = duplicates;
+            this.writer = writer;
+        }
+
+        @Override
+        public Integer store(Item item) throws ObjectStoreException {
+            if (duplicates.contains(item.getIdentifier())) {
+                return null;
+            }
+            stored++;
+            item.setIdentifier(map(item.getIdentifier()));
+            if (item.getReferences() != null) {
+                for (Reference ref : item.getReferences()) {
+                    ref.setRefId(map(ref.getRefId()));
+                }
+            }
+            if (item.getCollections() != null) {
+                for (ReferenceList refs : item.getCollections()) {
+                    refs.setRefIds(mapAll(refs.getRefIds()));
+                }
+            }
+            return writer.store(item);
+        }
+
+        private String map(String id) throws ObjectStoreException {
+            String mapped = ids.get(id);
+            if (mapped == null) {
+                throw new ObjectStoreException("no identifier for " + id + " in this run");
+            }
+            return mapped;
+        }
+
+        private String mapAll(String refIds) throws ObjectStoreException {
+            if (refIds == null || refIds.isEmpty()) {
+                return refIds;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (String refId : refIds.split(" ")) {
+                if (!refId.isEmpty()) {
+                    sb.append(sb.length() == 0 ? "" : " ").append(map(refId));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * An ItemWriter for the passes over a segment, which has no separately stored records.
+     */
+    private abstract static class NullItemWriter implements ItemWriter
+    {
+        @Override
+        public void storeAll(Collection<Item> items) throws ObjectStoreException {
+            for (Item item : items) {
+                store(item);
+            }
+        }
+
+        @Override
+        public void store(ReferenceList refList, Integer itemId) {
+            throw new IllegalStateException("reference list in a segment");
+        }
+
+        @Override
+        public void store(Attribute att, Integer itemId) {
+            throw new IllegalStateException("attribute in a segment");
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The data files a converter read in its last run, with the items each produced, so that a
+ * rerun only converts the files that changed.  For each file the manifest records its path,
+ * size, modification time and SHA-256 and the ItemSegment holding its items.
+ *
+ * A file is unchanged if its size and modification time are the ones recorded, or, if they
+ * aren't, if its SHA-256 is; with verify set the SHA-256 is always compared.  Files the
+ * converter depends on as a whole, such as a mapping it reads first, are recorded with
+ * dependsOn(): if one of them changed, or the manifest was written by another converter or
+ * another version (see the constructor), none of the recorded segments are used.
+ *
+ * The manifest and the segments live in a directory of their own.  write() keeps the entries
+ * of the files seen in this run and deletes the segments of the others.
+ *
+ * @author
+ */
+public class LoadManifest
+{
+    /** Name of the manifest file in the directory */
+    public static final String MANIFEST_FILE = "manifest.tsv";
+
+    private static final Logger LOG = Logger.getLogger(LoadManifest.class);
+    private static final String HEADER = "# storm load manifest\t";
+    private static final String SEGMENT_SUFFIX = ".spool";
+
+    private final File dir;
+    private final String fingerprint;
+    private final boolean verify;
+    // path -> entry, from the last run
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    // path -> entry, of this run
+    private final Map<String, Entry> seen = new LinkedHashMap<String, Entry>();
+    private boolean valid;
+
+    /**
+     * Read the manifest of the last run, if there is one.
+     * @param dir the directory of the manifest and the segments
+     * @param fingerprint what the items depend on besides the data files, e.g. the name and
+     * version of the converter; the last run's items are only used if it is the same
+     * @param verify true to compare the SHA-256 of every file
+     * @throws IOException if the directory can't be created or the manifest read
+     */
+    public LoadManifest(File dir, String fingerprint, boolean verify) throws IOException {
+        this.dir = dir;
+        this.fingerprint = fingerprint;
+        this.verify = verify;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("failed to create directory: " + dir);
+        }
+        File file = new File(dir, MANIFEST_FILE);
+        if (!file.isFile()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            String line = reader.readLine();
+            if (line == null || !line.equals(HEADER + fingerprint)) {
+                LOG.info(file + " is from another converter or version, converting all files");
+                return;
+            }
+            while ((line = reader.readLine()) != null) {
+                Entry entry = Entry.parse(line);
+                if (entry == null) {
+                    LOG.warn("ignoring " + file + ", bad line: " + line);
+                    entries.clear();
+                    return;
+                }
+                entries.put(entry.path, entry);
+            }
+        } finally {
+            reader.close();
+        }
+        valid = true;
+    }
+
+    /**
+     * Record a file the items of all data files depend on.  If it changed since the last
+     * run the segments of that run aren't used.
+     * @param file the file
+     * @throws IOException if the file can't be read
+     */
+    public void dependsOn(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        Entry entry = entries.get(path);
+        Entry current = check(file, entry);
+        if (current == null) {
+            if (valid) {
+                LOG.info(file + " changed, converting all files");
+            }
+            valid = false;
+            current = new Entry(path, file.length(), file.lastModified(), sha256(file), null,
+                    0);
+        }
+        seen.put(path, current);
+    }
+
+    /**
+     * @param file a data file
+     * @return the segment of the file from the last run if the file hasn't changed since,
+     * otherwise null
+     * @throws IOException if the file can't be read
+     */
+    public File getSegment(File file) throws IOException {
+        if (!valid) {
+            return null;
+        }
+        Entry entry = entries.get(file.getAbsolutePath());
+        if (entry == null || entry.segment == null) {
+            return null;
+        }
+        Entry current = check(file, entry);
+        return current == null ? null : new File(dir, entry.segment);
+    }
+
+    // the entry for the file as it is now if it matches the recorded one, null otherwise
+    private Entry check(File file, Entry entry) throws IOException {
+        if (entry == null || !file.isFile()) {
+            return null;
+        }
+        long size = file.length();
+        long modified = file.lastModified();
+        if (!verify && size == entry.size && modified == entry.modified) {
+            return entry;
+        }
+        if (size != entry.size) {
+            return null;
+        }
+        String sha256 = sha256(file);
+        if (!sha256.equals(entry.sha256)) {
+            return null;
+        }
+        // touched but the same
+        return new Entry(entry.path, size, modified, sha256, entry.segment, entry.items);
+    }
+
+    /**
+     * @param file a data file
+     * @return the file to record its segment in
+     */
+    public File newSegment(File file) {
+        String sha = sha256(file.getAbsolutePath());
+        return new File(dir, sha.substring(0, 16) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Record that a file was replayed from its segment.
+     * @param file the data file
+     * @throws IOException if the file can't be read
+     */
+    public void replayed(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        seen.put(path, check(file, entries.get(path)));
+    }
+
+    /**
+     * Record the segment of a file that was converted.
+     * @param file the data file
+     * @param size the size of the file when it was read
+     * @param modified the modification time of the file when it was read
+     * @param segment the segment, null if the file's items can't be replayed
+     * @param items the number of items of the segment
+     * @throws IOException if the file can't be read
+     */
+    public void converted(File file, long size, long modified, File segment, long items)
+        throws IOException {
+        String path = file.getAbsolutePath();
+        seen.put(path, new Entry(path, size, modified, sha256(file),
+                segment == null ? null : segment.getName(), items));
+    }
+
+    /**
+     * Write the manifest of this run and delete the segments no entry refers to.
+     * @throws IOException if the manifest can't be written
+     */
+    public void write() throws IOException {
+        File file = new File(dir, MANIFEST_FILE);
+        File tmp = new File(dir, MANIFEST_FILE + ".tmp");
+        Set<String> segments = new HashSet<String>();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tmp),
+                StandardCharsets.UTF_8);
+        try {
+            writer.write(HEADER + fingerprint + "\n");
+            for (Entry entry : seen.values()) {
+                writer.write(entry.toString());
+                writer.write('\n');
+                if (entry.segment != null) {
+                    segments.add(entry.segment);
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+            throw new IOException("failed to move " + tmp + " to " + file);
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File segment : files) {
+                String name = segment.getName();
+                if (name.endsWith(SEGMENT_SUFFIX) && !segments.contains(name)) {
+                    ItemSegment.delete(segment);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return the SHA-256 of its contents, in hex
+     * @throws IOException if the file can't be read
+     */
+    public static String sha256(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[1 << 16];
+        InputStream is = new FileInputStream(file);
+        try {
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            is.close();
+        }
+        return hex(digest.digest());
+    }
+
+    private static String sha256(String s) {
+        return hex(newDigest().digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf,
+                    16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A line of the manifest.
+     */
+    private static class Entry
+    {
+        final String path;
+        final long size;
+        final long modified;
+        final String sha256;
+        // file name of the segment in the directory, null if there is none
+        final String segment;
+        final long items;
+
+        Entry(String path, long size, long modified, String sha256, String segment,
+                long items) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.sha256 = sha256;
+            this.segment = segment;
+            this.items = items;
+        }
+
+        static Entry parse(String line) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 6) {
+                return null;
+            }
+            try {
+                return new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        fields[3], fields[4].isEmpty() ? null : fields[4],
+                        Long.parseLong(fields[5]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return path + "\t" + size + "\t" + modified + "\t" + sha256 + "\t"
+                + (segment == null ? "" : segment) + "\t" + items;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a data file through memory mappings instead of an InputStreamReader.
+ *
+ * The file is mapped in segments of at most DEFAULT_SEGMENT_SIZE bytes, so files over 2GB,
+ * like the TCGA Xena matrices, are covered by several mappings.  Bytes are decoded as UTF-8
+ * by hand: ASCII, which is almost all of the data, is copied straight to the char buffer and
+ * only other bytes go through the (slower) multi-byte path, so no CharsetDecoder and no
+ * intermediate byte/char buffers are involved.  Malformed input is replaced with U+FFFD.
+ *
+ * A reader can cover a byte range of the file; findLineStart() finds line boundaries in the
+ * mapped data so that a file can be split into ranges of whole lines.  Not thread-safe, but
+ * any number of readers can map the same file.
+ *
+ * @author
+ */
+public class MappedFileReader extends Reader
+{
+    /** Largest part of a file covered by one mapping */
+    public static final long DEFAULT_SEGMENT_SIZE = 1L << 30;
+
+    private static final char REPLACEMENT = '\ufffd';
+
+    private final RandomAccessFile file;
+    private final long segmentSize;
+    private final long size;
+    private final MappedByteBuffer[] segments;
+    private final long end;
+    private long position;
+    // second half of a surrogate pair that didn't fit into the last read
+    private char pendingLow;
+    private final byte[] scratch = new byte[1 << 14];
+
+    /**
+     * Read a whole file.
+     * @param file the file
+     * @throws IOException if the file can't be mapped
+     */
+    public MappedFileReader(File file) throws IOException {
+        this(file, 0, Long.MAX_VALUE, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Read a range of a file.
+     * @param file the file
+     * @param start the offset of the first byte to read
+     * @param end the offset after the last byte to read, past the end of the file means to
+     * the end
+     * @param segmentSize the largest part of the file to map at once
+     * @throws IOException if the file can't be mapped
+     */
+    public MappedFileReader(File file, long start, long end, long segmentSize)
+        throws IOException {
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid segment size: " + segmentSize);
+        }
+        this.file = new RandomAccessFile(file, "r");
+        this.segmentSize = segmentSize;
+        try {
+            FileChannel channel = this.file.getChannel();
+            size = channel.size();
+            int count = (int) ((size + segmentSize - 1) / segmentSize);
+            segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long offset = i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.min(segmentSize, size - offset));
+            }
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+        this.position = Math.min(Math.max(start, 0), size);
+        this.end = Math.min(end, size);
+    }
+
+    /**
+     * @return the size of the file in bytes
+     */
+    public long getFileSize() {
+        return size;
+    }
+
+    /**
+     * @return the offset in the file of the next byte to decode
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @param offset a byte offset in the file
+     * @return the byte at the offset
+     */
+    public byte getByte(long offset) {
+        if (offset < 0 || offset >= size) {
+            throw new IndexOutOfBoundsException("offset " + offset + " in a file of " + size
+                    + " bytes");
+        }
+        return byteAt(offset);
+    }
+
+    /**
+     * Find the start of the line containing a byte, or of the next line.
+     * @param offset a byte offset in the file
+     * @return offset if it is the start of a line, otherwise the offset after the next '\n'
+     * (the file size if there is none)
+     */
+    public long findLineStart(long offset) {
+        if (offset <= 0) {
+            return 0;
+        }
+        long pos = indexOf((byte) '\n', offset - 1);
+        return pos < 0 ? size : pos + 1;
+    }
+
+    /**
+     * Find the next occurrence of a byte.
+     * @param value the byte to look for
+     * @param offset the byte offset in the file to start at
+     * @return the offset of the byte, -1 if it isn't in the rest of the file
+     */
+    public long indexOf(byte value, long offset) {
+        long pos = Math.max(0, offset);
+        while (pos < size) {
+            MappedByteBuffer segment = segments[(int) (pos / segmentSize)];
+            long base = pos - pos % segmentSize;
+            int limit = segment.limit();
+            for (int index = (int) (pos - base); index < limit; index++) {
+                if (segment.get(index) == value) {
+                    return base + index;
+                }
+            }
+            pos = base + limit;
+        }
+        return -1;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+        if (pendingLow != 0) {
+            cbuf[off + count++] = pendingLow;
+            pendingLow = 0;
+        }
+        while (count < len && position < end) {
+            MappedByteBuffer segment = segments[(int) (position / segmentSize)];
+            int index = (int) (position % segmentSize);
+            int n = (int) Math.min(Math.min(segment.limit() - index, end - position),
+                    Math.min(len - count, scratch.length));
+            segment.position(index);
+            segment.get(scratch, 0, n);
+            int i = 0;
+            int to = off + count;
+            // ASCII
+            while (i < n && scratch[i] >= 0) {
+                cbuf[to++] = (char) scratch[i++];
+            }
+            count += i;
+            position += i;
+            if (i < n) {
+                count += decode(cbuf, off + count, len - count);
+            }
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    // decode the multi-byte sequence at position, returns the number of chars written
+    private int decode(char[] cbuf, int off, int len) {
+        int b = byteAt(position) & 0xff;
+        int extra;
+        int codePoint;
+        if (b >= 0xc2 && b <= 0xdf) {
+            extra = 1;
+            codePoint = b & 0x1f;
+        } else if (b >= 0xe0 && b <= 0xef) {
+            extra = 2;
+            codePoint = b & 0x0f;
+        } else if (b >= 0xf0 && b <= 0xf4) {
+            extra = 3;
+            codePoint = b & 0x07;
+        } else {
+            position++;
+            cbuf[off] = REPLACEMENT;
+            return 1;
+        }
+        for (int i = 1; i <= extra; i++) {
+            if (position + i >= end || (byteAt(position + i) & 0xc0) != 0x80) {
+                position += i;
+                cbuf[off] = REPLACEMENT;
+                return 1;
+            }
+            codePoint = (codePoint << 6) | (byteAt(position + i) & 0x3f);
+        }
+        position += extra + 1;
+        if ((extra == 2 && (codePoint < 0x800 || Character.isSurrogate((char) codePoint)))
+                || (extra == 3 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT))) {
+            // overlong or invalid
+            cbuf[off] = REPLACEMENT;
+            return 1;
+        }
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            cbuf[off] = (char) codePoint;
+            return 1;
+        }
+        cbuf[off] = Character.highSurrogate(codePoint);
+        if (len > 1) {
+            cbuf[off + 1] = Character.lowSurrogate(codePoint);
+            return 2;
+        }
+        pendingLow = Character.lowSurrogate(codePoint);
+        return 1;
+    }
+
+    private byte byteAt(long pos) {
+        return segments[(int) (pos / segmentSize)].get((int) (pos % segmentSize));
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mappings are released when they are garbage collected
+        file.close();
+    }
+}
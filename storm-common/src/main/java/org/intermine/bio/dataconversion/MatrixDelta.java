@@ -0,0 +1,313 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The difference between two releases of a matrix with a row per cell line and a column per
+ * gene, such as the DepMap expression, copy number and gene effect files, so that a converter
+ * only stores the cells that were added or changed since the previous release.
+ *
+ * The previous release is read first and a 64-bit value is kept per cell, for the columns
+ * the converter reads and those that are gone from the new release: the bits of the double
+ * for numbers, so that "0.5" and "0.50" are the same, a hash of the text otherwise.  The new
+ * release is then compared a row at a time with startRow() and compare().  Cells that were
+ * stored before and aren't any more, including those of rows and columns that are gone, are
+ * removed; they are counted and written to a file as "row key TAB column name" lines, for
+ * a separate deletion, since a load can only add and update items.
+ *
+ * Whether a cell is stored at all is decided by the converter's CellRule, applied to both
+ * releases.  Not thread-safe.
+ *
+ * @author
+ */
+public class MatrixDelta
+{
+    /**
+     * Which cells of the matrix a converter stores.
+     */
+    public interface CellRule
+    {
+        /**
+         * @param value a cell
+         * @return true if the converter stores an item for the cell
+         */
+        boolean isStored(CharSequence value);
+    }
+
+    /**
+     * What happened to a cell since the previous release.
+     */
+    public enum Change
+    {
+        /** stored now, but not before */
+        ADDED,
+        /** stored in both releases, with another value now */
+        CHANGED,
+        /** stored in both releases, with the same value */
+        UNCHANGED,
+        /** stored before, but not now */
+        REMOVED,
+        /** stored in neither release */
+        NONE
+    }
+
+    private static final Logger LOG = Logger.getLogger(MatrixDelta.class);
+    // a NaN that Double.doubleToLongBits never returns
+    private static final long ABSENT = 0x7ff0000000000001L;
+
+    private final String name;
+    private final CellRule rule;
+    private final NumericField numbers = new NumericField();
+    // new column index -> index of the kept values, -1 if the previous release hasn't got it
+    private int[] columns;
+    private String[] columnNames;
+    private final Map<String, long[]> rows = new HashMap<String, long[]>();
+    private PrintWriter removedWriter;
+    // the row being compared and its values in the previous release, null if it's new
+    private String rowKey;
+    private long[] previous;
+    private long added;
+    private long changed;
+    private long unchanged;
+    private long removed;
+
+    /**
+     * Constructor
+     * @param name what the cells are, for the log, e.g. "DepMapExpression"
+     * @param rule which cells are stored
+     */
+    public MatrixDelta(String name, CellRule rule) {
+        this.name = name;
+        this.rule = rule;
+    }
+
+    /**
+     * Write the removed cells to a file, see the class comment.
+     * @param writer the writer, closed by finish()
+     */
+    public void setRemovedWriter(PrintWriter writer) {
+        this.removedWriter = writer;
+    }
+
+    /**
+     * Read the previous release.
+     * @param previousRows the previous release, not read yet; closed when done
+     * @param header the header of the new release
+     * @param selected the names of the columns of the new release the converter reads
+     * @return the number of rows read
+     * @throws IOException if the previous release can't be read
+     */
+    public long readPrevious(DelimitedReader previousRows, String[] header,
+            Collection<String> selected) throws IOException {
+        try {
+            String[] previousHeader = previousRows.readHeader();
+            if (previousHeader == null) {
+                previousHeader = new String[0];
+            }
+            Set<String> newColumns = new HashSet<String>();
+            Collections.addAll(newColumns, header);
+            Set<String> wanted = new HashSet<String>(selected);
+            // the selected columns and those that are gone
+            boolean[] keep = new boolean[previousHeader.length];
+            Map<String, Integer> kept = new HashMap<String, Integer>();
+            List<String> names = new ArrayList<String>();
+            for (int i = 1; i < previousHeader.length; i++) {
+                String column = previousHeader[i];
+                if ((wanted.contains(column) || !newColumns.contains(column))
+                        && !kept.containsKey(column)) {
+                    keep[i] = true;
+                    kept.put(column, names.size());
+                    names.add(column);
+                }
+            }
+            columnNames = names.toArray(new String[names.size()]);
+            columns = new int[header.length];
+            for (int i = 0; i < header.length; i++) {
+                Integer index = i == 0 ? null : kept.get(header[i]);
+                columns[i] = index == null ? -1 : index;
+            }
+            // previous index of each kept value
+            int[] sources = new int[columnNames.length];
+            for (int i = 1; i < previousHeader.length; i++) {
+                if (keep[i]) {
+                    sources[kept.get(previousHeader[i])] = i;
+                }
+            }
+            if (keep.length > 0) {
+                keep[0] = true;
+            }
+            previousRows.selectColumns(keep);
+            long count = 0;
+            while (previousRows.next()) {
+                count++;
+                long[] values = new long[columnNames.length];
+                int fields = previousRows.getFieldCount();
+                for (int k = 0; k < values.length; k++) {
+                    values[k] = sources[k] < fields ? encode(previousRows.getField(sources[k]))
+                        : ABSENT;
+                }
+                rows.put(previousRows.getString(0), values);
+            }
+            return count;
+        } finally {
+            previousRows.close();
+        }
+    }
+
+    private long encode(CharSequence value) {
+        if (value == null || !rule.isStored(value)) {
+            return ABSENT;
+        }
+        if (numbers.scan(value).isNumber()) {
+            return Double.doubleToLongBits(numbers.doubleValue());
+        }
+        // FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Start comparing a row of the new release, finishing the row before.
+     * @param key the first field of the row, e.g. the DepMapID of the cell line
+     */
+    public void startRow(String key) {
+        endRow();
+        rowKey = key;
+        previous = rows.remove(key);
+    }
+
+    private void endRow() {
+        if (previous != null) {
+            for (int k = 0; k < previous.length; k++) {
+                if (previous[k] != ABSENT) {
+                    removed(rowKey, k);
+                }
+            }
+        }
+        rowKey = null;
+        previous = null;
+    }
+
+    /**
+     * Compare a cell of the current row with the previous release.  Each cell is compared
+     * once.
+     * @param column the index of the column in the new release
+     * @param value the cell, may be null if it isn't stored
+     * @return what happened to the cell; the converter stores ADDED and CHANGED cells
+     */
+    public Change compare(int column, CharSequence value) {
+        int k = column < columns.length ? columns[column] : -1;
+        long before = ABSENT;
+        if (previous != null && k >= 0) {
+            before = previous[k];
+            // seen, so not removed at the end of the row
+            previous[k] = ABSENT;
+        }
+        long now = encode(value);
+        if (now == ABSENT) {
+            if (before == ABSENT) {
+                return Change.NONE;
+            }
+            removed(rowKey, k);
+            return Change.REMOVED;
+        }
+        if (before == ABSENT) {
+            added++;
+            return Change.ADDED;
+        }
+        if (before == now) {
+            unchanged++;
+            return Change.UNCHANGED;
+        }
+        changed++;
+        return Change.CHANGED;
+    }
+
+    private void removed(String key, int k) {
+        removed++;
+        if (removedWriter != null) {
+            removedWriter.print(key);
+            removedWriter.print('\t');
+            removedWriter.print(columnNames[k]);
+            removedWriter.print('\n');
+        }
+    }
+
+    /**
+     * Finish the comparison: the cells of the rows of the previous release that weren't in
+     * the new one are removed.  Logs the counts and closes the writer of the removed cells.
+     * @throws IOException if the removed cells couldn't be written
+     */
+    public void finish() throws IOException {
+        endRow();
+        List<String> keys = new ArrayList<String>(rows.keySet());
+        Collections.sort(keys);
+        for (String key : keys) {
+            rowKey = key;
+            previous = rows.remove(key);
+            endRow();
+        }
+        LOG.info(name + " since the previous release: " + added + " added, " + changed
+                + " changed, " + unchanged + " unchanged, " + removed + " removed");
+        if (removedWriter != null) {
+            removedWriter.close();
+            if (removedWriter.checkError()) {
+                throw new IOException("failed to write the removed " + name + " cells");
+            }
+            removedWriter = null;
+        }
+    }
+
+    /**
+     * @return the number of cells stored now but not before
+     */
+    public long getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the number of cells stored in both releases with different values
+     */
+    public long getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return the number of cells stored in both releases with the same value
+     */
+    public long getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return the number of cells stored before but not now, so far
+     */
+    public long getRemoved() {
+        return removed;
+    }
+}
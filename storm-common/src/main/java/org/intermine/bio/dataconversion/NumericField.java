@@ -0,0 +1,286 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * Classifies and parses numeric fields of the data files in one pass, without exceptions and
+ * without allocating.
+ *
+ * Replaces the isDouble() methods of the converters, which called Double.parseDouble and
+ * used the NumberFormatException for every value that wasn't a number.  The grammar is the
+ * decimal one of Double.parseDouble: optional surrounding white space, optional sign,
+ * digits with an optional fraction and exponent, an optional float/double suffix, NaN and
+ * Infinity.  Hexadecimal floating point is classified as TEXT.
+ *
+ * An instance remembers the value of the last scanned field, so it is not thread-safe; keep
+ * one per converter (or thread) and reuse it.
+ *
+ * @author
+ */
+public final class NumericField
+{
+    /**
+     * What a field contains.
+     */
+    public enum Kind
+    {
+        /** nothing, or only white space */
+        EMPTY,
+        /** the R/DepMap missing value marker "NA" */
+        NA,
+        /** "NaN" */
+        NAN,
+        /** "Infinity" or "-Infinity" */
+        INFINITY,
+        /** digits only, e.g. "42" */
+        INTEGER,
+        /** digits with a fraction, e.g. "4.3959" */
+        DECIMAL,
+        /** digits with an exponent, e.g. "1.2E-5" */
+        SCIENTIFIC,
+        /** anything else */
+        TEXT;
+
+        /**
+         * @return true if Double.parseDouble would accept the field
+         */
+        public boolean isNumber() {
+            return this != EMPTY && this != NA && this != TEXT;
+        }
+    }
+
+    // largest mantissa that converts to a double exactly
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    // powers of ten that are exact doubles
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private CharSequence field;
+    private int start;
+    private int end;
+    private Kind kind = Kind.EMPTY;
+    private boolean negative;
+    private long mantissa;
+    private int exponent;
+    private boolean exact;
+
+    /**
+     * Scan a field, remembering its value for doubleValue().
+     * @param s the field, null is treated as empty
+     * @return the kind of value in the field
+     */
+    public Kind scan(CharSequence s) {
+        kind = scan(s, this);
+        return kind;
+    }
+
+    // out may be null when only the kind is wanted
+    private static Kind scan(CharSequence s, NumericField out) {
+        if (s == null) {
+            return Kind.EMPTY;
+        }
+        int i = 0;
+        int n = s.length();
+        while (i < n && s.charAt(i) <= ' ') {
+            i++;
+        }
+        while (n > i && s.charAt(n - 1) <= ' ') {
+            n--;
+        }
+        if (i == n) {
+            return Kind.EMPTY;
+        }
+        if (n - i == 2 && s.charAt(i) == 'N' && s.charAt(i + 1) == 'A') {
+            return Kind.NA;
+        }
+        if (out != null) {
+            out.field = s;
+            out.start = i;
+            out.end = n;
+        }
+
+        char c = s.charAt(i);
+        boolean negative = false;
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+        if (out != null) {
+            out.negative = negative;
+        }
+        if (matches(s, i, n, "NaN")) {
+            return Kind.NAN;
+        }
+        if (matches(s, i, n, "Infinity")) {
+            return Kind.INFINITY;
+        }
+
+        long m = 0;
+        int digits = 0;
+        int dropped = 0;
+        int scale = 0;
+        boolean any = false;
+        boolean point = false;
+        for (; i < n; i++) {
+            c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (m == 0 && c == '0') {
+                    // leading zeros are not significant
+                } else if (digits < 18) {
+                    m = m * 10 + (c - '0');
+                    digits++;
+                } else {
+                    dropped++;
+                }
+                if (point) {
+                    scale++;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (!any) {
+            return Kind.TEXT;
+        }
+        // digits beyond the 18th only scale the value
+        int exp10 = dropped - scale;
+        Kind result = point ? Kind.DECIMAL : Kind.INTEGER;
+
+        if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < n && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                negativeExponent = s.charAt(i) == '-';
+                i++;
+            }
+            int e = 0;
+            boolean expDigits = false;
+            for (; i < n && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++) {
+                expDigits = true;
+                if (e < 100000) {
+                    e = e * 10 + (s.charAt(i) - '0');
+                }
+            }
+            if (!expDigits) {
+                return Kind.TEXT;
+            }
+            exp10 += negativeExponent ? -e : e;
+            result = Kind.SCIENTIFIC;
+        }
+        if (i < n && (s.charAt(i) == 'f' || s.charAt(i) == 'F'
+                || s.charAt(i) == 'd' || s.charAt(i) == 'D')) {
+            i++;
+        }
+        if (i != n) {
+            return Kind.TEXT;
+        }
+        if (out != null) {
+            out.mantissa = m;
+            out.exponent = exp10;
+            out.exact = dropped == 0 && m < MAX_EXACT_MANTISSA && exp10 >= -22 && exp10 <= 22;
+        }
+        return result;
+    }
+
+    /**
+     * @return the kind found by the last scan
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * The value of the last scanned field.  Mantissas of up to 15 digits with small exponents
+     * are converted exactly without allocating; anything longer falls back to
+     * Double.parseDouble, which is correctly rounded.
+     * @return the value, or NaN if the field wasn't a number
+     */
+    public double doubleValue() {
+        switch (kind) {
+            case INFINITY:
+                return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            case INTEGER:
+            case DECIMAL:
+            case SCIENTIFIC:
+                double value;
+                if (mantissa == 0) {
+                    value = 0.0;
+                } else if (exact) {
+                    value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent]
+                            : mantissa / POWERS_OF_TEN[-exponent];
+                } else {
+                    return Double.parseDouble(field.subSequence(start, end).toString());
+                }
+                return negative ? -value : value;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Classify a field without parsing its value.
+     * @param s the field
+     * @return the kind of value in the field
+     */
+    public static Kind classify(CharSequence s) {
+        return scan(s, null);
+    }
+
+    /**
+     * Equivalent of the isDouble() of the nanopore and RNA-seq converters.
+     * @param s the field
+     * @return true if Double.parseDouble would accept the field
+     */
+    public static boolean isNumber(CharSequence s) {
+        return classify(s).isNumber();
+    }
+
+    /**
+     * Equivalent of the isDouble() of most converters, which only accept values that can't
+     * be converted to an int without loss.
+     * @param s the field
+     * @return true if the field is a number but not an int value
+     */
+    public boolean isNonIntegral(CharSequence s) {
+        if (!scan(s).isNumber()) {
+            return false;
+        }
+        double x = doubleValue();
+        return x != (int) x;
+    }
+
+    /**
+     * Parse a field.
+     * @param s the field
+     * @param defaultValue returned if the field isn't a number
+     * @return the value of the field
+     */
+    public double parseDouble(CharSequence s, double defaultValue) {
+        return scan(s).isNumber() ? doubleValue() : defaultValue;
+    }
+
+    private static boolean matches(CharSequence s, int from, int to, String word) {
+        if (to - from != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (s.charAt(from + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
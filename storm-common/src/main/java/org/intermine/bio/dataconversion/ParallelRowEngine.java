@@ -0,0 +1,322 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a delimited file on several threads and hands the rows back in file order.
+ *
+ * The data after the header is split into byte ranges of about chunkSize bytes, each ending
+ * at a line break, and every range is parsed by its own DelimitedReader on a ForkJoinPool.
+ * The parser turns each row into a value of the converter's choosing, e.g. the fields it
+ * needs with the numeric checks already done.  The handler then gets the values one by one
+ * on the calling thread and in the order of the rows in the file, which is where items are
+ * created and stored: item identifiers are handed out in the same order as in a serial run,
+ * so the output is the same item for item.
+ *
+ * Parsers run concurrently and must not touch converter state; handlers run one at a time.
+ * Chunks are split at line breaks, which can't be told apart from line breaks inside quoted
+ * fields without reading the file from the start.  So a file with the quote character
+ * anywhere after the header isn't split (see isSplittable()) and is parsed as one chunk, on
+ * one thread.  The file is read through memory mappings and decoded as UTF-8 (see
+ * MappedFileReader), and must not be compressed.
+ *
+ * @author
+ */
+public class ParallelRowEngine
+{
+    /** Default number of bytes per chunk */
+    public static final long DEFAULT_CHUNK_SIZE = 8L << 20;
+
+    /**
+     * Turns a row into a value, on a worker thread.
+     * @param <T> the value
+     */
+    public interface RowParser<T>
+    {
+        /**
+         * @param rows the reader, positioned on the row
+         * @return the value for the row, null to drop the row
+         * @throws Exception if the row can't be parsed
+         */
+        T parse(DelimitedReader rows) throws Exception;
+    }
+
+    /**
+     * Consumes the row values in file order, on the thread that called run().
+     * @param <T> the value
+     */
+    public interface RowHandler<T>
+    {
+        /**
+         * @param row the value returned by the parser
+         * @throws Exception if the row can't be converted
+         */
+        void handle(T row) throws Exception;
+    }
+
+    private final File file;
+    private final char delimiter;
+    private final char quote;
+    private final int threads;
+    private final long chunkSize;
+    private final String[] header;
+    private final long dataStart;
+    private final long fileSize;
+    private final boolean splittable;
+    private boolean[] selected;
+    private int keyColumn = -1;
+    private DelimitedReader.RowFilter rowFilter;
+    private boolean returnFiltered;
+    private int chunks;
+    // counted on the thread that calls run()
+    private long rowsRead;
+    private long rowsFiltered;
+    private long charsRead;
+
+    /**
+     * Constructor, reads the header of the file.
+     * @param file the data file, not compressed
+     * @param delimiter the field delimiter
+     * @param quote the quote character, or DelimitedReader.NO_QUOTE
+     * @param threads the number of threads to parse on
+     * @param chunkSize the approximate number of bytes per chunk
+     * @throws IOException if the file can't be read
+     */
+    public ParallelRowEngine(File file, char delimiter, char quote, int threads,
+            long chunkSize) throws IOException {
+        this.file = file;
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.threads = Math.max(1, threads);
+        this.chunkSize = Math.max(1, chunkSize);
+        MappedFileReader reader = new MappedFileReader(file);
+        try {
+            fileSize = reader.getFileSize();
+            // leading comment lines and the header, as DelimitedReader would skip and read them
+            long pos = 0;
+            while (pos < fileSize && reader.getByte(pos) == '#') {
+                pos = reader.findLineStart(pos + 1);
+            }
+            dataStart = reader.findLineStart(pos + 1);
+            DelimitedReader headerReader = new DelimitedReader(new MappedFileReader(file, pos,
+                    dataStart, MappedFileReader.DEFAULT_SEGMENT_SIZE), delimiter, quote,
+                    DelimitedReader.DEFAULT_BUFFER_SIZE);
+            header = headerReader.readHeader();
+            headerReader.close();
+            splittable = quote == DelimitedReader.NO_QUOTE
+                || reader.indexOf((byte) quote, dataStart) < 0;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the header row, null if the file is empty
+     */
+    public String[] getHeader() {
+        return header;
+    }
+
+    /**
+     * Only parse the columns whose header is one of the given names, see
+     * DelimitedReader.selectColumns().
+     * @param names the column names to keep
+     */
+    public void selectColumns(Collection<String> names) {
+        Set<String> wanted = new HashSet<String>(names);
+        selected = new boolean[header == null ? 0 : header.length];
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = wanted.contains(header[i]);
+        }
+    }
+
+    /**
+     * Filter rows on their key field, see DelimitedReader.setRowFilter().  The filter is
+     * called from several threads at once.
+     * @param keyColumn the column passed to the filter
+     * @param filter the filter, must be thread-safe
+     * @param returnFiltered true to pass rejected rows to the parser too
+     */
+    public void setRowFilter(int keyColumn, DelimitedReader.RowFilter filter,
+            boolean returnFiltered) {
+        this.keyColumn = keyColumn;
+        this.rowFilter = filter;
+        this.returnFiltered = returnFiltered;
+    }
+
+    /**
+     * @return true if the rows can be parsed in chunks, false if the file has the quote
+     * character after the header, so that run() parses it as one chunk
+     */
+    public boolean isSplittable() {
+        return splittable;
+    }
+
+    /**
+     * @return the number of chunks of the last run
+     */
+    public int getChunkCount() {
+        return chunks;
+    }
+
+    /**
+     * @return the number of rows parsed by run(), without the rows rejected by the row filter
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * @return the number of rows skipped by the row filter in run()
+     */
+    public long getRowsFiltered() {
+        return rowsFiltered;
+    }
+
+    /**
+     * @return the number of chars of the rows parsed by run(), without the header
+     */
+    public long getCharsRead() {
+        return charsRead;
+    }
+
+    /**
+     * Parse all the rows after the header and hand them to the handler in file order.
+     * @param parser turns a row into a value, on a worker thread
+     * @param handler consumes the values, on this thread
+     * @param <T> the value for a row
+     * @return the number of values handled
+     * @throws Exception if parsing or handling fails, the first failure in file order
+     */
+    public <T> long run(final RowParser<T> parser, RowHandler<T> handler) throws Exception {
+        List<long[]> ranges = split();
+        chunks = ranges.size();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Deque<Future<Chunk<T>>> pending = new ArrayDeque<Future<Chunk<T>>>();
+        long handled = 0;
+        try {
+            int next = 0;
+            while (next < ranges.size() || !pending.isEmpty()) {
+                // keep every thread busy with the next chunk while this one is handled
+                while (next < ranges.size() && pending.size() < 2 * threads) {
+                    final long[] range = ranges.get(next++);
+                    pending.add(pool.submit(new Callable<Chunk<T>>() {
+                        @Override
+                        public Chunk<T> call() {
+                            Chunk<T> chunk = new Chunk<T>();
+                            try {
+                                parseChunk(range[0], range[1], parser, chunk);
+                            } catch (Exception e) {
+                                chunk.failure = e;
+                            }
+                            return chunk;
+                        }
+                    }));
+                }
+                Chunk<T> chunk = pending.poll().get();
+                if (chunk.failure != null) {
+                    throw chunk.failure;
+                }
+                rowsRead += chunk.rows;
+                rowsFiltered += chunk.filtered;
+                charsRead += chunk.chars;
+                for (T row : chunk.values) {
+                    handler.handle(row);
+                    handled++;
+                }
+            }
+        } finally {
+            for (Future<Chunk<T>> future : pending) {
+                future.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+        return handled;
+    }
+
+    // byte ranges of whole lines covering the data
+    private List<long[]> split() throws IOException {
+        List<long[]> ranges = new ArrayList<long[]>();
+        if (!splittable) {
+            if (dataStart < fileSize) {
+                ranges.add(new long[] {dataStart, fileSize});
+            }
+            return ranges;
+        }
+        MappedFileReader reader = new MappedFileReader(file);
+        try {
+            long start = dataStart;
+            while (start < fileSize) {
+                long end = reader.findLineStart(Math.min(fileSize, start + chunkSize));
+                ranges.add(new long[] {start, end});
+                start = end;
+            }
+        } finally {
+            reader.close();
+        }
+        return ranges;
+    }
+
+    private <T> void parseChunk(long start, long end, RowParser<T> parser, Chunk<T> chunk)
+        throws Exception {
+        DelimitedReader rows = new DelimitedReader(
+                new MappedFileReader(file, start, end, MappedFileReader.DEFAULT_SEGMENT_SIZE),
+                delimiter, quote, DelimitedReader.DEFAULT_BUFFER_SIZE);
+        List<T> values = new ArrayList<T>();
+        Object event = ConverterEvents.beginChunk();
+        try {
+            if (selected != null) {
+                rows.selectColumns(selected);
+            }
+            if (rowFilter != null) {
+                rows.setRowFilter(keyColumn, rowFilter, returnFiltered);
+            }
+            while (rows.next()) {
+                T value = parser.parse(rows);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            chunk.values = values;
+            chunk.filtered = rows.getRowsFiltered();
+            chunk.rows = rows.getRowNumber() - (returnFiltered ? chunk.filtered : 0);
+            chunk.chars = rows.getCharsRead();
+            ConverterEvents.endChunk(event, file, start, end, chunk.rows, chunk.chars);
+        } finally {
+            rows.close();
+        }
+    }
+
+    /**
+     * The parsed rows of a chunk, or what went wrong.
+     */
+    private static class Chunk<T>
+    {
+        private List<T> values;
+        private long rows;
+        private long filtered;
+        private long chars;
+        private Exception failure;
+    }
+}
@@ -0,0 +1,266 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * An ItemWriter that hands the items to another ItemWriter on a thread of its own, so that
+ * the converter goes on parsing while the items are written.
+ *
+ * Items are passed in batches of batchSize through a queue of queueSize batches; when the
+ * queue is full store() waits, so a slow writer holds the converter back instead of the
+ * items piling up in memory.  The writer stores the items in the order they were stored
+ * here.  As the items are written later, store() can't return the id the writer gives an
+ * item and returns null, and a failure of the writer is thrown by the next store() or by
+ * finish().
+ *
+ * @author
+ */
+public class PipelinedItemWriter implements ItemWriter
+{
+    /** Default number of items per batch */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** Default number of batches queued for the writer */
+    public static final int DEFAULT_QUEUE_SIZE = 64;
+
+    private static final Logger LOG = Logger.getLogger(PipelinedItemWriter.class);
+    private static final List<Item> END = Collections.emptyList();
+
+    private final ItemWriter writer;
+    private final int batchSize;
+    private final BlockingQueue<List<Item>> queue;
+    private final QueueStats stats;
+    private final Thread thread;
+    private List<Item> batch;
+    private long batchesQueued;
+    private long batchesWritten;
+    private volatile Exception failure;
+    private boolean finished;
+
+    /**
+     * Constructor, starts the writer thread.
+     * @param writer the ItemWriter the items are written to
+     * @param name the name of the writer thread and of the queue in the stats
+     * @param batchSize the number of items per batch
+     * @param queueSize the number of batches queued for the writer
+     */
+    public PipelinedItemWriter(ItemWriter writer, String name, int batchSize, int queueSize) {
+        this.writer = writer;
+        this.batchSize = Math.max(1, batchSize);
+        queueSize = Math.max(1, queueSize);
+        queue = new ArrayBlockingQueue<List<Item>>(queueSize);
+        stats = new QueueStats(name, queueSize);
+        batch = new ArrayList<Item>(this.batchSize);
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the counters of the queue between the converter and the writer thread
+     */
+    public QueueStats getStats() {
+        return stats;
+    }
+
+    private void write() {
+        while (true) {
+            List<Item> items = queue.poll();
+            try {
+                if (items == null) {
+                    long start = System.nanoTime();
+                    items = queue.take();
+                    stats.recordTake(System.nanoTime() - start);
+                } else {
+                    stats.recordTake(0);
+                }
+            } catch (InterruptedException e) {
+                failure = e;
+                return;
+            }
+            if (items == END) {
+                return;
+            }
+            // after a failure the batches are only taken, so store() never waits for room
+            if (failure == null) {
+                try {
+                    Object event = ConverterEvents.beginItemBatch();
+                    for (Item item : items) {
+                        writer.store(item);
+                    }
+                    ConverterEvents.endItemBatch(event, "pipeline", items.size(), 0);
+                } catch (Exception e) {
+                    failure = e;
+                }
+            }
+            synchronized (this) {
+                batchesWritten++;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Queue an item for the writer.
+     * {@inheritDoc}
+     * @return null, the item is written later
+     */
+    @Override
+    public Integer store(Item item) throws ObjectStoreException {
+        checkFailure();
+        if (finished) {
+            throw new IllegalStateException("store() after finish()");
+        }
+        batch.add(item);
+        if (batch.size() == batchSize) {
+            queueBatch();
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void storeAll(Collection<Item> items) throws ObjectStoreException {
+        for (Item item : items) {
+            store(item);
+        }
+    }
+
+    /**
+     * Written straight away, once all the items stored before it have been written.
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(ReferenceList refList, Integer itemId) throws ObjectStoreException {
+        flush();
+        writer.store(refList, itemId);
+    }
+
+    /**
+     * Written straight away, once all the items stored before it have been written.
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(Attribute att, Integer itemId) throws ObjectStoreException {
+        flush();
+        writer.store(att, itemId);
+    }
+
+    private void queueBatch() throws ObjectStoreException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        put(batch);
+        batchesQueued++;
+        batch = new ArrayList<Item>(batchSize);
+    }
+
+    private void put(List<Item> items) throws ObjectStoreException {
+        int depth = queue.size();
+        long stall = 0;
+        try {
+            if (!queue.offer(items)) {
+                long start = System.nanoTime();
+                while (!queue.offer(items, 100, TimeUnit.MILLISECONDS)) {
+                    if (!thread.isAlive()) {
+                        checkFailure();
+                        throw new ObjectStoreException("writer thread " + stats.getName()
+                                + " has stopped");
+                    }
+                }
+                stall = System.nanoTime() - start;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ObjectStoreException("interrupted while queueing items", e);
+        }
+        stats.recordPut(depth, stall);
+    }
+
+    /**
+     * Wait until all the items stored so far have been written.
+     * @throws ObjectStoreException if the writer failed
+     */
+    public void flush() throws ObjectStoreException {
+        queueBatch();
+        synchronized (this) {
+            while (batchesWritten < batchesQueued && thread.isAlive()) {
+                try {
+                    wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ObjectStoreException("interrupted while writing items", e);
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    /**
+     * Write the remaining items and stop the writer thread, leaving the ItemWriter open.
+     * @throws ObjectStoreException if the writer failed
+     */
+    public void finish() throws ObjectStoreException {
+        if (finished) {
+            return;
+        }
+        queueBatch();
+        finished = true;
+        put(END);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ObjectStoreException("interrupted while writing items", e);
+        }
+        LOG.info(stats);
+        checkFailure();
+    }
+
+    /**
+     * Finish and close the ItemWriter.
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws ObjectStoreException {
+        finish();
+        writer.close();
+    }
+
+    private void checkFailure() throws ObjectStoreException {
+        Exception e = failure;
+        if (e != null) {
+            throw new ObjectStoreException("failed to write items on " + stats.getName(), e);
+        }
+    }
+}
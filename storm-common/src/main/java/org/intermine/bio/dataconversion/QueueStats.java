@@ -0,0 +1,128 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * Counters of a bounded queue between two threads: how full it was when something was put in
+ * and how long each side spent waiting for the other.  A producer that stalls a lot is faster
+ * than its consumer and the other way round.
+ *
+ * The put side is only updated by the producer and the take side only by the consumer.
+ *
+ * @author
+ */
+public class QueueStats
+{
+    private final String name;
+    private final int capacity;
+    private volatile long puts;
+    private volatile long depthSum;
+    private volatile int maxDepth;
+    private volatile long putStallNanos;
+    private volatile long takes;
+    private volatile long takeStallNanos;
+
+    /**
+     * Constructor
+     * @param name what the queue is for, for the log
+     * @param capacity the size of the queue
+     */
+    public QueueStats(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Record a put, on the producer thread.
+     * @param depth the number of entries in the queue before the put
+     * @param stallNanos the time the producer waited for room
+     */
+    public void recordPut(int depth, long stallNanos) {
+        puts++;
+        depthSum += depth;
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+        putStallNanos += stallNanos;
+    }
+
+    /**
+     * Record a take, on the consumer thread.
+     * @param stallNanos the time the consumer waited for an entry
+     */
+    public void recordTake(long stallNanos) {
+        takes++;
+        takeStallNanos += stallNanos;
+    }
+
+    /**
+     * @return what the queue is for
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the size of the queue
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of entries put in the queue
+     */
+    public long getPuts() {
+        return puts;
+    }
+
+    /**
+     * @return the number of entries taken from the queue
+     */
+    public long getTakes() {
+        return takes;
+    }
+
+    /**
+     * @return the average number of entries in the queue at a put
+     */
+    public double getAverageDepth() {
+        return puts == 0 ? 0 : (double) depthSum / puts;
+    }
+
+    /**
+     * @return the most entries there were in the queue at a put
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the time in ms the producer waited because the queue was full
+     */
+    public long getPutStallMillis() {
+        return putStallNanos / 1000000;
+    }
+
+    /**
+     * @return the time in ms the consumer waited because the queue was empty
+     */
+    public long getTakeStallMillis() {
+        return takeStallNanos / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + puts + " puts, depth avg " + String.format("%.1f", getAverageDepth())
+            + " max " + maxDepth + "/" + capacity + ", producer stalled " + getPutStallMillis()
+            + " ms, consumer waited " + getTakeStallMillis() + " ms";
+    }
+}
@@ -0,0 +1,206 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reads another Reader on a thread of its own, so that reading and decoding (or decompressing)
+ * a data file overlaps with parsing it.
+ *
+ * The reader thread fills chunks of chars and queues them, at most queueSize ahead of the
+ * consumer; the chunks are reused, so nothing is allocated once reading is under way.
+ * Failures of the underlying reader are rethrown by read() once the chunks read before them
+ * have been consumed.
+ *
+ * @author
+ */
+public class ReadAheadReader extends Reader
+{
+    /** Default number of chars per chunk */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+    /** Default number of chunks read ahead */
+    public static final int DEFAULT_QUEUE_SIZE = 16;
+
+    private static final Logger LOG = Logger.getLogger(ReadAheadReader.class);
+
+    private final Reader in;
+    private final BlockingQueue<Chunk> filled;
+    private final BlockingQueue<Chunk> free;
+    private final QueueStats stats;
+    private final Thread thread;
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private Chunk current;
+    private int position;
+    private boolean eof;
+
+    /**
+     * Constructor, starts the reader thread.
+     * @param in the reader to read ahead of
+     * @param name the name of the reader thread and of the queue in the stats
+     * @param chunkSize the number of chars per chunk
+     * @param queueSize the number of chunks to read ahead
+     */
+    public ReadAheadReader(Reader in, String name, int chunkSize, int queueSize) {
+        this.in = in;
+        queueSize = Math.max(1, queueSize);
+        filled = new ArrayBlockingQueue<Chunk>(queueSize);
+        // one more for the chunk being consumed and one for the chunk being filled
+        free = new ArrayBlockingQueue<Chunk>(queueSize + 2);
+        for (int i = 0; i < queueSize + 2; i++) {
+            free.add(new Chunk(Math.max(1, chunkSize)));
+        }
+        stats = new QueueStats(name, queueSize);
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fill();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the counters of the queue between the reader thread and the consumer
+     */
+    public QueueStats getStats() {
+        return stats;
+    }
+
+    private void fill() {
+        try {
+            while (!closed) {
+                Chunk chunk = free.take();
+                chunk.length = in.read(chunk.chars, 0, chunk.chars.length);
+                put(chunk);
+                if (chunk.length < 0) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (IOException e) {
+            failure = e;
+            try {
+                Chunk end = free.take();
+                end.length = -1;
+                put(end);
+            } catch (InterruptedException ie) {
+                // closed
+            }
+        }
+    }
+
+    private void put(Chunk chunk) throws InterruptedException {
+        int depth = filled.size();
+        long stall = 0;
+        if (!filled.offer(chunk)) {
+            long start = System.nanoTime();
+            filled.put(chunk);
+            stall = System.nanoTime() - start;
+        }
+        stats.recordPut(depth, stall);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (current == null || position == current.length) {
+            if (eof || !nextChunk()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current.chars, position, cbuf, off, n);
+        position += n;
+        return n;
+    }
+
+    private boolean nextChunk() throws IOException {
+        if (closed) {
+            throw new IOException("reader closed");
+        }
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+        Chunk chunk;
+        do {
+            chunk = filled.poll();
+            if (chunk == null) {
+                long start = System.nanoTime();
+                try {
+                    chunk = filled.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while reading ahead");
+                }
+                stats.recordTake(System.nanoTime() - start);
+            } else {
+                stats.recordTake(0);
+            }
+            if (chunk.length == 0) {
+                free.add(chunk);
+            }
+        } while (chunk.length == 0);
+        if (chunk.length < 0) {
+            eof = true;
+            free.add(chunk);
+            if (failure != null) {
+                throw new IOException(failure.getMessage(), failure);
+            }
+            return false;
+        }
+        current = chunk;
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        in.close();
+        LOG.info(stats);
+    }
+
+    /**
+     * A buffer of chars and how much of it is filled, -1 at the end of the data.
+     */
+    private static class Chunk
+    {
+        private final char[] chars;
+        private int length;
+
+        Chunk(int size) {
+            chars = new char[size];
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Settings of a bio-source, read from its &lt;source&gt;.properties file.
+ *
+ * The build copies each source's properties file (the one with converter.class) into the
+ * jar, so the converter finds it on the classpath by its source name.  Any setting can be
+ * overridden for a single run with a system property of the same name, e.g.
+ * -Dstorm.reader=mapped.
+ *
+ * @author
+ */
+public class SourceConfig
+{
+    /** How data files are read: "stream" (the default) or "mapped", both as UTF-8 */
+    public static final String READER = "storm.reader";
+
+    /** Number of threads to parse the big matrices on, 1 (the default) for serial parsing */
+    public static final String PARALLEL_THREADS = "storm.parallel.threads";
+
+    /** Bytes per chunk of a matrix parsed in parallel */
+    public static final String PARALLEL_CHUNK_SIZE = "storm.parallel.chunk.size";
+
+    /** Whether data files are read and items written on threads of their own */
+    public static final String PIPELINE = "storm.pipeline";
+
+    /** Number of item batches queued for the writer thread */
+    public static final String PIPELINE_QUEUE_SIZE = "storm.pipeline.queue.size";
+
+    /** Number of items per batch passed to the writer thread */
+    public static final String PIPELINE_BATCH_SIZE = "storm.pipeline.batch.size";
+
+    /** Number of 64K char chunks read ahead of the parser */
+    public static final String PIPELINE_READ_AHEAD = "storm.pipeline.read.ahead";
+
+    /** Number of items written with one storeAll(), 0 (the default) to store them one by one */
+    public static final String STORE_BATCH_SIZE = "storm.store.batch.size";
+
+    /** Estimated size in bytes at which a batch of items is written */
+    public static final String STORE_BATCH_BYTES = "storm.store.batch.bytes";
+
+    /** Time in ms after which a batch of items is written */
+    public static final String STORE_BATCH_MILLIS = "storm.store.batch.millis";
+
+    /** File the items are recorded in, to be written again with storm.spool.replay */
+    public static final String SPOOL = "storm.spool";
+
+    /** Whether to write the items of the storm.spool file instead of converting the data */
+    public static final String SPOOL_REPLAY = "storm.spool.replay";
+
+    /** Whether the attribute values of the stored items are pooled, false by default */
+    public static final String INTERN = "storm.intern";
+
+    /** File or directory the JSON metrics of a run are written to, logged if not set */
+    public static final String METRICS_REPORT = "storm.metrics.report";
+
+    /** CSV file of the target gene symbols, in place of the one the converter names */
+    public static final String GENE_LIST = "storm.gene.list";
+
+    /** Number of identifiers with the most problems logged per reason and file */
+    public static final String DIAGNOSTICS_TOP = "storm.diagnostics.top";
+
+    /** Number of rows logged per reason and file */
+    public static final String DIAGNOSTICS_SAMPLES = "storm.diagnostics.samples";
+
+    /** Directory of the manifest of the files converted, to only convert changed files */
+    public static final String INCREMENTAL_DIR = "storm.incremental.dir";
+
+    /** Whether the SHA-256 of every file is compared, not only of those that were touched */
+    public static final String INCREMENTAL_VERIFY = "storm.incremental.verify";
+
+    /** Data directory of the previous release, to only store the cells that changed since */
+    public static final String DELTA_PREVIOUS = "storm.delta.previous";
+
+    /** File the cells removed since the previous release are written to */
+    public static final String DELTA_REMOVED = "storm.delta.removed";
+
+    /** Directory of the checkpoints of a big data file, to resume a run that died */
+    public static final String CHECKPOINT_DIR = "storm.checkpoint.dir";
+
+    /** Number of rows between two checkpoints */
+    public static final String CHECKPOINT_ROWS = "storm.checkpoint.rows";
+
+    /** Bytes of heap each registry keeps within, spilling to disk, 0 (the default) for no limit */
+    public static final String REGISTRY_HEAP = "storm.registry.heap";
+
+    /** Directory the registries spill to, the temporary directory by default */
+    public static final String REGISTRY_SPILL_DIR = "storm.registry.spill.dir";
+
+    private static final Logger LOG = Logger.getLogger(SourceConfig.class);
+
+    private final String sourceName;
+    private final Properties properties;
+
+    /**
+     * Constructor
+     * @param sourceName the name of the source
+     * @param properties the settings
+     */
+    public SourceConfig(String sourceName, Properties properties) {
+        this.sourceName = sourceName;
+        this.properties = properties;
+    }
+
+    /**
+     * Load the settings of the source a converter belongs to.  A missing properties file
+     * gives the defaults.
+     * @param converterClass the converter
+     * @return the settings
+     */
+    public static SourceConfig forConverter(Class<?> converterClass) {
+        String sourceName = getSourceName(converterClass);
+        Properties properties = new Properties();
+        InputStream is = converterClass.getClassLoader().getResourceAsStream(
+                sourceName + ".properties");
+        if (is == null) {
+            LOG.info("no " + sourceName + ".properties found, using the default settings");
+        } else {
+            try {
+                properties.load(is);
+                is.close();
+            } catch (IOException e) {
+                throw new RuntimeException("failed to read " + sourceName + ".properties", e);
+            }
+        }
+        return new SourceConfig(sourceName, properties);
+    }
+
+    /**
+     * The source name by the naming convention of the bio-sources: DepmapExpressionConverter
+     * is the converter of depmap-expression.
+     * @param converterClass the converter
+     * @return the source name
+     */
+    public static String getSourceName(Class<?> converterClass) {
+        String name = converterClass.getSimpleName();
+        if (name.endsWith("Converter")) {
+            name = name.substring(0, name.length() - "Converter".length());
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0) {
+                    sb.append('-');
+                }
+                sb.append(Character.toLowerCase(c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the name of the source
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * @param key the setting
+     * @param defaultValue the value if the setting isn't there
+     * @return the value, from a system property if there is one
+     */
+    public String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = properties.getProperty(key);
+        }
+        return value == null ? defaultValue : value.trim();
+    }
+
+    /**
+     * @param key the setting
+     * @param defaultValue the value if the setting isn't there
+     * @return the value
+     */
+    public long getLong(String key, long defaultValue) {
+        String value = get(key, null);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad value for " + key + " in "
+                    + sourceName + ".properties: " + value);
+        }
+    }
+
+    /**
+     * @param key the setting
+     * @param defaultValue the value if the setting isn't there
+     * @return the value
+     */
+    public int getInt(String key, int defaultValue) {
+        long value = getLong(key, defaultValue);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("bad value for " + key + " in "
+                    + sourceName + ".properties: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * @param key the setting
+     * @param defaultValue the value if the setting isn't there
+     * @return the value
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key, null);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value);
+    }
+}
@@ -0,0 +1,210 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An ItemIdRegistry that keeps within a heap budget by spilling its entries to a
+ * DiskHashStore, for registries that grow with the data, such as the TCGA samples or the
+ * transcripts of the nanopore runs.
+ *
+ * New entries go into the registry on the heap.  Once its footprint reaches the budget all
+ * its entries move to the store and it starts again empty, so the entries on the heap are
+ * the ones added last and the ones on disk those that have gone cold.  Spilled entries that
+ * are looked up again are kept in a small cache, most recently used first, which takes an
+ * eighth of the budget.  A key is either on the heap or on disk, never both; entries are
+ * numbered with the spilled ones first.  Not thread-safe.
+ *
+ * @author
+ */
+public class SpillingIdRegistry extends ItemIdRegistry
+{
+    private static final Logger LOG = Logger.getLogger(SpillingIdRegistry.class);
+    // estimated heap size of a cache entry: the map entry and two short Strings
+    private static final int CACHE_ENTRY_BYTES = 128;
+
+    private final long heapBudget;
+    private final File dir;
+    private DiskHashStore store;
+    private final Map<String, String> cache;
+    private long spills;
+
+    /**
+     * Constructor
+     * @param name what the registry holds, for the log and the file names
+     * @param heapBudget the estimated heap size in bytes the registry keeps within
+     * @param dir the directory of the store, created on the first spill
+     */
+    public SpillingIdRegistry(String name, long heapBudget, File dir) {
+        super(name);
+        this.heapBudget = heapBudget;
+        this.dir = dir;
+        final int cacheSize = (int) Math.min(Integer.MAX_VALUE,
+                Math.max(16, heapBudget / 8 / CACHE_ENTRY_BYTES));
+        cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return super.size() + getSpilled();
+    }
+
+    /**
+     * @return the number of entries on disk
+     */
+    public int getSpilled() {
+        return store == null ? 0 : store.size();
+    }
+
+    @Override
+    public String get(CharSequence key) {
+        String itemId = super.get(key);
+        if (itemId != null || store == null) {
+            return itemId;
+        }
+        String k = key.toString();
+        itemId = cache.get(k);
+        if (itemId == null) {
+            try {
+                itemId = store.get(k);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            if (itemId != null) {
+                cache.put(k, itemId);
+            }
+        }
+        return itemId;
+    }
+
+    @Override
+    public boolean containsKey(CharSequence key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public void put(CharSequence key, String itemId) {
+        if (store != null && !super.containsKey(key)) {
+            try {
+                if (store.replace(key, itemId)) {
+                    cache.remove(key.toString());
+                    return;
+                }
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+        super.put(key, itemId);
+        if (super.getFootprint() > heapBudget - heapBudget / 8) {
+            spill();
+        }
+    }
+
+    // move the entries on the heap to disk
+    private void spill() {
+        try {
+            if (store == null) {
+                store = new DiskHashStore(dir, getName());
+            }
+            for (int i = 0; i < super.size(); i++) {
+                store.add(super.getKey(i), super.getId(i));
+            }
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        super.clear();
+        spills++;
+        LOG.info(this);
+    }
+
+    @Override
+    public String getKey(int entry) {
+        int spilled = getSpilled();
+        if (entry < spilled) {
+            try {
+                return store.getKey(entry);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+        return super.getKey(entry - spilled);
+    }
+
+    @Override
+    public String getId(int entry) {
+        int spilled = getSpilled();
+        if (entry < spilled) {
+            try {
+                return store.getValue(entry);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+        return super.getId(entry - spilled);
+    }
+
+    private RuntimeException failed(IOException e) {
+        return new RuntimeException("failed to read or write the spilled " + getName()
+                + " in " + dir, e);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        cache.clear();
+        close();
+    }
+
+    /**
+     * Delete the store.
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                LOG.warn("failed to close the store of " + getName(), e);
+            }
+            store = null;
+        }
+    }
+
+    /**
+     * @return the estimated heap size of the registry and its cache in bytes
+     */
+    @Override
+    public long getFootprint() {
+        return super.getFootprint() + (long) cache.size() * CACHE_ENTRY_BYTES;
+    }
+
+    @Override
+    public String toString() {
+        if (store == null) {
+            return super.toString();
+        }
+        return getName() + ": " + size() + " keys, " + store.size() + " of them on disk in ~"
+            + (store.getDiskSize() >> 10) + " KB after " + spills + " spills, ~"
+            + (getFootprint() >> 10) + " KB on the heap";
+    }
+}
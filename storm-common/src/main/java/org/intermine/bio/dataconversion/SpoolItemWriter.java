@@ -0,0 +1,350 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * An ItemWriter that records the items in a spool file, so that they can be written again
+ * later (see SpoolReplayer) without converting the data files again.  If it is given another
+ * ItemWriter the items are passed on to it as well.
+ *
+ * The file starts with MAGIC and VERSION followed by records of a tag byte, the length of
+ * the record as a varint and the record itself, and ends with an END record of END_LENGTH
+ * bytes holding the number of items and of separately stored reference lists and attributes,
+ * so a replayer can check that a file is complete before it starts.  Strings that repeat, the
+ * class names, field names and reference ids, go into a string table that is built as the
+ * file is written: the first time such a string is written it is defined in place and after
+ * that it is written as its index.  Identifiers and attribute values are written in place.
+ * The file is written as &lt;name&gt;.tmp and only renamed to its name by finish(), so a spool
+ * file is always complete.
+ *
+ * Each item is recorded with the id store() returned for it: the id from the other ItemWriter,
+ * or without one the position of the item in the spool, starting at 1.  The replayer maps
+ * these ids to the ids of the ItemWriter it writes to for the separately stored reference
+ * lists and attributes.
+ *
+ * @author
+ */
+public class SpoolItemWriter implements ItemWriter
+{
+    static final byte[] MAGIC = {'S', 'T', 'O', 'R', 'M', 'S', 'P', 'L'};
+    static final int VERSION = 1;
+
+    static final int ITEM = 1;
+    static final int REFERENCE_LIST = 2;
+    static final int ATTRIBUTE = 3;
+    static final int END = 4;
+    // tag, length (one byte) and two longs
+    static final int END_LENGTH = 18;
+
+    // how a string is written: null, defined and added to the table, in place, or an index
+    static final int STRING_NULL = 0;
+    static final int STRING_DEFINE = 1;
+    static final int STRING_INLINE = 2;
+    static final int STRING_INDEX = 3;
+
+    /** Most strings kept in the string table */
+    public static final int MAX_TABLE_SIZE = 1 << 20;
+
+    private final File file;
+    private final File tmpFile;
+    private final ItemWriter writer;
+    private final DataOutputStream out;
+    private final Map<String, Integer> table = new HashMap<String, Integer>();
+    private final RecordBuffer record = new RecordBuffer();
+    private int items;
+    private long others;
+    private boolean finished;
+
+    /**
+     * Constructor
+     * @param file the spool file
+     * @param writer the ItemWriter to pass the items on to, or null to only spool them
+     * @throws IOException if the file can't be created
+     */
+    public SpoolItemWriter(File file, ItemWriter writer) throws IOException {
+        this.file = file;
+        this.tmpFile = new File(file.getPath() + ".tmp");
+        this.writer = writer;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile),
+                1 << 16));
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * @return the number of items spooled
+     */
+    public int getItemCount() {
+        return items;
+    }
+
+    /**
+     * @return the number of strings in the string table
+     */
+    public int getTableSize() {
+        return table.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return the id from the other ItemWriter, or the position of the item in the spool
+     */
+    @Override
+    public Integer store(Item item) throws ObjectStoreException {
+        Integer id = items + 1;
+        if (writer != null) {
+            id = writer.store(item);
+        }
+        spool(item, id);
+        return id;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void storeAll(Collection<Item> all) throws ObjectStoreException {
+        if (writer != null) {
+            // the ItemWriter doesn't say which ids it gave the items
+            writer.storeAll(all);
+            for (Item item : all) {
+                spool(item, null);
+            }
+        } else {
+            for (Item item : all) {
+                spool(item, items + 1);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(ReferenceList refList, Integer itemId) throws ObjectStoreException {
+        record.reset();
+        writeId(itemId);
+        writeTableString(refList.getName());
+        writeString(refList.getRefIds());
+        writeRecord(REFERENCE_LIST);
+        others++;
+        if (writer != null) {
+            writer.store(refList, itemId);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(Attribute att, Integer itemId) throws ObjectStoreException {
+        record.reset();
+        writeId(itemId);
+        writeTableString(att.getName());
+        writeString(att.getValue());
+        writeRecord(ATTRIBUTE);
+        others++;
+        if (writer != null) {
+            writer.store(att, itemId);
+        }
+    }
+
+    private void spool(Item item, Integer id) throws ObjectStoreException {
+        record.reset();
+        writeId(id);
+        writeString(item.getIdentifier());
+        writeTableString(item.getClassName());
+        writeTableString(item.getImplementations());
+        Collection<Attribute> attributes = item.getAttributes();
+        record.writeVarint(attributes == null ? 0 : attributes.size());
+        if (attributes != null) {
+            for (Attribute att : attributes) {
+                writeTableString(att.getName());
+                writeString(att.getValue());
+            }
+        }
+        Collection<Reference> references = item.getReferences();
+        record.writeVarint(references == null ? 0 : references.size());
+        if (references != null) {
+            for (Reference ref : references) {
+                writeTableString(ref.getName());
+                writeTableString(ref.getRefId());
+            }
+        }
+        Collection<ReferenceList> collections = item.getCollections();
+        record.writeVarint(collections == null ? 0 : collections.size());
+        if (collections != null) {
+            for (ReferenceList refs : collections) {
+                writeTableString(refs.getName());
+                writeString(refs.getRefIds());
+            }
+        }
+        writeRecord(ITEM);
+        items++;
+    }
+
+    private void writeId(Integer itemId) {
+        record.writeVarint(itemId == null ? 0 : (itemId.intValue() & 0xffffffffL) + 1);
+    }
+
+    private void writeString(String s) {
+        if (s == null) {
+            record.writeVarint(STRING_NULL);
+        } else {
+            record.writeVarint(STRING_INLINE);
+            record.writeUtf8(s);
+        }
+    }
+
+    private void writeTableString(String s) {
+        if (s == null) {
+            record.writeVarint(STRING_NULL);
+            return;
+        }
+        Integer index = table.get(s);
+        if (index != null) {
+            record.writeVarint(STRING_INDEX + (long) index);
+        } else if (table.size() < MAX_TABLE_SIZE) {
+            table.put(s, table.size());
+            record.writeVarint(STRING_DEFINE);
+            record.writeUtf8(s);
+        } else {
+            record.writeVarint(STRING_INLINE);
+            record.writeUtf8(s);
+        }
+    }
+
+    private void writeRecord(int tag) throws ObjectStoreException {
+        if (finished) {
+            throw new IllegalStateException("the spool " + file + " is finished");
+        }
+        try {
+            out.writeByte(tag);
+            writeVarint(out, record.size());
+            out.write(record.bytes(), 0, record.size());
+        } catch (IOException e) {
+            throw new ObjectStoreException("failed to write to " + tmpFile, e);
+        }
+    }
+
+    static void writeVarint(DataOutputStream os, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            os.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        os.writeByte((int) value);
+    }
+
+    /**
+     * Write the END record and move the spool to its name, leaving the ItemWriter open.
+     * @throws ObjectStoreException if the spool can't be written
+     */
+    public void finish() throws ObjectStoreException {
+        if (finished) {
+            return;
+        }
+        record.reset();
+        record.writeLong(items);
+        record.writeLong(others);
+        writeRecord(END);
+        finished = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new ObjectStoreException("failed to write " + tmpFile, e);
+        }
+        if (file.exists() && !file.delete() || !tmpFile.renameTo(file)) {
+            throw new ObjectStoreException("failed to move " + tmpFile + " to " + file);
+        }
+    }
+
+    /**
+     * Finish the spool and close the ItemWriter.
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws ObjectStoreException {
+        finish();
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * A growable byte array the records are built in, so their length can be written first.
+     */
+    private static class RecordBuffer
+    {
+        private byte[] buf = new byte[1024];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                byte[] bigger = new byte[Math.max(buf.length * 2, size + extra)];
+                System.arraycopy(buf, 0, bigger, 0, size);
+                buf = bigger;
+            }
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                buf[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeUtf8(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+    }
+}
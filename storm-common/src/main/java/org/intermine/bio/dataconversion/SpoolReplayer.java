@@ -0,0 +1,271 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * Writes the items of a spool file (see SpoolItemWriter) to an ItemWriter, in the order they
+ * were spooled.  The file is read sequentially in one pass; only the string table and, if
+ * the spool has separately stored reference lists or attributes, the ids of the items are
+ * kept in memory.
+ *
+ * @author
+ */
+public class SpoolReplayer
+{
+    private final File file;
+    private final long itemCount;
+    private final long otherCount;
+
+    /**
+     * Constructor, checks that the spool is complete.
+     * @param file the spool file
+     * @throws IOException if the file isn't a complete spool
+     */
+    public SpoolReplayer(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] magic = new byte[SpoolItemWriter.MAGIC.length];
+            raf.readFully(magic);
+            if (!Arrays.equals(magic, SpoolItemWriter.MAGIC)) {
+                throw new IOException(file + " is not a spool file");
+            }
+            int version = raf.readInt();
+            if (version != SpoolItemWriter.VERSION) {
+                throw new IOException("unsupported version " + version + " of " + file);
+            }
+            long endStart = raf.length() - SpoolItemWriter.END_LENGTH;
+            if (endStart < raf.getFilePointer()) {
+                throw new IOException(file + " is incomplete");
+            }
+            raf.seek(endStart);
+            if (raf.readByte() != SpoolItemWriter.END
+                    || raf.readByte() != SpoolItemWriter.END_LENGTH - 2) {
+                throw new IOException(file + " is incomplete");
+            }
+            itemCount = raf.readLong();
+            otherCount = raf.readLong();
+        } catch (EOFException e) {
+            throw new IOException(file + " is incomplete", e);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return true if the file is a complete spool
+     */
+    public static boolean isComplete(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            new SpoolReplayer(file);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of items in the spool
+     */
+    public long getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Write all the items of the spool.
+     * @param writer the ItemWriter to write them to, it is not closed
+     * @return the number of items written
+     * @throws IOException if the spool can't be read
+     * @throws ObjectStoreException if an item can't be stored
+     */
+    public long replay(ItemWriter writer) throws IOException, ObjectStoreException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), 1 << 16));
+        Cursor cursor = new Cursor();
+        List<String> table = new ArrayList<String>();
+        // spooled id -> id from the writer, only needed for the separately stored records
+        Map<Integer, Integer> ids = otherCount > 0 ? new HashMap<Integer, Integer>() : null;
+        long items = 0;
+        try {
+            in.skipBytes(SpoolItemWriter.MAGIC.length + 4);
+            while (true) {
+                int tag = in.readUnsignedByte();
+                int length = (int) readVarint(in);
+                cursor.fill(in, length);
+                if (tag == SpoolItemWriter.END) {
+                    break;
+                }
+                Integer spooledId = cursor.readId();
+                if (tag == SpoolItemWriter.ITEM) {
+                    Integer id = writer.store(readItem(cursor, table));
+                    if (ids != null && spooledId != null && id != null) {
+                        ids.put(spooledId, id);
+                    }
+                    items++;
+                } else if (tag == SpoolItemWriter.REFERENCE_LIST) {
+                    ReferenceList refs = new ReferenceList();
+                    refs.setName(cursor.readString(table));
+                    refs.setRefIds(cursor.readString(table));
+                    writer.store(refs, mapId(ids, spooledId));
+                } else if (tag == SpoolItemWriter.ATTRIBUTE) {
+                    Attribute att = new Attribute();
+                    att.setName(cursor.readString(table));
+                    att.setValue(cursor.readString(table));
+                    writer.store(att, mapId(ids, spooledId));
+                } else {
+                    throw new IOException("unknown record " + tag + " in " + file);
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException(file + " is truncated", e);
+        } finally {
+            in.close();
+        }
+        if (items != itemCount) {
+            throw new IOException(file + " has " + items + " items instead of " + itemCount);
+        }
+        return items;
+    }
+
+    private static Integer mapId(Map<Integer, Integer> ids, Integer spooledId) {
+        Integer id = spooledId == null ? null : ids.get(spooledId);
+        return id == null ? spooledId : id;
+    }
+
+    private static Item readItem(Cursor cursor, List<String> table) throws IOException {
+        Item item = new Item();
+        item.setIdentifier(cursor.readString(table));
+        item.setClassName(cursor.readString(table));
+        item.setImplementations(cursor.readString(table));
+        for (int i = (int) cursor.readVarint(); i > 0; i--) {
+            Attribute att = new Attribute();
+            att.setName(cursor.readString(table));
+            att.setValue(cursor.readString(table));
+            att.setItem(item);
+            item.addAttributes(att);
+        }
+        for (int i = (int) cursor.readVarint(); i > 0; i--) {
+            Reference ref = new Reference();
+            ref.setName(cursor.readString(table));
+            ref.setRefId(cursor.readString(table));
+            ref.setItem(item);
+            item.addReferences(ref);
+        }
+        for (int i = (int) cursor.readVarint(); i > 0; i--) {
+            ReferenceList refs = new ReferenceList();
+            refs.setName(cursor.readString(table));
+            refs.setRefIds(cursor.readString(table));
+            refs.setItem(item);
+            item.addCollections(refs);
+        }
+        return item;
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    /**
+     * A record read into memory.
+     */
+    private static class Cursor
+    {
+        private byte[] buf = new byte[1024];
+        private int length;
+        private int position;
+
+        void fill(DataInputStream in, int n) throws IOException {
+            if (n > buf.length) {
+                buf = new byte[Math.max(n, buf.length * 2)];
+            }
+            in.readFully(buf, 0, n);
+            length = n;
+            position = 0;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position == length) {
+                    throw new IOException("record too short");
+                }
+                int b = buf[position++];
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("malformed varint");
+        }
+
+        Integer readId() throws IOException {
+            long value = readVarint();
+            return value == 0 ? null : Integer.valueOf((int) (value - 1));
+        }
+
+        String readString(List<String> table) throws IOException {
+            long code = readVarint();
+            if (code == SpoolItemWriter.STRING_NULL) {
+                return null;
+            }
+            if (code >= SpoolItemWriter.STRING_INDEX) {
+                long index = code - SpoolItemWriter.STRING_INDEX;
+                if (index >= table.size()) {
+                    throw new IOException("unknown string " + index);
+                }
+                return table.get((int) index);
+            }
+            int n = (int) readVarint();
+            if (n < 0 || n > length - position) {
+                throw new IOException("record too short");
+            }
+            String s = new String(buf, position, n, StandardCharsets.UTF_8);
+            position += n;
+            if (code == SpoolItemWriter.STRING_DEFINE) {
+                table.add(s);
+            }
+            return s;
+        }
+    }
+}
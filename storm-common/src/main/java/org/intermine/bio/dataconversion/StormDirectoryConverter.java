@@ -0,0 +1,967 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.intermine.dataconversion.DataConverterStoreHook;
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.ReferenceList;
+
+/**
+ * Common base for the STORM bio-sources.  Holds the code every converter used to copy:
+ * gene resolution through the shared GeneResolutionCache, the Gene items created by this
+ * converter and the data directory listing.  The items go through a ConverterStore, which
+ * holds the writers the source's properties ask for.
+ *
+ * With storm.incremental.dir set, converters that read a data file at a time can reuse the
+ * items of the files that haven't changed since the last run, see replayUnchanged().  With
+ * storm.checkpoint.dir set, converters of one big data file can resume a run that died, see
+ * startCheckpoints().
+ *
+ * @author
+ */
+public abstract class StormDirectoryConverter extends BioDirectoryConverter
+{
+    protected static final String HUMAN_TAXON_ID = "9606"; // Human Taxon ID
+
+    private static final Logger LOG = Logger.getLogger(StormDirectoryConverter.class);
+    // prefix of the keys of the shared Genes, see registerSharedItem()
+    private static final String GENE_KEY = "Gene:";
+    private static final long DEFAULT_CHECKPOINT_ROWS = 100000;
+
+    // BioDirectoryConverter's constructor stores the DataSource and DataSet, before these
+    // are set, so store() and createItem() pass the items on as they are until then
+    private final SourceConfig sourceConfig;
+    private final GeneResolutionCache geneCache;
+    // what this run did, see getMetrics()
+    private final ConverterMetrics metrics;
+    // the problems of the current file, see getDiagnostics()
+    private final ConverterDiagnostics diagnostics;
+    // where the items go, see store()
+    private final ConverterStore itemStore;
+    // the registries of this converter, see newRegistry()
+    private final List<ItemIdRegistry> registries;
+    // resolved primary identifier -> identifier of the Gene item stored by this converter
+    private final ItemIdRegistry genes;
+    // reused for every numeric field
+    private final NumericField numericField = new NumericField();
+    // set with storm.incremental.dir, see replayUnchanged()
+    private final String dataSourceName;
+    private final String dataSetTitle;
+    private final SharedItems sharedItems;
+    private IncrementalLoad incrementalLoad;
+    // set with storm.delta.previous, see openDelta()
+    private final List<MatrixDelta> deltas = new ArrayList<MatrixDelta>();
+
+    private ConverterCheckpoint checkpoint;
+    private long checkpointRows;
+    private long checkpointRowsRead;
+    // class -> the last item identifier created, in the order the classes were first created
+    private Map<String, String> lastIds;
+    // set by BioDirectoryConverter's constructor, so it mustn't have an initializer
+    private DataConverterStoreHook storeHook;
+
+    /**
+     * Constructor for converters of human data
+     * @param writer the ItemWriter used to handle the resultant items
+     * @param model the Model
+     * @param dataSourceName the DataSource name
+     * @param dataSetTitle the DataSet title
+     */
+    public StormDirectoryConverter(ItemWriter writer, Model model, String dataSourceName,
+            String dataSetTitle) {
+        this(writer, model, dataSourceName, dataSetTitle, HUMAN_TAXON_ID);
+    }
+
+    /**
+     * Constructor.  Sets up the settings, metrics, diagnostics and item store of the
+     * converter once BioDirectoryConverter has stored the DataSource and DataSet.
+     * @param writer the ItemWriter used to handle the resultant items
+     * @param model the Model
+     * @param dataSourceName the DataSource name
+     * @param dataSetTitle the DataSet title
+     * @param taxonId the taxon the gene identifiers in this source belong to
+     */
+    public StormDirectoryConverter(ItemWriter writer, Model model, String dataSourceName,
+            String dataSetTitle, String taxonId) {
+        super(writer, model, dataSourceName, dataSetTitle);
+        this.dataSourceName = dataSourceName;
+        this.dataSetTitle = dataSetTitle;
+        sourceConfig = SourceConfig.forConverter(getClass());
+        geneCache = GeneResolutionCache.getInstance(taxonId);
+        metrics = new ConverterMetrics(sourceConfig.getSourceName());
+        diagnostics = new ConverterDiagnostics(sourceConfig.getSourceName(),
+                sourceConfig.getInt(SourceConfig.DIAGNOSTICS_TOP,
+                        ConverterDiagnostics.DEFAULT_TOP),
+                sourceConfig.getInt(SourceConfig.DIAGNOSTICS_SAMPLES,
+                        ConverterDiagnostics.DEFAULT_SAMPLES),
+                ConverterDiagnostics.DEFAULT_MAX_IDENTIFIERS);
+        itemStore = new ConverterStore(writer, sourceConfig, metrics);
+        itemStore.setStoreHook(this, storeHook);
+        registries = new ArrayList<ItemIdRegistry>();
+        genes = newRegistry("genes");
+        String incrementalDir = sourceConfig.get(SourceConfig.INCREMENTAL_DIR, null);
+        sharedItems = incrementalDir != null && !incrementalDir.isEmpty()
+            && !sourceConfig.getBoolean(SourceConfig.SPOOL_REPLAY, false) ? new SharedItems()
+            : null;
+    }
+
+    /**
+     * @return the resolution cache shared with the other converters in this JVM
+     */
+    protected GeneResolutionCache getGeneCache() {
+        return geneCache;
+    }
+
+    /**
+     * Resolve a gene symbol to its primary identifier.
+     * @param identifier the symbol as it appears in the data file
+     * @return the primary identifier or null if it doesn't resolve to exactly one gene
+     */
+    protected String resolveGene(String identifier) {
+        return geneCache.resolve(identifier);
+    }
+
+    /**
+     * Get the identifier of the Gene item for a symbol, storing the Gene the first time it
+     * is seen by this converter.
+     * @param identifier the symbol as it appears in the data file
+     * @return the Gene item identifier or null if the symbol can't be resolved
+     * @throws ObjectStoreException if the Gene can't be stored
+     */
+    protected String getGeneId(String identifier) throws ObjectStoreException {
+        String resolvedIdentifier = resolveGene(identifier);
+        if (resolvedIdentifier == null || resolvedIdentifier.isEmpty()) {
+            getMetrics().resolved(false);
+            getDiagnostics().problem("gene not resolved", identifier, null);
+            ConverterEvents.resolverMiss(getSourceConfig().getSourceName(), identifier);
+            return null;
+        }
+        getMetrics().resolved(true);
+        String geneId = genes.get(resolvedIdentifier);
+        if (geneId == null) {
+            geneId = storeGene(resolvedIdentifier);
+        }
+        return geneId;
+    }
+
+    private String storeGene(String primaryIdentifier) throws ObjectStoreException {
+        Item gene = createItem("Gene");
+        gene.setAttribute("primaryIdentifier", primaryIdentifier);
+        store(gene);
+        String geneId = gene.getIdentifier();
+        genes.put(primaryIdentifier, geneId);
+        registerSharedItem(GENE_KEY + primaryIdentifier, geneId);
+        return geneId;
+    }
+
+    /**
+     * Create a registry of the items of this converter, whose size is logged at close().
+     * With storm.registry.heap set the registry keeps within that many bytes of heap and
+     * spills the rest of its entries to storm.registry.spill.dir, see SpillingIdRegistry.
+     * @param name what the registry holds
+     * @return the registry
+     */
+    protected ItemIdRegistry newRegistry(String name) {
+        SourceConfig config = getSourceConfig();
+        long heapBudget = config.getLong(SourceConfig.REGISTRY_HEAP, 0);
+        ItemIdRegistry registry;
+        if (heapBudget > 0) {
+            registry = new SpillingIdRegistry(name, heapBudget,
+                    new File(config.get(SourceConfig.REGISTRY_SPILL_DIR,
+                            System.getProperty("java.io.tmpdir"))));
+        } else {
+            registry = new ItemIdRegistry(name);
+        }
+        registries.add(registry);
+        return registry;
+    }
+
+    /**
+     * @param value a field of the data file
+     * @return true if the field is a number, including integers, NaN and Infinity
+     */
+    protected boolean isNumber(CharSequence value) {
+        return NumericField.isNumber(value);
+    }
+
+    /**
+     * The check the converters' isDouble() used to make.
+     * @param value a field of the data file
+     * @return true if the field is a number that can't be converted to an int without loss
+     */
+    protected boolean isNonIntegral(CharSequence value) {
+        return numericField.isNonIntegral(value);
+    }
+
+    /**
+     * @return a numeric field scanner for this converter, see NumericField
+     */
+    protected NumericField getNumericField() {
+        return numericField;
+    }
+
+    /**
+     * Read the list of target genes, one symbol in the first column of each line.  The
+     * storm.gene.list setting replaces the file, an empty one accepts all genes.  The file is
+     * read once per JVM, see GeneList.
+     * @param geneListFile the CSV file with the gene symbols
+     * @return a filter accepting the Gene items of the symbols that resolve
+     * @throws Exception if the file can't be read or a Gene can't be stored
+     */
+    protected GeneFilter processGeneList(String geneListFile) throws Exception {
+        geneListFile = getSourceConfig().get(SourceConfig.GENE_LIST, geneListFile);
+        if (StringUtils.isEmpty(geneListFile)) {
+            return GeneFilter.ALL;
+        }
+        getMetrics().startPhase("gene list");
+        List<String> geneIds = new ArrayList<String>();
+
+        for (String gene : GeneList.getSymbols(new File(geneListFile))) {
+            getMetrics().rowsRead(1);
+            if (StringUtils.isEmpty(gene)) {
+                getMetrics().skip("empty gene list symbol");
+                continue;
+            }
+            String geneId = getGeneId(gene);
+            if (geneId != null) {
+                geneIds.add(geneId);
+            }
+        }
+        return new GeneFilter(geneIds);
+    }
+
+    /**
+     * A row filter for matrices with one gene per row that drops the rows of genes the filter
+     * doesn't accept before their values are split.  Like the check it replaces, it still
+     * stores the Gene of every row it sees.
+     * @param geneFilter the genes to keep
+     * @return the row filter, or null if every gene is accepted
+     */
+    protected DelimitedReader.RowFilter geneRowFilter(final GeneFilter geneFilter) {
+        if (geneFilter.acceptsAll()) {
+            return null;
+        }
+        return new DelimitedReader.RowFilter() {
+            @Override
+            public boolean accept(CharSequence key) {
+                String gene = getRowGene(key);
+                try {
+                    return geneFilter.accepts(gene.isEmpty() ? null : getGeneId(gene));
+                } catch (ObjectStoreException e) {
+                    throw new RuntimeException("failed to store gene: " + gene, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * The equivalent of geneRowFilter() for rows parsed by a ParallelRowEngine.  It can be
+     * called from any thread and doesn't store anything, so the engine has to pass the
+     * rejected rows on (returnFiltered) for the Genes to be stored in order; call it after
+     * the gene list has been read.
+     * @param geneFilter the genes to keep
+     * @return the row filter, or null if every gene is accepted
+     */
+    protected DelimitedReader.RowFilter concurrentGeneRowFilter(GeneFilter geneFilter) {
+        if (geneFilter.acceptsAll()) {
+            return null;
+        }
+        // the primary identifiers of the accepted Genes, which are all stored by now
+        final Set<String> accepted = new HashSet<String>();
+        for (int i = 0; i < genes.size(); i++) {
+            if (geneFilter.accepts(genes.getId(i))) {
+                accepted.add(genes.getKey(i));
+            }
+        }
+        return new DelimitedReader.RowFilter() {
+            @Override
+            public boolean accept(CharSequence key) {
+                String gene = getRowGene(key);
+                return !gene.isEmpty() && accepted.contains(resolveGene(gene));
+            }
+        };
+    }
+
+    /**
+     * A ParallelRowEngine for a data file, if the source's properties ask for parallel
+     * parsing (storm.parallel.threads greater than 1) and the file can be split: it isn't
+     * compressed and has no quoted fields, see ParallelRowEngine.isSplittable().  Like
+     * openDataFile() the file starts a phase of the metrics; count its rows with
+     * ConverterMetrics.rowsRead(ParallelRowEngine) once it has run.
+     * @param file the data file
+     * @param delimiter the field delimiter
+     * @param quote the quote character, or DelimitedReader.NO_QUOTE
+     * @return the engine, or null to parse the file serially
+     * @throws IOException if the file can't be read
+     */
+    protected ParallelRowEngine openParallel(File file, char delimiter, char quote)
+        throws IOException {
+        SourceConfig config = getSourceConfig();
+        int threads = config.getInt(SourceConfig.PARALLEL_THREADS, 1);
+        String name = file.getName();
+        if (threads <= 1 || name.endsWith(".gz") || name.endsWith(".bgz")) {
+            return null;
+        }
+        ParallelRowEngine engine = new ParallelRowEngine(file, delimiter, quote, threads,
+                config.getLong(SourceConfig.PARALLEL_CHUNK_SIZE,
+                        ParallelRowEngine.DEFAULT_CHUNK_SIZE));
+        if (!engine.isSplittable()) {
+            LOG.info(config.getSourceName() + ": " + name
+                    + " has quoted fields, parsing it serially");
+            return null;
+        }
+        String checkpointDir = config.get(SourceConfig.CHECKPOINT_DIR, null);
+        if (checkpointDir != null && !checkpointDir.isEmpty()) {
+            LOG.warn(config.getSourceName() + ": no checkpoints of " + name
+                    + ", they are only taken when the rows are parsed serially");
+        }
+        getMetrics().startPhase(name);
+        getMetrics().fileOpened(file);
+        getDiagnostics().startFile(name);
+        ConverterEvents.fileOpened(config.getSourceName(), file);
+        return engine;
+    }
+
+    /**
+     * The gene symbol in the key field of a row, see geneRowFilter().  Must be thread-safe.
+     * @param key the key field
+     * @return the symbol
+     */
+    protected String getRowGene(CharSequence key) {
+        return key.toString();
+    }
+
+    /**
+     * @return the settings from the source's properties file
+     */
+    protected SourceConfig getSourceConfig() {
+        return sourceConfig;
+    }
+
+    /**
+     * Open a data file the way the source's properties ask for: as a stream or, with
+     * storm.reader = mapped, through memory mappings (see MappedFileReader).  Either way,
+     * and in openParallel(), the file is decoded as UTF-8 whatever the platform's.  Files
+     * ending in .gz or .bgz are decompressed as they are read, BGZF files on all cores (see
+     * BgzfInputStream).  With storm.pipeline = true the file is read on a thread of its own
+     * (see ReadAheadReader).  The file starts a phase of the metrics named after it, its
+     * problems are logged together (see getDiagnostics()) and it is recorded by the FileOpen
+     * and FileClose events (see ConverterEvents).
+     * @param file the data file
+     * @return a reader for the file
+     * @throws IOException if the file can't be opened
+     */
+    protected Reader openDataFile(File file) throws IOException {
+        getMetrics().startPhase(file.getName());
+        getMetrics().fileOpened(file);
+        getDiagnostics().startFile(file.getName());
+        SourceConfig config = getSourceConfig();
+        Reader reader = ConverterEvents.fileOpened(config.getSourceName(), file,
+                openFile(file));
+        if (config.getBoolean(SourceConfig.PIPELINE, false)) {
+            reader = new ReadAheadReader(reader, config.getSourceName() + "-reader-"
+                    + file.getName(), ReadAheadReader.DEFAULT_CHUNK_SIZE,
+                    config.getInt(SourceConfig.PIPELINE_READ_AHEAD,
+                            ReadAheadReader.DEFAULT_QUEUE_SIZE));
+        }
+        return reader;
+    }
+
+    private Reader openFile(File file) throws IOException {
+        String name = file.getName();
+        if (name.endsWith(".gz") || name.endsWith(".bgz")) {
+            InputStream is = new FileInputStream(file);
+            if (BgzfInputStream.isBgzf(file)) {
+                is = new BgzfInputStream(is);
+            } else {
+                is = new GZIPInputStream(is, 1 << 16);
+            }
+            return new InputStreamReader(is, StandardCharsets.UTF_8);
+        }
+        String mode = getSourceConfig().get(SourceConfig.READER, "stream");
+        if ("mapped".equals(mode)) {
+            return new MappedFileReader(file);
+        }
+        if (!"stream".equals(mode)) {
+            throw new IllegalArgumentException("unknown " + SourceConfig.READER + ": " + mode);
+        }
+        return new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * With storm.delta.previous set to the data directory of the previous release, compare a
+     * matrix with the file of the same name there, so that only the cells that were added or
+     * changed since are stored, see MatrixDelta.  The cells that were removed are counted and,
+     * with storm.delta.removed set, written to that file.  The items of a changed cell only
+     * replace those of the previous release if their class has a key on the row and column,
+     * e.g. DepMapExpression.key_cellline_gene = cellLine, gene.  Such keys would cost every
+     * full load a lookup per cell, so they are kept in &lt;source&gt;-delta_keys.properties,
+     * used by a source named &lt;source&gt;-delta in project.xml.  Call it once the columns
+     * to read are known; the delta is finished at close().
+     * @param name what the cells are, e.g. "DepMapExpression"
+     * @param fileName the name of the matrix in the data directories
+     * @param header the header of the new release
+     * @param columns the names of the columns of the new release the converter reads
+     * @param rule which cells the converter stores
+     * @return the delta, or null to store every cell
+     * @throws IOException if the previous release can't be read
+     */
+    protected MatrixDelta openDelta(String name, String fileName, String[] header,
+            Collection<String> columns, MatrixDelta.CellRule rule) throws IOException {
+        SourceConfig config = getSourceConfig();
+        String previousDir = config.get(SourceConfig.DELTA_PREVIOUS, null);
+        if (previousDir == null || previousDir.isEmpty()) {
+            return null;
+        }
+        File previousFile = readFilesInDir(new File(previousDir)).get(fileName);
+        if (previousFile == null) {
+            throw new IllegalArgumentException(fileName + " not found in "
+                    + SourceConfig.DELTA_PREVIOUS + " " + previousDir);
+        }
+        getMetrics().startPhase("previous " + previousFile.getName());
+        MatrixDelta delta = new MatrixDelta(name, rule);
+        String removedPath = config.get(SourceConfig.DELTA_REMOVED, null);
+        if (removedPath != null && !removedPath.isEmpty()) {
+            // append, a source may compare more than one matrix
+            delta.setRemovedWriter(new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(removedPath, !deltas.isEmpty()),
+                    StandardCharsets.UTF_8)));
+        }
+        long rows = delta.readPrevious(DelimitedReader.csv(openFile(previousFile)), header,
+                columns);
+        LOG.info(config.getSourceName() + ": read " + rows + " rows of " + previousFile);
+        deltas.add(delta);
+        return delta;
+    }
+
+    /**
+     * With storm.checkpoint.dir set, take a checkpoint of the conversion of a big data file
+     * every storm.checkpoint.rows rows, so that a run that died carries on from the last one
+     * instead of from the start, see ConverterCheckpoint.  A run that finds a checkpoint of
+     * the same file stores the items recorded up to it again, restores the registries (see
+     * newRegistry()) and the item identifier counters, and moves the reader on to the row
+     * after it.  Call it once the header is read and the columns and row filter are set,
+     * then checkpoint() after each row and endCheckpoints() after the last:
+     * <pre>
+     * startCheckpoints(file, rows);
+     * while (rows.next()) {
+     *     storeRow(rows);
+     *     checkpoint(rows);
+     * }
+     * endCheckpoints();
+     * </pre>
+     * The items stored before are stored again by the resumed run, so they mustn't depend
+     * on the rows of the file.  Reference lists stored on their own can't be checkpointed.
+     * There are no checkpoints with storm.delta.previous set, or when parsing in parallel.
+     * The resumed run writes to a new items database like any other run.
+     * @param file the data file
+     * @param rows the reader of the file, with the header read
+     * @throws IOException if the checkpoint or the file can't be read
+     * @throws ObjectStoreException if the items can't be stored
+     */
+    protected void startCheckpoints(File file, DelimitedReader rows)
+        throws IOException, ObjectStoreException {
+        SourceConfig config = getSourceConfig();
+        String dir = config.get(SourceConfig.CHECKPOINT_DIR, null);
+        if (dir == null || dir.isEmpty() || itemStore.isReplaying()) {
+            return;
+        }
+        if (!deltas.isEmpty()) {
+            LOG.warn(config.getSourceName() + ": no checkpoints of " + file.getName()
+                    + " with " + SourceConfig.DELTA_PREVIOUS + " set");
+            return;
+        }
+        checkpointRows = config.getLong(SourceConfig.CHECKPOINT_ROWS,
+                DEFAULT_CHECKPOINT_ROWS);
+        checkpoint = new ConverterCheckpoint(new File(dir), config.getSourceName(),
+                getFingerprint(), file);
+        lastIds = new LinkedHashMap<String, String>();
+        if (checkpoint.load()) {
+            long items = checkpoint.replay(itemStore.getReplayWriter());
+            checkpoint.restore(registries);
+            for (Map.Entry<String, String> entry : checkpoint.getLastIds().entrySet()) {
+                skipIds(entry.getKey(), entry.getValue());
+                lastIds.put(entry.getKey(), entry.getValue());
+            }
+            rows.skipTo(checkpoint.getPosition(), checkpoint.getRowNumber(),
+                    checkpoint.getRowsFiltered());
+            LOG.info(config.getSourceName() + ": resumed " + file + " after row "
+                    + checkpoint.getRowNumber() + ", stored the " + items
+                    + " items up to it again");
+        } else {
+            checkpoint.delete();
+        }
+        itemStore.setCheckpoint(checkpoint);
+        checkpointRowsRead = rows.getRowNumber() + rows.getRowsFiltered();
+    }
+
+    // create items of a class until its identifier counter is back where it was
+    private void skipIds(String className, String lastId) {
+        long last = idNumber(lastId);
+        String prefix = lastId.substring(0, lastId.lastIndexOf('_') + 1);
+        while (true) {
+            String id = super.createItem(className).getIdentifier();
+            if (id.equals(lastId)) {
+                return;
+            }
+            if (!id.startsWith(prefix) || idNumber(id) >= last) {
+                throw new IllegalStateException("the " + className + " identifiers don't "
+                        + "match the checkpoint: " + id + " where " + lastId + " was");
+            }
+        }
+    }
+
+    private static long idNumber(String itemId) {
+        return Long.parseLong(itemId.substring(itemId.lastIndexOf('_') + 1));
+    }
+
+    /**
+     * Take a checkpoint if storm.checkpoint.rows rows were read since the last one, see
+     * startCheckpoints().  Call it once all the items of the row are stored.
+     * @param rows the reader of the data file
+     * @throws IOException if the checkpoint can't be written
+     * @throws ObjectStoreException if the items can't be recorded
+     */
+    protected void checkpoint(DelimitedReader rows) throws IOException, ObjectStoreException {
+        if (checkpoint == null) {
+            return;
+        }
+        long read = rows.getRowNumber() + rows.getRowsFiltered();
+        if (read - checkpointRowsRead >= checkpointRows) {
+            checkpoint.write(rows.getPosition(), rows.getRowNumber(), rows.getRowsFiltered(),
+                    lastIds, registries);
+            checkpointRowsRead = read;
+        }
+    }
+
+    /**
+     * Delete the checkpoints once the data file is converted, see startCheckpoints().
+     */
+    protected void endCheckpoints() {
+        if (checkpoint != null) {
+            itemStore.setCheckpoint(null);
+            checkpoint.delete();
+            checkpoint = null;
+            lastIds = null;
+        }
+    }
+
+    /**
+     * With storm.spool.replay = true and a complete spool file from an earlier run, write the
+     * items of the spool instead of converting the data files.  The spool holds everything
+     * the converter stored in that run, so in this mode the items the converter stores itself
+     * are dropped.  Converters call this first thing in process() and return if it did.
+     * @return true if the spool was replayed
+     * @throws Exception if the spool can't be read or the items can't be stored
+     */
+    protected boolean replaySpool() throws Exception {
+        if (!itemStore.isReplaying()) {
+            return false;
+        }
+        getMetrics().startPhase("replay");
+        long items = itemStore.replaySpool();
+        LOG.info(sourceConfig.getSourceName() + ": replayed " + items + " items from "
+                + sourceConfig.get(SourceConfig.SPOOL, null));
+        return true;
+    }
+
+    /**
+     * @return true if the source's properties set storm.incremental.dir, see replayUnchanged(),
+     * and don't replay a spool
+     */
+    protected boolean isIncremental() {
+        return sharedItems != null;
+    }
+
+    private IncrementalLoad getIncrementalLoad() throws IOException, ObjectStoreException {
+        if (incrementalLoad == null) {
+            LoadManifest manifest = new LoadManifest(
+                    new File(sourceConfig.get(SourceConfig.INCREMENTAL_DIR, null)),
+                    getFingerprint(),
+                    sourceConfig.getBoolean(SourceConfig.INCREMENTAL_VERIFY, false));
+            incrementalLoad = new IncrementalLoad(manifest, sharedItems, metrics);
+            if (dataSourceName != null && dataSetTitle != null) {
+                // stored already, referred to by every BioEntity
+                String dataSource = getDataSource(dataSourceName);
+                registerSharedItem("DataSource:" + dataSourceName, dataSource);
+                registerSharedItem("DataSet:" + dataSetTitle,
+                        getDataSet(dataSetTitle, dataSource));
+            }
+        }
+        return incrementalLoad;
+    }
+
+    // the items of a run depend on the converter and its version besides the data
+    private String getFingerprint() {
+        Package p = getClass().getPackage();
+        String version = p == null ? null : p.getImplementationVersion();
+        return getClass().getName() + (version == null ? "" : " " + version);
+    }
+
+    /**
+     * In incremental mode, record a file that all the data files are converted with, such as
+     * a mapping.  If it changed since the last run no data file is reused.  Call it before
+     * replayUnchanged().
+     * @param file the file
+     * @throws IOException if the file or the manifest can't be read
+     * @throws ObjectStoreException if the DataSet can't be stored
+     */
+    protected void incrementalDependsOn(File file) throws IOException, ObjectStoreException {
+        if (isIncremental()) {
+            getIncrementalLoad().dependsOn(file);
+        }
+    }
+
+    /**
+     * In incremental mode (storm.incremental.dir set), store the items a data file produced
+     * in the last run again if the file hasn't changed since, see LoadManifest.  Otherwise
+     * the items stored until fileConverted() is called are recorded for the next run.
+     * Converters call it for each file:
+     * <pre>
+     * if (!replayUnchanged(file)) {
+     *     process(openDataFile(file));
+     *     fileConverted(file);
+     * }
+     * </pre>
+     * The items of a file refer to the items of other files and of the rest of the run, such
+     * as the Genes, by keys given with registerSharedItem(); a file whose items refer to an
+     * item without a key is converted in every run.  Reused items get new identifiers.
+     * @param file the data file
+     * @return true if the items were stored again and the file needn't be converted
+     * @throws IOException if the file or the manifest can't be read
+     * @throws ObjectStoreException if the items can't be stored
+     */
+    protected boolean replayUnchanged(File file) throws IOException, ObjectStoreException {
+        if (!isIncremental()) {
+            return false;
+        }
+        IncrementalLoad load = getIncrementalLoad();
+        boolean replayed = load.replayUnchanged(file, itemStore.getReplayWriter());
+        itemStore.setSegment(load.getSegment());
+        return replayed;
+    }
+
+    /**
+     * In incremental mode, record the items stored since replayUnchanged() as those of the
+     * file.
+     * @param file the data file
+     * @throws IOException if the file can't be read
+     * @throws ObjectStoreException if the items can't be recorded
+     */
+    protected void fileConverted(File file) throws IOException, ObjectStoreException {
+        if (incrementalLoad != null) {
+            incrementalLoad.fileConverted(file);
+            itemStore.setSegment(incrementalLoad.getSegment());
+        }
+    }
+
+    /**
+     * In incremental mode, give an item other data files may refer to a key, which names it
+     * the same in every run.  Genes, the DataSource and the DataSet have keys already.
+     * @param key the key, e.g. "Transcript:NM_000546.6"
+     * @param itemId the identifier of the item
+     */
+    protected void registerSharedItem(String key, String itemId) {
+        if (isIncremental()) {
+            sharedItems.register(key, itemId);
+        }
+    }
+
+    /**
+     * Get an item with a key of this converter (see registerSharedItem()) that an unchanged
+     * file refers to, storing it if need be.
+     * @param key the key
+     * @return the identifier of the item, null if there is none; the file is then converted
+     * @throws ObjectStoreException if the item can't be stored
+     */
+    protected String resolveSharedItem(String key) throws ObjectStoreException {
+        return null;
+    }
+
+    /**
+     * Called when an item with a key of this converter is stored again from an unchanged
+     * file, for the converter to use it from now on.
+     * @param key the key
+     * @param itemId the identifier of the item in this run
+     */
+    protected void sharedItemReplayed(String key, String itemId) {
+        // no items of its own by default
+    }
+
+    /**
+     * The pool the attribute values of the stored items go through, if the source's
+     * properties turn it on with storm.intern = true.  Worth it for sources whose values
+     * repeat across many items, like the lineages and tissues of cell lines.
+     * @return the pool, null if values aren't pooled
+     */
+    protected InternPool getInternPool() {
+        return itemStore.getInternPool();
+    }
+
+    /**
+     * Pool a value the converter keeps, like the attribute values of the stored items.
+     * @param value a value
+     * @return the pooled string equal to the value
+     */
+    protected String intern(String value) {
+        InternPool pool = getInternPool();
+        return pool == null ? value : pool.intern(value);
+    }
+
+    /**
+     * The metrics of this run, written as a JSON report at close().  Converters count the
+     * rows they read and skip; the files opened with openDataFile(), the items and the gene
+     * lookups are counted here.
+     * @return the metrics
+     */
+    protected ConverterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The problems of the data file being read, logged once the next file is opened with
+     * openDataFile() or openParallel(), or at close(), rather than a line per row.  Gene
+     * symbols that don't resolve in getGeneId() are recorded here; record other problems
+     * with skip().
+     * @return the diagnostics
+     */
+    protected ConverterDiagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Count a row, or a value of a row, that isn't turned into an item in the metrics and
+     * record it in the diagnostics of the file.
+     * @param reason why, e.g. "invalid row"
+     * @param identifier the identifier the problem is about, null if there isn't one
+     * @param row the row, may be null
+     * @param error the exception the row caused, may be null
+     */
+    protected void skip(String reason, CharSequence identifier, Object row, Throwable error) {
+        getMetrics().skip(reason);
+        getDiagnostics().problem(reason, identifier, row, error);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Item createItem(String className) {
+        if (metrics == null) {
+            // the DataSource or DataSet, see the constructor
+            return super.createItem(className);
+        }
+        metrics.itemCreated(className);
+        Item item = super.createItem(className);
+        if (lastIds != null) {
+            lastIds.put(className, item.getIdentifier());
+        }
+        return item;
+    }
+
+    /**
+     * Keep the hook for the ConverterStore, which applies it to the items instead of
+     * DataConverter.store().
+     * {@inheritDoc}
+     */
+    @Override
+    public void setStoreHook(DataConverterStoreHook storeHook) {
+        super.setStoreHook(storeHook);
+        this.storeHook = storeHook;
+        if (itemStore != null) {
+            itemStore.setStoreHook(this, storeHook);
+        }
+    }
+
+    /**
+     * Store an item through the ConverterStore, which applies the store hook, pools its
+     * attribute values, converts it once and records it in the incremental segment and the
+     * checkpoint journal, if any.  The item may be changed afterwards as usual.
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer store(Item item) throws ObjectStoreException {
+        if (itemStore == null) {
+            // the DataSource or DataSet, see the constructor
+            return super.store(item);
+        }
+        return itemStore.store(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(Collection<Item> items) throws ObjectStoreException {
+        if (itemStore == null) {
+            super.store(items);
+            return;
+        }
+        itemStore.store(items);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(ReferenceList referenceList, Integer itemId) throws ObjectStoreException {
+        if (itemStore == null) {
+            super.store(referenceList, itemId);
+            return;
+        }
+        itemStore.store(referenceList, itemId);
+    }
+
+    /**
+     * Write the items still held by the ConverterStore and the metrics report.
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws Exception {
+        metrics.startPhase("close");
+        diagnostics.endFile();
+        super.close();
+        for (ItemIdRegistry registry : registries) {
+            LOG.info(sourceConfig.getSourceName() + " registry " + registry);
+            registry.close();
+        }
+        itemStore.close();
+        for (MatrixDelta delta : deltas) {
+            delta.finish();
+        }
+        if (incrementalLoad != null) {
+            incrementalLoad.close(sourceConfig.getSourceName());
+        }
+        metrics.report(sourceConfig);
+    }
+
+    /**
+     * The items with keys of this run, see registerSharedItem().
+     */
+    private class SharedItems implements ItemSegment.Keys
+    {
+        // item identifier -> key and back
+        private final Map<String, String> keys = new HashMap<String, String>();
+        private final Map<String, String> ids = new HashMap<String, String>();
+
+        void register(String key, String itemId) {
+            keys.put(itemId, key);
+            ids.put(key, itemId);
+        }
+
+        @Override
+        public String getKey(String itemId) {
+            return keys.get(itemId);
+        }
+
+        @Override
+        public String resolve(String key) throws ObjectStoreException {
+            String itemId = ids.get(key);
+            if (itemId == null) {
+                if (key.startsWith(GENE_KEY)) {
+                    itemId = storeGene(key.substring(GENE_KEY.length()));
+                } else {
+                    itemId = resolveSharedItem(key);
+                    if (itemId != null) {
+                        register(key, itemId);
+                    }
+                }
+            }
+            return itemId;
+        }
+
+        @Override
+        public String newIdentifier(String className) {
+            return createItem(className).getIdentifier();
+        }
+
+        @Override
+        public String replayed(String key, String itemId) {
+            String existing = ids.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            register(key, itemId);
+            if (key.startsWith(GENE_KEY)) {
+                genes.put(key.substring(GENE_KEY.length()), itemId);
+            } else {
+                sharedItemReplayed(key, itemId);
+            }
+            return itemId;
+        }
+    }
+
+    /**
+     * The files in a directory by name.  A compressed file X.gz or X.bgz can also be looked up
+     * as X, unless X itself is there, so that the downloads can be kept compressed; open the
+     * files with openDataFile().
+     * @param dir the data directory
+     * @return the files in the directory by name
+     */
+    protected Map<String, File> readFilesInDir(File dir) {
+        Map<String, File> files = new HashMap<String, File>();
+        for (File file : dir.listFiles()) {
+            files.put(file.getName(), file);
+        }
+        for (File file : dir.listFiles()) {
+            String name = file.getName();
+            String plainName = null;
+            if (name.endsWith(".gz")) {
+                plainName = name.substring(0, name.length() - ".gz".length());
+            } else if (name.endsWith(".bgz")) {
+                plainName = name.substring(0, name.length() - ".bgz".length());
+            }
+            if (plainName != null && !files.containsKey(plainName)) {
+                files.put(plainName, file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @param dir the data directory
+     * @return the sub-directories of the directory by name
+     */
+    protected Map<String, File> readDirectoriesInDir(File dir) {
+        Map<String, File> directories = new HashMap<String, File>();
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                directories.put(file.getName(), file);
+            }
+        }
+        return directories;
+    }
+}
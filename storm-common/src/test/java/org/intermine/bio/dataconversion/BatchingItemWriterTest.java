@@ -0,0 +1,104 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.ReferenceList;
+
+public class BatchingItemWriterTest extends TestCase
+{
+    public void testBatchSize() throws Exception {
+        RecordingWriter recorder = new RecordingWriter();
+        BatchingItemWriter writer = new BatchingItemWriter(recorder, 10, 0, 0);
+        List<Item> items = new ArrayList<Item>();
+        for (int i = 0; i < 25; i++) {
+            Item item = new Item();
+            items.add(item);
+            writer.store(item);
+        }
+        assertEquals(2, recorder.batches);
+        assertEquals(20, recorder.items.size());
+        // the reference list goes after the items before it
+        writer.store((ReferenceList) null, 1);
+        assertEquals(3, recorder.batches);
+        assertEquals(25, recorder.itemsBeforeRefList);
+        writer.close();
+        assertEquals(items, recorder.items);
+        assertEquals(3, writer.getFlushes());
+        assertEquals(25, writer.getItemsFlushed());
+        long histogramTotal = 0;
+        for (long count : writer.getFlushHistogram()) {
+            histogramTotal += count;
+        }
+        assertEquals(3, histogramTotal);
+        assertTrue(recorder.closed);
+    }
+
+    public void testBytes() throws Exception {
+        RecordingWriter recorder = new RecordingWriter();
+        long itemSize = BatchingItemWriter.estimateSize(new Item());
+        BatchingItemWriter writer = new BatchingItemWriter(recorder, 1000, 4 * itemSize, 0);
+        for (int i = 0; i < 9; i++) {
+            writer.store(new Item());
+        }
+        assertEquals(2, recorder.batches);
+        writer.flush();
+        assertEquals(9, recorder.items.size());
+        assertEquals(9 * itemSize, writer.getBytesFlushed());
+    }
+
+    public void testAge() throws Exception {
+        RecordingWriter recorder = new RecordingWriter();
+        BatchingItemWriter writer = new BatchingItemWriter(recorder, 1000, 0, 20);
+        writer.store(new Item());
+        Thread.sleep(40);
+        writer.store(new Item());
+        assertEquals(1, recorder.batches);
+        assertEquals(2, recorder.items.size());
+    }
+
+    private static class RecordingWriter implements ItemWriter
+    {
+        private final List<Item> items = new ArrayList<Item>();
+        private int batches;
+        private int itemsBeforeRefList = -1;
+        private boolean closed;
+
+        public Integer store(Item item) {
+            throw new IllegalStateException("items should be stored in batches");
+        }
+
+        public void store(ReferenceList refList, Integer itemId) {
+            itemsBeforeRefList = items.size();
+        }
+
+        public void store(Attribute att, Integer itemId) {
+            // not used
+        }
+
+        public void storeAll(Collection<Item> all) {
+            batches++;
+            items.addAll(all);
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+}
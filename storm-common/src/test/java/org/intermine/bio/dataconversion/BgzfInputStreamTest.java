@@ -0,0 +1,142 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+public class BgzfInputStreamTest extends TestCase
+{
+    public void testRoundTrip() throws Exception {
+        byte[] data = matrix(300000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // read ahead of one block up to more blocks than the file has
+            for (int readAhead : new int[] {1, 3, 64}) {
+                InputStream is = new BgzfInputStream(new ByteArrayInputStream(bgzf(data, 10000)),
+                        executor, readAhead);
+                assertTrue(Arrays.equals(data, readAll(is)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(Arrays.equals(data, readAll(new BgzfInputStream(
+                new ByteArrayInputStream(bgzf(data, 65280))))));
+    }
+
+    public void testCorrupt() throws Exception {
+        byte[] compressed = bgzf(matrix(50000), 20000);
+        // flip a bit of the CRC of the first block
+        int firstBlockSize = (compressed[16] & 0xff | (compressed[17] & 0xff) << 8) + 1;
+        compressed[firstBlockSize - 8] ^= 1;
+        try {
+            readAll(new BgzfInputStream(new ByteArrayInputStream(compressed)));
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("CRC"));
+        }
+    }
+
+    public void testIsBgzf() throws Exception {
+        byte[] data = matrix(1000);
+        File bgz = File.createTempFile("bgzf", ".bgz");
+        File gz = File.createTempFile("bgzf", ".gz");
+        try {
+            write(bgz, bgzf(data, 65280));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+            gzip.write(data);
+            gzip.close();
+            write(gz, bytes.toByteArray());
+            assertTrue(BgzfInputStream.isBgzf(bgz));
+            assertFalse(BgzfInputStream.isBgzf(gz));
+        } finally {
+            bgz.delete();
+            gz.delete();
+        }
+    }
+
+    private static byte[] matrix(int rows) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows / 10; i++) {
+            sb.append("ACH-").append(i);
+            for (int j = 0; j < 10; j++) {
+                sb.append(',').append(random.nextInt(100000) / 1000.0);
+            }
+            sb.append('\n');
+        }
+        return sb.toString().getBytes();
+    }
+
+    // what bgzip writes: blocks of at most blockData bytes and an empty last block
+    private static byte[] bgzf(byte[] data, int blockData) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int start = 0; start < data.length; start += blockData) {
+            block(out, Arrays.copyOfRange(data, start, Math.min(data.length, start + blockData)));
+        }
+        block(out, new byte[0]);
+        return out.toByteArray();
+    }
+
+    private static void block(ByteArrayOutputStream out, byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[data.length + 1024];
+        int n = deflater.deflate(buffer);
+        deflater.end();
+        int blockSize = 18 + n + 8;
+        out.write(new byte[] {31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6, 0, 'B', 'C', 2,
+            0, (byte) (blockSize - 1), (byte) ((blockSize - 1) >> 8)}, 0, 18);
+        out.write(buffer, 0, n);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeInt(out, (int) crc.getValue());
+        writeInt(out, data.length);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        for (int i = 0; i < 4; i++) {
+            out.write(value >> (8 * i));
+        }
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        os.write(data);
+        os.close();
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = is.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        is.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,136 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.ReferenceList;
+
+public class ConverterCheckpointTest extends TestCase
+{
+    private File dir;
+    private File data;
+
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("checkpoint").toFile();
+        data = new File(dir, "data.tsv");
+        write(data, "gene\tA\tB\nTP53\t1.5\t2.5\nKRAS\t0.5\t\n");
+    }
+
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testResume() throws Exception {
+        ConverterCheckpoint checkpoint = new ConverterCheckpoint(dir, "source", "converter 1",
+                data);
+        assertFalse(checkpoint.load());
+        ItemIdRegistry samples = new ItemIdRegistry("samples");
+        samples.put("A", "2_1");
+        Map<String, String> lastIds = new LinkedHashMap<String, String>();
+        lastIds.put("Sample", "2_1");
+        lastIds.put("Expression", "3_1");
+        checkpoint.getJournal().store(item("2_1", "Sample"));
+        checkpoint.getJournal().store(item("3_1", "Expression"));
+        checkpoint.write(20, 1, 0, lastIds, Arrays.asList(samples));
+        checkpoint.getJournal().store(item("3_2", "Expression"));
+        lastIds.put("Expression", "3_2");
+        checkpoint.write(33, 2, 0, lastIds, Arrays.asList(samples));
+        // items of a checkpoint that was never taken
+        checkpoint.getJournal().store(item("3_3", "Expression"));
+
+        checkpoint = new ConverterCheckpoint(dir, "source", "converter 1", data);
+        assertTrue(checkpoint.load());
+        assertEquals(33, checkpoint.getPosition());
+        assertEquals(2, checkpoint.getRowNumber());
+        assertEquals(Arrays.asList("Sample", "Expression"),
+                new ArrayList<String>(checkpoint.getLastIds().keySet()));
+        assertEquals("3_2", checkpoint.getLastIds().get("Expression"));
+        ItemIdRegistry restored = new ItemIdRegistry("samples");
+        checkpoint.restore(Arrays.asList(restored, new ItemIdRegistry("genes")));
+        assertEquals("2_1", restored.get("A"));
+        RecordingWriter writer = new RecordingWriter();
+        assertEquals(3, checkpoint.replay(writer));
+        assertEquals(Arrays.asList("2_1", "3_1", "3_2"), writer.identifiers);
+
+        // another version of the converter
+        assertFalse(new ConverterCheckpoint(dir, "source", "converter 2", data).load());
+        // changed data
+        write(data, "gene\tA\tB\n");
+        assertFalse(new ConverterCheckpoint(dir, "source", "converter 1", data).load());
+
+        checkpoint.delete();
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    private static Item item(String identifier, String className) {
+        Item item = new Item();
+        item.setIdentifier(identifier);
+        item.setClassName(className);
+        item.setImplementations("");
+        return item;
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(contents.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            os.close();
+        }
+    }
+
+    private static class RecordingWriter implements ItemWriter
+    {
+        private final List<String> identifiers = new ArrayList<String>();
+
+        public Integer store(Item item) {
+            identifiers.add(item.getIdentifier());
+            return identifiers.size();
+        }
+
+        public void store(ReferenceList refList, Integer itemId) {
+            // not used
+        }
+
+        public void store(Attribute att, Integer itemId) {
+            // not used
+        }
+
+        public void storeAll(Collection<Item> all) {
+            for (Item item : all) {
+                store(item);
+            }
+        }
+
+        public void close() {
+            // nothing to close
+        }
+    }
+}
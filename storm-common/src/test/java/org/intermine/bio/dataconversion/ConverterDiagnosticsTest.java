@@ -0,0 +1,69 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class ConverterDiagnosticsTest extends TestCase
+{
+    public void testCounts() throws Exception {
+        ConverterDiagnostics diagnostics = new ConverterDiagnostics("depmap-cnv", 2, 2, 3);
+        diagnostics.startFile("CCLE_gene_cn.csv");
+        for (int i = 0; i < 5; i++) {
+            diagnostics.problem("gene not resolved", "A", null);
+        }
+        diagnostics.problem("gene not resolved", "B", null);
+        diagnostics.problem("gene not resolved", "B", null);
+        diagnostics.problem("gene not resolved", "C", null);
+        // beyond the 3 identifiers counted one by one
+        diagnostics.problem("gene not resolved", "D", null);
+        diagnostics.problem("invalid row", null, new String[] {"x", "1"},
+                new NumberFormatException("bad"));
+        diagnostics.problem("invalid row", null, "y,2");
+        diagnostics.problem("invalid row", null, "z,3");
+
+        assertEquals(9, diagnostics.getCount("gene not resolved"));
+        assertEquals(3, diagnostics.getCount("invalid row"));
+        assertEquals(Arrays.asList("A", "B"), diagnostics.getTopIdentifiers("gene not resolved"));
+        assertEquals(Arrays.asList("x\t1 - java.lang.NumberFormatException: bad", "y,2"),
+                diagnostics.getSamples("invalid row"));
+        String summary = diagnostics.getSummary();
+        assertTrue(summary, summary.startsWith("depmap-cnv CCLE_gene_cn.csv: 12 problems"));
+        assertTrue(summary, summary.contains(
+                "gene not resolved: 9, most often A (5), B (2) and 1+ others"));
+        assertTrue(summary, summary.contains("e.g. y,2"));
+    }
+
+    public void testOncePerFile() throws Exception {
+        ConverterDiagnostics diagnostics = new ConverterDiagnostics("depmap-cnv", 10, 3, 100);
+        diagnostics.startFile("a.csv");
+        diagnostics.problem("invalid row", null, "1");
+        diagnostics.startFile("b.csv");
+        assertEquals(1, diagnostics.getFilesWithProblems());
+        assertEquals(0, diagnostics.getCount("invalid row"));
+        diagnostics.startFile("c.csv");
+        diagnostics.endFile();
+        // b.csv and c.csv had no problems
+        assertEquals(1, diagnostics.getFilesWithProblems());
+    }
+
+    public void testLongRow() throws Exception {
+        ConverterDiagnostics diagnostics = new ConverterDiagnostics("depmap-cnv", 10, 3, 100);
+        String[] row = new String[1000];
+        Arrays.fill(row, "0.123");
+        diagnostics.problem("invalid row", null, row);
+        String sample = diagnostics.getSamples("invalid row").get(0);
+        assertTrue(sample.length() < 320);
+        assertTrue(sample.endsWith("..."));
+    }
+}
@@ -0,0 +1,31 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+public class ConverterEventsTest extends TestCase
+{
+    public void testNotRecorded() throws Exception {
+        Reader reader = new StringReader("a");
+        assertSame(reader, ConverterEvents.fileOpened("depmap-cnv", new File("x"), reader));
+        assertNull(ConverterEvents.beginRowBatch());
+        assertNull(ConverterEvents.beginChunk());
+        assertNull(ConverterEvents.beginItemBatch());
+        // no-ops
+        ConverterEvents.endRowBatch(null, 1, 1);
+        ConverterEvents.endItemBatch(null, "batching", 1, 1);
+    }
+}
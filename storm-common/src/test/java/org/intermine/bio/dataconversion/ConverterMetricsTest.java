@@ -0,0 +1,95 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class ConverterMetricsTest extends TestCase
+{
+    public void testCounts() throws Exception {
+        ConverterMetrics metrics = new ConverterMetrics("depmap-cnv");
+        DelimitedReader rows = DelimitedReader.csv(new StringReader(
+                ",A1BG (1),NAT2 (10)\nACH-1,1.5,\nACH-2,NA,2.5\n,0.5,1\n"));
+        rows.readHeader();
+        rows.setRowFilter(0, new DelimitedReader.RowFilter() {
+            public boolean accept(CharSequence key) {
+                return key.length() > 0;
+            }
+        });
+        while (rows.next()) {
+            metrics.itemCreated("DepMapCopyNumber");
+            metrics.itemStored("DepMapCopyNumber");
+            metrics.skip("missing value");
+        }
+        metrics.rowsRead(rows);
+        metrics.itemCreated("CellLine");
+        metrics.resolved(true);
+        metrics.resolved(false);
+        metrics.resolved(true);
+
+        // the header, two rows and a filtered row
+        assertEquals(4, metrics.getRows());
+        assertEquals(2, metrics.getItemsStored());
+        assertEquals(2, metrics.getItemsStored("DepMapCopyNumber"));
+        assertEquals(0, metrics.getItemsStored("CellLine"));
+        assertEquals(2, metrics.getSkipped("missing value"));
+        assertEquals(1, metrics.getSkipped("row filter"));
+        assertEquals(2, metrics.getResolverHits());
+        assertEquals(1, metrics.getResolverMisses());
+
+        String json = metrics.toJson();
+        assertTrue(json, json.contains("\"source\": \"depmap-cnv\""));
+        assertTrue(json, json.contains("\"rows\": 4,"));
+        assertTrue(json, json.contains("\"itemsCreated\": 3,"));
+        assertTrue(json, json.contains("\"rowsSkipped\": 3,"));
+        assertTrue(json, json.contains("\"resolver\": {\"hits\": 2, \"misses\": 1}"));
+        assertTrue(json, json.contains("\"CellLine\": 1"));
+        assertTrue(json, json.contains("\"row filter\": 1"));
+        assertTrue(json, json.contains("\"setup\": "));
+    }
+
+    public void testPhases() throws Exception {
+        ConverterMetrics metrics = new ConverterMetrics("storm-nanopore-data");
+        for (int i = 0; i < ConverterMetrics.MAX_PHASES + 10; i++) {
+            metrics.startPhase("file-" + (i % (ConverterMetrics.MAX_PHASES + 5)));
+        }
+        metrics.endPhase();
+        String json = metrics.toJson();
+        assertTrue(json.contains("\"file-0\": "));
+        assertTrue(json.contains("\"other\": "));
+        assertFalse(json.contains("\"file-" + (ConverterMetrics.MAX_PHASES + 1) + "\""));
+    }
+
+    public void testReport() throws Exception {
+        File dir = Files.createTempDirectory("metrics").toFile();
+        File report = new File(dir, "tcga-sample-metadata-metrics.json");
+        try {
+            Properties properties = new Properties();
+            properties.setProperty(SourceConfig.METRICS_REPORT, dir.getPath());
+            ConverterMetrics metrics = new ConverterMetrics("tcga-sample-metadata");
+            metrics.skip("quote \" and \\ and \t");
+            metrics.report(new SourceConfig("tcga-sample-metadata", properties));
+            String json = new String(Files.readAllBytes(report.toPath()),
+                    StandardCharsets.UTF_8);
+            assertTrue(json, json.contains("\"quote \\\" and \\\\ and \\u0009\": 1"));
+            assertTrue(json, json.trim().endsWith("}"));
+        } finally {
+            report.delete();
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.intermine.dataconversion.DataConverter;
+import org.intermine.dataconversion.DataConverterStoreHook;
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.xml.full.Attribute;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.ReferenceList;
+
+public class ConverterStoreTest extends TestCase
+{
+    private File dir;
+    private File spoolFile;
+    private File segmentFile;
+
+    public void setUp() throws Exception {
+        // the spool and segment writers keep .tmp files next to them
+        dir = Files.createTempDirectory("store").toFile();
+        spoolFile = new File(dir, "items.spool");
+        segmentFile = new File(dir, "items.segment");
+    }
+
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testStore() throws Exception {
+        RecordingWriter recorder = new RecordingWriter();
+        Properties properties = new Properties();
+        properties.setProperty(SourceConfig.STORE_BATCH_SIZE, "2");
+        ConverterMetrics metrics = new ConverterMetrics("test");
+        ConverterStore store = new ConverterStore(recorder,
+                new SourceConfig("test", properties), metrics);
+        ItemSegment segment = new ItemSegment(segmentFile);
+        store.setSegment(segment);
+        assertNull(store.store(item("1_1", "Gene", "GENE1")));
+        store.store(Arrays.asList(item("1_2", "Gene", "GENE2"), item("1_3", "Gene", "GENE3")));
+        store.setSegment(null);
+        store.store(item("1_4", "Gene", "GENE4"));
+        ReferenceList refs = new ReferenceList("genes", Arrays.asList("1_1", "1_2"));
+        store.store(refs, 1);
+        store.close();
+
+        assertEquals(Arrays.asList("1_1", "1_2", "1_3", "1_4", "genes"), recorder.stored);
+        assertEquals(3, segment.getItemCount());
+        assertEquals(4, metrics.getItemsStored());
+        assertFalse(store.isReplaying());
+    }
+
+    public void testSpoolReplay() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(SourceConfig.SPOOL, spoolFile.getPath());
+        properties.setProperty(SourceConfig.SPOOL_REPLAY, "true");
+        SourceConfig config = new SourceConfig("test", properties);
+
+        RecordingWriter first = new RecordingWriter();
+        ConverterStore store = new ConverterStore(first, config,
+                new ConverterMetrics("test"));
+        assertEquals(-1, store.replaySpool());
+        store.store(item("1_1", "Gene", "GENE1"));
+        store.store(item("1_2", "Gene", "GENE2"));
+        store.close();
+        assertEquals(Arrays.asList("1_1", "1_2"), first.stored);
+
+        // the spool is complete, so the next run writes its items and drops its own
+        RecordingWriter second = new RecordingWriter();
+        ConverterMetrics metrics = new ConverterMetrics("test");
+        store = new ConverterStore(second, config, metrics);
+        assertTrue(store.isReplaying());
+        assertNull(store.store(item("1_3", "Gene", "GENE3")));
+        assertEquals(2, store.replaySpool());
+        store.close();
+        assertEquals(Arrays.asList("1_1", "1_2"), second.stored);
+        assertEquals(0, metrics.getItemsStored());
+    }
+
+    public void testStoreHook() throws Exception {
+        RecordingWriter recorder = new RecordingWriter();
+        ConverterStore store = new ConverterStore(recorder,
+                new SourceConfig("test", new Properties()), new ConverterMetrics("test"));
+        final List<String> hooked = new ArrayList<String>();
+        store.setStoreHook(null, new DataConverterStoreHook() {
+            @Override
+            public void processItem(DataConverter converter, Item item) {
+                hooked.add(item.getIdentifier());
+                item.addToCollection("dataSets", "2_1");
+            }
+        });
+        store.store(item("1_1", "Gene", "GENE1"));
+        store.store(Arrays.asList(item("1_2", "Gene", "GENE2")));
+        store.close();
+
+        assertEquals(Arrays.asList("1_1", "1_2"), hooked);
+        assertEquals(Arrays.asList("1_1", "1_2"), recorder.stored);
+        assertEquals(2, recorder.collections);
+    }
+
+    private static Item item(String identifier, String className, String symbol) {
+        Item item = new Item(identifier, className, "");
+        item.addAttribute(new Attribute("symbol", symbol));
+        return item;
+    }
+
+    private static class RecordingWriter implements ItemWriter
+    {
+        private final List<String> stored = new ArrayList<String>();
+        private int collections;
+
+        @Override
+        public Integer store(org.intermine.model.fulldata.Item item) {
+            stored.add(item.getIdentifier());
+            if (item.getCollections() != null) {
+                collections += item.getCollections().size();
+            }
+            return null;
+        }
+
+        @Override
+        public void storeAll(Collection<org.intermine.model.fulldata.Item> items) {
+            for (org.intermine.model.fulldata.Item item : items) {
+                store(item);
+            }
+        }
+
+        @Override
+        public void store(org.intermine.model.fulldata.ReferenceList refList, Integer itemId) {
+            stored.add(refList.getName());
+        }
+
+        @Override
+        public void store(org.intermine.model.fulldata.Attribute att, Integer itemId) {
+            stored.add(att.getName());
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+}
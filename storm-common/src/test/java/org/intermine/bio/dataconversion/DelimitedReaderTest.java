@@ -0,0 +1,191 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.EOFException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class DelimitedReaderTest extends TestCase
+{
+    public void testCsv() throws Exception {
+        List<String[]> rows = readAll(DelimitedReader.csv(new StringReader(
+                "Unnamed: 0,TSPAN6 (7105),TNMD (64102)\n"
+                + "ACH-001113,4.33,0.0\r\n"
+                + "ACH-001289,,NA")));
+        assertEquals(3, rows.size());
+        assertEquals(Arrays.asList("Unnamed: 0", "TSPAN6 (7105)", "TNMD (64102)"),
+                Arrays.asList(rows.get(0)));
+        assertEquals(Arrays.asList("ACH-001113", "4.33", "0.0"), Arrays.asList(rows.get(1)));
+        assertEquals(Arrays.asList("ACH-001289", "", "NA"), Arrays.asList(rows.get(2)));
+    }
+
+    public void testCsvQuoting() throws Exception {
+        List<String[]> rows = readAll(DelimitedReader.csv(new StringReader(
+                "\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\",\n"
+                + "\"#not a comment\",x\n"
+                + "#a comment\n"
+                + "\"\",\"\"\n")));
+        assertEquals(3, rows.size());
+        assertEquals(Arrays.asList("a,b", "say \"hi\"", "two\nlines", ""),
+                Arrays.asList(rows.get(0)));
+        assertEquals(Arrays.asList("#not a comment", "x"), Arrays.asList(rows.get(1)));
+        assertEquals(Arrays.asList("", ""), Arrays.asList(rows.get(2)));
+    }
+
+    public void testTsv() throws Exception {
+        List<String[]> rows = readAll(DelimitedReader.tsv(new StringReader(
+                "sample\tTCGA-A\tTCGA-B\n\"TP53\"\t1.5\t\n")));
+        assertEquals(2, rows.size());
+        // TSV fields are not unquoted
+        assertEquals(Arrays.asList("\"TP53\"", "1.5", ""), Arrays.asList(rows.get(1)));
+    }
+
+    public void testFieldViews() throws Exception {
+        // a tiny buffer so that rows and fields cross buffer refills
+        DelimitedReader reader = new DelimitedReader(new StringReader(
+                "id,value\nA,1.25\nBB,\"2,5\"\n"), ',', '"', 3);
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        CharSequence value = reader.getField(1);
+        assertEquals("1.25", value.toString());
+        assertEquals(4, value.length());
+        assertEquals('.', value.charAt(1));
+        assertEquals("25", value.subSequence(2, 4).toString());
+        assertTrue(reader.next());
+        // the same view now shows the field of the new row
+        assertEquals("2,5", value.toString());
+        assertEquals("BB", reader.getString(0));
+        assertEquals(3, reader.getRowNumber());
+        assertFalse(reader.next());
+        try {
+            reader.getField(2);
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    public void testIterator() throws Exception {
+        Iterator<String[]> iter = DelimitedReader.csv(new StringReader("a,b\nc,d\n")).iterator();
+        assertTrue(iter.hasNext());
+        assertEquals("b", iter.next()[1]);
+        assertEquals("c", iter.next()[0]);
+        assertFalse(iter.hasNext());
+    }
+
+    public void testWideRow() throws Exception {
+        StringBuilder sb = new StringBuilder("gene");
+        for (int i = 0; i < 19000; i++) {
+            sb.append(',').append(i).append(".5");
+        }
+        DelimitedReader reader = DelimitedReader.csv(new StringReader(sb.toString()));
+        assertTrue(reader.next());
+        assertEquals(19001, reader.getFieldCount());
+        assertEquals("18999.5", reader.getString(19000));
+    }
+
+    public void testSelectColumns() throws Exception {
+        DelimitedReader reader = DelimitedReader.csv(new StringReader(
+                ",TSPAN6 (7105),TNMD (64102),DPM1 (8813)\n"
+                + "ACH-001113,4.33,\"0,0\",7.1\n"
+                + "ACH-001289,1.5,2.5,3.5\n"));
+        String[] header = reader.readHeader();
+        assertEquals(4, header.length);
+        assertEquals(2, reader.selectColumns(Arrays.asList("", "DPM1 (8813)", "BRCA1 (672)")));
+        assertTrue(reader.next());
+        assertEquals(4, reader.getFieldCount());
+        assertEquals("ACH-001113", reader.getString(0));
+        assertEquals("7.1", reader.getString(3));
+        assertFalse(reader.isSelected(2));
+        assertEquals(Arrays.asList("ACH-001113", null, null, "7.1"),
+                Arrays.asList(reader.toArray()));
+        try {
+            reader.getField(1);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(reader.next());
+        assertEquals("3.5", reader.getField(3).toString());
+        assertFalse(reader.next());
+    }
+
+    public void testRowFilter() throws Exception {
+        DelimitedReader reader = new DelimitedReader(new StringReader(
+                "sample,gene,a,b\n"
+                + "x,TP53,1,2\n"
+                + "x,KRAS,\"quoted\nline\",2\n"
+                + "#comment,TP53\n"
+                + "y,TP53,3,4"), ',', '"', 5);
+        reader.readHeader();
+        final List<String> seen = new ArrayList<String>();
+        reader.setRowFilter(1, new DelimitedReader.RowFilter() {
+            public boolean accept(CharSequence key) {
+                seen.add(key.toString());
+                return key.toString().equals("TP53");
+            }
+        });
+        assertTrue(reader.next());
+        assertEquals("1", reader.getString(2));
+        assertTrue(reader.next());
+        assertEquals("y", reader.getString(0));
+        assertEquals("4", reader.getString(3));
+        assertFalse(reader.next());
+        assertEquals(Arrays.asList("TP53", "KRAS", "TP53"), seen);
+        assertEquals(1, reader.getRowsFiltered());
+    }
+
+    public void testSkipTo() throws Exception {
+        String data = "id,value\nA,1\r\nB,\"2\n3\"\nC,4\nD,5\n";
+        DelimitedReader reader = new DelimitedReader(new StringReader(data), ',', '"', 4);
+        reader.readHeader();
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        long position = reader.getPosition();
+        assertEquals(data.indexOf("C,4"), position);
+
+        // a fresh read carries on after B, from inside the buffer and past it
+        for (int bufferSize : new int[] {64, 3}) {
+            reader = new DelimitedReader(new StringReader(data), ',', '"', bufferSize);
+            reader.readHeader();
+            reader.skipTo(position, 2, 0);
+            assertTrue(reader.next());
+            assertEquals("C", reader.getString(0));
+            assertEquals(3, reader.getRowNumber());
+            assertTrue(reader.next());
+            assertEquals("5", reader.getString(1));
+            assertFalse(reader.next());
+        }
+
+        reader = DelimitedReader.csv(new StringReader(data));
+        try {
+            reader.skipTo(data.length() + 1, 0, 0);
+            fail("skipped past the end");
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    private static List<String[]> readAll(DelimitedReader reader) throws Exception {
+        List<String[]> rows = new ArrayList<String[]>();
+        while (reader.next()) {
+            rows.add(reader.toArray());
+        }
+        reader.close();
+        return rows;
+    }
+}
@@ -0,0 +1,34 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class GeneFilterTest extends TestCase
+{
+    public void testAll() throws Exception {
+        assertTrue(GeneFilter.ALL.acceptsAll());
+        assertTrue(GeneFilter.ALL.accepts("1_1"));
+        assertFalse(GeneFilter.ALL.accepts(null));
+    }
+
+    public void testTargets() throws Exception {
+        GeneFilter filter = new GeneFilter(Arrays.asList("1_1", "1_2", "1_2"));
+        assertFalse(filter.acceptsAll());
+        assertEquals(2, filter.size());
+        assertTrue(filter.accepts("1_1"));
+        assertTrue(filter.accepts("1_2"));
+        assertFalse(filter.accepts("1_3"));
+        assertFalse(filter.accepts(null));
+    }
+}
@@ -0,0 +1,48 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class GeneListTest extends TestCase
+{
+    private File file;
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("genes", ".csv");
+    }
+
+    public void tearDown() {
+        file.delete();
+    }
+
+    public void testReadOnce() throws Exception {
+        write("TP53,tumour protein p53\n\nKRAS\n");
+        List<String> symbols = GeneList.getSymbols(file);
+        assertEquals(Arrays.asList("TP53", "", "KRAS"), symbols);
+        assertSame(symbols, GeneList.getSymbols(new File(file.getPath())));
+
+        // a changed file is read again
+        write("TP53\nKRAS\nEGFR\n");
+        file.setLastModified(file.lastModified() + 2000);
+        assertEquals(Arrays.asList("TP53", "KRAS", "EGFR"), GeneList.getSymbols(file));
+    }
+
+    private void write(String contents) throws Exception {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,89 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class GeneResolutionCacheTest extends TestCase
+{
+    private static final String TAXON_ID = "9606";
+
+    private CountingIdResolver rslv;
+    private GeneResolutionCache cache;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        rslv = new CountingIdResolver();
+        rslv.addMainIds(TAXON_ID, "ENSG00000141510", Collections.singleton("TP53"));
+        // two genes share the same synonym
+        rslv.addMainIds(TAXON_ID, "ENSG00000100000", Collections.singleton("DUP1"));
+        rslv.addMainIds(TAXON_ID, "ENSG00000200000", Collections.singleton("DUP1"));
+        cache = new GeneResolutionCache(TAXON_ID, rslv);
+    }
+
+    public void testResolve() throws Exception {
+        assertEquals("ENSG00000141510", cache.resolve("TP53"));
+        assertNull(cache.resolve("DUP1"));
+        assertNull(cache.resolve("NOT_A_GENE"));
+        assertNull(cache.resolve(""));
+        assertNull(cache.resolve(null));
+        assertTrue(cache.isUnresolvable("DUP1"));
+        assertFalse(cache.isUnresolvable("TP53"));
+    }
+
+    public void testResolveOnce() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            cache.resolve("TP53");
+            cache.resolve("NOT_A_GENE");
+        }
+        assertEquals(2, rslv.calls);
+        assertEquals(2, cache.size());
+    }
+
+    public void testConcurrentResolve() throws Exception {
+        Thread[] threads = new Thread[8];
+        final Set<String> results = Collections.synchronizedSet(new HashSet<String>());
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    results.add(cache.resolve("TP53"));
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.singleton("ENSG00000141510"), results);
+        assertEquals(1, rslv.calls);
+    }
+
+    public void testNoResolver() throws Exception {
+        GeneResolutionCache noResolver = new GeneResolutionCache(TAXON_ID, (IdResolver) null);
+        assertFalse(noResolver.hasResolver());
+        assertNull(noResolver.resolve("TP53"));
+    }
+
+    private static class CountingIdResolver extends IdResolver
+    {
+        private int calls = 0;
+
+        @Override
+        public synchronized Set<String> resolveId(String taxonId, String id) {
+            calls++;
+            return super.resolveId(taxonId, id);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class IdResolverSnapshotTest extends TestCase
+{
+    private static final String TAXON_ID = "9606";
+
+    private File file;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("idresolver-test", ".snapshot");
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testWriteAndOpen() throws Exception {
+        Map<String, String> resolutions = new HashMap<String, String>();
+        resolutions.put("TP53", "ENSG00000141510");
+        resolutions.put("BRCA1", "ENSG00000012048");
+        resolutions.put("éGENE", "ENSG00000000001");
+        IdResolverSnapshot.write(file, TAXON_ID, "abc", resolutions);
+
+        IdResolverSnapshot snapshot = IdResolverSnapshot.open(file, TAXON_ID, "abc");
+        assertEquals(3, snapshot.size());
+        assertEquals("ENSG00000141510", snapshot.resolve("TP53"));
+        assertEquals("ENSG00000012048", snapshot.resolve("BRCA1"));
+        assertEquals("ENSG00000000001", snapshot.resolve("éGENE"));
+        assertNull(snapshot.resolve("TP5"));
+        assertNull(snapshot.resolve("ZZZ"));
+    }
+
+    public void testStale() throws Exception {
+        IdResolverSnapshot.write(file, TAXON_ID, "abc",
+                Collections.singletonMap("TP53", "ENSG00000141510"));
+        assertNull(IdResolverSnapshot.open(file, TAXON_ID, "def"));
+        assertNull(IdResolverSnapshot.open(file, "10090", "abc"));
+        assertNull(IdResolverSnapshot.open(new File(file.getPath() + ".missing"), TAXON_ID, "abc"));
+    }
+
+    public void testChecksum() throws Exception {
+        File input = File.createTempFile("gene_info", ".txt");
+        try {
+            FileWriter writer = new FileWriter(input);
+            writer.write("9606\t7157\tTP53\n");
+            writer.close();
+            String first = IdResolverSnapshot.checksum(Arrays.asList(input));
+            assertEquals(first, IdResolverSnapshot.checksum(Arrays.asList(input)));
+
+            writer = new FileWriter(input, true);
+            writer.write("9606\t672\tBRCA1\n");
+            writer.close();
+            String second = IdResolverSnapshot.checksum(Arrays.asList(input));
+            assertFalse(first.equals(second));
+
+            // touched without changing the size
+            assertTrue(input.setLastModified(input.lastModified() - 60000));
+            assertFalse(second.equals(IdResolverSnapshot.checksum(Arrays.asList(input))));
+        } finally {
+            input.delete();
+        }
+        assertNull(IdResolverSnapshot.checksum(Collections.<File>emptyList()));
+    }
+
+    public void testInputFiles() throws Exception {
+        File root = Files.createTempDirectory("resolver").toFile();
+        try {
+            File geneInfo = write(new File(root, "ncbi/gene_info"), "9606\t7157\tTP53\n");
+            File hgnc = write(new File(root, "hgnc/hgnc_complete_set.txt"), "HGNC:11998\tTP53\n");
+            Properties props = new Properties();
+            assertTrue(IdResolverSnapshot.getInputFiles(props).isEmpty());
+            props.setProperty(IdResolverSnapshot.ROOT_PATH_PROPERTY, root.getPath());
+            assertEquals(Arrays.asList(hgnc, geneInfo), IdResolverSnapshot.getInputFiles(props));
+        } finally {
+            delete(root);
+        }
+    }
+
+    public void testSecondRunLoadsSnapshot() throws Exception {
+        File root = Files.createTempDirectory("resolver").toFile();
+        try {
+            write(new File(root, "ncbi/gene_info"), "9606\t7157\tTP53\n");
+            Properties props = new Properties();
+            props.setProperty("resolver.file.rootpath", root.getPath());
+            final int[] loads = new int[1];
+            GeneResolutionCache.ResolverLoader loader = new GeneResolutionCache.ResolverLoader() {
+                @Override
+                public IdResolver load(String taxonId) {
+                    loads[0]++;
+                    IdResolver rslv = new IdResolver();
+                    rslv.addMainIds(taxonId, "ENSG00000141510", Collections.singleton("TP53"));
+                    return rslv;
+                }
+            };
+            file.delete();
+
+            // the first run builds the resolver and writes the snapshot
+            GeneResolutionCache first = new GeneResolutionCache(TAXON_ID, props, file, loader);
+            assertFalse(first.isSnapshot());
+            assertEquals("ENSG00000141510", first.resolve("TP53"));
+            assertEquals(1, loads[0]);
+            assertTrue(file.exists());
+
+            // the second one maps it
+            GeneResolutionCache second = new GeneResolutionCache(TAXON_ID, props, file, loader);
+            assertTrue(second.isSnapshot());
+            assertEquals("ENSG00000141510", second.resolve("TP53"));
+            assertEquals(1, loads[0]);
+
+            // until the input files change
+            write(new File(root, "ncbi/gene_info"), "9606\t7157\tTP53\n9606\t672\tBRCA1\n");
+            GeneResolutionCache third = new GeneResolutionCache(TAXON_ID, props, file, loader);
+            assertFalse(third.isSnapshot());
+            assertEquals(2, loads[0]);
+        } finally {
+            delete(root);
+        }
+    }
+
+    public void testCollect() throws Exception {
+        IdResolver rslv = new IdResolver();
+        rslv.addMainIds(TAXON_ID, "ENSG00000141510", Collections.singleton("TP53"));
+        rslv.addMainIds(TAXON_ID, "ENSG00000100000", Collections.singleton("DUP1"));
+        rslv.addMainIds(TAXON_ID, "ENSG00000200000", Collections.singleton("DUP1"));
+
+        Map<String, String> resolutions = IdResolverSnapshot.collect(rslv, TAXON_ID);
+        assertEquals("ENSG00000141510", resolutions.get("TP53"));
+        assertFalse(resolutions.containsKey("DUP1"));
+
+        IdResolverSnapshot.write(file, TAXON_ID, "abc", resolutions);
+        GeneResolutionCache cache = new GeneResolutionCache(TAXON_ID,
+                IdResolverSnapshot.open(file, TAXON_ID, "abc"));
+        assertTrue(cache.isSnapshot());
+        assertEquals("ENSG00000141510", cache.resolve("TP53"));
+        assertNull(cache.resolve("DUP1"));
+    }
+
+    private static File write(File target, String contents) throws Exception {
+        target.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(target);
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+        return target;
+    }
+
+    private static void delete(File target) {
+        File[] children = target.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        target.delete();
+    }
+}
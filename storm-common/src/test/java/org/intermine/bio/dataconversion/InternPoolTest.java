@@ -0,0 +1,61 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+public class InternPoolTest extends TestCase
+{
+    public void testIntern() throws Exception {
+        InternPool pool = new InternPool();
+        String lineage = new String("central_nervous_system");
+        assertSame(lineage, pool.intern(lineage));
+        assertSame(lineage, pool.intern(new String("central_nervous_system")));
+        // the same instance again saves nothing
+        assertSame(lineage, pool.intern(lineage));
+        assertEquals(3, pool.getLookups());
+        assertEquals(2, pool.getHits());
+        assertEquals(InternPool.stringBytes(lineage.length()), pool.getBytesSaved());
+        // numbers aren't pooled
+        String number = new String("0.25");
+        assertSame(number, pool.intern(number));
+        assertEquals(3, pool.getLookups());
+        assertNull(pool.intern((String) null));
+        assertEquals(1, pool.size());
+    }
+
+    public void testCharSequence() throws Exception {
+        InternPool pool = new InternPool();
+        DelimitedReader reader = DelimitedReader.csv(new StringReader(
+                "ACH-000001,Missense_Mutation\nACH-000002,Missense_Mutation\n"));
+        assertTrue(reader.next());
+        String first = pool.intern(reader.getField(1));
+        assertEquals("Missense_Mutation", first);
+        assertTrue(reader.next());
+        assertSame(first, pool.intern(reader.getField(1)));
+        assertEquals(1, pool.getHits());
+    }
+
+    public void testLimits() throws Exception {
+        InternPool pool = new InternPool(5, 100);
+        String longValue = new String("abcdef");
+        assertSame(longValue, pool.intern(longValue));
+        for (int i = 0; i < 1000; i++) {
+            pool.intern("v" + (char) ('a' + i % 26) + i);
+        }
+        assertEquals(100, pool.size());
+        // still found once the pool is full
+        String first = pool.intern(new String("va0"));
+        assertSame(first, pool.intern(new String("va0")));
+    }
+}
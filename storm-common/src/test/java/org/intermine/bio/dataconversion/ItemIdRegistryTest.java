@@ -0,0 +1,79 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class ItemIdRegistryTest extends TestCase
+{
+    public void testSameAsHashMap() throws Exception {
+        ItemIdRegistry registry = new ItemIdRegistry("samples");
+        Map<String, String> expected = new HashMap<String, String>();
+        for (int i = 0; i < 100000; i++) {
+            String key = "TCGA-" + Integer.toString(i * 7919, 36).toUpperCase() + "-01";
+            String id = "3_" + (i + 1);
+            registry.put(key, id);
+            expected.put(key, id);
+        }
+        // replaced values, identifiers of other forms and non-ASCII keys
+        registry.put("TCGA-0-01", "3_42");
+        expected.put("TCGA-0-01", "3_42");
+        registry.put("ACH-000001", "17_5");
+        expected.put("ACH-000001", "17_5");
+        registry.put("x", "3_007");
+        expected.put("x", "3_007");
+        registry.put("\u00e9t\u00e9", "3_5");
+        expected.put("\u00e9t\u00e9", "3_5");
+        assertEquals(expected.size(), registry.size());
+        assertTrue(registry.getFootprint() * 3 < registry.getHashMapFootprint());
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue(), registry.get(entry.getKey()));
+        }
+        for (int i = 0; i < registry.size(); i++) {
+            assertEquals(expected.get(registry.getKey(i)), registry.getId(i));
+        }
+        assertNull(registry.get("TCGA-missing"));
+        assertFalse(registry.containsKey("TCGA-missing"));
+        assertTrue(registry.containsKey(new StringBuilder("ACH-000001")));
+        // with the identifiers of every entry looked up and kept
+        assertTrue(registry.getFootprint() * 3 < registry.getHashMapFootprint() * 2);
+    }
+
+    public void testIdsKept() throws Exception {
+        ItemIdRegistry registry = new ItemIdRegistry("genes");
+        registry.put("TP53", "1_7");
+        long footprint = registry.getFootprint();
+        String id = registry.get("TP53");
+        assertEquals("1_7", id);
+        assertSame(id, registry.get("TP53"));
+        assertSame(id, registry.getId(0));
+        assertTrue(registry.getFootprint() > footprint);
+        registry.put("TP53", "1_8");
+        assertEquals("1_8", registry.get("TP53"));
+    }
+
+    public void testEmpty() throws Exception {
+        ItemIdRegistry registry = new ItemIdRegistry("genes");
+        assertNull(registry.get(""));
+        registry.put("", "1_1");
+        assertEquals("1_1", registry.get(""));
+        assertEquals("", registry.getKey(0));
+        try {
+            registry.getId(1);
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+}
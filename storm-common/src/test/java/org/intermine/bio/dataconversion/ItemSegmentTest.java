@@ -0,0 +1,209 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+
+public class ItemSegmentTest extends TestCase
+{
+    private File file;
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("items", ".spool");
+        file.delete();
+    }
+
+    public void tearDown() {
+        ItemSegment.delete(file);
+    }
+
+    public void testReplay() throws Exception {
+        TestKeys recording = new TestKeys(100);
+        recording.register("Gene:7157", "1_1");
+        recording.register("Transcript:NM_1", "3_1");
+        ItemSegment segment = new ItemSegment(file);
+        segment.store(item("3_1", "Transcript", null));
+        segment.store(item("5_1", "Counts", "gene 1_1 transcript 3_1"));
+        Item other = item("5_2", "Counts", "gene 1_2 transcript 3_1");
+        ReferenceList refs = new ReferenceList();
+        refs.setName("replicates");
+        refs.setRefIds("5_1 3_1");
+        other.addCollections(refs);
+        recording.register("Gene:672", "1_2");
+        segment.store(other);
+        assertTrue(segment.finish(recording));
+        assertEquals(3, segment.getItemCount());
+
+        // the next run has 7157 already and stores 672 on demand
+        TestKeys replaying = new TestKeys(500);
+        replaying.register("Gene:7157", "1_9");
+        RecordingWriter writer = new RecordingWriter();
+        assertEquals(3, ItemSegment.replay(file, replaying, writer));
+        assertEquals("Gene:672", replaying.stored.get(0));
+        assertEquals("3_500", replaying.ids.get("Transcript:NM_1"));
+        assertEquals(3, writer.items.size());
+        assertEquals("3_500 Transcript", describe(writer.items.get(0)));
+        assertEquals("5_501 Counts r:gene=1_9 r:transcript=3_500",
+                describe(writer.items.get(1)));
+        assertEquals("5_502 Counts r:gene=1_499 r:transcript=3_500 c:replicates=5_501 3_500",
+                describe(writer.items.get(2)));
+
+        // a run that stored the transcript itself doesn't get it again
+        TestKeys later = new TestKeys(700);
+        later.register("Transcript:NM_1", "3_5");
+        writer = new RecordingWriter();
+        assertEquals(2, ItemSegment.replay(file, later, writer));
+        assertEquals("5_701 Counts r:gene=1_699 r:transcript=3_5",
+                describe(writer.items.get(0)));
+    }
+
+    public void testNotReplayable() throws Exception {
+        TestKeys keys = new TestKeys(100);
+        ItemSegment segment = new ItemSegment(file);
+        segment.store(item("5_1", "Counts", "gene 1_1"));
+        // 1_1 has no key
+        assertFalse(segment.finish(keys));
+        assertFalse(file.exists());
+
+        keys.register("Gene:7157", "1_1");
+        segment = new ItemSegment(file);
+        segment.store(item("5_1", "Counts", "gene 1_1"));
+        segment.store(new ReferenceList(), 1);
+        assertFalse(segment.finish(keys));
+
+        segment = new ItemSegment(file);
+        segment.store(item("5_1", "Counts", "gene 1_1"));
+        assertTrue(segment.finish(keys));
+        // the gene doesn't resolve in the next run
+        TestKeys next = new TestKeys(100);
+        next.unresolvable = true;
+        RecordingWriter writer = new RecordingWriter();
+        assertEquals(-1, ItemSegment.replay(file, next, writer));
+        assertTrue(writer.items.isEmpty());
+    }
+
+    // refs are "name refId ..."
+    private static Item item(String identifier, String className, String refs) {
+        Item item = new Item();
+        item.setIdentifier(identifier);
+        item.setClassName(className);
+        item.setImplementations("");
+        if (refs != null) {
+            String[] fields = refs.split(" ");
+            for (int i = 0; i < fields.length; i += 2) {
+                Reference ref = new Reference();
+                ref.setName(fields[i]);
+                ref.setRefId(fields[i + 1]);
+                item.addReferences(ref);
+            }
+        }
+        return item;
+    }
+
+    private static String describe(Item item) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(item.getIdentifier()).append(' ').append(item.getClassName());
+        for (Reference ref : item.getReferences()) {
+            sb.append(" r:").append(ref.getName()).append('=').append(ref.getRefId());
+        }
+        for (ReferenceList refs : item.getCollections()) {
+            sb.append(" c:").append(refs.getName()).append('=').append(refs.getRefIds());
+        }
+        return sb.toString();
+    }
+
+    private static class TestKeys implements ItemSegment.Keys
+    {
+        private final Map<String, String> keys = new HashMap<String, String>();
+        private final Map<String, String> ids = new HashMap<String, String>();
+        private final List<String> stored = new ArrayList<String>();
+        private int nextId;
+        private boolean unresolvable;
+
+        TestKeys(int firstId) {
+            nextId = firstId;
+        }
+
+        void register(String key, String itemId) {
+            keys.put(itemId, key);
+            ids.put(key, itemId);
+        }
+
+        public String getKey(String itemId) {
+            return keys.get(itemId);
+        }
+
+        public String resolve(String key) {
+            String itemId = ids.get(key);
+            if (itemId == null && !unresolvable) {
+                itemId = "1_" + (nextId - 1);
+                stored.add(key);
+                register(key, itemId);
+            }
+            return itemId;
+        }
+
+        public String newIdentifier(String className) {
+            String prefix = "Transcript".equals(className) ? "3_" : "5_";
+            return prefix + nextId++;
+        }
+
+        public String replayed(String key, String itemId) {
+            String existing = ids.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            register(key, itemId);
+            return itemId;
+        }
+    }
+
+    private static class RecordingWriter implements ItemWriter
+    {
+        private final List<Item> items = new ArrayList<Item>();
+
+        public Integer store(Item item) {
+            items.add(item);
+            return items.size();
+        }
+
+        public void store(ReferenceList refList, Integer itemId) {
+            // not used
+        }
+
+        public void store(Attribute att, Integer itemId) {
+            // not used
+        }
+
+        public void storeAll(Collection<Item> all) {
+            for (Item item : all) {
+                store(item);
+            }
+        }
+
+        public void close() {
+            // nothing to close
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+public class LoadManifestTest extends TestCase
+{
+    private File dir;
+    private File data;
+
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("manifest").toFile();
+        data = new File(dir, "data.csv");
+    }
+
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testUnchanged() throws Exception {
+        write(data, "a,b\n1,2\n");
+        LoadManifest manifest = new LoadManifest(dir, "converter 1", false);
+        assertNull(manifest.getSegment(data));
+        File segment = manifest.newSegment(data);
+        write(segment, "items");
+        manifest.converted(data, data.length(), data.lastModified(), segment, 1);
+        manifest.write();
+
+        manifest = new LoadManifest(dir, "converter 1", false);
+        assertEquals(segment, manifest.getSegment(data));
+        // touched, same contents
+        data.setLastModified(data.lastModified() - 10000);
+        assertEquals(segment, manifest.getSegment(data));
+        manifest.replayed(data);
+        manifest.write();
+        assertTrue(segment.exists());
+
+        // another version of the converter
+        assertNull(new LoadManifest(dir, "converter 2", false).getSegment(data));
+
+        // changed
+        manifest = new LoadManifest(dir, "converter 1", false);
+        write(data, "a,b\n1,3\n");
+        assertNull(manifest.getSegment(data));
+        // not seen in this run, so the segment goes
+        manifest.write();
+        assertFalse(segment.exists());
+    }
+
+    public void testDependsOn() throws Exception {
+        File mapping = new File(dir, "mapping.csv");
+        write(mapping, "x,y\n");
+        write(data, "a,b\n");
+        LoadManifest manifest = new LoadManifest(dir, "converter", false);
+        manifest.dependsOn(mapping);
+        File segment = manifest.newSegment(data);
+        write(segment, "items");
+        manifest.converted(data, data.length(), data.lastModified(), segment, 1);
+        manifest.write();
+
+        manifest = new LoadManifest(dir, "converter", true);
+        manifest.dependsOn(mapping);
+        assertEquals(segment, manifest.getSegment(data));
+
+        write(mapping, "x,z\n");
+        manifest = new LoadManifest(dir, "converter", false);
+        manifest.dependsOn(mapping);
+        assertNull(manifest.getSegment(data));
+    }
+
+    public void testSha256() throws Exception {
+        write(data, "abc");
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                LoadManifest.sha256(data));
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(contents.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            os.close();
+        }
+    }
+}
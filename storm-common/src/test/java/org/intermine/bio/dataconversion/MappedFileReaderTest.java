@@ -0,0 +1,102 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+public class MappedFileReaderTest extends TestCase
+{
+    private File file;
+
+    public void tearDown() throws Exception {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    public void testAscii() throws Exception {
+        String data = "sample\tTCGA-02-0047\nTP53\t7.12\nKRAS\t9.5\n";
+        write(data);
+        // segments of 7 bytes so that rows cross mappings
+        MappedFileReader reader = new MappedFileReader(file, 0, Long.MAX_VALUE, 7);
+        assertEquals(data, readAll(reader));
+    }
+
+    public void testUtf8() throws Exception {
+        String data = "gene,note\nTP53,\u03b1-helix \u2713 \ud83e\uddec\nKRAS,\n";
+        write(data);
+        for (int segment = 1; segment < 12; segment++) {
+            MappedFileReader reader = new MappedFileReader(file, 0, Long.MAX_VALUE, segment);
+            assertEquals(data, readAll(reader));
+        }
+    }
+
+    public void testMalformed() throws Exception {
+        file = File.createTempFile("mapped", ".csv");
+        OutputStream os = new FileOutputStream(file);
+        os.write(new byte[] {'a', (byte) 0xff, 'b', (byte) 0xc3, 'c'});
+        os.close();
+        assertEquals("a\ufffdb\ufffdc", readAll(new MappedFileReader(file)));
+    }
+
+    public void testRanges() throws Exception {
+        String data = "header\nrow1\nrow22\n\nrow4";
+        write(data);
+        MappedFileReader reader = new MappedFileReader(file, 0, Long.MAX_VALUE, 5);
+        assertEquals(0, reader.findLineStart(0));
+        assertEquals(7, reader.findLineStart(1));
+        assertEquals(7, reader.findLineStart(7));
+        assertEquals(12, reader.findLineStart(8));
+        assertEquals(19, reader.findLineStart(19));
+        assertEquals(data.length(), reader.findLineStart(20));
+        // across the 5 byte segments
+        assertEquals(12, reader.indexOf((byte) 'r', 8));
+        assertEquals(-1, reader.indexOf((byte) 'x', 0));
+        reader.close();
+
+        MappedFileReader range = new MappedFileReader(file, 7, 18, 5);
+        assertEquals("row1\nrow22\n", readAll(range));
+    }
+
+    public void testDelimitedReader() throws Exception {
+        write("\"a\",b\r\nc,\"d\ne\"\n");
+        DelimitedReader rows = DelimitedReader.csv(new MappedFileReader(file));
+        assertTrue(rows.next());
+        assertEquals("a", rows.getString(0));
+        assertTrue(rows.next());
+        assertEquals("d\ne", rows.getString(1));
+        assertFalse(rows.next());
+        rows.close();
+    }
+
+    private void write(String data) throws Exception {
+        file = File.createTempFile("mapped", ".csv");
+        OutputStream os = new FileOutputStream(file);
+        os.write(data.getBytes("UTF-8"));
+        os.close();
+    }
+
+    private static String readAll(MappedFileReader reader) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        // odd buffer size, so that surrogate pairs get split between reads
+        char[] buffer = new char[3];
+        int n;
+        while ((n = reader.read(buffer, 0, buffer.length)) >= 0) {
+            sb.append(buffer, 0, n);
+        }
+        reader.close();
+        return sb.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class MatrixDeltaTest extends TestCase
+{
+    private static final MatrixDelta.CellRule NOT_EMPTY = new MatrixDelta.CellRule() {
+        @Override
+        public boolean isStored(CharSequence value) {
+            return value.length() > 0 && !"NA".contentEquals(value);
+        }
+    };
+
+    public void testCompare() throws Exception {
+        String previous = ",A (1),B (2),C (3),GONE (4)\n"
+            + "ACH-1,0.5,1.0,2,9\n"
+            + "ACH-2,0.1,NA,3,9\n"
+            + "ACH-3,1,1,1,1\n";
+        String[] header = {"", "A (1)", "B (2)", "C (3)", "NEW (5)"};
+        MatrixDelta delta = new MatrixDelta("Cell", NOT_EMPTY);
+        StringWriter removed = new StringWriter();
+        delta.setRemovedWriter(new PrintWriter(removed));
+        // C isn't read
+        assertEquals(3, delta.readPrevious(DelimitedReader.csv(new StringReader(previous)),
+                header, Arrays.asList("", "A (1)", "B (2)", "NEW (5)")));
+
+        delta.startRow("ACH-1");
+        assertEquals(MatrixDelta.Change.UNCHANGED, delta.compare(1, "0.50"));
+        assertEquals(MatrixDelta.Change.CHANGED, delta.compare(2, "1.5"));
+        assertEquals(MatrixDelta.Change.ADDED, delta.compare(4, "7"));
+        delta.startRow("ACH-2");
+        assertEquals(MatrixDelta.Change.REMOVED, delta.compare(1, ""));
+        assertEquals(MatrixDelta.Change.ADDED, delta.compare(2, "0.3"));
+        assertEquals(MatrixDelta.Change.NONE, delta.compare(4, null));
+        delta.startRow("ACH-9");
+        assertEquals(MatrixDelta.Change.ADDED, delta.compare(1, "0.2"));
+        delta.finish();
+
+        assertEquals(3, delta.getAdded());
+        assertEquals(1, delta.getChanged());
+        assertEquals(1, delta.getUnchanged());
+        // ACH-1 and ACH-2 GONE, ACH-2 A, ACH-3 A, B and GONE
+        assertEquals(6, delta.getRemoved());
+        assertEquals("ACH-1\tGONE (4)\nACH-2\tA (1)\nACH-2\tGONE (4)\nACH-3\tA (1)\n"
+                + "ACH-3\tB (2)\nACH-3\tGONE (4)\n", removed.toString());
+    }
+
+    public void testNoPreviousRows() throws Exception {
+        String[] header = {"", "A (1)"};
+        MatrixDelta delta = new MatrixDelta("Cell", NOT_EMPTY);
+        assertEquals(0, delta.readPrevious(DelimitedReader.csv(new StringReader("")), header,
+                Arrays.asList(header)));
+        delta.startRow("ACH-1");
+        assertEquals(MatrixDelta.Change.ADDED, delta.compare(1, "1"));
+        delta.finish();
+        assertEquals(0, delta.getRemoved());
+    }
+}
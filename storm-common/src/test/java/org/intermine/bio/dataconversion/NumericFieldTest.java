@@ -0,0 +1,93 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.intermine.bio.dataconversion.NumericField.Kind;
+
+public class NumericFieldTest extends TestCase
+{
+    private static final String[] VALUES = {
+        "", " ", "NA", "NaN", "-NaN", "Infinity", "-Infinity", "0", "-0", "42", "-17", "0.0",
+        "-0.0", "1.0", "1.5", "4.39599103908764", "0.0286202964572071", "-2.1E-5", "1e10",
+        "3000000000", "1.", ".5", "1e", "1e+", "abc", "1.2.3", "--1", "+3.5", " 2.5 ", "1.5f",
+        "2d", "0x1p3", "123456789012345678901234567890", "1e400", "1e-400", "4.9e-324",
+        "0.1234567890123456789", "9007199254740993", "N/A", "TP53", "1,5"
+    };
+
+    public void testClassify() throws Exception {
+        assertEquals(Kind.EMPTY, NumericField.classify(""));
+        assertEquals(Kind.EMPTY, NumericField.classify(" \t"));
+        assertEquals(Kind.EMPTY, NumericField.classify(null));
+        assertEquals(Kind.NA, NumericField.classify("NA"));
+        assertEquals(Kind.NAN, NumericField.classify("NaN"));
+        assertEquals(Kind.INFINITY, NumericField.classify("-Infinity"));
+        assertEquals(Kind.INTEGER, NumericField.classify("-17"));
+        assertEquals(Kind.DECIMAL, NumericField.classify("4.39599103908764"));
+        assertEquals(Kind.SCIENTIFIC, NumericField.classify("-2.1E-5"));
+        assertEquals(Kind.TEXT, NumericField.classify("TP53"));
+        assertEquals(Kind.TEXT, NumericField.classify("1e"));
+        assertEquals(Kind.TEXT, NumericField.classify("0x1p3"));
+    }
+
+    public void testSameAsParseDouble() throws Exception {
+        NumericField field = new NumericField();
+        for (String value : VALUES) {
+            Double expected = parseDouble(value);
+            assertEquals(value, expected != null, NumericField.isNumber(value));
+            if (expected != null) {
+                assertEquals(value, expected.doubleValue(), field.parseDouble(value, -1.0));
+            }
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            String value = Double.toString((random.nextDouble() - 0.5)
+                    * Math.pow(10, random.nextInt(40) - 20));
+            assertEquals(value, Double.parseDouble(value), field.parseDouble(value, Double.NaN));
+            value = String.format("%.6f", random.nextGaussian() * 10);
+            assertEquals(value, Double.parseDouble(value), field.parseDouble(value, Double.NaN));
+        }
+    }
+
+    public void testIsNonIntegral() throws Exception {
+        NumericField field = new NumericField();
+        for (String value : VALUES) {
+            if (!value.startsWith("0x")) {
+                assertEquals(value, oldIsDouble(value), field.isNonIntegral(value));
+            }
+        }
+    }
+
+    private static Double parseDouble(String value) {
+        if (value.startsWith("0x")) {
+            // hexadecimal floating point is deliberately not supported
+            return null;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // the isDouble() the converters used to copy
+    private static boolean oldIsDouble(String str) {
+        try {
+            double x = Double.parseDouble(str);
+            return x != (int) x;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
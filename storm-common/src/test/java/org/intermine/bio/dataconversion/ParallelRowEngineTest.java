@@ -0,0 +1,161 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class ParallelRowEngineTest extends TestCase
+{
+    private File file;
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("matrix", ".csv");
+        Random random = new Random(42);
+        Writer writer = new FileWriter(file);
+        writer.write("# generated\n,TSPAN6 (7105),TNMD (64102),DPM1 (8813)\n");
+        for (int i = 0; i < 500; i++) {
+            writer.write("ACH-" + i);
+            for (int j = 0; j < 3; j++) {
+                writer.write("," + (random.nextInt(10) == 0 ? "NA" : random.nextDouble()));
+            }
+            writer.write(i % 7 == 0 ? "\r\n" : "\n");
+        }
+        writer.close();
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testSameAsSerial() throws Exception {
+        List<String> expected = new ArrayList<String>();
+        DelimitedReader rows = DelimitedReader.csv(new FileReader(file));
+        rows.readHeader();
+        while (rows.next()) {
+            expected.add(Arrays.toString(rows.toArray()));
+        }
+        rows.close();
+
+        for (int threads : new int[] {1, 2, 4}) {
+            for (long chunkSize : new long[] {1, 100, 4096, 1 << 20}) {
+                ParallelRowEngine engine = new ParallelRowEngine(file, ',', '"', threads,
+                        chunkSize);
+                assertEquals("DPM1 (8813)", engine.getHeader()[3]);
+                assertTrue(engine.isSplittable());
+                final List<String> actual = new ArrayList<String>();
+                long handled = engine.run(new ParallelRowEngine.RowParser<String>() {
+                    public String parse(DelimitedReader rows) {
+                        return Arrays.toString(rows.toArray());
+                    }
+                }, new ParallelRowEngine.RowHandler<String>() {
+                    public void handle(String row) {
+                        actual.add(row);
+                    }
+                });
+                assertEquals(expected.size(), handled);
+                assertEquals(expected.size(), engine.getRowsRead());
+                assertEquals(0, engine.getRowsFiltered());
+                assertEquals(threads + "/" + chunkSize, expected, actual);
+            }
+        }
+    }
+
+    public void testProjectionAndFilter() throws Exception {
+        ParallelRowEngine engine = new ParallelRowEngine(file, ',', '"', 3, 500);
+        engine.selectColumns(Arrays.asList("", "DPM1 (8813)"));
+        engine.setRowFilter(0, new DelimitedReader.RowFilter() {
+            public boolean accept(CharSequence key) {
+                return key.charAt(key.length() - 1) == '5';
+            }
+        }, true);
+        final List<String> rows = new ArrayList<String>();
+        engine.run(new ParallelRowEngine.RowParser<String>() {
+            public String parse(DelimitedReader rows) {
+                if (rows.isFiltered()) {
+                    return rows.getFieldCount() == 1 ? "-" : "?";
+                }
+                assertFalse(rows.isSelected(1));
+                return rows.getString(0) + "=" + rows.getString(3);
+            }
+        }, new ParallelRowEngine.RowHandler<String>() {
+            public void handle(String row) {
+                rows.add(row);
+            }
+        });
+        assertEquals(500, rows.size());
+        assertEquals(50, engine.getRowsRead());
+        assertEquals(450, engine.getRowsFiltered());
+        assertEquals("-", rows.get(0));
+        assertTrue(rows.get(5).startsWith("ACH-5="));
+        assertTrue(rows.get(495).startsWith("ACH-495="));
+        assertFalse(rows.contains("?"));
+    }
+
+    public void testQuotedFields() throws Exception {
+        Writer writer = new FileWriter(file);
+        writer.write("\"id\",\"name\"\n");
+        for (int i = 0; i < 100; i++) {
+            writer.write(i + (i % 10 == 0 ? ",\"line\nbreak\"\n" : ",plain\n"));
+        }
+        writer.close();
+        ParallelRowEngine engine = new ParallelRowEngine(file, ',', '"', 4, 16);
+        assertEquals("name", engine.getHeader()[1]);
+        assertFalse(engine.isSplittable());
+        final List<String> rows = new ArrayList<String>();
+        engine.run(new ParallelRowEngine.RowParser<String>() {
+            public String parse(DelimitedReader rows) {
+                return rows.getString(0) + "=" + rows.getString(1);
+            }
+        }, new ParallelRowEngine.RowHandler<String>() {
+            public void handle(String row) {
+                rows.add(row);
+            }
+        });
+        assertEquals(1, engine.getChunkCount());
+        assertEquals(100, rows.size());
+        assertEquals("10=line\nbreak", rows.get(10));
+        assertEquals("11=plain", rows.get(11));
+
+        // a quoted header alone doesn't stop the split
+        engine = new ParallelRowEngine(file, '\t', DelimitedReader.NO_QUOTE, 4, 16);
+        assertTrue(engine.isSplittable());
+    }
+
+    public void testFailure() throws Exception {
+        ParallelRowEngine engine = new ParallelRowEngine(file, ',', '"', 2, 100);
+        try {
+            engine.run(new ParallelRowEngine.RowParser<String>() {
+                public String parse(DelimitedReader rows) throws Exception {
+                    if ("ACH-250".equals(rows.getString(0))) {
+                        throw new Exception("bad row");
+                    }
+                    return rows.getString(0);
+                }
+            }, new ParallelRowEngine.RowHandler<String>() {
+                public void handle(String row) {
+                    // nothing
+                }
+            });
+            fail("expected an exception");
+        } catch (Exception e) {
+            assertEquals("bad row", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStoreException;
+
+public class PipelinedItemWriterTest extends TestCase
+{
+    public void testOrder() throws Exception {
+        RecordingWriter recorder = new RecordingWriter(-1);
+        PipelinedItemWriter writer = new PipelinedItemWriter(recorder, "test-writer", 7, 2);
+        List<Item> items = new ArrayList<Item>();
+        for (int i = 0; i < 1000; i++) {
+            Item item = new Item();
+            items.add(item);
+            assertNull(writer.store(item));
+        }
+        writer.store((ReferenceList) null, 1);
+        assertEquals(1000, recorder.items.size());
+        assertEquals(1, recorder.others);
+        writer.finish();
+        assertEquals(items, recorder.items);
+        assertFalse(recorder.closed);
+        QueueStats stats = writer.getStats();
+        // 142 full batches of 7, the 6 items before the reference list and the end marker
+        assertEquals(144, stats.getPuts());
+        assertTrue(stats.getMaxDepth() <= 2);
+        writer.close();
+        assertTrue(recorder.closed);
+    }
+
+    public void testFailure() throws Exception {
+        PipelinedItemWriter writer = new PipelinedItemWriter(new RecordingWriter(10),
+                "test-writer", 3, 1);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                writer.store(new Item());
+            }
+            writer.finish();
+            fail("expected ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            assertEquals("item 10", e.getCause().getMessage());
+        }
+    }
+
+    private static class RecordingWriter implements ItemWriter
+    {
+        private final List<Item> items = new ArrayList<Item>();
+        private final int failAt;
+        private int others;
+        private boolean closed;
+
+        RecordingWriter(int failAt) {
+            this.failAt = failAt;
+        }
+
+        public Integer store(Item item) throws ObjectStoreException {
+            if (items.size() == failAt) {
+                throw new ObjectStoreException("item " + failAt);
+            }
+            items.add(item);
+            return items.size();
+        }
+
+        public void store(ReferenceList refList, Integer itemId) {
+            others++;
+        }
+
+        public void store(Attribute att, Integer itemId) {
+            others++;
+        }
+
+        public void storeAll(Collection<Item> all) throws ObjectStoreException {
+            for (Item item : all) {
+                store(item);
+            }
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+}
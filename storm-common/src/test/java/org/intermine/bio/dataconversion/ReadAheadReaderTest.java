@@ -0,0 +1,77 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+public class ReadAheadReaderTest extends TestCase
+{
+    public void testRead() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("ACH-").append(i).append(",1.5,2.5\n");
+        }
+        ReadAheadReader reader = new ReadAheadReader(new StringReader(sb.toString()), "test",
+                1000, 3);
+        StringBuilder read = new StringBuilder();
+        char[] buf = new char[777];
+        int n;
+        while ((n = reader.read(buf, 0, buf.length)) >= 0) {
+            read.append(buf, 0, n);
+        }
+        assertEquals(-1, reader.read());
+        reader.close();
+        assertEquals(sb.toString(), read.toString());
+        assertTrue(reader.getStats().getMaxDepth() <= 3);
+        assertEquals(reader.getStats().getPuts(), reader.getStats().getTakes());
+    }
+
+    public void testFailure() throws Exception {
+        Reader failing = new Reader() {
+            private int reads;
+
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (reads++ == 2) {
+                    throw new IOException("disk gone");
+                }
+                cbuf[off] = 'x';
+                return 1;
+            }
+
+            public void close() {
+                // nothing to close
+            }
+        };
+        ReadAheadReader reader = new ReadAheadReader(failing, "test", 10, 4);
+        assertEquals('x', reader.read());
+        assertEquals('x', reader.read());
+        try {
+            reader.read();
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertEquals("disk gone", e.getMessage());
+        }
+        reader.close();
+    }
+
+    public void testCloseEarly() throws Exception {
+        char[] data = new char[1 << 20];
+        ReadAheadReader reader = new ReadAheadReader(new java.io.CharArrayReader(data), "test",
+                100, 2);
+        assertEquals(0, reader.read());
+        // the reader thread is blocked on the full queue and has to be stopped
+        reader.close();
+    }
+}
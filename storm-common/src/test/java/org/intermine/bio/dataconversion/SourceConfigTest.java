@@ -0,0 +1,42 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class SourceConfigTest extends TestCase
+{
+    public void testSourceName() throws Exception {
+        assertEquals("source-config-test", SourceConfig.getSourceName(SourceConfigTest.class));
+        assertEquals("storm-directory", SourceConfig.getSourceName(StormDirectoryConverter.class));
+    }
+
+    public void testGet() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(SourceConfig.READER, " mapped ");
+        properties.setProperty("storm.test.size", "42");
+        SourceConfig config = new SourceConfig("test", properties);
+        assertEquals("mapped", config.get(SourceConfig.READER, "stream"));
+        assertEquals("x", config.get("storm.test.missing", "x"));
+        assertEquals(42, config.getLong("storm.test.size", 0));
+        assertEquals(7, config.getLong("storm.test.missing", 7));
+        assertTrue(config.getBoolean("storm.test.missing", true));
+
+        System.setProperty("storm.test.size", "43");
+        try {
+            assertEquals(43, config.getLong("storm.test.size", 0));
+        } finally {
+            System.clearProperty("storm.test.size");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class SpillingIdRegistryTest extends TestCase
+{
+    private File dir;
+
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("spill").toFile();
+    }
+
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testSameAsHashMap() throws Exception {
+        SpillingIdRegistry registry = new SpillingIdRegistry("samples", 64 << 10, dir);
+        Map<String, String> expected = new HashMap<String, String>();
+        for (int i = 0; i < 50000; i++) {
+            String key = "TCGA-" + Integer.toString(i * 7919, 36).toUpperCase() + "-01";
+            String id = "3_" + (i + 1);
+            registry.put(key, id);
+            expected.put(key, id);
+            // the first keys stay in use
+            assertEquals("3_1", registry.get("TCGA-0-01"));
+        }
+        assertTrue(registry.getSpilled() > 40000);
+        assertTrue(registry.getFootprint() <= 64 << 10);
+        // replaced on disk, in place and not, and on the heap
+        registry.put("TCGA-0-01", "3_9");
+        expected.put("TCGA-0-01", "3_9");
+        registry.put("TCGA-61B-01", "ENST00000269305");
+        expected.put("TCGA-61B-01", "ENST00000269305");
+        registry.put("été", "3_5");
+        expected.put("été", "3_5");
+        registry.put("été", "3_6");
+        expected.put("été", "3_6");
+
+        assertEquals(expected.size(), registry.size());
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue(), registry.get(entry.getKey()));
+        }
+        Map<String, String> entries = new HashMap<String, String>();
+        for (int i = 0; i < registry.size(); i++) {
+            entries.put(registry.getKey(i), registry.getId(i));
+        }
+        assertEquals(expected, entries);
+        assertNull(registry.get("TCGA-missing"));
+        assertFalse(registry.containsKey("TCGA-missing"));
+
+        registry.close();
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    public void testWithinBudget() throws Exception {
+        SpillingIdRegistry registry = new SpillingIdRegistry("genes", 1 << 20, dir);
+        for (int i = 0; i < 1000; i++) {
+            registry.put("GENE" + i, "1_" + i);
+        }
+        // nothing spilled, nothing on disk
+        assertEquals(0, registry.getSpilled());
+        assertEquals(0, dir.listFiles().length);
+        assertEquals("1_999", registry.get("GENE999"));
+    }
+}
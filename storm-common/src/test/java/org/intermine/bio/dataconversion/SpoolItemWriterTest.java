@@ -0,0 +1,163 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+
+public class SpoolItemWriterTest extends TestCase
+{
+    private File file;
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("items", ".spool");
+        file.delete();
+    }
+
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    public void testRoundTrip() throws Exception {
+        RecordingWriter original = new RecordingWriter(100);
+        SpoolItemWriter spool = new SpoolItemWriter(file, original);
+        List<Item> items = new ArrayList<Item>();
+        for (int i = 0; i < 2000; i++) {
+            Item item = item("1_" + i, "Expression");
+            addAttribute(item, "tpm", String.valueOf(i * 0.5));
+            addAttribute(item, "name", "\u03b1-" + i);
+            addReference(item, "gene", "2_" + (i % 10));
+            ReferenceList refs = new ReferenceList();
+            refs.setName("samples");
+            refs.setRefIds("3_1 3_2");
+            item.addCollections(refs);
+            items.add(item);
+            assertEquals(Integer.valueOf(101 + i), spool.store(item));
+        }
+        Attribute att = new Attribute();
+        att.setName("note");
+        att.setValue("late");
+        spool.store(att, 105);
+        assertFalse(SpoolReplayer.isComplete(file));
+        spool.finish();
+        assertEquals(2000, original.items.size());
+        assertTrue(SpoolReplayer.isComplete(file));
+        // class and field names and the 10 gene ids
+        assertEquals(17, spool.getTableSize());
+
+        SpoolReplayer replayer = new SpoolReplayer(file);
+        assertEquals(2000, replayer.getItemCount());
+        RecordingWriter replayed = new RecordingWriter(5000);
+        assertEquals(2000, replayer.replay(replayed));
+        assertEquals(items.size(), replayed.items.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(describe(items.get(i)), describe(replayed.items.get(i)));
+        }
+        // the attribute goes to the replayed fifth item
+        assertEquals(Integer.valueOf(5005), replayed.attributeItemId);
+    }
+
+    public void testTruncated() throws Exception {
+        SpoolItemWriter spool = new SpoolItemWriter(file, null);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i + 1), spool.store(item("1_" + i, "Gene")));
+        }
+        spool.finish();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+        assertFalse(SpoolReplayer.isComplete(file));
+    }
+
+    private static Item item(String identifier, String className) {
+        Item item = new Item();
+        item.setIdentifier(identifier);
+        item.setClassName(className);
+        item.setImplementations("");
+        return item;
+    }
+
+    private static void addAttribute(Item item, String name, String value) {
+        Attribute att = new Attribute();
+        att.setName(name);
+        att.setValue(value);
+        item.addAttributes(att);
+    }
+
+    private static void addReference(Item item, String name, String refId) {
+        Reference ref = new Reference();
+        ref.setName(name);
+        ref.setRefId(refId);
+        item.addReferences(ref);
+    }
+
+    private static String describe(Item item) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(item.getIdentifier()).append(' ').append(item.getClassName()).append(' ')
+            .append(item.getImplementations());
+        for (Attribute att : item.getAttributes()) {
+            sb.append(" a:").append(att.getName()).append('=').append(att.getValue());
+        }
+        for (Reference ref : item.getReferences()) {
+            sb.append(" r:").append(ref.getName()).append('=').append(ref.getRefId());
+        }
+        for (ReferenceList refs : item.getCollections()) {
+            sb.append(" c:").append(refs.getName()).append('=').append(refs.getRefIds());
+        }
+        return sb.toString();
+    }
+
+    private static class RecordingWriter implements ItemWriter
+    {
+        private final List<Item> items = new ArrayList<Item>();
+        private final int firstId;
+        private Integer attributeItemId;
+
+        RecordingWriter(int firstId) {
+            this.firstId = firstId;
+        }
+
+        public Integer store(Item item) {
+            items.add(item);
+            return firstId + items.size();
+        }
+
+        public void store(ReferenceList refList, Integer itemId) {
+            // not used
+        }
+
+        public void store(Attribute att, Integer itemId) {
+            attributeItemId = itemId;
+        }
+
+        public void storeAll(Collection<Item> all) {
+            for (Item item : all) {
+                store(item);
+            }
+        }
+
+        public void close() {
+            // nothing to close
+        }
+    }
+}
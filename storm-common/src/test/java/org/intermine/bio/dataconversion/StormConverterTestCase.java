@@ -0,0 +1,117 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.dataconversion.ItemsTestCase;
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.model.fulldata.Item;
+
+/**
+ * Base of the tests of the StormDirectoryConverters.  The test resources of a converter hold
+ * its data files in a directory named after the source, the target gene list,
+ * storm_targets_symbols.csv, and the gene resolutions, resolutions.csv, with an identifier and
+ * the primary identifier it resolves to per line.  The converters created in a test resolve
+ * human genes with those resolutions only; settings of the source can be changed for a test
+ * with setProperty().
+ *
+ * @author
+ */
+public abstract class StormConverterTestCase extends ItemsTestCase
+{
+    private static final String CHECKSUM = "test";
+
+    protected Model model = Model.getInstanceByName("genomic");
+    protected MockItemWriter itemWriter;
+
+    private final List<String> properties = new ArrayList<String>();
+    private File snapshotDir;
+
+    public StormConverterTestCase(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        itemWriter = new MockItemWriter(new HashMap<String, Item>());
+        setProperty(SourceConfig.GENE_LIST, getResource("storm_targets_symbols.csv").getPath());
+        String taxonId = StormDirectoryConverter.HUMAN_TAXON_ID;
+        snapshotDir = Files.createTempDirectory("resolver").toFile();
+        File file = new File(snapshotDir, "resolver-" + taxonId + ".snapshot");
+        IdResolverSnapshot.write(file, taxonId, CHECKSUM, readResolutions());
+        GeneResolutionCache.setInstance(new GeneResolutionCache(taxonId,
+                IdResolverSnapshot.open(file, taxonId, CHECKSUM)));
+    }
+
+    public void tearDown() throws Exception {
+        for (String key : properties) {
+            System.clearProperty(key);
+        }
+        for (File file : snapshotDir.listFiles()) {
+            file.delete();
+        }
+        snapshotDir.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Change a setting of the source for this test.
+     * @param key the setting, see SourceConfig
+     * @param value the value
+     */
+    protected void setProperty(String key, String value) {
+        System.setProperty(key, value);
+        properties.add(key);
+    }
+
+    /**
+     * @param name the name of a file or directory in the test resources
+     * @return the file
+     * @throws Exception if there is no such resource
+     */
+    protected File getResource(String name) throws Exception {
+        URL url = getClass().getClassLoader().getResource(name);
+        if (url == null) {
+            throw new IllegalArgumentException(name + " not found in the test resources");
+        }
+        return new File(url.toURI());
+    }
+
+    private Map<String, String> readResolutions() throws Exception {
+        Map<String, String> resolutions = new HashMap<String, String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(getResource("resolutions.csv")), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length == 2) {
+                    resolutions.put(fields[0], fields[1]);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return resolutions;
+    }
+}
@@ -23,7 +23,6 @@ import org.apache.tools.ant.BuildException;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 import org.json.*;
@@ -34,7 +33,7 @@ import org.json.JSONObject;
  * 
  * @author
  */
-public class StormNanoporeDataConverter extends BioDirectoryConverter
+public class StormNanoporeDataConverter extends StormDirectoryConverter
 {
     //
     private static final String DATASET_TITLE = "STORM Nanopore Data";
@@ -44,13 +43,12 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
 
     private static final double MIXED_MODEL_PVALUE_THRESHOLD = 0.1;
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-    private Map<String, String> transcripts = new HashMap<String, String>();
+    private ItemIdRegistry transcripts = newRegistry("transcripts");
     private Map<String, String> transcriptsMap = new HashMap<String, String>();
 
     private static final String TRANSCRIPT_TO_NCBI_MAPPING_FILE = "/data/nanopore/transcripts_biomart_conversion.csv";
+    // setting that replaces the mapping file
+    static final String TRANSCRIPT_MAPPING = "storm.nanopore.transcript.mapping";
     private Map<String, String> transcriptToNCBI = new HashMap<String, String>();
 
     private Map<String, Item> experiments = new HashMap<>();
@@ -58,35 +56,40 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
     private Map<String, Item> treatments = new HashMap<>();
     private Map<String, Item> conditions = new HashMap<>();
 
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(StormNanoporeDataConverter.class);
 
+    // keys of the items the comparison files refer to, see registerSharedItem()
+    private static final String EXPERIMENT_KEY = "NanoporeExperimentMetadata:";
+    private static final String CONDITION_KEY = "NanoporeExperimentCondition:";
+    private static final String TRANSCRIPT_KEY = "Transcript:";
+
     private String organismIdentifier;
 
     public StormNanoporeDataConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
     private void processTranscriptToNCBIMapping(String mappingFile) throws Exception {
         File mappingFileF = new File(mappingFile);
 
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(mappingFileF));
+        DelimitedReader rows = DelimitedReader.csv(openDataFile(mappingFileF));
+        Iterator<?> lineIter = rows.iterator();
 
         while (lineIter.hasNext()) {
             String[] line = (String[]) lineIter.next();
             String transcriptName = line[4];
             if(StringUtils.isEmpty(transcriptName)) {
+                getMetrics().skip("empty transcript name");
                 continue;
             }
             String maneId = line[2];
             if(StringUtils.isEmpty(maneId)) {
+                getMetrics().skip("empty MANE id");
                 continue;
             }
             transcriptToNCBI.put(transcriptName, maneId);
         }
+        getMetrics().rowsRead(rows);
     }
 
     public void process(File dataDir) throws Exception {
@@ -95,7 +98,10 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
         Map<String, File> directories = readDirectoriesInDir(dataDir);
 
         // Get the transcript name to mRNA seq id mappings
-        processTranscriptToNCBIMapping(TRANSCRIPT_TO_NCBI_MAPPING_FILE);
+        String mappingFile = getSourceConfig().get(TRANSCRIPT_MAPPING,
+                TRANSCRIPT_TO_NCBI_MAPPING_FILE);
+        incrementalDependsOn(new File(mappingFile));
+        processTranscriptToNCBIMapping(mappingFile);
 
         // Get all JSON config files in the directory and process one by one
         File[] configFilesArray = dataDir.listFiles(new FilenameFilter() {
@@ -111,6 +117,13 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
         }
 
         for (File configFile : configFiles) {
+            // the experiments and conditions the comparison files refer to
+            incrementalDependsOn(configFile);
+        }
+        for (File configFile : configFiles) {
+            getMetrics().startPhase(configFile.getName());
+            getMetrics().fileOpened(configFile);
+            getDiagnostics().startFile(configFile.getName());
             processConfigFile(new FileReader(configFile), dataDir);
         }
     }
@@ -119,6 +132,7 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
         try (BufferedReader br = new BufferedReader(reader)) {
             String line;
             while ((line = br.readLine()) != null) {
+                getMetrics().rowsRead(1);
                 try {
                     JSONObject jsonObject = new JSONObject(line);
 
@@ -149,6 +163,8 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                     String experimentKey = experimentShortName;
                     if (!experiments.containsKey(experimentKey)) {
                         experiments.put(experimentKey, ExperimentMetadataItem);
+                        registerSharedItem(EXPERIMENT_KEY + experimentKey,
+                                ExperimentMetadataItem.getIdentifier());
                     }
 
                     // Process materials
@@ -179,9 +195,13 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                         String nanocomporeResultsFile = "out_nanocompore_results.tsv";
                         if(filesInDir.get(nanocomporeResultsFile) != null) {
                             File NanocomporeResultsFile = filesInDir.get(nanocomporeResultsFile);
-                            processNanocomporeResults(NanocomporeResultsFile, experimentShortName, treatmentName, controlName);
+                            if(!replayUnchanged(NanocomporeResultsFile)) {
+                                processNanocomporeResults(NanocomporeResultsFile, experimentShortName, treatmentName, controlName);
+                                fileConverted(NanocomporeResultsFile);
+                            }
                         } else {
                             LOG.info("Failed to find NanocomporeResultsFile file: " + nanocomporeResultsFile);
+                            getMetrics().skip("missing NanocomporeResultsFile file");
                             continue;
                         }
 
@@ -189,9 +209,13 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                         String nanocomporeInsigFile = "insigResults.csv";
                         if(filesInDir.get(nanocomporeInsigFile) != null) {
                             File NanocomporeInsigFile = filesInDir.get(nanocomporeInsigFile);
-                            processNanocomporeInsigFile(NanocomporeInsigFile, experimentShortName, treatmentName, controlName);
+                            if(!replayUnchanged(NanocomporeInsigFile)) {
+                                processNanocomporeInsigFile(NanocomporeInsigFile, experimentShortName, treatmentName, controlName);
+                                fileConverted(NanocomporeInsigFile);
+                            }
                         } else {
                             LOG.info("Failed to find nanocomporeInsigFile file: " + nanocomporeInsigFile);
+                            getMetrics().skip("missing nanocomporeInsigFile file");
                             continue;
                         }
 
@@ -199,9 +223,13 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                         String nanocomporeSigFile = "sigResultsOrderedByLFC.csv";
                         if(filesInDir.get(nanocomporeSigFile) != null) {
                             File NanocomporeSigFile = filesInDir.get(nanocomporeSigFile);
-                            processNanocomporeSigFile(NanocomporeSigFile, experimentShortName, treatmentName, controlName);
+                            if(!replayUnchanged(NanocomporeSigFile)) {
+                                processNanocomporeSigFile(NanocomporeSigFile, experimentShortName, treatmentName, controlName);
+                                fileConverted(NanocomporeSigFile);
+                            }
                         } else {
                             LOG.info("Failed to find nanocomporeSigFile file: " + nanocomporeSigFile);
+                            getMetrics().skip("missing nanocomporeSigFile file");
                             continue;
                         }
 
@@ -209,9 +237,13 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                         String nanoporeExperimentTranscriptCountsFile = "masterTranscriptCounts.txt";
                         if(filesInDir.get(nanoporeExperimentTranscriptCountsFile) != null) {
                             File NanoporeExperimentTranscriptCountsFile = filesInDir.get(nanoporeExperimentTranscriptCountsFile);
-                            processExperimentTranscriptCount(NanoporeExperimentTranscriptCountsFile, experimentShortName, treatmentName, controlName);
+                            if(!replayUnchanged(NanoporeExperimentTranscriptCountsFile)) {
+                                processExperimentTranscriptCount(NanoporeExperimentTranscriptCountsFile, experimentShortName, treatmentName, controlName);
+                                fileConverted(NanoporeExperimentTranscriptCountsFile);
+                            }
                         } else {
                             LOG.info("Failed to find nanoporeExperimentTranscriptCountsFile file: " + nanoporeExperimentTranscriptCountsFile);
+                            getMetrics().skip("missing nanoporeExperimentTranscriptCountsFile file");
                             continue;
                         }
                     }
@@ -236,7 +268,8 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
     private void processExperimentTranscriptCount(File NanoporeExperimentTranscriptCountsFile, String experimentShortName, String treatmentName, String controlName) throws ObjectStoreException, IOException {
         Item ExperimentMetadataItem = experiments.get(experimentShortName);
         String fileAbsPath = NanoporeExperimentTranscriptCountsFile.getAbsolutePath();
-        Iterator<?> lineIter = FormattedTextParser.parseTabDelimitedReader(new FileReader(fileAbsPath));
+        DelimitedReader rows = DelimitedReader.tsv(openDataFile(new File(fileAbsPath)));
+        Iterator<?> lineIter = rows.iterator();
         String[] firstLine = (String[]) lineIter.next();
 
         while (lineIter.hasNext()) {
@@ -254,44 +287,45 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                     String gene = transcript.split("-")[0];
 
                     if(!gene.isEmpty()) {
-                        if(unresolvableGenes.get(gene) == null) {                            
-                            String geneId = getGeneId(gene);
-                            if(geneId != null) {
-                                IntegratedItem.setReference("gene", geneId);
-                            }
+                        String geneId = getGeneId(gene);
+                        if(geneId != null) {
+                            IntegratedItem.setReference("gene", geneId);
                         }
                     }
 
                     IntegratedItem.setReference("transcript", getTranscript(transcript));
                 } else {
+                    getMetrics().skip("empty transcript");
                     continue;
                 }
 
                 if(conditions.containsKey(controlName)) {
                     IntegratedItem.setReference("control", conditions.get(controlName));
                 } else {
+                    getMetrics().skip("missing control condition");
                     continue;
                 }
 
                 if(conditions.containsKey(treatmentName)) {
                     IntegratedItem.setReference("treatment", conditions.get(treatmentName));
                 } else {
+                    getMetrics().skip("missing treatment condition");
                     continue;
                 }
 
-                if(!StringUtils.isEmpty(BC1) && isDouble(BC1)) {
+                if(!StringUtils.isEmpty(BC1) && isNumber(BC1)) {
                     IntegratedItem.setAttribute("ControlReplicate1", BC1);
                 }
 
-                if(!StringUtils.isEmpty(BC2) && isDouble(BC2)) {
+                if(!StringUtils.isEmpty(BC2) && isNumber(BC2)) {
                     IntegratedItem.setAttribute("ControlReplicate2", BC2);
                 }
 
-                if(!StringUtils.isEmpty(BC3) && isDouble(BC3)) {
+                if(!StringUtils.isEmpty(BC3) && isNumber(BC3)) {
                     IntegratedItem.setAttribute("TreatmentReplicate1", BC3);
                 }
 
-                if(!StringUtils.isEmpty(BC4) && isDouble(BC4)) {
+                if(!StringUtils.isEmpty(BC4) && isNumber(BC4)) {
                     IntegratedItem.setAttribute("TreatmentReplicate2", BC4);
                 }
 
@@ -300,16 +334,18 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                 store(IntegratedItem);
                 
             } catch (Exception e) {
-                LOG.info("Exception in processExperimentTranscriptCount with: " + line + " - " + e.getMessage());
+                skip("invalid row", null, line, e);
                 continue;
             }
         }
+        getMetrics().rowsRead(rows);
     }
 
     private void processNanocomporeResults(File NanocomporeResultsFile, String experimentShortName, String treatmentName, String controlName) throws ObjectStoreException, IOException {
         Item ExperimentMetadataItem = experiments.get(experimentShortName);
         String fileAbsPath = NanocomporeResultsFile.getAbsolutePath();
-        Iterator<?> lineIter = FormattedTextParser.parseTabDelimitedReader(new FileReader(fileAbsPath));
+        DelimitedReader rows = DelimitedReader.tsv(openDataFile(new File(fileAbsPath)));
+        Iterator<?> lineIter = rows.iterator();
         String[] firstLine = (String[]) lineIter.next();
 
         while (lineIter.hasNext()) {
@@ -322,11 +358,15 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                 String GMM_anova_pvalue = line[6];
                 String GMM_logit_pvalue = line[7];
 
-                if(!StringUtils.isEmpty(GMM_logit_pvalue) && isDouble(GMM_logit_pvalue)) {
-                    if(Double.parseDouble(GMM_logit_pvalue) >= MIXED_MODEL_PVALUE_THRESHOLD) {
+                // classify and parse the p-value in one pass
+                NumericField pvalueField = getNumericField();
+                if(pvalueField.scan(GMM_logit_pvalue).isNumber()) {
+                    if(pvalueField.doubleValue() >= MIXED_MODEL_PVALUE_THRESHOLD) {
+                        getMetrics().skip("GMM logit p-value above threshold");
                         continue;
                     }
                 } else {
+                    getMetrics().skip("non-numeric GMM logit p-value");
                     continue;
                 }
 
@@ -343,16 +383,18 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                 if(conditions.containsKey(controlName)) {
                     IntegratedItem.setReference("control", conditions.get(controlName));
                 } else {
+                    getMetrics().skip("missing control condition");
                     continue;
                 }
 
                 if(conditions.containsKey(treatmentName)) {
                     IntegratedItem.setReference("treatment", conditions.get(treatmentName));
                 } else {
+                    getMetrics().skip("missing treatment condition");
                     continue;
                 }
 
-                if(!StringUtils.isEmpty(pos) && isDouble(pos)) {
+                if(!StringUtils.isEmpty(pos) && isNumber(pos)) {
                     IntegratedItem.setAttribute("pos", pos);
                 }
 
@@ -364,11 +406,9 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                     transcriptsMap.put(transcriptSymbol, transcript);
 
                     if(!gene.isEmpty()) {
-                        if(unresolvableGenes.get(gene) == null) {                            
-                            String geneId = getGeneId(gene);
-                            if(geneId != null) {
-                                IntegratedItem.setReference("gene", geneId);
-                            }
+                        String geneId = getGeneId(gene);
+                        if(geneId != null) {
+                            IntegratedItem.setReference("gene", geneId);
                         }
                     }
 
@@ -394,31 +434,31 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                     IntegratedItem.setAttribute("cluster_counts", cluster_counts);
                 }
 
-                if(!StringUtils.isEmpty(GMM_anova_pvalue) && isDouble(GMM_anova_pvalue)) {
+                if(!StringUtils.isEmpty(GMM_anova_pvalue) && isNumber(GMM_anova_pvalue)) {
                     IntegratedItem.setAttribute("GMM_anova_pvalue", GMM_anova_pvalue);
                 }
 
-                if(!StringUtils.isEmpty(GMM_logit_pvalue) && isDouble(GMM_logit_pvalue)) {
+                if(!StringUtils.isEmpty(GMM_logit_pvalue) && isNumber(GMM_logit_pvalue)) {
                     IntegratedItem.setAttribute("GMM_logit_pvalue", GMM_logit_pvalue);
                 }
 
-                if(!StringUtils.isEmpty(KS_dwell_pvalue) && isDouble(KS_dwell_pvalue)) {
+                if(!StringUtils.isEmpty(KS_dwell_pvalue) && isNumber(KS_dwell_pvalue)) {
                     IntegratedItem.setAttribute("KS_dwell_pvalue", KS_dwell_pvalue);
                 }
 
-                if(!StringUtils.isEmpty(KS_intensity_pvalue) && isDouble(KS_intensity_pvalue)) {
+                if(!StringUtils.isEmpty(KS_intensity_pvalue) && isNumber(KS_intensity_pvalue)) {
                     IntegratedItem.setAttribute("KS_intensity_pvalue", KS_intensity_pvalue);
                 }
 
-                if(!StringUtils.isEmpty(GMM_n_clust) && isDouble(GMM_n_clust)) {
+                if(!StringUtils.isEmpty(GMM_n_clust) && isNumber(GMM_n_clust)) {
                     IntegratedItem.setAttribute("GMM_n_clust", GMM_n_clust);
                 }
 
-                if(!StringUtils.isEmpty(Anova_delta_logit) && isDouble(Anova_delta_logit)) {
+                if(!StringUtils.isEmpty(Anova_delta_logit) && isNumber(Anova_delta_logit)) {
                     IntegratedItem.setAttribute("Anova_delta_logit", Anova_delta_logit);
                 }
 
-                if(!StringUtils.isEmpty(Logit_LOR) && isDouble(Logit_LOR)) {
+                if(!StringUtils.isEmpty(Logit_LOR) && isNumber(Logit_LOR)) {
                     IntegratedItem.setAttribute("Logit_LOR", Logit_LOR);
                 }
                 
@@ -427,16 +467,18 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                 store(IntegratedItem);
                 
             } catch (Exception e) {
-                LOG.info("Exception in processNanocomporeResults with: " + line + " - " + e.getMessage());
+                skip("invalid row", null, line, e);
                 continue;
             }
         }
+        getMetrics().rowsRead(rows);
     }
 
     private void processNanocomporeInsigFile(File NanocomporeInsigFile, String experimentShortName, String treatmentName, String controlName) throws ObjectStoreException, IOException {
         Item ExperimentMetadataItem = experiments.get(experimentShortName);
         String fileAbsPath = NanocomporeInsigFile.getAbsolutePath();
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(fileAbsPath));
+        DelimitedReader rows = DelimitedReader.csv(openDataFile(new File(fileAbsPath)));
+        Iterator<?> lineIter = rows.iterator();
         String[] firstLine = (String[]) lineIter.next();
 
         while (lineIter.hasNext()) {
@@ -461,72 +503,73 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                     String gene = transcript.split("-")[0];
 
                     if(!gene.isEmpty()) {
-                        if(unresolvableGenes.get(gene) == null) {                            
-                            String geneId = getGeneId(gene);
-                            if(geneId != null) {
-                                IntegratedItem.setReference("gene", geneId);
-                            }
+                        String geneId = getGeneId(gene);
+                        if(geneId != null) {
+                            IntegratedItem.setReference("gene", geneId);
                         }
                     }
                     //IntegratedItem.setAttribute("transcript", transcript);
                     IntegratedItem.setReference("transcript", getTranscript(transcript));
                 } else {
+                    getMetrics().skip("empty transcript");
                     continue;
                 }
 
                 if(conditions.containsKey(controlName)) {
                     IntegratedItem.setReference("control", conditions.get(controlName));
                 } else {
+                    getMetrics().skip("missing control condition");
                     continue;
                 }
 
                 if(conditions.containsKey(treatmentName)) {
                     IntegratedItem.setReference("treatment", conditions.get(treatmentName));
                 } else {
+                    getMetrics().skip("missing treatment condition");
                     continue;
                 }
 
-                if(!StringUtils.isEmpty(baseMean) && isDouble(baseMean)) {
+                if(!StringUtils.isEmpty(baseMean) && isNumber(baseMean)) {
                     IntegratedItem.setAttribute("baseMean", baseMean);
                 }
 
-                if(!StringUtils.isEmpty(log2FoldChange) && isDouble(log2FoldChange)) {
+                if(!StringUtils.isEmpty(log2FoldChange) && isNumber(log2FoldChange)) {
                     IntegratedItem.setAttribute("log2FoldChange", log2FoldChange);
                 }
 
-                if(!StringUtils.isEmpty(lfcSE) && isDouble(lfcSE)) {
+                if(!StringUtils.isEmpty(lfcSE) && isNumber(lfcSE)) {
                     IntegratedItem.setAttribute("lfcSE", lfcSE);
                 }
 
-                if(!StringUtils.isEmpty(stat) && isDouble(stat)) {
+                if(!StringUtils.isEmpty(stat) && isNumber(stat)) {
                     IntegratedItem.setAttribute("stat", stat);
                 }
 
-                if(!StringUtils.isEmpty(pvalue) && isDouble(pvalue)) {
+                if(!StringUtils.isEmpty(pvalue) && isNumber(pvalue)) {
                     IntegratedItem.setAttribute("pvalue", pvalue);
                 }
 
-                if(!StringUtils.isEmpty(padj) && isDouble(padj)) {
+                if(!StringUtils.isEmpty(padj) && isNumber(padj)) {
                     IntegratedItem.setAttribute("padj", padj);
                 }
 
-                if(!StringUtils.isEmpty(FoldChange) && isDouble(FoldChange)) {
+                if(!StringUtils.isEmpty(FoldChange) && isNumber(FoldChange)) {
                     IntegratedItem.setAttribute("FoldChange", FoldChange);
                 }
 
-                if(!StringUtils.isEmpty(BC1) && isDouble(BC1)) {
+                if(!StringUtils.isEmpty(BC1) && isNumber(BC1)) {
                     IntegratedItem.setAttribute("ControlReplicate1", BC1);
                 }
 
-                if(!StringUtils.isEmpty(BC2) && isDouble(BC2)) {
+                if(!StringUtils.isEmpty(BC2) && isNumber(BC2)) {
                     IntegratedItem.setAttribute("ControlReplicate2", BC2);
                 }
 
-                if(!StringUtils.isEmpty(BC3) && isDouble(BC3)) {
+                if(!StringUtils.isEmpty(BC3) && isNumber(BC3)) {
                     IntegratedItem.setAttribute("TreatmentReplicate1", BC3);
                 }
 
-                if(!StringUtils.isEmpty(BC4) && isDouble(BC4)) {
+                if(!StringUtils.isEmpty(BC4) && isNumber(BC4)) {
                     IntegratedItem.setAttribute("TreatmentReplicate2", BC4);
                 }                
 
@@ -535,16 +578,18 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                 store(IntegratedItem);
                 
             } catch (Exception e) {
-                LOG.info("Exception in processNanocomporeInsigFile with: " + line + " - " + e.getMessage());
+                skip("invalid row", null, line, e);
                 continue;
             }
         }
+        getMetrics().rowsRead(rows);
     }
 
     private void processNanocomporeSigFile(File NanocomporeSigFile, String experimentShortName, String treatmentName, String controlName) throws ObjectStoreException, IOException {
         Item ExperimentMetadataItem = experiments.get(experimentShortName);
         String fileAbsPath = NanocomporeSigFile.getAbsolutePath();
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(fileAbsPath));
+        DelimitedReader rows = DelimitedReader.csv(openDataFile(new File(fileAbsPath)));
+        Iterator<?> lineIter = rows.iterator();
         String[] firstLine = (String[]) lineIter.next();
 
         while (lineIter.hasNext()) {
@@ -569,72 +614,73 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                     String gene = transcript.split("-")[0];
 
                     if(!gene.isEmpty()) {
-                        if(unresolvableGenes.get(gene) == null) {                            
-                            String geneId = getGeneId(gene);
-                            if(geneId != null) {
-                                IntegratedItem.setReference("gene", geneId);
-                            }
+                        String geneId = getGeneId(gene);
+                        if(geneId != null) {
+                            IntegratedItem.setReference("gene", geneId);
                         }
                     }
                     //IntegratedItem.setAttribute("transcript", transcript);
                     IntegratedItem.setReference("transcript", getTranscript(transcript));
                 } else {
+                    getMetrics().skip("empty transcript");
                     continue;
                 }
 
                 if(conditions.containsKey(controlName)) {
                     IntegratedItem.setReference("control", conditions.get(controlName));
                 } else {
+                    getMetrics().skip("missing control condition");
                     continue;
                 }
 
                 if(conditions.containsKey(treatmentName)) {
                     IntegratedItem.setReference("treatment", conditions.get(treatmentName));
                 } else {
+                    getMetrics().skip("missing treatment condition");
                     continue;
                 }
 
-                if(!StringUtils.isEmpty(baseMean) && isDouble(baseMean)) {
+                if(!StringUtils.isEmpty(baseMean) && isNumber(baseMean)) {
                     IntegratedItem.setAttribute("baseMean", baseMean);
                 }
 
-                if(!StringUtils.isEmpty(log2FoldChange) && isDouble(log2FoldChange)) {
+                if(!StringUtils.isEmpty(log2FoldChange) && isNumber(log2FoldChange)) {
                     IntegratedItem.setAttribute("log2FoldChange", log2FoldChange);
                 }
 
-                if(!StringUtils.isEmpty(lfcSE) && isDouble(lfcSE)) {
+                if(!StringUtils.isEmpty(lfcSE) && isNumber(lfcSE)) {
                     IntegratedItem.setAttribute("lfcSE", lfcSE);
                 }
 
-                if(!StringUtils.isEmpty(stat) && isDouble(stat)) {
+                if(!StringUtils.isEmpty(stat) && isNumber(stat)) {
                     IntegratedItem.setAttribute("stat", stat);
                 }
 
-                if(!StringUtils.isEmpty(pvalue) && isDouble(pvalue)) {
+                if(!StringUtils.isEmpty(pvalue) && isNumber(pvalue)) {
                     IntegratedItem.setAttribute("pvalue", pvalue);
                 }
 
-                if(!StringUtils.isEmpty(padj) && isDouble(padj)) {
+                if(!StringUtils.isEmpty(padj) && isNumber(padj)) {
                     IntegratedItem.setAttribute("padj", padj);
                 }
 
-                if(!StringUtils.isEmpty(FoldChange) && isDouble(FoldChange)) {
+                if(!StringUtils.isEmpty(FoldChange) && isNumber(FoldChange)) {
                     IntegratedItem.setAttribute("FoldChange", FoldChange);
                 }
 
-                if(!StringUtils.isEmpty(BC1) && isDouble(BC1)) {
+                if(!StringUtils.isEmpty(BC1) && isNumber(BC1)) {
                     IntegratedItem.setAttribute("ControlReplicate1", BC1);
                 }
 
-                if(!StringUtils.isEmpty(BC2) && isDouble(BC2)) {
+                if(!StringUtils.isEmpty(BC2) && isNumber(BC2)) {
                     IntegratedItem.setAttribute("ControlReplicate2", BC2);
                 }
 
-                if(!StringUtils.isEmpty(BC3) && isDouble(BC3)) {
+                if(!StringUtils.isEmpty(BC3) && isNumber(BC3)) {
                     IntegratedItem.setAttribute("TreatmentReplicate1", BC3);
                 }
 
-                if(!StringUtils.isEmpty(BC4) && isDouble(BC4)) {
+                if(!StringUtils.isEmpty(BC4) && isNumber(BC4)) {
                     IntegratedItem.setAttribute("TreatmentReplicate2", BC4);
                 }                
 
@@ -643,10 +689,11 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                 store(IntegratedItem);
                 
             } catch (Exception e) {
-                LOG.info("Exception in processNanocomporeSigFile with: " + line + " - " + e.getMessage());
+                skip("invalid row", null, line, e);
                 continue;
             }
         }
+        getMetrics().rowsRead(rows);
     }
 
     private void processExperimentMaterials(JSONObject materialsJson, String experimentShortName) {
@@ -806,7 +853,7 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                     }
                 }
             } catch (Exception e) {
-                LOG.info("Exception in processExperimentMaterials with key: " + key + " - " + e.getMessage());
+                skip("invalid material", key, null, e);
                 continue;
             }
         }
@@ -874,7 +921,7 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                         TreatmentMetadataItem.setAttribute("dotmaticsReference", dotmaticsReference);
                     }
 
-                    if(!StringUtils.isEmpty(dose) && isDouble(dose)) {
+                    if(!StringUtils.isEmpty(dose) && isNumber(dose)) {
                         TreatmentMetadataItem.setAttribute("dose_concentration", dose);
                     }
 
@@ -933,7 +980,7 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                         TreatmentMetadataItem.setAttribute("targetGene", targetGene);
                     }
 
-                    if(!StringUtils.isEmpty(concentration) && isDouble(concentration)) {
+                    if(!StringUtils.isEmpty(concentration) && isNumber(concentration)) {
                         TreatmentMetadataItem.setAttribute("dose_concentration", concentration);
                     }
 
@@ -992,7 +1039,7 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                         TreatmentMetadataItem.setAttribute("name", key);
                     }
 
-                    if(!StringUtils.isEmpty(concentration) && isDouble(concentration)) {
+                    if(!StringUtils.isEmpty(concentration) && isNumber(concentration)) {
                         TreatmentMetadataItem.setAttribute("dose_concentration", concentration);
                     }
 
@@ -1009,7 +1056,7 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                     }
                 }
             } catch (Exception e) {
-                LOG.info("Exception in processExperimentTreatments with key: " + key + " - " + e.getMessage());
+                skip("invalid treatment", key, null, e);
                 continue;
             }
         }
@@ -1057,6 +1104,7 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
                 if(!conditionName.isEmpty()) {
                     ConditionMetadataItem.setAttribute("name", conditionName);
                 } else {
+                    getMetrics().skip("empty condition name");
                     continue;
                 }
 
@@ -1080,50 +1128,19 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
 
                 if (!conditions.containsKey(conditionName)) {
                     conditions.put(conditionName, ConditionMetadataItem);
+                    registerSharedItem(CONDITION_KEY + conditionName,
+                            ConditionMetadataItem.getIdentifier());
                 }
 
     
                 
             } catch (Exception e) {
-                LOG.info("Exception in processNanoporeExperimentConditions with key: " + key + " - " + e.getMessage());
+                skip("invalid condition", key, null, e);
                 continue;
             }
         }
     }
 
-    private Map<String, File> readDirectoriesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            if(file.isDirectory()) {
-                files.put(file.getName(), file);
-            }
-        }
-        return files;
-    }
-
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
-            } else {
-                return resolvedIdentifier;
-            }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
-
     public String getTranscript(String identifier) {
 
         String primaryIdentifier = null;
@@ -1138,56 +1155,46 @@ public class StormNanoporeDataConverter extends BioDirectoryConverter
 
         String refId = transcripts.get(identifier);
         if (refId == null) {
-            Item tr = createItem("Transcript");
-            tr.setAttribute("primaryIdentifier", identifier);
-            tr.setAttribute("secondaryIdentifier", secondaryIdentifier);
             try {
-                store(tr);
+                refId = storeTranscript(identifier, secondaryIdentifier);
             } catch (ObjectStoreException e) {
                 throw new RuntimeException("failed to store transcripts with primaryIdentifier :" + primaryIdentifier + " and secondaryIdentifier: " + secondaryIdentifier, e);
             }
-            refId = tr.getIdentifier();
-            transcripts.put(identifier, refId);
         }
         return refId;
     }
 
-    private String resolveGene(String identifier) {
-        String id = null;
-
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
-            }
-        }
-        return id;
+    private String storeTranscript(String identifier, String secondaryIdentifier) throws ObjectStoreException {
+        Item tr = createItem("Transcript");
+        tr.setAttribute("primaryIdentifier", identifier);
+        tr.setAttribute("secondaryIdentifier", secondaryIdentifier);
+        store(tr);
+        String refId = tr.getIdentifier();
+        transcripts.put(identifier, refId);
+        registerSharedItem(TRANSCRIPT_KEY + identifier, refId);
+        return refId;
     }
 
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String resolveSharedItem(String key) throws ObjectStoreException {
+        if(key.startsWith(TRANSCRIPT_KEY)) {
+            String identifier = key.substring(TRANSCRIPT_KEY.length());
+            return storeTranscript(identifier, transcriptsMap.get(identifier));
         }
-        return files;
+        // the experiments and conditions are registered when the config files are read
+        return null;
     }
 
-    private boolean isDouble(String str) {
-        try {
-            double x = Double.parseDouble(str);
-            //if (x == (int) x)
-            //    return false;
-            return true;
-        }
-        catch(NumberFormatException e) {
-            return false;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void sharedItemReplayed(String key, String itemId) {
+        if(key.startsWith(TRANSCRIPT_KEY)) {
+            transcripts.put(key.substring(TRANSCRIPT_KEY.length()), itemId);
         }
     }
 }
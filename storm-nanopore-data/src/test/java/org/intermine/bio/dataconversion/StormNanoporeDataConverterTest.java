@@ -10,11 +10,13 @@ package org.intermine.bio.dataconversion;
  *
  */
 
-public class StormNanoporeDataConverterTest extends ItemsTestCase
+import java.util.Set;
+
+import org.intermine.xml.full.Item;
+
+public class StormNanoporeDataConverterTest extends StormConverterTestCase
 {
-    Model model = Model.getInstanceByName("genomic");
     StormNanoporeDataConverter converter;
-    MockItemWriter itemWriter;
 
     public StormNanoporeDataConverterTest(String arg) {
         super(arg);
@@ -22,13 +24,18 @@ public class StormNanoporeDataConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        // if you need to do some preprocessing and set up, do that here
+        setProperty(StormNanoporeDataConverter.TRANSCRIPT_MAPPING,
+                getResource("transcripts_biomart_conversion.csv").getPath());
+        converter = new StormNanoporeDataConverter(itemWriter, model);
     }
 
     public void testProcess() throws Exception {
-        // read in a test file (place in test/resources so it's on the classpath)
-        // process using your converter
-        // compare results to expected results
-        // look at the other intermine unit tests for help!
+        converter.process(getResource("storm-nanopore-data"));
+        converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "storm-nanopore-data-tgt.xml");
+
+        Set<Item> expected = readItemSet("StormNanoporeDataConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }
@@ -23,7 +23,6 @@ import org.apache.tools.ant.BuildException;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 import org.json.*;
@@ -34,30 +33,23 @@ import org.json.JSONObject;
  * 
  * @author
  */
-public class StormRnaseqDataConverter extends BioDirectoryConverter
+public class StormRnaseqDataConverter extends StormDirectoryConverter
 {
     private static final String DATASET_TITLE = "STORM RNA-Seq Data";
     private static final String DATA_SOURCE_NAME = "STORM RNA-Seq Data";
 
     private static final String TAXON_ID = "9606"; // Human Taxon ID
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
     private Map<String, Item> experiments = new HashMap<>();
     private Map<String, Item> materials = new HashMap<>();
     private Map<String, Item> treatments = new HashMap<>();
     private Map<String, Item> conditions = new HashMap<>();
 
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(StormRnaseqDataConverter.class);
 
     private String organismIdentifier;
     public StormRnaseqDataConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
     public void process(File dataDir) throws Exception {
@@ -79,6 +71,9 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
         }
 
         for (File configFile : configFiles) {
+            getMetrics().startPhase(configFile.getName());
+            getMetrics().fileOpened(configFile);
+            getDiagnostics().startFile(configFile.getName());
             processConfigFile(new FileReader(configFile), dataDir);
         }
         //    
@@ -160,6 +155,7 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
         try (BufferedReader br = new BufferedReader(reader)) {
             String line;
             while ((line = br.readLine()) != null) {
+                getMetrics().rowsRead(1);
                 try {
                     JSONObject jsonObject = new JSONObject(line);
 
@@ -250,6 +246,7 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                             processRNASeqExperimentComparison(DESeq2File, experimentShortName, treatmentName, controlName);
                         } else {
                             LOG.info("Failed to find DESeq2 file: " + fileName);
+                            getMetrics().skip("missing DESeq2 file");
                             continue;
                             //throw new RuntimeException("Failed to find DESeq2 file: " + fileName);
                         }
@@ -263,6 +260,7 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                         processRNASeqExperimentGeneCount(GeneCountsFile, experimentShortName);
                     } else {
                         LOG.info("Failed to find DESeq2 file: " + geneCountsFile);
+                        getMetrics().skip("missing gene counts file");
                         continue;
                         //throw new RuntimeException("Failed to find DESeq2 file: " + geneCountsFile);
                     }
@@ -444,7 +442,7 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                 }
                               
             } catch (Exception e) {
-                LOG.info("Exception in processRNASeqExperimentMaterials with key: " + key + " - " + e.getMessage());
+                skip("invalid material", key, null, e);
                 continue;
             }
         }
@@ -512,7 +510,7 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                         TreatmentMetadataItem.setAttribute("dotmaticsReference", dotmaticsReference);
                     }
 
-                    if(!StringUtils.isEmpty(dose) && isDouble(dose)) {
+                    if(!StringUtils.isEmpty(dose) && isNumber(dose)) {
                         TreatmentMetadataItem.setAttribute("dose_concentration", dose);
                     }
 
@@ -571,7 +569,7 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                         TreatmentMetadataItem.setAttribute("targetGene", targetGene);
                     }
 
-                    if(!StringUtils.isEmpty(concentration) && isDouble(concentration)) {
+                    if(!StringUtils.isEmpty(concentration) && isNumber(concentration)) {
                         TreatmentMetadataItem.setAttribute("dose_concentration", concentration);
                     }
 
@@ -630,7 +628,7 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                         TreatmentMetadataItem.setAttribute("name", key);
                     }
 
-                    if(!StringUtils.isEmpty(concentration) && isDouble(concentration)) {
+                    if(!StringUtils.isEmpty(concentration) && isNumber(concentration)) {
                         TreatmentMetadataItem.setAttribute("dose_concentration", concentration);
                     }
 
@@ -647,7 +645,7 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                     }
                 }                
             } catch (Exception e) {
-                LOG.info("Exception in processRNASeqExperimentTreatments with key: " + key + " - " + e.getMessage());
+                skip("invalid treatment", key, null, e);
                 continue;
             }
         }
@@ -695,6 +693,7 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                 if(!treatmentsArray.isEmpty()) {
                     ConditionMetadataItem.setAttribute("name", conditionName);
                 } else {
+                    getMetrics().skip("condition without treatments");
                     continue;
                 }
 
@@ -734,7 +733,7 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
     
                 
             } catch (Exception e) {
-                LOG.info("Exception in processRNASeqExperimentConditions with key: " + key + " - " + e.getMessage());
+                skip("invalid condition", key, null, e);
                 continue;
             }
         }
@@ -747,7 +746,8 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
         if(fileName.endsWith("_DESeq2.tsv")) {
             String fileAbsPath = DESeq2File.getAbsolutePath();
 
-            Iterator<?> lineIter = FormattedTextParser.parseTabDelimitedReader(new FileReader(fileAbsPath));
+            DelimitedReader rows = DelimitedReader.tsv(openDataFile(new File(fileAbsPath)));
+            Iterator<?> lineIter = rows.iterator();
             String[] firstLine = (String[]) lineIter.next();
             Map<String, Integer> columnIndexes = getColumnIndexes(firstLine, "DESEQ2");
 
@@ -766,11 +766,9 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                 Item IntegratedItem = createItem("RNASeqExperimentComparison");
 
                 if(!gene.isEmpty()) {
-                    if(unresolvableGenes.get(gene) != null) {
-                        continue;
-                    }
                     String geneId = getGeneId(gene);
                     if(geneId == null) {
+                        getMetrics().skip("gene not resolved");
                         continue;
                     }
                     IntegratedItem.setReference("gene", geneId);
@@ -785,36 +783,38 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                 if(conditions.containsKey(controlName)) {
                     IntegratedItem.setReference("control", conditions.get(controlName));
                 } else {
+                    getMetrics().skip("missing control condition");
                     continue;
                 }
 
                 if(conditions.containsKey(treatmentName)) {
                     IntegratedItem.setReference("treatment", conditions.get(treatmentName));
                 } else {
+                    getMetrics().skip("missing treatment condition");
                     continue;
                 }
 
-                if(!StringUtils.isEmpty(baseMean) && isDouble(baseMean)) {
+                if(!StringUtils.isEmpty(baseMean) && isNumber(baseMean)) {
                     IntegratedItem.setAttribute("baseMean", baseMean);
                 }
 
-                if(!StringUtils.isEmpty(log2FoldChange) && isDouble(log2FoldChange)) {
+                if(!StringUtils.isEmpty(log2FoldChange) && isNumber(log2FoldChange)) {
                     IntegratedItem.setAttribute("log2FoldChange", log2FoldChange);
                 }
 
-                if(!StringUtils.isEmpty(lfcSE) && isDouble(lfcSE)) {
+                if(!StringUtils.isEmpty(lfcSE) && isNumber(lfcSE)) {
                     IntegratedItem.setAttribute("lfcSE", lfcSE);
                 }
 
-                if(!StringUtils.isEmpty(stat) && isDouble(stat)) {
+                if(!StringUtils.isEmpty(stat) && isNumber(stat)) {
                     IntegratedItem.setAttribute("stat", stat);
                 }
 
-                if(!StringUtils.isEmpty(pvalue) && isDouble(pvalue)) {
+                if(!StringUtils.isEmpty(pvalue) && isNumber(pvalue)) {
                     IntegratedItem.setAttribute("pvalue", pvalue);
                 }
 
-                if(!StringUtils.isEmpty(padj) && isDouble(padj)) {
+                if(!StringUtils.isEmpty(padj) && isNumber(padj)) {
                     IntegratedItem.setAttribute("padj", padj);
                 }                    
 
@@ -822,13 +822,15 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
 
                 store(IntegratedItem);
             }
+            getMetrics().rowsRead(rows);
         }
     }
 
     private void processRNASeqExperimentGeneCount(File geneCountsFile, String experimentShortName) throws ObjectStoreException, IOException {
         Item ExperimentMetadataItem = experiments.get(experimentShortName);
         String fileAbsPath = geneCountsFile.getAbsolutePath();
-        Iterator<?> lineIter = FormattedTextParser.parseTabDelimitedReader(new FileReader(fileAbsPath));
+        DelimitedReader rows = DelimitedReader.tsv(openDataFile(new File(fileAbsPath)));
+        Iterator<?> lineIter = rows.iterator();
         String[] firstLine = (String[]) lineIter.next();
 
         ArrayList<String> runs = new ArrayList<String>();
@@ -848,15 +850,14 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                     String runForThisItem = runs.get(i-2);
                     Item IntegratedItem = createItem("RNASeqExperimentFeatureCounts");
                     if(!gene.isEmpty()) {
-                        if(unresolvableGenes.get(gene) != null) {
-                            continue;
-                        }
                         String geneId = getGeneId(gene);
                         if (geneId == null) {
+                            getMetrics().skip("gene not resolved");
                             continue;
                         }
                         IntegratedItem.setReference("gene", geneId);
                     } else {
+                        getMetrics().skip("empty gene");
                         continue;
                     }
 
@@ -867,10 +868,11 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                     if(!StringUtils.isEmpty(runForThisItem)) {
                         IntegratedItem.setAttribute("run", runForThisItem);
                     } else {
+                        getMetrics().skip("empty run");
                         continue;
                     }
 
-                    if(!StringUtils.isEmpty(count) && isDouble(count)) {
+                    if(!StringUtils.isEmpty(count) && isNumber(count)) {
                         IntegratedItem.setAttribute("count", count);
                     }
 
@@ -879,81 +881,10 @@ public class StormRnaseqDataConverter extends BioDirectoryConverter
                     store(IntegratedItem);
                 }
             } catch (Exception e) {
-                LOG.info("Exception in processRNASeqExperimentGeneCount with gene: " + gene + " - " + e.getMessage());
+                skip("invalid gene counts row", gene, line, e);
                 continue;
             }
         }
-    }
-
-    private Map<String, File> readDirectoriesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            if(file.isDirectory()) {
-                files.put(file.getName(), file);
-            }
-        }
-        return files;
-    }
-
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
-        }
-        return files;
-    }
-
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
-            } else {
-                return resolvedIdentifier;
-            }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
-
-    private String resolveGene(String identifier) {
-        String id = null;
-
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
-            }
-        }
-        return id;
-    }
-
-    private boolean isDouble(String str) {
-        try {
-            double x = Double.parseDouble(str);
-            //if (x == (int) x)
-            //    return false;
-            return true;
-        }
-        catch(NumberFormatException e) {
-            return false;
-        }
+        getMetrics().rowsRead(rows);
     }
 }
@@ -0,0 +1,149 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+import org.intermine.dataconversion.DirectoryConverter;
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.modelproduction.xml.InterMineModelParser;
+
+/**
+ * Runs the converter of a source in this JVM: process() on a data directory, then close(),
+ * with the items going to any ItemWriter.
+ *
+ * The converter is the converter.class of the source's properties file, and the model is
+ * the genomic_model.xml the build put next to that file, so each source runs with the
+ * classes of its own additions even though the models of all sources are on the classpath.
+ * Gene symbols can be resolved with useResolutions() rather than an IdResolver, which needs
+ * a mine's data files.
+ *
+ * @author
+ */
+public class ConverterRunner
+{
+    /** The setting of storm-nanopore-data that replaces its transcript mapping file */
+    public static final String TRANSCRIPT_MAPPING = "storm.nanopore.transcript.mapping";
+
+    private static final Logger LOG = Logger.getLogger(ConverterRunner.class);
+
+    private static final String MODEL_FILE = "genomic_model.xml";
+    private static final String CHECKSUM = "synthetic";
+
+    private final String sourceName;
+    private final Model model;
+    private final Constructor<? extends DirectoryConverter> constructor;
+
+    /**
+     * Constructor
+     * @param sourceName the name of the source, e.g. depmap-cnv
+     * @throws Exception if the source's properties, converter or model can't be loaded
+     */
+    public ConverterRunner(String sourceName) throws Exception {
+        this.sourceName = sourceName;
+        String propertiesFile = sourceName + ".properties";
+        URL url = getClass().getClassLoader().getResource(propertiesFile);
+        if (url == null) {
+            throw new IllegalArgumentException(propertiesFile + " not found, is " + sourceName
+                    + " on the classpath?");
+        }
+        Properties properties = new Properties();
+        InputStream is = url.openStream();
+        try {
+            properties.load(is);
+        } finally {
+            is.close();
+        }
+        String className = properties.getProperty("converter.class");
+        if (className == null) {
+            throw new IllegalArgumentException("no converter.class in " + url);
+        }
+        constructor = Class.forName(className.trim()).asSubclass(DirectoryConverter.class)
+            .getConstructor(ItemWriter.class, Model.class);
+        String location = url.toString();
+        model = loadModel(new URL(location.substring(0, location.length()
+                - propertiesFile.length()) + MODEL_FILE));
+    }
+
+    private Model loadModel(URL url) throws Exception {
+        InputStream is;
+        try {
+            is = url.openStream();
+        } catch (IOException e) {
+            LOG.warn("no " + MODEL_FILE + " next to " + sourceName
+                    + ".properties, using the genomic model on the classpath");
+            return Model.getInstanceByName("genomic");
+        }
+        Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8);
+        try {
+            return new InterMineModelParser().process(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the name of the source
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * @return the model of the source
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Create a converter and run it.
+     * @param dataDir the data directory of the source
+     * @param writer the writer to store the items with
+     * @return the converter, closed
+     * @throws Exception if the conversion fails
+     */
+    public DirectoryConverter run(File dataDir, ItemWriter writer) throws Exception {
+        DirectoryConverter converter = constructor.newInstance(writer, model);
+        converter.process(dataDir);
+        converter.close();
+        return converter;
+    }
+
+    /**
+     * Resolve the human gene symbols of the converters created from now on with the given
+     * resolutions, through an IdResolverSnapshot.
+     * @param resolutions identifier to primary identifier
+     * @param dir the directory to write the snapshot into
+     * @return the snapshot
+     * @throws IOException if the snapshot can't be written
+     */
+    public static IdResolverSnapshot useResolutions(Map<String, String> resolutions, File dir)
+        throws IOException {
+        String taxonId = StormDirectoryConverter.HUMAN_TAXON_ID;
+        File file = new File(dir, "resolver-" + taxonId + ".snapshot");
+        IdResolverSnapshot.write(file, taxonId, CHECKSUM, resolutions);
+        IdResolverSnapshot snapshot = IdResolverSnapshot.open(file, taxonId, CHECKSUM);
+        GeneResolutionCache.setInstance(new GeneResolutionCache(taxonId, snapshot));
+        return snapshot;
+    }
+}
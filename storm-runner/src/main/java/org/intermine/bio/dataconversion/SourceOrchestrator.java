@@ -0,0 +1,318 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the converters of several sources in one JVM, rather than a JVM per source that
+ * builds its own IdResolver and reads the target gene list again.  Run with
+ * <pre>./gradlew :storm-runner:runSources -Porchestrator.config=&lt;file&gt;</pre>
+ *
+ * The sources share what doesn't belong to any one of them: the gene resolutions, through the
+ * GeneResolutionCache of the JVM, which loads the IdResolverSnapshot or builds the resolver
+ * once, and the gene list, through GeneList.  The registries of cell lines and other items
+ * stay with each converter, as they map to item identifiers of the source's own items
+ * database.  Each source stores its items in &lt;spool.dir&gt;/&lt;source&gt;.spool, to be
+ * written to the source's items database by the usual build with storm.spool set to the file
+ * and storm.spool.replay = true.
+ *
+ * A source starts once the sources it depends on have finished, and up to threads sources
+ * run at once.  Dependencies on sources that aren't in the run count as finished.  If a
+ * source fails, the sources that depend on it are skipped and the others carry on.  The
+ * settings file, e.g.
+ * <pre>
+ * sources = depmap-sample-info, depmap-expression, depmap-cnv
+ * threads = 2
+ * spool.dir = /data/storm/spool
+ * depmap-sample-info.dir = /data/depmap/sample-info
+ * depmap-expression.dir = /data/depmap/expression
+ * depmap-expression.depends = depmap-sample-info
+ * depmap-cnv.dir = /data/depmap/cnv
+ * depmap-cnv.depends = depmap-sample-info
+ * </pre>
+ * The storm.* settings of the sources can be overridden for all of them with system
+ * properties, see SourceConfig.
+ *
+ * @author
+ */
+public class SourceOrchestrator
+{
+    /** The sources to run, comma separated */
+    public static final String SOURCES = "sources";
+    /** How many sources run at once, by default the number of processors */
+    public static final String THREADS = "threads";
+    /** The directory of the spool files */
+    public static final String SPOOL_DIR = "spool.dir";
+    /** Suffix of the setting of a source's data directory */
+    public static final String DIR_SUFFIX = ".dir";
+    /** Suffix of the setting of the sources a source depends on, comma separated */
+    public static final String DEPENDS_SUFFIX = ".depends";
+
+    private static final Logger LOG = Logger.getLogger(SourceOrchestrator.class);
+
+    // source -> the sources of the run it depends on, in the order of the sources setting
+    private final Map<String, Set<String>> dependencies =
+        new LinkedHashMap<String, Set<String>>();
+    private final Map<String, File> dataDirs = new LinkedHashMap<String, File>();
+    private final int threads;
+    private final File spoolDir;
+
+    /**
+     * Constructor
+     * @param settings the settings, see the class comment
+     */
+    public SourceOrchestrator(Properties settings) {
+        List<String> sources = split(settings.getProperty(SOURCES));
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("no " + SOURCES + " to run");
+        }
+        for (String source : sources) {
+            String dir = settings.getProperty(source + DIR_SUFFIX);
+            if (dir == null || dir.trim().isEmpty()) {
+                throw new IllegalArgumentException("no " + source + DIR_SUFFIX);
+            }
+            dataDirs.put(source, new File(dir.trim()));
+            Set<String> depends = new LinkedHashSet<String>();
+            for (String dependency : split(settings.getProperty(source + DEPENDS_SUFFIX))) {
+                if (sources.contains(dependency)) {
+                    depends.add(dependency);
+                } else {
+                    LOG.info(source + " depends on " + dependency + ", which isn't in this run");
+                }
+            }
+            dependencies.put(source, depends);
+        }
+        checkCycles();
+        String threadSetting = settings.getProperty(THREADS, "").trim();
+        threads = threadSetting.isEmpty() ? Runtime.getRuntime().availableProcessors()
+            : Integer.parseInt(threadSetting);
+        if (threads < 1) {
+            throw new IllegalArgumentException("bad value for " + THREADS + ": " + threads);
+        }
+        spoolDir = new File(settings.getProperty(SPOOL_DIR, "spool").trim());
+    }
+
+    private static List<String> split(String value) {
+        List<String> values = new ArrayList<String>();
+        if (value != null) {
+            for (String s : value.split(",")) {
+                if (!s.trim().isEmpty() && !values.contains(s.trim())) {
+                    values.add(s.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    // a depth first search from every source, throwing at the first source seen twice on a path
+    private void checkCycles() {
+        Set<String> checked = new HashSet<String>();
+        for (String source : dependencies.keySet()) {
+            checkCycles(source, new ArrayList<String>(), checked);
+        }
+    }
+
+    private void checkCycles(String source, List<String> path, Set<String> checked) {
+        if (path.contains(source)) {
+            path.add(source);
+            throw new IllegalArgumentException("dependency cycle: " + path);
+        }
+        if (!checked.add(source)) {
+            return;
+        }
+        path.add(source);
+        for (String dependency : dependencies.get(source)) {
+            checkCycles(dependency, path, checked);
+        }
+        path.remove(path.size() - 1);
+    }
+
+    /**
+     * @return the sources of the run, in the order of the sources setting
+     */
+    public List<String> getSources() {
+        return new ArrayList<String>(dependencies.keySet());
+    }
+
+    /**
+     * @param source a source of the run
+     * @return the sources of the run it depends on
+     */
+    public Set<String> getDependencies(String source) {
+        return Collections.unmodifiableSet(dependencies.get(source));
+    }
+
+    /**
+     * Run all the sources.
+     * @return the sources that failed or were skipped because a dependency failed, empty if
+     * all of them ran
+     * @throws InterruptedException if interrupted while waiting for the sources
+     */
+    public List<String> run() throws InterruptedException {
+        LOG.info("running " + dependencies.size() + " sources, " + threads + " at once");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<String> completion = new ExecutorCompletionService<String>(executor);
+        Set<String> pending = new LinkedHashSet<String>(dependencies.keySet());
+        Set<String> finished = new HashSet<String>();
+        List<String> failed = new ArrayList<String>();
+        long start = System.currentTimeMillis();
+        try {
+            int running = startReady(pending, finished, failed, completion);
+            while (running > 0) {
+                String source = null;
+                try {
+                    source = completion.take().get();
+                    finished.add(source);
+                } catch (ExecutionException e) {
+                    SourceFailure failure = (SourceFailure) e.getCause();
+                    source = failure.source;
+                    LOG.error(source + " failed", failure.getCause());
+                    failed.add(source);
+                }
+                running += startReady(pending, finished, failed, completion) - 1;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.info("ran " + finished.size() + " of " + dependencies.size() + " sources in "
+                + (System.currentTimeMillis() - start) / 1000 + " s"
+                + (failed.isEmpty() ? "" : ", failed or skipped: " + failed));
+        return failed;
+    }
+
+    // submit the pending sources whose dependencies have finished, returning how many
+    private int startReady(Set<String> pending, Set<String> finished, List<String> failed,
+            CompletionService<String> completion) {
+        boolean skipped;
+        do {
+            skipped = false;
+            for (String source : new ArrayList<String>(pending)) {
+                for (String dependency : dependencies.get(source)) {
+                    if (failed.contains(dependency)) {
+                        LOG.error("skipping " + source + " as " + dependency + " failed");
+                        pending.remove(source);
+                        failed.add(source);
+                        skipped = true;
+                        break;
+                    }
+                }
+            }
+        } while (skipped);
+        int started = 0;
+        for (String source : new ArrayList<String>(pending)) {
+            if (finished.containsAll(dependencies.get(source))) {
+                pending.remove(source);
+                completion.submit(newTask(source));
+                started++;
+            }
+        }
+        return started;
+    }
+
+    private Callable<String> newTask(final String source) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws SourceFailure {
+                LOG.info("starting " + source);
+                long start = System.currentTimeMillis();
+                try {
+                    runSource(source, dataDirs.get(source));
+                } catch (Throwable t) {
+                    throw new SourceFailure(source, t);
+                }
+                LOG.info(source + " finished in " + (System.currentTimeMillis() - start) / 1000
+                        + " s");
+                return source;
+            }
+        };
+    }
+
+    /**
+     * Run the converter of a source, storing its items in its spool file.  Called from the
+     * threads of the run.
+     * @param source the name of the source
+     * @param dataDir the data directory of the source
+     * @throws Exception if the conversion fails
+     */
+    protected void runSource(String source, File dataDir) throws Exception {
+        ConverterRunner runner = new ConverterRunner(source);
+        spoolDir.mkdirs();
+        if (!spoolDir.isDirectory()) {
+            throw new IOException("failed to create directory: " + spoolDir);
+        }
+        // a spool is only renamed to its name when it is complete, so not if the run fails
+        SpoolItemWriter writer = new SpoolItemWriter(new File(spoolDir, source + ".spool"),
+                null);
+        runner.run(dataDir, writer);
+        writer.close();
+        LOG.info(source + ": " + writer.getItemCount() + " items in " + spoolDir);
+    }
+
+    /**
+     * Run the sources of a settings file, exiting with status 1 if any failed.
+     * @param args the settings file, see the class comment
+     * @throws Exception if the settings can't be read
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("usage: SourceOrchestrator <settings file>");
+            System.exit(2);
+        }
+        Properties settings = new Properties();
+        InputStream is = new FileInputStream(args[0]);
+        try {
+            settings.load(is);
+        } finally {
+            is.close();
+        }
+        List<String> failed = new SourceOrchestrator(settings).run();
+        if (!failed.isEmpty()) {
+            System.err.println(failed.size() + " sources failed or were skipped: " + failed);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The failure of a source, so that the run knows which one failed.
+     */
+    private static class SourceFailure extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String source;
+
+        SourceFailure(String source, Throwable cause) {
+            super(source + " failed", cause);
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2019 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class SourceOrchestratorTest extends TestCase
+{
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    public void testDependencies() throws Exception {
+        Properties settings = settings("sample-info, expression, cnv, mutations");
+        settings.setProperty("expression.depends", "sample-info");
+        settings.setProperty("cnv.depends", "sample-info, expression");
+        // not in the run, so taken as finished
+        settings.setProperty("mutations.depends", "tcga-sample-metadata");
+        SourceOrchestrator orchestrator = new SourceOrchestrator(settings) {
+            @Override
+            protected void runSource(String source, File dataDir) {
+                assertEquals(new File("/data/" + source), dataDir);
+                events.add("start " + source);
+                events.add("end " + source);
+            }
+        };
+        assertEquals(Arrays.asList("sample-info", "expression", "cnv", "mutations"),
+                orchestrator.getSources());
+        assertTrue(orchestrator.getDependencies("mutations").isEmpty());
+        assertEquals(Collections.emptyList(), orchestrator.run());
+        assertEquals(8, events.size());
+        assertTrue(events.indexOf("end sample-info") < events.indexOf("start expression"));
+        assertTrue(events.indexOf("end expression") < events.indexOf("start cnv"));
+    }
+
+    public void testConcurrent() throws Exception {
+        Properties settings = settings("expression, cnv");
+        settings.setProperty(SourceOrchestrator.THREADS, "2");
+        final CountDownLatch started = new CountDownLatch(2);
+        SourceOrchestrator orchestrator = new SourceOrchestrator(settings) {
+            @Override
+            protected void runSource(String source, File dataDir) throws Exception {
+                started.countDown();
+                // both have to be running for either to finish
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+            }
+        };
+        assertEquals(Collections.emptyList(), orchestrator.run());
+    }
+
+    public void testFailure() throws Exception {
+        Properties settings = settings("sample-info, expression, cnv, proteomics");
+        settings.setProperty("expression.depends", "sample-info");
+        settings.setProperty("cnv.depends", "expression");
+        SourceOrchestrator orchestrator = new SourceOrchestrator(settings) {
+            @Override
+            protected void runSource(String source, File dataDir) throws Exception {
+                events.add(source);
+                if ("sample-info".equals(source)) {
+                    throw new Exception("no data");
+                }
+            }
+        };
+        assertEquals(Arrays.asList("sample-info", "expression", "cnv"), orchestrator.run());
+        assertEquals(Arrays.asList("sample-info", "proteomics"), events);
+    }
+
+    public void testBadSettings() throws Exception {
+        Properties settings = settings("sample-info, expression, cnv");
+        settings.setProperty("sample-info.depends", "cnv");
+        settings.setProperty("cnv.depends", "expression");
+        settings.setProperty("expression.depends", "sample-info");
+        try {
+            new SourceOrchestrator(settings);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("dependency cycle"));
+        }
+        settings = settings("expression");
+        settings.remove("expression" + SourceOrchestrator.DIR_SUFFIX);
+        try {
+            new SourceOrchestrator(settings);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static Properties settings(String sources) {
+        Properties settings = new Properties();
+        settings.setProperty(SourceOrchestrator.SOURCES, sources);
+        settings.setProperty(SourceOrchestrator.THREADS, "1");
+        for (String source : sources.split("\\s*,\\s*")) {
+            settings.setProperty(source + SourceOrchestrator.DIR_SUFFIX, "/data/" + source);
+        }
+        return settings;
+    }
+}
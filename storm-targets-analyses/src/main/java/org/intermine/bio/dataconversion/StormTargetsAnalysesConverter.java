@@ -11,7 +11,6 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
@@ -23,7 +22,6 @@ import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -31,7 +29,7 @@ import org.intermine.xml.full.Item;
  * 
  * @author
  */
-public class StormTargetsAnalysesConverter extends BioDirectoryConverter
+public class StormTargetsAnalysesConverter extends StormDirectoryConverter
 {
     //
     private static final String DATASET_TITLE = "STORM Targets Analyses";
@@ -41,36 +39,11 @@ public class StormTargetsAnalysesConverter extends BioDirectoryConverter
 
     private static final String TARGETS_ANALYSES_FILE = "DepMap_RME_results_with_outliers.csv";
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(StormTargetsAnalysesConverter.class);
 
     private String organismIdentifier;
     public StormTargetsAnalysesConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
-    }
-
-    private boolean isDouble(String str) {
-        try {
-            // check if it can be parsed as any double
-            double x = Double.parseDouble(str);
-            // check if the double can be converted without loss to an int
-            if (x == (int) x)
-                // if yes, this is an int, thus return false
-                return false;
-            // otherwise, this cannot be converted to an int (e.g. "1.2")
-            return true;
-            // short version: return x != (int) x;
-        }
-        catch(NumberFormatException e) {
-            return false;
-        }
     }
 
     public void process(File dataDir) throws Exception {
@@ -78,19 +51,12 @@ public class StormTargetsAnalysesConverter extends BioDirectoryConverter
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        processTargetsAnalyses(new FileReader(files.get(TARGETS_ANALYSES_FILE)));
-    }
-
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
-        }
-        return files;
+        processTargetsAnalyses(openDataFile(files.get(TARGETS_ANALYSES_FILE)));
     }
 
     private void processTargetsAnalyses(Reader reader) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(reader);
+        DelimitedReader rows = DelimitedReader.csv(reader);
+        Iterator<?> lineIter = rows.iterator();
         // header
         String[] firstLine = (String[]) lineIter.next();
 
@@ -142,129 +108,92 @@ public class StormTargetsAnalysesConverter extends BioDirectoryConverter
 
             Item IntegratedItem;
 
-            if(unresolvableGenes.get(gene) != null) {
-                continue;
-            }
             String geneId = getGeneId(gene);
             if(geneId == null) {
+                getMetrics().skip("gene not resolved");
                 continue;
             }
 
-            if(!StringUtils.isEmpty(broadMedian) && isDouble(broadMedian)) {
+            if(!StringUtils.isEmpty(broadMedian) && isNonIntegral(broadMedian)) {
                 IntegratedItem = createItem("STORMTargetAnalyses");
                 IntegratedItem.setReference("gene", geneId);
                 IntegratedItem.setAttribute("screen", "broad");
                 IntegratedItem.setAttribute("median", broadMedian);
-                if(isDouble(sangerEffectFraction)) IntegratedItem.setAttribute("effectFraction", broadEffectFraction);
-                if(isDouble(broadCommonEssential)) IntegratedItem.setAttribute("commonEssential", broadCommonEssential);
-                if(isDouble(broadSkewedLrt)) IntegratedItem.setAttribute("skewedLrt", broadSkewedLrt);
+                if(isNonIntegral(sangerEffectFraction)) IntegratedItem.setAttribute("effectFraction", broadEffectFraction);
+                if(isNonIntegral(broadCommonEssential)) IntegratedItem.setAttribute("commonEssential", broadCommonEssential);
+                if(isNonIntegral(broadSkewedLrt)) IntegratedItem.setAttribute("skewedLrt", broadSkewedLrt);
                 IntegratedItem.setAttribute("outliersCount", broadOutliersCount);
-                if(isDouble(broadOutliersMeanZscore)) IntegratedItem.setAttribute("outliersMeanZscore", broadOutliersMeanZscore);
+                if(isNonIntegral(broadOutliersMeanZscore)) IntegratedItem.setAttribute("outliersMeanZscore", broadOutliersMeanZscore);
                 if(!StringUtils.isEmpty(broadOutliersCellLines)) IntegratedItem.setAttribute("outliersCellLines", broadOutliersCellLines);
                 if(!StringUtils.isEmpty(broadOutliersTopLineage)) IntegratedItem.setAttribute("outliersTopLineage", broadOutliersTopLineage);
                 IntegratedItem.setAttribute("outliersLineageCount", broadOutliersLineageCount);
-                if(isDouble(broadOutliersLineagePvalue)) IntegratedItem.setAttribute("outliersLineagePvalue", broadOutliersLineagePvalue);
-                if(isDouble(broadOutliersLineageQvalue)) IntegratedItem.setAttribute("outliersLineageQvalue", broadOutliersLineageQvalue);
-                if(isDouble(broadSangerCor)) IntegratedItem.setAttribute("broadSangerCor", broadSangerCor);
-                if(isDouble(broadSangerDiff)) IntegratedItem.setAttribute("broadSangerDiff", broadSangerDiff);
-                if(isDouble(broadShrnaCor)) IntegratedItem.setAttribute("broadShrnaCor", broadShrnaCor);
-                if(isDouble(broadShrnaDiff)) IntegratedItem.setAttribute("broadShrnaDiff", broadShrnaDiff);
-                if(isDouble(sangerShrnaCor)) IntegratedItem.setAttribute("sangerShrnaCor", sangerShrnaCor);
-                if(isDouble(sangerShrnaDiff)) IntegratedItem.setAttribute("sangerShrnaDiff", sangerShrnaDiff);
+                if(isNonIntegral(broadOutliersLineagePvalue)) IntegratedItem.setAttribute("outliersLineagePvalue", broadOutliersLineagePvalue);
+                if(isNonIntegral(broadOutliersLineageQvalue)) IntegratedItem.setAttribute("outliersLineageQvalue", broadOutliersLineageQvalue);
+                if(isNonIntegral(broadSangerCor)) IntegratedItem.setAttribute("broadSangerCor", broadSangerCor);
+                if(isNonIntegral(broadSangerDiff)) IntegratedItem.setAttribute("broadSangerDiff", broadSangerDiff);
+                if(isNonIntegral(broadShrnaCor)) IntegratedItem.setAttribute("broadShrnaCor", broadShrnaCor);
+                if(isNonIntegral(broadShrnaDiff)) IntegratedItem.setAttribute("broadShrnaDiff", broadShrnaDiff);
+                if(isNonIntegral(sangerShrnaCor)) IntegratedItem.setAttribute("sangerShrnaCor", sangerShrnaCor);
+                if(isNonIntegral(sangerShrnaDiff)) IntegratedItem.setAttribute("sangerShrnaDiff", sangerShrnaDiff);
                 store(IntegratedItem);
+            } else {
+                getMetrics().skip("broad median missing or integral");
             }
 
-            if(!StringUtils.isEmpty(sangerMedian) && isDouble(sangerMedian)) {
+            if(!StringUtils.isEmpty(sangerMedian) && isNonIntegral(sangerMedian)) {
                 IntegratedItem = createItem("STORMTargetAnalyses");
                 IntegratedItem.setReference("gene", geneId);
                 IntegratedItem.setAttribute("screen", "sanger");
                 IntegratedItem.setAttribute("median", sangerMedian);
-                if(isDouble(sangerEffectFraction)) IntegratedItem.setAttribute("effectFraction", sangerEffectFraction);
-                if(isDouble(sangerCommonEssential)) IntegratedItem.setAttribute("commonEssential", sangerCommonEssential);
-                if(isDouble(sangerSkewedLrt)) IntegratedItem.setAttribute("skewedLrt", sangerSkewedLrt);
+                if(isNonIntegral(sangerEffectFraction)) IntegratedItem.setAttribute("effectFraction", sangerEffectFraction);
+                if(isNonIntegral(sangerCommonEssential)) IntegratedItem.setAttribute("commonEssential", sangerCommonEssential);
+                if(isNonIntegral(sangerSkewedLrt)) IntegratedItem.setAttribute("skewedLrt", sangerSkewedLrt);
                 IntegratedItem.setAttribute("outliersCount", sangerOutliersCount);
-                if(isDouble(sangerOutliersMeanZscore)) IntegratedItem.setAttribute("outliersMeanZscore", sangerOutliersMeanZscore);
+                if(isNonIntegral(sangerOutliersMeanZscore)) IntegratedItem.setAttribute("outliersMeanZscore", sangerOutliersMeanZscore);
                 if(!StringUtils.isEmpty(sangerOutliersCellLines)) IntegratedItem.setAttribute("outliersCellLines", sangerOutliersCellLines);
                 if(!StringUtils.isEmpty(sangerOutliersTopLineage)) IntegratedItem.setAttribute("outliersTopLineage", sangerOutliersTopLineage);
                 IntegratedItem.setAttribute("outliersLineageCount", sangerOutliersLineageCount);
-                if(isDouble(sangerOutliersLineagePvalue)) IntegratedItem.setAttribute("outliersLineagePvalue", sangerOutliersLineagePvalue);
-                if(isDouble(sangerOutliersLineageQvalue)) IntegratedItem.setAttribute("outliersLineageQvalue", sangerOutliersLineageQvalue);
-                if(isDouble(broadSangerCor)) IntegratedItem.setAttribute("broadSangerCor", broadSangerCor);
-                if(isDouble(broadSangerDiff)) IntegratedItem.setAttribute("broadSangerDiff", broadSangerDiff);
-                if(isDouble(broadShrnaCor)) IntegratedItem.setAttribute("broadShrnaCor", broadShrnaCor);
-                if(isDouble(broadShrnaDiff)) IntegratedItem.setAttribute("broadShrnaDiff", broadShrnaDiff);
-                if(isDouble(sangerShrnaCor)) IntegratedItem.setAttribute("sangerShrnaCor", sangerShrnaCor);
-                if(isDouble(sangerShrnaDiff)) IntegratedItem.setAttribute("sangerShrnaDiff", sangerShrnaDiff);
+                if(isNonIntegral(sangerOutliersLineagePvalue)) IntegratedItem.setAttribute("outliersLineagePvalue", sangerOutliersLineagePvalue);
+                if(isNonIntegral(sangerOutliersLineageQvalue)) IntegratedItem.setAttribute("outliersLineageQvalue", sangerOutliersLineageQvalue);
+                if(isNonIntegral(broadSangerCor)) IntegratedItem.setAttribute("broadSangerCor", broadSangerCor);
+                if(isNonIntegral(broadSangerDiff)) IntegratedItem.setAttribute("broadSangerDiff", broadSangerDiff);
+                if(isNonIntegral(broadShrnaCor)) IntegratedItem.setAttribute("broadShrnaCor", broadShrnaCor);
+                if(isNonIntegral(broadShrnaDiff)) IntegratedItem.setAttribute("broadShrnaDiff", broadShrnaDiff);
+                if(isNonIntegral(sangerShrnaCor)) IntegratedItem.setAttribute("sangerShrnaCor", sangerShrnaCor);
+                if(isNonIntegral(sangerShrnaDiff)) IntegratedItem.setAttribute("sangerShrnaDiff", sangerShrnaDiff);
                 store(IntegratedItem);
+            } else {
+                getMetrics().skip("sanger median missing or integral");
             }
 
-            if(!StringUtils.isEmpty(shrnaMedian) && isDouble(shrnaMedian)) {
+            if(!StringUtils.isEmpty(shrnaMedian) && isNonIntegral(shrnaMedian)) {
                 IntegratedItem = createItem("STORMTargetAnalyses");
                 IntegratedItem.setReference("gene", geneId);
                 IntegratedItem.setAttribute("screen", "shrna");
                 IntegratedItem.setAttribute("median", shrnaMedian);
-                if(isDouble(shrnaEffectFraction)) IntegratedItem.setAttribute("effectFraction", shrnaEffectFraction);
-                if(isDouble(shrnaCommonEssential)) IntegratedItem.setAttribute("commonEssential", shrnaCommonEssential);
-                if(isDouble(shrnaSkewedLrt)) IntegratedItem.setAttribute("skewedLrt", shrnaSkewedLrt);
+                if(isNonIntegral(shrnaEffectFraction)) IntegratedItem.setAttribute("effectFraction", shrnaEffectFraction);
+                if(isNonIntegral(shrnaCommonEssential)) IntegratedItem.setAttribute("commonEssential", shrnaCommonEssential);
+                if(isNonIntegral(shrnaSkewedLrt)) IntegratedItem.setAttribute("skewedLrt", shrnaSkewedLrt);
                 IntegratedItem.setAttribute("outliersCount", shrnaOutliersCount);
-                if(isDouble(shrnaOutliersMeanZscore)) IntegratedItem.setAttribute("outliersMeanZscore", shrnaOutliersMeanZscore);
+                if(isNonIntegral(shrnaOutliersMeanZscore)) IntegratedItem.setAttribute("outliersMeanZscore", shrnaOutliersMeanZscore);
                 if(!StringUtils.isEmpty(shrnaOutliersCellLines)) IntegratedItem.setAttribute("outliersCellLines", shrnaOutliersCellLines);
                 if(!StringUtils.isEmpty(shrnaOutliersTopLineage)) IntegratedItem.setAttribute("outliersTopLineage", shrnaOutliersTopLineage);
                 IntegratedItem.setAttribute("outliersLineageCount", shrnaOutliersLineageCount);
-                if(isDouble(shrnaOutliersLineagePvalue)) IntegratedItem.setAttribute("outliersLineagePvalue", shrnaOutliersLineagePvalue);
-                if(isDouble(shrnaOutliersLineageQvalue)) IntegratedItem.setAttribute("outliersLineageQvalue", shrnaOutliersLineageQvalue);
-                if(isDouble(broadSangerCor)) IntegratedItem.setAttribute("broadSangerCor", broadSangerCor);
-                if(isDouble(broadSangerDiff)) IntegratedItem.setAttribute("broadSangerDiff", broadSangerDiff);
-                if(isDouble(broadShrnaCor)) IntegratedItem.setAttribute("broadShrnaCor", broadShrnaCor);
-                if(isDouble(broadShrnaDiff)) IntegratedItem.setAttribute("broadShrnaDiff", broadShrnaDiff);
-                if(isDouble(sangerShrnaCor)) IntegratedItem.setAttribute("sangerShrnaCor", sangerShrnaCor);
-                if(isDouble(sangerShrnaDiff)) IntegratedItem.setAttribute("sangerShrnaDiff", sangerShrnaDiff);
+                if(isNonIntegral(shrnaOutliersLineagePvalue)) IntegratedItem.setAttribute("outliersLineagePvalue", shrnaOutliersLineagePvalue);
+                if(isNonIntegral(shrnaOutliersLineageQvalue)) IntegratedItem.setAttribute("outliersLineageQvalue", shrnaOutliersLineageQvalue);
+                if(isNonIntegral(broadSangerCor)) IntegratedItem.setAttribute("broadSangerCor", broadSangerCor);
+                if(isNonIntegral(broadSangerDiff)) IntegratedItem.setAttribute("broadSangerDiff", broadSangerDiff);
+                if(isNonIntegral(broadShrnaCor)) IntegratedItem.setAttribute("broadShrnaCor", broadShrnaCor);
+                if(isNonIntegral(broadShrnaDiff)) IntegratedItem.setAttribute("broadShrnaDiff", broadShrnaDiff);
+                if(isNonIntegral(sangerShrnaCor)) IntegratedItem.setAttribute("sangerShrnaCor", sangerShrnaCor);
+                if(isNonIntegral(sangerShrnaDiff)) IntegratedItem.setAttribute("sangerShrnaDiff", sangerShrnaDiff);
                 store(IntegratedItem);
-            }
-
-
-        }
-    }
-
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
             } else {
-                return resolvedIdentifier;
+                getMetrics().skip("shrna median missing or integral");
             }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
 
-    private String resolveGene(String identifier) {
-        String id = null;
 
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
-            }
         }
-        return id;
+        getMetrics().rowsRead(rows);
     }
 }
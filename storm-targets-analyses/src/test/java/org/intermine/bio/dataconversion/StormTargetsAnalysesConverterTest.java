@@ -10,11 +10,13 @@ package org.intermine.bio.dataconversion;
  *
  */
 
-public class StormTargetsAnalysesConverterTest extends ItemsTestCase
+import java.util.Set;
+
+import org.intermine.xml.full.Item;
+
+public class StormTargetsAnalysesConverterTest extends StormConverterTestCase
 {
-    Model model = Model.getInstanceByName("genomic");
     StormTargetsAnalysesConverter converter;
-    MockItemWriter itemWriter;
 
     public StormTargetsAnalysesConverterTest(String arg) {
         super(arg);
@@ -22,13 +24,16 @@ public class StormTargetsAnalysesConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        // if you need to do some preprocessing and set up, do that here
+        converter = new StormTargetsAnalysesConverter(itemWriter, model);
     }
 
     public void testProcess() throws Exception {
-        // read in a test file (place in test/resources so it's on the classpath)
-        // process using your converter
-        // compare results to expected results
-        // look at the other intermine unit tests for help!
+        converter.process(getResource("storm-targets-analyses"));
+        converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "storm-targets-analyses-tgt.xml");
+
+        Set<Item> expected = readItemSet("StormTargetsAnalysesConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }
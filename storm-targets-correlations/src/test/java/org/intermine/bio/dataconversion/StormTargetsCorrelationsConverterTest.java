@@ -10,11 +10,13 @@ package org.intermine.bio.dataconversion;
  *
  */
 
-public class StormTargetsCorrelationsConverterTest extends ItemsTestCase
+import java.util.Set;
+
+import org.intermine.xml.full.Item;
+
+public class StormTargetsCorrelationsConverterTest extends StormConverterTestCase
 {
-    Model model = Model.getInstanceByName("genomic");
     StormTargetsCorrelationsConverter converter;
-    MockItemWriter itemWriter;
 
     public StormTargetsCorrelationsConverterTest(String arg) {
         super(arg);
@@ -22,13 +24,16 @@ public class StormTargetsCorrelationsConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        // if you need to do some preprocessing and set up, do that here
+        converter = new StormTargetsCorrelationsConverter(itemWriter, model);
     }
 
     public void testProcess() throws Exception {
-        // read in a test file (place in test/resources so it's on the classpath)
-        // process using your converter
-        // compare results to expected results
-        // look at the other intermine unit tests for help!
+        converter.process(getResource("storm-targets-correlations"));
+        converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "storm-targets-correlations-tgt.xml");
+
+        Set<Item> expected = readItemSet("StormTargetsCorrelationsConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }
@@ -11,7 +11,6 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -24,7 +23,6 @@ import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -32,7 +30,7 @@ import org.intermine.xml.full.Item;
  * 
  * @author
  */
-public class StormTargetsMetadataConverter extends BioDirectoryConverter
+public class StormTargetsMetadataConverter extends StormDirectoryConverter
 {
     //
     private static final String DATASET_TITLE = "STORM Targets Metadata";
@@ -43,19 +41,14 @@ public class StormTargetsMetadataConverter extends BioDirectoryConverter
     private static final String TARGETS_FILE = "storm_targets.csv";
     private static final String CATEGORIES_FILE = "storm_targets_categories.csv";
 
-    private Map<String, String> genes = new HashMap<String, String>();
     private Map<String, String> typeMap = new HashMap<String, String>();
 
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(StormTargetsMetadataConverter.class);
 
     private String organismIdentifier;
 
     public StormTargetsMetadataConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
     public void process(File dataDir) throws Exception {
@@ -63,20 +56,13 @@ public class StormTargetsMetadataConverter extends BioDirectoryConverter
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        processTargetsCategories(new FileReader(files.get(CATEGORIES_FILE)));
-        processTargetsMetadata(new FileReader(files.get(TARGETS_FILE)));
-    }
-
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
-        }
-        return files;
+        processTargetsCategories(openDataFile(files.get(CATEGORIES_FILE)));
+        processTargetsMetadata(openDataFile(files.get(TARGETS_FILE)));
     }
 
     private void processTargetsCategories(Reader reader) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(reader);
+        DelimitedReader rows = DelimitedReader.csv(reader);
+        Iterator<?> lineIter = rows.iterator();
         // header
         String[] firstLine = (String[]) lineIter.next();
 
@@ -88,6 +74,7 @@ public class StormTargetsMetadataConverter extends BioDirectoryConverter
             String typeName = line[1];
 
             if (StringUtils.isEmpty(typeAbbreviation) || StringUtils.isEmpty(typeName)) {
+                getMetrics().skip("incomplete category");
                 continue;
             }
 
@@ -97,10 +84,12 @@ public class StormTargetsMetadataConverter extends BioDirectoryConverter
             }
 
         }
+        getMetrics().rowsRead(rows);
     }
 
     private void processTargetsMetadata(Reader reader) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(reader);
+        DelimitedReader rows = DelimitedReader.csv(reader);
+        Iterator<?> lineIter = rows.iterator();
         // header
         String[] firstLine = (String[]) lineIter.next();
 
@@ -113,6 +102,7 @@ public class StormTargetsMetadataConverter extends BioDirectoryConverter
             String typeAbbreviation = line[9];
 
             if (StringUtils.isEmpty(typeAbbreviation) || typeMap.get(typeAbbreviation) == null) {
+                getMetrics().skip("unknown target type");
                 continue;
             }
 
@@ -128,11 +118,13 @@ public class StormTargetsMetadataConverter extends BioDirectoryConverter
                 String geneId = getGeneId(gene);
 
                 if (StringUtils.isEmpty(geneId)) {
+                    getMetrics().skip("gene not resolved");
                     continue;
                 }
 
                 IntegratedItem.setReference("gene", geneId);
             } else {
+                getMetrics().skip("empty gene");
                 continue;
             }
 
@@ -147,39 +139,18 @@ public class StormTargetsMetadataConverter extends BioDirectoryConverter
 
             store(IntegratedItem);
         }
+        getMetrics().rowsRead(rows);
     }
 
-    private String getGeneId(String primaryIdentifier) throws ObjectStoreException {
-        String resolvedIdentifier = resolveGene(primaryIdentifier);
-        if (StringUtils.isEmpty(resolvedIdentifier)) {
-            return null;
-        }
-        String geneId = genes.get(resolvedIdentifier);
-        if (geneId == null) {
-            Item gene = createItem("Gene");
-            gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-            //gene.setAttribute("symbol", primaryIdentifier);
-            //gene.setReference("organism", getOrganism(TAXON_ID));
-            store(gene);
-            geneId = gene.getIdentifier();
-            genes.put(resolvedIdentifier, geneId);
-        }
-        return geneId;
-    }
-
-    private String resolveGene(String identifier) {
-        String id = identifier;
-
-        if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-            int resCount = rslv.countResolutions(TAXON_ID, identifier);
-            if (resCount != 1) {
-                LOG.info("RESOLVER: failed to resolve gene to one identifier, ignoring gene: "
-                        + identifier + " count: " + resCount + " Human identifier: "
-                        + rslv.resolveId(TAXON_ID, identifier));
-                return null;
-            }
-            id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
+    /**
+     * The targets list is where the other sources get their genes from, so keep the symbol
+     * as it is when there is no resolver for human.
+     */
+    @Override
+    protected String resolveGene(String identifier) {
+        if (!getGeneCache().hasResolver()) {
+            return identifier;
         }
-        return id;
+        return super.resolveGene(identifier);
     }
 }
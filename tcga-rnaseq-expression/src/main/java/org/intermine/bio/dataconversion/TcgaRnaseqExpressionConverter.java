@@ -11,12 +11,9 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
@@ -24,7 +21,6 @@ import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -32,7 +28,7 @@ import org.intermine.xml.full.Item;
  * 
  * @author
  */
-public class TcgaRnaseqExpressionConverter extends BioDirectoryConverter
+public class TcgaRnaseqExpressionConverter extends StormDirectoryConverter
 {
     //
     private static final String DATASET_TITLE = "TCGA Rna-seq Expression Data";
@@ -42,57 +38,17 @@ public class TcgaRnaseqExpressionConverter extends BioDirectoryConverter
 
     private static final String EXPRESSION_TSV_FILE = "EB++AdjustPANCAN_IlluminaHiSeq_RNASeqV2.geneExp.xena";
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-    private Map<String, String> samples = new HashMap<String, String>();
+    private ItemIdRegistry samples = newRegistry("samples");
+
+    // the sample of each column from the header
+    private List<String> sampleNames;
 
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(TcgaRnaseqExpressionConverter.class);
 
     private String organismIdentifier;
 
     // Methods to integrate the data only for a list of genes
     private static final String GENE_LIST_FILE = "/data/storm/targets/storm_targets_symbols.csv";
-    private ArrayList<String> processGeneList(String geneListFile) throws Exception {
-        File geneListF = new File(geneListFile);
-
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(geneListF));
-        ArrayList<String> geneListArray = new ArrayList<String>();
-
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
-            String gene = line[0];
-            if(StringUtils.isEmpty(gene)) {
-                continue;
-            }
-
-            String resolvedGeneIdentifier = getGeneIdentifier(gene);
-            if(resolvedGeneIdentifier != null) {
-                geneListArray.add(resolvedGeneIdentifier);
-            }
-        }
-
-        return geneListArray;
-    }
-
-    private String getGeneIdentifier(String geneSymbol) throws ObjectStoreException {
-        String resolvedIdentifier = resolveGene(geneSymbol);
-        if (StringUtils.isEmpty(resolvedIdentifier)) {
-            return null;
-        }
-        String geneId = genes.get(resolvedIdentifier);
-        if (geneId == null) {
-            Item gene = createItem("Gene");
-            gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-            //gene.setAttribute("symbol", primaryIdentifier);
-            //gene.setReference("organism", getOrganism(TAXON_ID));
-            store(gene);
-            geneId = gene.getIdentifier();
-            genes.put(resolvedIdentifier, geneId);
-        }
-        return geneId;
-    }
     //
 
     /**
@@ -102,151 +58,139 @@ public class TcgaRnaseqExpressionConverter extends BioDirectoryConverter
      */
     public TcgaRnaseqExpressionConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
-    private boolean isDouble(String str) {
-        try {
-            // check if it can be parsed as any double
-            double x = Double.parseDouble(str);
-            // check if the double can be converted without loss to an int
-            if (x == (int) x)
-                // if yes, this is an int, thus return false
-                return false;
-            // otherwise, this cannot be converted to an int (e.g. "1.2")
-            return true;
-            // short version: return x != (int) x;
-        }
-        catch(NumberFormatException e) {
-            return false;
+    public void process(File dataDir) throws Exception {
+        if(replaySpool()) {
+            return;
         }
-    }
 
-    public void process(File dataDir) throws Exception {
         Map<String, File> files = readFilesInDir(dataDir);
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        ArrayList<String> geneListArray = new ArrayList<String>();
+        GeneFilter geneFilter = GeneFilter.ALL;
         if(!StringUtils.isEmpty(GENE_LIST_FILE)) {
-            geneListArray = processGeneList(GENE_LIST_FILE);
+            geneFilter = processGeneList(GENE_LIST_FILE);
         }
 
-        processExpressionData(new FileReader(files.get(EXPRESSION_TSV_FILE)), geneListArray);
-    }
-
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
+        File expressionFile = files.get(EXPRESSION_TSV_FILE);
+        ParallelRowEngine engine = openParallel(expressionFile, '\t', DelimitedReader.NO_QUOTE);
+        if(engine != null) {
+            processExpressionData(engine, geneFilter);
+        } else {
+            processExpressionData(expressionFile, geneFilter);
         }
-        return files;
     }
 
-    private void processExpressionData(Reader reader, ArrayList<String> geneList) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseTabDelimitedReader(reader);
+    private void processExpressionData(File expressionFile, GeneFilter geneFilter) throws ObjectStoreException, IOException {
+        DelimitedReader rows = DelimitedReader.tsv(openDataFile(expressionFile));
         // header
-        String[] firstLine = (String[]) lineIter.next();
-        ArrayList<String> samples = new ArrayList<String>();
-        for(int i = 1; i < firstLine.length; i++) {
-            String formattedSample = firstLine[i].split(" ")[0].trim();
-            samples.add(formattedSample);
-        }
+        processHeader(rows.readHeader());
 
+        // rows of genes that aren't wanted are dropped before their values are split
+        rows.setRowFilter(0, geneRowFilter(geneFilter));
+
+        // with storm.checkpoint.dir set a run that died carries on from its last checkpoint
+        startCheckpoints(expressionFile, rows);
+
+        NumericField numbers = getNumericField();
         //lineIter.next();
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
+        while (rows.next()) {
+            storeRow(parseRow(rows, numbers), geneFilter);
+            checkpoint(rows);
+        }
+        endCheckpoints();
+        getMetrics().rowsRead(rows);
+        rows.close();
+    }
 
-            String gene = line[0];
+    // the same, with the rows parsed on several threads and stored here in file order
+    private void processExpressionData(ParallelRowEngine engine, final GeneFilter geneFilter) throws Exception {
+        processHeader(engine.getHeader());
 
-            if(!geneList.isEmpty()) {
-                String resolvedGene = getGeneIdentifier(gene);
-                if(!geneList.contains(resolvedGene)) {
-                    continue;
-                }
-            }
+        // the rows that are dropped still come through for their Gene to be stored in order
+        engine.setRowFilter(0, concurrentGeneRowFilter(geneFilter), true);
 
-            for(int i = 1; i < line.length; i++) {
-                String expressionValue = line[i];
-                String theSampleForThisItem = samples.get(i-1);
-                Item ExpressionItem;
-
-                ExpressionItem = createItem("TCGAExpression");
-
-                if(!gene.isEmpty()) {
-                    if(unresolvableGenes.get(gene) != null) {
-                        continue;
-                    }
-                    String geneId = getGeneId(gene);
-                    if(geneId == null) {
-                        continue;
-                    }
-
-                    ExpressionItem.setReference("gene", geneId);
-                } else {
-                    continue;
-                }
-
-                if(!theSampleForThisItem.isEmpty()) {
-                    ExpressionItem.setReference("sample", getSample(theSampleForThisItem));
-                } else {
-                    continue;
-                }
-
-                if(!StringUtils.isEmpty(expressionValue) && isDouble(expressionValue)) {
-                    ExpressionItem.setAttribute("TcgaRnaseqExpressionValue", expressionValue);
-                } else {
-                    continue;
-                }
-
-                store(ExpressionItem);
-                //cellLines.put(cellLine, CopyNumberItem.getIdentifier());
+        engine.run(new ParallelRowEngine.RowParser<ExpressionRow>() {
+            @Override
+            public ExpressionRow parse(DelimitedReader rows) {
+                return parseRow(rows, new NumericField());
             }
+        }, new ParallelRowEngine.RowHandler<ExpressionRow>() {
+            @Override
+            public void handle(ExpressionRow row) throws ObjectStoreException {
+                storeRow(row, geneFilter);
+            }
+        });
+        getMetrics().rowsRead(engine);
+    }
+
+    private void processHeader(String[] firstLine) {
+        sampleNames = new ArrayList<String>();
+        for(int i = 1; i < firstLine.length; i++) {
+            String formattedSample = firstLine[i].split(" ")[0].trim();
+            sampleNames.add(formattedSample);
         }
     }
 
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
-            } else {
-                return resolvedIdentifier;
+    // may run on a parser thread, so it must not use the converter's state
+    private ExpressionRow parseRow(DelimitedReader rows, NumericField numbers) {
+        String gene = rows.getString(0);
+        if(rows.isFiltered()) {
+            return new ExpressionRow(gene, null);
+        }
+        String[] values = new String[rows.getFieldCount() - 1];
+        for(int i = 1; i < rows.getFieldCount(); i++) {
+            CharSequence expressionValue = rows.getField(i);
+            if(expressionValue.length() > 0 && numbers.isNonIntegral(expressionValue)) {
+                values[i-1] = expressionValue.toString();
             }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
         }
+        return new ExpressionRow(gene, values);
     }
 
-    private String resolveGene(String identifier) {
-        String id = null;
+    private void storeRow(ExpressionRow row, GeneFilter geneFilter) throws ObjectStoreException {
+        String gene = row.gene;
 
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
+        // resolve and filter the gene once per row, not for every cell
+        String geneId = gene.isEmpty() ? null : getGeneId(gene);
+        // rows rejected by the row filter are counted with the rows read
+        if(row.values == null) {
+            return;
+        }
+        if(!geneFilter.accepts(geneId)) {
+            getMetrics().skip(geneId == null ? "gene not resolved" : "gene not in list");
+            return;
+        }
+
+        for(int i = 1; i <= row.values.length; i++) {
+            String expressionValue = row.values[i-1];
+            String theSampleForThisItem = sampleNames.get(i-1);
+            Item ExpressionItem;
+
+            ExpressionItem = createItem("TCGAExpression");
+
+            ExpressionItem.setReference("gene", geneId);
+
+            if(!theSampleForThisItem.isEmpty()) {
+                ExpressionItem.setReference("sample", getSample(theSampleForThisItem));
+            } else {
+                getMetrics().skip("empty sample");
+                continue;
+            }
+
+            // null unless it is a non-integral number
+            if(expressionValue != null) {
+                ExpressionItem.setAttribute("TcgaRnaseqExpressionValue", expressionValue);
+            } else {
+                getMetrics().skip("missing or integral value");
+                continue;
             }
+
+            store(ExpressionItem);
+            //cellLines.put(cellLine, CopyNumberItem.getIdentifier());
         }
-        return id;
     }
 
     public String getSample(String identifier) {
@@ -264,4 +208,19 @@ public class TcgaRnaseqExpressionConverter extends BioDirectoryConverter
         }
         return refId;
     }
+
+    /**
+     * The values of a row the items are made from.
+     */
+    private static class ExpressionRow
+    {
+        private final String gene;
+        // by column - 1, null for a row that was filtered out
+        private final String[] values;
+
+        ExpressionRow(String gene, String[] values) {
+            this.gene = gene;
+            this.values = values;
+        }
+    }
 }
@@ -10,11 +10,13 @@ package org.intermine.bio.dataconversion;
  *
  */
 
-public class TcgaRnaseqExpressionConverterTest extends ItemsTestCase
+import java.util.Set;
+
+import org.intermine.xml.full.Item;
+
+public class TcgaRnaseqExpressionConverterTest extends StormConverterTestCase
 {
-    Model model = Model.getInstanceByName("genomic");
     TcgaRnaseqExpressionConverter converter;
-    MockItemWriter itemWriter;
 
     public TcgaRnaseqExpressionConverterTest(String arg) {
         super(arg);
@@ -22,13 +24,28 @@ public class TcgaRnaseqExpressionConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        // if you need to do some preprocessing and set up, do that here
+        converter = new TcgaRnaseqExpressionConverter(itemWriter, model);
     }
 
     public void testProcess() throws Exception {
-        // read in a test file (place in test/resources so it's on the classpath)
-        // process using your converter
-        // compare results to expected results
-        // look at the other intermine unit tests for help!
+        setProperty(SourceConfig.PARALLEL_THREADS, "1");
+        assertProcess();
+    }
+
+    public void testProcessParallel() throws Exception {
+        // a few rows per chunk, so that every thread parses some of the matrix
+        setProperty(SourceConfig.PARALLEL_THREADS, "4");
+        setProperty(SourceConfig.PARALLEL_CHUNK_SIZE, "64");
+        assertProcess();
+    }
+
+    private void assertProcess() throws Exception {
+        converter.process(getResource("tcga-rnaseq-expression"));
+        converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "tcga-rnaseq-expression-tgt.xml");
+
+        Set<Item> expected = readItemSet("TcgaRnaseqExpressionConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }
@@ -21,7 +21,6 @@ import java.util.Map;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 
@@ -39,7 +38,10 @@ public class TcgaSampleMetadataConverter extends BioDirectoryConverter
 
     private static final String SAMPLE_INFO_CSV_FILE = "TCGA_phenotype_denseDataOnlyDownload.tsv";
 
-    private Map<String, String> samples = new HashMap<String, String>();
+    private ItemIdRegistry samples = new ItemIdRegistry("samples");
+
+    // what this run did, reported at close()
+    private final ConverterMetrics metrics = new ConverterMetrics(SourceConfig.getSourceName(getClass()));
 
     private String organismIdentifier; // Not the taxon ID. It references the object that is created into the database.
 
@@ -63,8 +65,31 @@ public class TcgaSampleMetadataConverter extends BioDirectoryConverter
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        processSamples(new FileReader(files.get(SAMPLE_INFO_CSV_FILE)));
+        File sampleInfoFile = files.get(SAMPLE_INFO_CSV_FILE);
+        metrics.startPhase(SAMPLE_INFO_CSV_FILE);
+        metrics.fileOpened(sampleInfoFile);
+        processSamples(new FileReader(sampleInfoFile));
+
+    }
 
+    /**
+     * Write the metrics report.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws Exception {
+        metrics.startPhase("close");
+        super.close();
+        metrics.report(SourceConfig.forConverter(getClass()));
+    }
+
+    /**
+     * The metrics of this run, written as a JSON report at close().
+     * @return the metrics
+     */
+    protected ConverterMetrics getMetrics() {
+        return metrics;
     }
 
     private Map<String, File> readFilesInDir(File dir) {
@@ -76,7 +101,8 @@ public class TcgaSampleMetadataConverter extends BioDirectoryConverter
     }
 
     private void processSamples(Reader reader) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseTabDelimitedReader(reader);
+        DelimitedReader rows = DelimitedReader.tsv(reader);
+        Iterator<?> lineIter = rows.iterator();
         // Skip header
         lineIter.next();
         while (lineIter.hasNext()) {
@@ -85,6 +111,7 @@ public class TcgaSampleMetadataConverter extends BioDirectoryConverter
             String SampleID = line[0];
 
             if(samples.containsKey(SampleID)) {
+                metrics.skip("duplicate sample id");
                 continue;
             }
 
@@ -95,10 +122,12 @@ public class TcgaSampleMetadataConverter extends BioDirectoryConverter
             Item sampleItem;
 
             sampleItem = createItem("TCGASample");
+            metrics.itemCreated("TCGASample");
 
             if(!SampleID.isEmpty()) {
                 sampleItem.setAttribute("SampleID", SampleID);
             } else {
+                metrics.skip("empty sample id");
                 continue;
             }
 
@@ -121,7 +150,9 @@ public class TcgaSampleMetadataConverter extends BioDirectoryConverter
             }
 
             store(sampleItem);
+            metrics.itemStored("TCGASample");
             samples.put(SampleID, sampleItem.getIdentifier());
         }
+        metrics.rowsRead(rows);
     }
 }
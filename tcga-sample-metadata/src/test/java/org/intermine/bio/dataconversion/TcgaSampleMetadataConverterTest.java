@@ -10,6 +10,15 @@ package org.intermine.bio.dataconversion;
  *
  */
 
+import java.io.File;
+import java.util.HashMap;
+import java.util.Set;
+
+import org.intermine.dataconversion.ItemsTestCase;
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.model.fulldata.Item;
+
 public class TcgaSampleMetadataConverterTest extends ItemsTestCase
 {
     Model model = Model.getInstanceByName("genomic");
@@ -22,13 +31,21 @@ public class TcgaSampleMetadataConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        // if you need to do some preprocessing and set up, do that here
+        itemWriter = new MockItemWriter(new HashMap<String, Item>());
+        converter = new TcgaSampleMetadataConverter(itemWriter, model);
     }
 
     public void testProcess() throws Exception {
-        // read in a test file (place in test/resources so it's on the classpath)
-        // process using your converter
-        // compare results to expected results
-        // look at the other intermine unit tests for help!
+        File dataDirectory = new File(getClass().getClassLoader()
+                .getResource("tcga-sample-metadata").toURI());
+
+        converter.process(dataDirectory);
+        converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "tcga-sample-metadata-tgt.xml");
+
+        Set<org.intermine.xml.full.Item> expected =
+            readItemSet("TcgaSampleMetadataConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }
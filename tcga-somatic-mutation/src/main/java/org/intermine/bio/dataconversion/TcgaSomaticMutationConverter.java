@@ -11,11 +11,9 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -24,14 +22,13 @@ import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.FormattedTextParser;
 import org.intermine.xml.full.Item;
 
 /**
  * 
  * @author
  */
-public class TcgaSomaticMutationConverter extends BioDirectoryConverter
+public class TcgaSomaticMutationConverter extends StormDirectoryConverter
 {
     //
     private static final String DATASET_TITLE = "TCGA Mutation Data";
@@ -41,57 +38,14 @@ public class TcgaSomaticMutationConverter extends BioDirectoryConverter
 
     private static final String MUTATION_TSV_FILE = "mc3.v0.2.8.PUBLIC.nonsilentGene.xena";
 
-    private Map<String, String> genes = new HashMap<String, String>();
-    private Map<String, String> resolvedGenes = new HashMap<String, String>();
-    private Map<String, String> unresolvableGenes = new HashMap<String, String>();
-    private Map<String, String> samples = new HashMap<String, String>();
+    private ItemIdRegistry samples = newRegistry("samples");
 
-    protected IdResolver rslv;
     private static final Logger LOG = Logger.getLogger(TcgaSomaticMutationConverter.class);
 
     private String organismIdentifier; // Not the taxon ID. It references the object that is created into the database.
 
     // Methods to integrate the data only for a list of genes
     private static final String GENE_LIST_FILE = "/data/storm/targets/storm_targets_symbols.csv";
-    private ArrayList<String> processGeneList(String geneListFile) throws Exception {
-        File geneListF = new File(geneListFile);
-
-        Iterator<?> lineIter = FormattedTextParser.parseCsvDelimitedReader(new FileReader(geneListF));
-        ArrayList<String> geneListArray = new ArrayList<String>();
-
-        while (lineIter.hasNext()) {
-            String[] line = (String[]) lineIter.next();
-            String gene = line[0];
-            if(StringUtils.isEmpty(gene)) {
-                continue;
-            }
-
-            String resolvedGeneIdentifier = getGeneIdentifier(gene);
-            if(resolvedGeneIdentifier != null) {
-                geneListArray.add(resolvedGeneIdentifier);
-            }
-        }
-
-        return geneListArray;
-    }
-
-    private String getGeneIdentifier(String geneSymbol) throws ObjectStoreException {
-        String resolvedIdentifier = resolveGene(geneSymbol);
-        if (StringUtils.isEmpty(resolvedIdentifier)) {
-            return null;
-        }
-        String geneId = genes.get(resolvedIdentifier);
-        if (geneId == null) {
-            Item gene = createItem("Gene");
-            gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-            //gene.setAttribute("symbol", primaryIdentifier);
-            //gene.setReference("organism", getOrganism(TAXON_ID));
-            store(gene);
-            geneId = gene.getIdentifier();
-            genes.put(resolvedIdentifier, geneId);
-        }
-        return geneId;
-    }
     //
 
     /**
@@ -101,9 +55,6 @@ public class TcgaSomaticMutationConverter extends BioDirectoryConverter
      */
     public TcgaSomaticMutationConverter(ItemWriter writer, Model model) {
         super(writer, model, DATA_SOURCE_NAME, DATASET_TITLE);
-        if (rslv == null) {
-            rslv = IdResolverService.getIdResolverByOrganism(TAXON_ID);
-        }
     }
 
     /**
@@ -116,25 +67,18 @@ public class TcgaSomaticMutationConverter extends BioDirectoryConverter
 
         organismIdentifier = getOrganism(TAXON_ID);
 
-        ArrayList<String> geneListArray = new ArrayList<String>();
+        GeneFilter geneFilter = GeneFilter.ALL;
         if(!StringUtils.isEmpty(GENE_LIST_FILE)) {
-            geneListArray = processGeneList(GENE_LIST_FILE);
+            geneFilter = processGeneList(GENE_LIST_FILE);
         }
 
-        processMutationData(new FileReader(files.get(MUTATION_TSV_FILE)), geneListArray);
+        processMutationData(openDataFile(files.get(MUTATION_TSV_FILE)), geneFilter);
 
     }
 
-    private Map<String, File> readFilesInDir(File dir) {
-        Map<String, File> files = new HashMap<String, File>();
-        for (File file : dir.listFiles()) {
-            files.put(file.getName(), file);
-        }
-        return files;
-    }
-
-    private void processMutationData(Reader reader, ArrayList<String> geneList) throws ObjectStoreException, IOException {
-        Iterator<?> lineIter = FormattedTextParser.parseTabDelimitedReader(reader);
+    private void processMutationData(Reader reader, GeneFilter geneFilter) throws ObjectStoreException, IOException {
+        DelimitedReader rows = DelimitedReader.tsv(reader);
+        Iterator<?> lineIter = rows.iterator();
         // header
         String[] firstLine = (String[]) lineIter.next();
         ArrayList<String> samples = new ArrayList<String>();
@@ -149,11 +93,11 @@ public class TcgaSomaticMutationConverter extends BioDirectoryConverter
 
             String gene = line[0];
 
-            if(!geneList.isEmpty()) {
-                String resolvedGene = getGeneIdentifier(gene);
-                if(!geneList.contains(resolvedGene)) {
-                    continue;
-                }
+            // resolve and filter the gene once per row, not for every cell
+            String geneId = gene.isEmpty() ? null : getGeneId(gene);
+            if(!geneFilter.accepts(geneId)) {
+                getMetrics().skip(geneId == null ? "gene not resolved" : "gene not in list");
+                continue;
             }
 
             for(int i = 1; i < line.length; i++) {
@@ -163,29 +107,19 @@ public class TcgaSomaticMutationConverter extends BioDirectoryConverter
 
                 MutationItem = createItem("TCGAMutation");
 
-                if(!gene.isEmpty()) {
-                    if(unresolvableGenes.get(gene) != null) {
-                        continue;
-                    }
-                    String geneId = getGeneId(gene);
-                    if(geneId == null) {
-                        continue;
-                    }
-
-                    MutationItem.setReference("gene", geneId);
-                } else {
-                    continue;
-                }
+                MutationItem.setReference("gene", geneId);
 
                 if(!theSampleForThisItem.isEmpty()) {
                     MutationItem.setReference("sample", getSample(theSampleForThisItem));
                 } else {
+                    getMetrics().skip("empty sample");
                     continue;
                 }
 
                 if(!mutationValue.isEmpty() && StringUtils.isNumeric(mutationValue)) {
                     MutationItem.setAttribute("TcgaSomaticMutationValue", mutationValue);
                 } else {
+                    getMetrics().skip("missing or non-numeric value");
                     continue;
                 }
 
@@ -193,48 +127,7 @@ public class TcgaSomaticMutationConverter extends BioDirectoryConverter
                 //cellLines.put(cellLine, CopyNumberItem.getIdentifier());
             }
         }
-    }
-
-    private String getGeneId(String identifier) throws ObjectStoreException {
-        String geneId = null;
-        try {
-            String resolvedIdentifier = resolveGene(identifier);
-            if(resolvedIdentifier != null) {
-                geneId = genes.get(resolvedIdentifier);
-                if (geneId == null) {
-                    Item gene = createItem("Gene");
-                    gene.setAttribute("primaryIdentifier", resolvedIdentifier);
-                    store(gene);
-                    geneId = gene.getIdentifier();
-                    genes.put(resolvedIdentifier, geneId);
-                }
-                return geneId;
-            } else {
-                return resolvedIdentifier;
-            }
-        } catch (Exception e) {
-            LOG.info("getGeneId: failed to resolve gene: " + identifier);
-            return null;
-        }
-    }
-
-    private String resolveGene(String identifier) {
-        String id = null;
-
-        if(resolvedGenes.get(identifier) != null) {
-            id = resolvedGenes.get(identifier);
-        } else {
-            if (rslv != null && rslv.hasTaxon(TAXON_ID)) {
-                int resCount = rslv.countResolutions(TAXON_ID, identifier);
-                if (resCount != 1) {
-                    unresolvableGenes.put(identifier, identifier);
-                    return null;
-                }
-                id = rslv.resolveId(TAXON_ID, identifier).iterator().next();
-                resolvedGenes.put(identifier, id);
-            }
-        }
-        return id;
+        getMetrics().rowsRead(rows);
     }
 
     public String getSample(String identifier) {
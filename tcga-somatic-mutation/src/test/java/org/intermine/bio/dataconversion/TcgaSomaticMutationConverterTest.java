@@ -10,11 +10,13 @@ package org.intermine.bio.dataconversion;
  *
  */
 
-public class TcgaSomaticMutationConverterTest extends ItemsTestCase
+import java.util.Set;
+
+import org.intermine.xml.full.Item;
+
+public class TcgaSomaticMutationConverterTest extends StormConverterTestCase
 {
-    Model model = Model.getInstanceByName("genomic");
     TcgaSomaticMutationConverter converter;
-    MockItemWriter itemWriter;
 
     public TcgaSomaticMutationConverterTest(String arg) {
         super(arg);
@@ -22,13 +24,16 @@ public class TcgaSomaticMutationConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        // if you need to do some preprocessing and set up, do that here
+        converter = new TcgaSomaticMutationConverter(itemWriter, model);
     }
 
     public void testProcess() throws Exception {
-        // read in a test file (place in test/resources so it's on the classpath)
-        // process using your converter
-        // compare results to expected results
-        // look at the other intermine unit tests for help!
+        converter.process(getResource("tcga-somatic-mutation"));
+        converter.close();
+        // uncomment to write out a new target items file
+        // writeItemsFile(itemWriter.getItems(), "tcga-somatic-mutation-tgt.xml");
+
+        Set<Item> expected = readItemSet("TcgaSomaticMutationConverterTest-tgt.xml");
+        assertEquals(expected, itemWriter.getItems());
     }
 }